@@ -5,13 +5,23 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.security.MessageDigest;
 import java.util.Objects;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.sigpwned.jsonification.generator.CanonicalJsonGenerator;
+import com.sigpwned.jsonification.generator.Utf8JsonGenerator;
+import com.sigpwned.jsonification.impl.CopyOnWriteJsonArray;
+import com.sigpwned.jsonification.impl.CopyOnWriteJsonObject;
+import com.sigpwned.jsonification.impl.DefaultJsonArray;
 import com.sigpwned.jsonification.impl.DefaultJsonFactory;
+import com.sigpwned.jsonification.impl.DefaultJsonObject;
+import com.sigpwned.jsonification.impl.FrozenJsonArray;
+import com.sigpwned.jsonification.impl.FrozenJsonObject;
+import com.sigpwned.jsonification.impl.HeapSize;
+import com.sigpwned.jsonification.impl.RawJsonValue;
+import com.sigpwned.jsonification.impl.ShapedJsonObject;
+import com.sigpwned.jsonification.impl.Utf8JsonString;
 import com.sigpwned.jsonification.io.IgnoreCloseReader;
 import com.sigpwned.jsonification.value.JsonArray;
 import com.sigpwned.jsonification.value.JsonNull;
@@ -37,6 +47,53 @@ import com.sigpwned.jsonification.value.scalar.JsonString;
  * limitations under the License.
  */
 public class Json {
+    /**
+     * Sums the hash codes of an object's entries
+     */
+    private static class HashVisitor implements JsonObject.EntryVisitor {
+        public int hash;
+        
+        @Override
+        public boolean visit(String name, JsonValue value) {
+            hash = hash + (name.hashCode() ^ value.hashCode());
+            return true;
+        }
+    }
+    
+    /**
+     * Checks that each visited entry is also in another object
+     */
+    private static class EqualsVisitor implements JsonObject.EntryVisitor {
+        private final JsonObject other;
+        
+        public EqualsVisitor(JsonObject other) {
+            this.other = other;
+        }
+        
+        @Override
+        public boolean visit(String name, JsonValue value) {
+            return Objects.equals(value, other.get(name));
+        }
+    }
+    
+    /**
+     * Sums rough emitted sizes of an object's entries
+     */
+    private static class SizeVisitor implements JsonObject.EntryVisitor {
+        private final int depth;
+        public int size;
+        
+        public SizeVisitor(int depth) {
+            this.depth = depth;
+        }
+        
+        @Override
+        public boolean visit(String name, JsonValue value) {
+            size = size + name.length()+4 + estimateEmittedSize(value, depth);
+            return true;
+        }
+    }
+    
     public static JsonNull NULL=JsonNull.NULL;
     
     public static JsonBoolean TRUE=JsonBoolean.TRUE;
@@ -138,18 +195,52 @@ public class Json {
         return result;
     }
     
+    /**
+     * Copies one complete JSON value from the given parser to the given
+     * generator event by event, without building a tree.
+     * 
+     * @return {@code true} if a value was copied, or {@code false} otherwise
+     * 
+     * @see JsonTranscoder
+     * 
+     * @throws IOException if an underlying {@code IOException} occurs while
+     *         reading or writing JSON
+     */
+    public static boolean transcode(JsonParser parser, JsonGenerator generator) throws IOException {
+        return new JsonTranscoder().transcode(parser, generator);
+    }
+    
+    /**
+     * Copies one complete JSON value from the given parser to the given
+     * generator without building a tree, giving the hook the chance to
+     * drop, rename, or replace each object member on the way.
+     * 
+     * @return {@code true} if a value was copied, or {@code false} otherwise
+     * 
+     * @see JsonTranscoder
+     * 
+     * @throws IOException if an underlying {@code IOException} occurs while
+     *         reading or writing JSON
+     */
+    public static boolean transcode(JsonParser parser, JsonGenerator generator, JsonTranscoder.Hook hook) throws IOException {
+        return new JsonTranscoder(hook).transcode(parser, generator);
+    }
+    
     /**
      * Converts the given {@link JsonValue} to a {@code String} in JSON format.
+     * The output buffers are sized up front from a rough estimate of the
+     * output length, so small values do not pay for large buffers.
      * 
      * @param tree the {@code JsonValue} to emit
      * 
      * @return the {@code JsonValue} converted to a valid JSON string
      */
     public static String emit(JsonValue tree) {
-        StringWriter result=new StringWriter();
+        int expectedSize=estimateEmittedSize(tree, 2);
+        StringWriter result=new StringWriter(expectedSize);
         try {
             try {
-                try (JsonGenerator g=getDefaultFactory().newGenerator(result)) {
+                try (JsonGenerator g=getDefaultFactory().newGenerator(result, expectedSize)) {
                     g.value(tree);
                 }
             }
@@ -164,6 +255,266 @@ public class Json {
         return result.toString();
     }
     
+    /**
+     * Converts the given {@link JsonValue} to UTF-8 bytes in JSON format. The
+     * output buffer is sized up front from a rough estimate of the output
+     * length, so it rarely needs to grow.
+     * 
+     * @param tree the {@code JsonValue} to emit
+     * 
+     * @return the {@code JsonValue} converted to valid JSON encoded as UTF-8
+     */
+    public static byte[] emitBytes(JsonValue tree) {
+        Utf8JsonGenerator g=Utf8JsonGenerator.inMemory(estimateEmittedSize(tree, 2));
+        try {
+            g.value(tree);
+        }
+        catch(IOException e) {
+            // This should never happen since we're writing to memory
+            throw new JsonError(e);
+        }
+        return g.toByteArray();
+    }
+    
+    /**
+     * Converts the given {@link JsonValue} to its canonical form per RFC
+     * 8785, encoded as UTF-8. Members are sorted by name as they are
+     * written, so the tree's own member order does not matter.
+     * 
+     * @param tree the {@code JsonValue} to emit
+     * 
+     * @return the canonical JSON form of the {@code JsonValue} encoded as
+     *         UTF-8
+     */
+    public static byte[] emitCanonicalBytes(JsonValue tree) {
+        CanonicalJsonGenerator g=CanonicalJsonGenerator.inMemory(estimateEmittedSize(tree, 2));
+        try {
+            g.value(tree);
+        }
+        catch(IOException e) {
+            // This should never happen since we're writing to memory
+            throw new JsonError(e);
+        }
+        return g.toByteArray();
+    }
+    
+    /**
+     * Feeds the canonical form of the given {@link JsonValue} per RFC 8785
+     * to the given digest without collecting it in memory, and completes
+     * the digest.
+     * 
+     * @return the digest of the canonical form
+     */
+    public static byte[] digest(JsonValue tree, MessageDigest digest) {
+        CanonicalJsonGenerator g=new CanonicalJsonGenerator(digest);
+        try {
+            g.value(tree);
+            g.flush();
+        }
+        catch(IOException e) {
+            // This should never happen since we're writing to a digest
+            throw new JsonError(e);
+        }
+        return digest.digest();
+    }
+    
+    /**
+     * Guesses the emitted size of the given value in bytes. Only the top
+     * {@code depth} levels of containers are visited, and deeper containers
+     * are guessed from their size alone, so this stays cheap for large
+     * trees.
+     */
+    private static int estimateEmittedSize(JsonValue value, int depth) {
+        int result;
+        if(value instanceof RawJsonValue) {
+            RawJsonValue raw=(RawJsonValue) value;
+            result = raw.isUtf8() ? raw.getByteLength() : raw.getText().length();
+        }
+        else
+        switch(value==null ? JsonValue.Type.NULL : value.getType()) {
+        case OBJECT:
+            if(depth == 0)
+                result = 2+32*value.asObject().size();
+            else {
+                SizeVisitor visitor=new SizeVisitor(depth-1);
+                value.asObject().forEach(visitor);
+                result = 2+visitor.size;
+            }
+            break;
+        case ARRAY:
+            if(depth == 0)
+                result = 2+16*value.asArray().size();
+            else {
+                result = 2;
+                for(JsonValue element : value.asArray())
+                    result = result + 1+estimateEmittedSize(element, depth-1);
+            }
+            break;
+        case SCALAR:
+            if(value instanceof Utf8JsonString)
+                result = 2+((Utf8JsonString) value).getByteLength();
+            else
+            if(value.asScalar().getFlavor() == ScalarJsonValue.Flavor.STRING)
+                result = 2+value.asScalar().asString().stringVal().length();
+            else
+                result = 8;
+            break;
+        case NULL:
+            result = 4;
+            break;
+        default:
+            throw new JsonError("unrecognized type: "+value.getType());
+        }
+        return result;
+    }
+    
+    /**
+     * Returns an immutable copy of the given value. Objects and arrays are
+     * copied into {@link FrozenJsonObject} and {@link FrozenJsonArray}
+     * instances, which are safe to share between threads and support cheap
+     * persistent updates that share structure with the original. Values that
+     * are already frozen, and scalars, are returned as-is.
+     * 
+     * @param value the {@code JsonValue} to freeze
+     * 
+     * @return the frozen value
+     */
+    public static JsonValue freeze(JsonValue value) {
+        if(value == null)
+            throw new NullPointerException();
+        
+        JsonValue result;
+        if(value instanceof RawJsonValue) {
+            // Raw values are already immutable, and are cheaper to emit as is
+            result = value;
+        }
+        else
+        switch(value.getType()) {
+        case ARRAY:
+            result = FrozenJsonArray.valueOf(value.asArray());
+            break;
+        case OBJECT:
+            result = FrozenJsonObject.valueOf(value.asObject());
+            break;
+        case NULL:
+        case SCALAR:
+            result = value;
+            break;
+        default:
+            throw new RuntimeException("unrecognized value: "+value);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Estimates the number of bytes of heap that would be freed if the given
+     * value became unreachable, using a size model of each of the library's
+     * value representations on a 64-bit JVM with compressed references.
+     * Objects shared between values, like cached scalars and the keys of
+     * shaped objects, are not counted. This takes time linear in the size of
+     * the tree, and is cheap enough to call when adding a value to a
+     * size-bounded cache.
+     * 
+     * @param value the {@code JsonValue} to measure
+     * 
+     * @return the estimated size in bytes
+     */
+    public static long estimateRetainedSize(JsonValue value) {
+        if(value == null)
+            throw new NullPointerException();
+        return HeapSize.estimateRetainedSize(value);
+    }
+    
+    /**
+     * Returns a mutable deep copy of the given value. {@link DefaultJsonObject},
+     * {@link ShapedJsonObject}, and {@link DefaultJsonArray} values are copied
+     * directly into pre-sized containers of the same kind, and any other
+     * containers, including frozen ones, are copied into new default
+     * containers. Scalars are immutable, so they are shared instead of
+     * copied.
+     * 
+     * @param value the {@code JsonValue} to copy
+     * 
+     * @return the copy
+     */
+    public static JsonValue copy(JsonValue value) {
+        if(value == null)
+            throw new NullPointerException();
+        
+        JsonValue result;
+        switch(value.getType()) {
+        case ARRAY:
+            if(value instanceof DefaultJsonArray)
+                result = ((DefaultJsonArray) value).copy();
+            else {
+                JsonArray av=value.asArray();
+                JsonArray copy=new DefaultJsonArray(av.size());
+                for(JsonValue element : av)
+                    copy.add(copy(element));
+                result = copy;
+            }
+            break;
+        case OBJECT:
+            if(value instanceof DefaultJsonObject)
+                result = ((DefaultJsonObject) value).copy();
+            else
+            if(value instanceof ShapedJsonObject)
+                result = ((ShapedJsonObject) value).copy();
+            else {
+                JsonObject ov=value.asObject();
+                JsonObject copy=new DefaultJsonObject(DefaultJsonObject.KeyOrder.INSERTION, ov.size());
+                for(JsonObject.Entry entry : ov.entries())
+                    copy.set(entry.getName(), copy(entry.getValue()));
+                result = copy;
+            }
+            break;
+        case NULL:
+        case SCALAR:
+            result = value;
+            break;
+        default:
+            throw new RuntimeException("unrecognized value: "+value);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Returns a mutable view of the given value that reads through to it
+     * until it is modified. Each object or array in the view makes its own
+     * shallow copy the first time it is modified, so only the modified parts
+     * of the tree are ever copied. Scalars are returned as-is. The given
+     * value must not be modified while the view is in use, which is easiest
+     * to guarantee by {@link #freeze(JsonValue) freezing} it first.
+     * 
+     * @param value the {@code JsonValue} to view
+     * 
+     * @return the view
+     */
+    public static JsonValue copyOnWrite(JsonValue value) {
+        if(value == null)
+            throw new NullPointerException();
+        
+        JsonValue result;
+        switch(value.getType()) {
+        case ARRAY:
+            result = new CopyOnWriteJsonArray(value.asArray());
+            break;
+        case OBJECT:
+            result = new CopyOnWriteJsonObject(value.asObject());
+            break;
+        case NULL:
+        case SCALAR:
+            result = value;
+            break;
+        default:
+            throw new RuntimeException("unrecognized value: "+value);
+        }
+        
+        return result;
+    }
+    
     private static AtomicReference<JsonFactory> defaultFactory=new AtomicReference<JsonFactory>(new DefaultJsonFactory());
     
     /**
@@ -295,13 +646,11 @@ public class Json {
             break;
         case OBJECT:
         {
-            JsonObject ov=v.asObject();
-            result = 0;
-            SortedSet<String> keys=new TreeSet<String>(ov.keys());
-            for(String key : keys) {
-                int ecode=key.hashCode()+ov.get(key).hashCode();
-                result = 37*result + ecode;
-            }
+            // Entries are combined with a commutative operation so that the
+            // result does not depend on key order, like java.util.Map.
+            HashVisitor visitor=new HashVisitor();
+            v.asObject().forEach(visitor);
+            result = visitor.hash;
         } break;
         case SCALAR:
         {
@@ -317,7 +666,10 @@ public class Json {
                 result = sv.asNumber().getNumberValue().hashCode();
                 break;
             case STRING:
-                result = sv.asString().getValue().hashCode();
+                if(sv instanceof Utf8JsonString)
+                    result = sv.hashCode();
+                else
+                    result = sv.asString().getValue().hashCode();
                 break;
             default:
                 throw new RuntimeException("unrecognized scalar value: "+sv);
@@ -377,30 +729,26 @@ public class Json {
             case OBJECT:
             {
                 JsonObject oa=a.asObject(), ob=b.asObject();
-                if(oa.size() == ob.size()) {
-                    if(oa.keys().equals(ob.keys())) {
-                        result = true;
-                        Set<String> keys=oa.keys();
-                        for(String key : keys) {
-                            JsonValue ea=oa.get(key), eb=ob.get(key);
-                            result = Objects.equals(ea, eb);
-                            if(result == false)
-                                break;
-                        }
-                    }
-                    else
-                        result = false;
-                }
+                // If the objects are the same size and every name in one is
+                // in the other, then they have the same names.
+                if(oa.size() == ob.size())
+                    result = oa.forEach(new EqualsVisitor(ob));
                 else
                     result = false;
             } break;
             case SCALAR:
             {
                 ScalarJsonValue sa=a.asScalar(), sb=b.asScalar();
-                if(sa.getFlavor() == sb.getFlavor())
-                    result = sa.getValue().equals(sb.getValue());
-                else
+                if(sa.getFlavor() != sb.getFlavor())
                     result = false;
+                else
+                if(sa instanceof Utf8JsonString)
+                    result = ((Utf8JsonString) sa).contentEquals(sb.asString());
+                else
+                if(sb instanceof Utf8JsonString)
+                    result = ((Utf8JsonString) sb).contentEquals(sa.asString());
+                else
+                    result = sa.getValue().equals(sb.getValue());
             } break;
             default:
                 throw new RuntimeException("unrecognized type: "+type);
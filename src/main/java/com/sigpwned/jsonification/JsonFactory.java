@@ -1,8 +1,11 @@
 package com.sigpwned.jsonification;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import com.sigpwned.jsonification.value.JsonArray;
 import com.sigpwned.jsonification.value.JsonNull;
@@ -14,8 +17,22 @@ import com.sigpwned.jsonification.value.scalar.JsonString;
 public interface JsonFactory {
     public JsonObject newObject();
 
+    /**
+     * Returns a new object sized to hold about the given number of members
+     * without growing. The size is only a hint, and a negative size means
+     * the size is not known.
+     */
+    public JsonObject newObject(int expectedSize);
+
     public JsonArray newArray();
 
+    /**
+     * Returns a new array sized to hold about the given number of elements
+     * without growing. The size is only a hint, and a negative size means
+     * the size is not known.
+     */
+    public JsonArray newArray(int expectedSize);
+
     public JsonBoolean newValue(boolean value);
 
     public JsonNumber newValue(long value);
@@ -42,5 +59,27 @@ public interface JsonFactory {
     
     public JsonGenerator newGenerator(Writer output) throws IOException;
     
+    /**
+     * Returns a generator that writes to the given writer, buffering no
+     * more than it needs for output of about the given length in chars
+     */
+    public JsonGenerator newGenerator(Writer output, int expectedSize) throws IOException;
+    
+    /**
+     * Returns a generator that writes UTF-8 to the given stream
+     */
+    public JsonGenerator newGenerator(OutputStream output) throws IOException;
+    
+    /**
+     * Returns a generator that writes UTF-8 to the given buffer, starting at
+     * its position
+     */
+    public JsonGenerator newGenerator(ByteBuffer output) throws IOException;
+    
+    /**
+     * Returns a generator that writes UTF-8 to the given channel
+     */
+    public JsonGenerator newGenerator(WritableByteChannel output) throws IOException;
+    
     public JsonTreeGenerator newTreeGenerator() throws IOException;
 }
@@ -1,7 +1,11 @@
 package com.sigpwned.jsonification;
 
+import java.io.Flushable;
 import java.io.IOException;
 
+import com.sigpwned.jsonification.generator.SerializedName;
+import com.sigpwned.jsonification.value.scalar.JsonString;
+
 /**
  * Copyright 2015 Andy Boothe
  *     
@@ -17,17 +21,33 @@ import java.io.IOException;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-public interface JsonGenerator extends AutoCloseable {
+public interface JsonGenerator extends AutoCloseable, Flushable {
     public void openObject() throws IOException;
 
     public void openObject(String name) throws IOException;
 
+    /**
+     * Opens an object expected to hold about the given number of members.
+     * Generators that build trees use the size to pre-size the object, and
+     * other generators ignore it. A negative size means the size is not
+     * known.
+     */
+    public void openObject(String name, int expectedSize) throws IOException;
+
     public void closeObject() throws IOException;
 
     public void openArray() throws IOException;
 
     public void openArray(String name) throws IOException;
 
+    /**
+     * Opens an array expected to hold about the given number of elements.
+     * Generators that build trees use the size to pre-size the array, and
+     * other generators ignore it. A negative size means the size is not
+     * known.
+     */
+    public void openArray(String name, int expectedSize) throws IOException;
+
     public void closeArray() throws IOException;
 
     public void scalar(Long value) throws IOException;
@@ -50,6 +70,10 @@ public interface JsonGenerator extends AutoCloseable {
 
     public void scalar(String name, String value) throws IOException;
 
+    public void scalar(JsonString value) throws IOException;
+
+    public void scalar(String name, JsonString value) throws IOException;
+
     public void scalar(Boolean value) throws IOException;
 
     public void scalar(String name, Boolean value) throws IOException;
@@ -62,14 +86,56 @@ public interface JsonGenerator extends AutoCloseable {
 
     public void nil(String name) throws IOException;
 
+    public void openObject(SerializedName name) throws IOException;
+
+    public void openArray(SerializedName name) throws IOException;
+
+    public void scalar(SerializedName name, long value) throws IOException;
+
+    public void scalar(SerializedName name, double value) throws IOException;
+
+    public void scalar(SerializedName name, boolean value) throws IOException;
+
+    public void scalar(SerializedName name, String value) throws IOException;
+
+    public void scalar(SerializedName name, JsonString value) throws IOException;
+
+    public void nil(SerializedName name) throws IOException;
+
+    public void value(SerializedName name, JsonValue value) throws IOException;
+
     public void value(JsonValue value) throws IOException;
 
     public void value(String name, JsonValue value) throws IOException;
 
+    /**
+     * Writes the given pre-serialized JSON as is, after checking that it is
+     * exactly one JSON value. To skip the check for trusted JSON, write a
+     * {@link com.sigpwned.jsonification.impl.RawJsonValue} instead.
+     */
+    public void rawValue(CharSequence json) throws IOException;
+
+    public void rawValue(String name, CharSequence json) throws IOException;
+
+    /**
+     * Writes the given pre-serialized UTF-8 encoded JSON as is, after
+     * checking that it is exactly one JSON value
+     */
+    public void rawValue(byte[] json) throws IOException;
+
+    public void rawValue(String name, byte[] json) throws IOException;
+
     public void nextName(String nextName);
 
     public String nextName();
     
+    /**
+     * Writes any output this generator has buffered to its destination, and
+     * flushes the destination. Generators that buffer output may hold it
+     * until they are flushed or closed.
+     */
+    public void flush() throws IOException;
+    
     public void close() throws IOException;
 
 }
\ No newline at end of file
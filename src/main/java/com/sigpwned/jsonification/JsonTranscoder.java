@@ -0,0 +1,365 @@
+package com.sigpwned.jsonification;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.sigpwned.jsonification.exception.ParseJsonException;
+import com.sigpwned.jsonification.impl.RawJsonValue;
+import com.sigpwned.jsonification.parser.DefaultJsonParser;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class JsonTranscoder {
+    public static interface Hook {
+        /**
+         * Called before each object member is copied. The member is copied
+         * as is unless this drops, renames, or replaces it.
+         */
+        public void member(JsonTranscoder.Member member);
+    }
+    
+    /**
+     * An object member about to be copied. One instance is reused for every
+     * member, so hooks should not keep it.
+     */
+    public static final class Member {
+        private String name;
+        private int depth;
+        private boolean dropped;
+        private String rename;
+        private JsonValue replacement;
+        private boolean descend;
+        
+        /* default */ Member() {
+        }
+        
+        private void reset(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+            this.dropped = false;
+            this.rename = null;
+            this.replacement = null;
+            this.descend = false;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * @return the nesting depth of the object holding this member, which
+         *         is 1 for members of the outermost object
+         */
+        public int getDepth() {
+            return depth;
+        }
+        
+        /**
+         * Leaves this member out of the output
+         */
+        public void drop() {
+            this.dropped = true;
+        }
+        
+        /**
+         * Writes this member under the given name instead of its own
+         */
+        public void rename(String name) {
+            if(name == null)
+                throw new NullPointerException();
+            this.rename = name;
+        }
+        
+        /**
+         * Writes the given value instead of this member's value, which is
+         * skipped
+         */
+        public void replace(JsonValue value) {
+            this.replacement = value;
+        }
+        
+        /**
+         * Has the hook called for the members inside this member's value. In
+         * raw passthrough mode, values the hook does not descend into are
+         * copied without calling the hook for their members. Otherwise, the
+         * hook is always called for every member.
+         */
+        public void descend() {
+            this.descend = true;
+        }
+    }
+    
+    /**
+     * The single event reported by the last call to
+     * {@link JsonParser#next(JsonParser.Handler)}. Events are recorded and
+     * then copied outside the handler, so generator {@link IOException}s
+     * propagate without wrapping.
+     */
+    private static class Recorder implements JsonParser.Handler {
+        public static enum Kind {
+            OPEN_OBJECT, CLOSE_OBJECT, OPEN_ARRAY, CLOSE_ARRAY, NULL, LONG, DOUBLE, BOOLEAN, STRING;
+        }
+        
+        public Kind kind;
+        public String name;
+        public long longValue;
+        public double doubleValue;
+        public boolean booleanValue;
+        public String stringValue;
+        
+        private void record(Kind kind, String name) {
+            if(this.kind != null)
+                throw new JsonError("parser reported more than one event at once");
+            this.kind = kind;
+            this.name = name;
+        }
+        
+        @Override
+        public void openObject(String name) {
+            record(Kind.OPEN_OBJECT, name);
+        }
+        
+        @Override
+        public void closeObject() {
+            record(Kind.CLOSE_OBJECT, null);
+        }
+        
+        @Override
+        public void openArray(String name) {
+            record(Kind.OPEN_ARRAY, name);
+        }
+        
+        @Override
+        public void closeArray() {
+            record(Kind.CLOSE_ARRAY, null);
+        }
+        
+        @Override
+        public void nil(String name) {
+            record(Kind.NULL, name);
+        }
+        
+        @Override
+        public void scalar(String name, long value) {
+            record(Kind.LONG, name);
+            this.longValue = value;
+        }
+        
+        @Override
+        public void scalar(String name, double value) {
+            record(Kind.DOUBLE, name);
+            this.doubleValue = value;
+        }
+        
+        @Override
+        public void scalar(String name, boolean value) {
+            record(Kind.BOOLEAN, name);
+            this.booleanValue = value;
+        }
+        
+        @Override
+        public void scalar(String name, String value) {
+            record(Kind.STRING, name);
+            this.stringValue = value;
+        }
+    }
+    
+    /**
+     * What to do with the events inside an open container
+     */
+    private static final byte COPY=0;
+    private static final byte COPY_WITHOUT_HOOK=1;
+    private static final byte DROP=2;
+    
+    private final JsonTranscoder.Hook hook;
+    private final boolean rawPassthrough;
+    
+    /**
+     * Copies every value as is
+     */
+    public JsonTranscoder() {
+        this(null, false);
+    }
+    
+    public JsonTranscoder(JsonTranscoder.Hook hook) {
+        this(hook, false);
+    }
+    
+    /**
+     * @param hook The hook to call for object members, or {@code null} to
+     *            copy every member as is
+     * @param rawPassthrough Whether to copy containers the hook does not
+     *            descend into as their input text, which is checked against
+     *            the JSON grammar but not parsed into values or escaped
+     *            again. This only applies to {@link DefaultJsonParser}s;
+     *            other parsers' containers are copied event by event, but
+     *            still without calling the hook.
+     */
+    public JsonTranscoder(JsonTranscoder.Hook hook, boolean rawPassthrough) {
+        this.hook = hook;
+        this.rawPassthrough = rawPassthrough;
+    }
+    
+    public JsonTranscoder.Hook getHook() {
+        return hook;
+    }
+    
+    public boolean isRawPassthrough() {
+        return rawPassthrough;
+    }
+    
+    /**
+     * Copies one complete JSON value from the given parser to the given
+     * generator without building a tree.
+     * 
+     * @return {@code true} if a value was copied, or {@code false} if the
+     *         parser had no more values
+     * 
+     * @throws IOException if an underlying {@code IOException} occurs while
+     *         reading or writing JSON
+     */
+    public boolean transcode(JsonParser parser, JsonGenerator generator) throws IOException {
+        Recorder event=new Recorder();
+        Member member=new Member();
+        StringBuilder raw=rawPassthrough && parser instanceof DefaultJsonParser ? new StringBuilder() : null;
+        byte[] modes=new byte[16];
+        int depth=0;
+        boolean started=false;
+        boolean done=false;
+        
+        while(!done) {
+            event.kind = null;
+            parser.next(event);
+            if(event.kind == null) {
+                if(depth != 0)
+                    throw new ParseJsonException("Unexpected EOF in value");
+                done = true;
+            }
+            else {
+                started = true;
+                byte mode=depth==0 ? COPY : modes[depth-1];
+                Recorder.Kind kind=event.kind;
+                String name=event.name;
+                
+                boolean opening=kind==Recorder.Kind.OPEN_OBJECT || kind==Recorder.Kind.OPEN_ARRAY;
+                boolean closing=kind==Recorder.Kind.CLOSE_OBJECT || kind==Recorder.Kind.CLOSE_ARRAY;
+                
+                if(closing) {
+                    depth = depth-1;
+                    if(mode != DROP) {
+                        if(kind == Recorder.Kind.CLOSE_OBJECT)
+                            generator.closeObject();
+                        else
+                            generator.closeArray();
+                    }
+                }
+                else
+                if(mode == DROP) {
+                    if(opening)
+                        depth = push(modes, depth, DROP);
+                }
+                else {
+                    // By default, containers inherit their parent's mode,
+                    // except that a hookless root may be passed through
+                    byte child=mode;
+                    if(depth==0 && hook==null && rawPassthrough)
+                        child = COPY_WITHOUT_HOOK;
+                    
+                    if(name!=null && mode==COPY && hook!=null) {
+                        member.reset(name, depth);
+                        hook.member(member);
+                        if(member.rename != null)
+                            name = member.rename;
+                        if(member.dropped || member.replacement!=null) {
+                            if(!member.dropped)
+                                generator.value(name, member.replacement);
+                            child = DROP;
+                        }
+                        else
+                        if(rawPassthrough && !member.descend)
+                            child = COPY_WITHOUT_HOOK;
+                    }
+                    
+                    if(child == DROP) {
+                        if(opening) {
+                            if(parser instanceof DefaultJsonParser)
+                                ((DefaultJsonParser) parser).skipContainer(null);
+                            else
+                                depth = push(modes, depth, DROP);
+                        }
+                    }
+                    else
+                    if(opening && child==COPY_WITHOUT_HOOK && raw!=null) {
+                        raw.setLength(0);
+                        ((DefaultJsonParser) parser).skipContainer(raw);
+                        generator.value(name, RawJsonValue.trusted(raw));
+                    }
+                    else {
+                        copy(event, name, generator);
+                        if(opening)
+                            depth = push(modes, depth, child);
+                    }
+                }
+                
+                if(depth == 0)
+                    done = true;
+                
+                if(depth == modes.length)
+                    modes = Arrays.copyOf(modes, 2*depth);
+            }
+        }
+        
+        return started;
+    }
+    
+    /**
+     * @return the new depth
+     */
+    private static int push(byte[] modes, int depth, byte mode) {
+        modes[depth] = mode;
+        return depth+1;
+    }
+    
+    private static void copy(Recorder event, String name, JsonGenerator generator) throws IOException {
+        switch(event.kind) {
+        case OPEN_OBJECT:
+            generator.openObject(name);
+            break;
+        case OPEN_ARRAY:
+            generator.openArray(name);
+            break;
+        case NULL:
+            generator.nil(name);
+            break;
+        case LONG:
+            generator.scalar(name, event.longValue);
+            break;
+        case DOUBLE:
+            generator.scalar(name, event.doubleValue);
+            break;
+        case BOOLEAN:
+            generator.scalar(name, event.booleanValue);
+            break;
+        case STRING:
+            generator.scalar(name, event.stringValue);
+            break;
+        case CLOSE_ARRAY:
+        case CLOSE_OBJECT:
+        default:
+            throw new JsonError("unrecognized event kind: "+event.kind);
+        }
+    }
+}
@@ -66,9 +66,15 @@ public class JsonWalker {
             break;
         case OBJECT:
         {
+            final JsonValue object=value;
             handler.openObject(name);
-            for(JsonObject.Entry entry : value.asObject().entries())
-                walk(value, entry.getName(), entry.getValue(), handler);
+            value.asObject().forEach(new JsonObject.EntryVisitor() {
+                @Override
+                public boolean visit(String name, JsonValue value) {
+                    walk(object, name, value, handler);
+                    return true;
+                }
+            });
             handler.closeObject();
         } break;
         case SCALAR:
@@ -0,0 +1,34 @@
+package com.sigpwned.jsonification.exception;
+
+import com.sigpwned.jsonification.JsonException;
+import com.sigpwned.jsonification.JsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class FrozenJsonException extends JsonException {
+    private static final long serialVersionUID = 6237950211342857711L;
+    
+    private final JsonValue value;
+
+    public FrozenJsonException(JsonValue value) {
+        super("Attempted to modify frozen "+value.getType());
+        this.value = value;
+    }
+    
+    public JsonValue getValue() {
+        return value;
+    }
+}
@@ -2,14 +2,21 @@ package com.sigpwned.jsonification.generator;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
+import com.sigpwned.jsonification.Json;
 import com.sigpwned.jsonification.JsonError;
 import com.sigpwned.jsonification.JsonGenerator;
 import com.sigpwned.jsonification.JsonValue;
-import com.sigpwned.jsonification.JsonWalker;
 import com.sigpwned.jsonification.exception.GenerateJsonException;
-import com.sigpwned.jsonification.util.JsonWalkers;
+import com.sigpwned.jsonification.impl.RawJsonValue;
+import com.sigpwned.jsonification.impl.SerializedFormCache;
+import com.sigpwned.jsonification.value.JsonArray;
+import com.sigpwned.jsonification.value.JsonObject;
+import com.sigpwned.jsonification.value.ScalarJsonValue;
+import com.sigpwned.jsonification.value.scalar.JsonString;
 
 /**
  * Copyright 2015 Andy Boothe
@@ -45,23 +52,175 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
         }
     }
 
+    /**
+     * One open container while writing a tree. Frames are reused from one
+     * container to the next, so writing a tree allocates little beyond
+     * array iterators.
+     */
+    private static class Frame implements JsonObject.EntryVisitor {
+        private static final String[] NO_NAMES=new String[0];
+        private static final JsonValue[] NO_VALUES=new JsonValue[0];
+        
+        private final Scope objectScope;
+        private final Scope arrayScope;
+        public Scope scope;
+        private String[] names;
+        private JsonValue[] values;
+        private int size;
+        private int position;
+        private Iterator<JsonValue> elements;
+        public String name;
+        public JsonValue value;
+        
+        public Frame() {
+            this.objectScope = new Scope(Scope.Type.OBJECT);
+            this.arrayScope = new Scope(Scope.Type.ARRAY);
+            this.names = NO_NAMES;
+            this.values = NO_VALUES;
+        }
+        
+        /**
+         * @param sorted Whether to visit members in order of their names'
+         *            UTF-16 code units rather than in the object's order
+         */
+        public void open(JsonObject object, boolean sorted) {
+            scope = objectScope;
+            scope.count = 0;
+            size = 0;
+            position = 0;
+            int capacity=object.size();
+            if(names.length < capacity) {
+                names = new String[capacity];
+                values = new JsonValue[capacity];
+            }
+            object.forEach(this);
+            if(sorted) {
+                Arrays.sort(names, 0, size);
+                for(int i=0;i<size;i++)
+                    values[i] = object.get(names[i]);
+            }
+        }
+        
+        public void open(JsonArray array) {
+            scope = arrayScope;
+            scope.count = 0;
+            elements = array.iterator();
+        }
+        
+        @Override
+        public boolean visit(String name, JsonValue value) {
+            // Concurrent objects can grow while we visit them
+            if(size == names.length) {
+                names = Arrays.copyOf(names, 2*size+1);
+                values = Arrays.copyOf(values, 2*size+1);
+            }
+            names[size] = name;
+            values[size] = value;
+            size = size+1;
+            return true;
+        }
+        
+        /**
+         * Moves to the next member, if any, and makes it available through
+         * {@link #name} and {@link #value}
+         */
+        public boolean next() {
+            boolean result;
+            if(scope == objectScope) {
+                result = position < size;
+                if(result) {
+                    name = names[position];
+                    value = values[position];
+                    position = position+1;
+                }
+            }
+            else {
+                result = elements.hasNext();
+                if(result) {
+                    name = null;
+                    value = elements.next();
+                }
+            }
+            return result;
+        }
+        
+        /**
+         * Drops references to the container's members
+         */
+        public void clear() {
+            Arrays.fill(names, 0, size, null);
+            Arrays.fill(values, 0, size, null);
+            size = 0;
+            elements = null;
+            name = null;
+            value = null;
+        }
+    }
+    
+    /**
+     * What to do with NaN and infinite doubles, which JSON cannot represent
+     */
+    public static enum NonFinitePolicy {
+        /**
+         * Throw a {@link GenerateJsonException}
+         */
+        FAIL,
+        
+        /**
+         * Write {@code null} instead
+         */
+        NULL,
+        
+        /**
+         * Write the Java literal as a string, e.g., {@code "NaN"}
+         */
+        STRING,
+        
+        /**
+         * Write the Java literal as is, e.g., {@code NaN}, which is not valid
+         * JSON
+         */
+        LITERAL;
+    }
+
+    /**
+     * The number of slots in the field name cache, a power of two
+     */
+    private static final int NAME_CACHE_SIZE=256;
+    
+    /**
+     * Longer names are not worth keeping in the field name cache
+     */
+    private static final int MAX_CACHED_NAME_LENGTH=128;
+    
     private final List<Scope> scopes;
     private String nextName;
+    private NonFinitePolicy nonFinitePolicy;
+    private Frame[] frames;
+    private int depth;
+    private SerializedFormCache serializedFormCache;
+    private SerializedName[] names;
     
     public AbstractJsonGenerator() {
         this.scopes = new ArrayList<>();
         this.scopes.add(new Scope(Scope.Type.ROOT));
+        this.nonFinitePolicy = NonFinitePolicy.FAIL;
     }
     
     
     @Override
     public void openObject() throws IOException {
-        openObject(null);
+        openObject((String) null);
     }
     
     @Override
     public void openObject(String name) throws IOException {
-        doOpenObject(scope(), name(name));
+        openObject(name, -1);
+    }
+    
+    @Override
+    public void openObject(String name, int expectedSize) throws IOException {
+        doOpenObject(scope(), name(name), expectedSize);
         scopes.add(new Scope(Scope.Type.OBJECT));
     }
     
@@ -76,12 +235,17 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void openArray() throws IOException {
-        openArray(null);
+        openArray((String) null);
     }
     
     @Override
     public void openArray(String name) throws IOException {
-        doOpenArray(scope(), name(name));
+        openArray(name, -1);
+    }
+    
+    @Override
+    public void openArray(String name, int expectedSize) throws IOException {
+        doOpenArray(scope(), name(name), expectedSize);
         scopes.add(new Scope(Scope.Type.ARRAY));
     }
     
@@ -96,7 +260,7 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void scalar(Long value) throws IOException {
-        scalar(null, value);
+        scalar((String) null, value);
     }
     
     @Override
@@ -109,7 +273,7 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void scalar(long value) throws IOException {
-        scalar(null, value);
+        scalar((String) null, value);
     }
     
     @Override
@@ -121,7 +285,7 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void scalar(Double value) throws IOException {
-        scalar(null, value);
+        scalar((String) null, value);
     }
     
     @Override
@@ -134,19 +298,41 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void scalar(double value) throws IOException {
-        scalar(null, value);
+        scalar((String) null, value);
     }
     
     @Override
     public void scalar(String name, double value) throws IOException {
         Scope top=scope();
-        doValue(top, name(name), value);
+        doubleValue(top, name(name), value);
         top.count = top.count+1;
     }
     
+    /**
+     * Writes the given double, applying the non-finite policy
+     */
+    private void doubleValue(Scope scope, String name, double value) throws IOException {
+        NonFinitePolicy policy=Double.isNaN(value) || Double.isInfinite(value) ? getNonFinitePolicy() : NonFinitePolicy.LITERAL;
+        switch(policy) {
+        case FAIL:
+            throw new GenerateJsonException("cannot generate non-finite value: "+value);
+        case NULL:
+            doNil(scope, name);
+            break;
+        case STRING:
+            doValue(scope, name, Double.toString(value));
+            break;
+        case LITERAL:
+            doValue(scope, name, value);
+            break;
+        default:
+            throw new JsonError("unrecognized non-finite policy: "+policy);
+        }
+    }
+    
     @Override
     public void scalar(String value) throws IOException {
-        scalar(null, value);
+        scalar((String) null, value);
     }
     
     @Override
@@ -160,9 +346,25 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
             nil(name);
     }
     
+    @Override
+    public void scalar(JsonString value) throws IOException {
+        scalar((String) null, value);
+    }
+    
+    @Override
+    public void scalar(String name, JsonString value) throws IOException {
+        if(value!=null && !value.isNull()) {
+            Scope top=scope();
+            doValue(top, name(name), value);
+            top.count = top.count+1;
+        }
+        else
+            nil(name);
+    }
+    
     @Override
     public void scalar(Boolean value) throws IOException {
-        scalar(null, value);
+        scalar((String) null, value);
     }
     
     @Override
@@ -175,7 +377,7 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void scalar(boolean value) throws IOException {
-        scalar(null, value);
+        scalar((String) null, value);
     }
     
     @Override
@@ -187,7 +389,7 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void nil() throws IOException {
-        nil(null);
+        nil((String) null);
     }
     
     @Override
@@ -228,24 +430,261 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     @Override
     public void value(JsonValue value) throws IOException {
-        value(null, value);
+        value((String) null, value);
+    }
+    
+    @Override
+    public void openObject(SerializedName name) throws IOException {
+        openObject(remember(name));
+    }
+
+    @Override
+    public void openArray(SerializedName name) throws IOException {
+        openArray(remember(name));
+    }
+
+    @Override
+    public void scalar(SerializedName name, long value) throws IOException {
+        scalar(remember(name), value);
+    }
+
+    @Override
+    public void scalar(SerializedName name, double value) throws IOException {
+        scalar(remember(name), value);
+    }
+
+    @Override
+    public void scalar(SerializedName name, boolean value) throws IOException {
+        scalar(remember(name), value);
+    }
+
+    @Override
+    public void scalar(SerializedName name, String value) throws IOException {
+        scalar(remember(name), value);
+    }
+
+    @Override
+    public void scalar(SerializedName name, JsonString value) throws IOException {
+        scalar(remember(name), value);
+    }
+
+    @Override
+    public void nil(SerializedName name) throws IOException {
+        nil(remember(name));
+    }
+
+    @Override
+    public void value(SerializedName name, JsonValue value) throws IOException {
+        value(remember(name), value);
+    }
+    
+    /**
+     * Puts the given name in the field name cache, so the generator finds
+     * its serialized form when it writes the name
+     * 
+     * @return the name as a string
+     */
+    private String remember(SerializedName name) {
+        String result=name.getName();
+        if(names == null)
+            names = new SerializedName[NAME_CACHE_SIZE];
+        names[result.hashCode() & (NAME_CACHE_SIZE-1)] = name;
+        return result;
+    }
+    
+    /**
+     * Returns the serialized form of the given field name. Recently written
+     * names are kept in a small cache, checked by identity first, so writing
+     * a repeated name costs a lookup and an array copy instead of escaping.
+     * 
+     * @return the serialized form, or {@code null} if the name is too long
+     *         to cache, in which case it should be escaped straight into the
+     *         output
+     */
+    protected SerializedName serializedName(String name) {
+        if(names == null)
+            names = new SerializedName[NAME_CACHE_SIZE];
+        int index=name.hashCode() & (NAME_CACHE_SIZE-1);
+        SerializedName result=names[index];
+        if(result==null || (result.getName()!=name && !result.getName().equals(name))) {
+            if(name.length() <= MAX_CACHED_NAME_LENGTH)
+                names[index] = result = SerializedName.of(name);
+            else
+                result = null;
+        }
+        return result;
+    }
+
+    @Override
+    public void rawValue(CharSequence json) throws IOException {
+        rawValue((String) null, json);
+    }
+
+    @Override
+    public void rawValue(String name, CharSequence json) throws IOException {
+        value(name, RawJsonValue.valueOf(json));
+    }
+
+    @Override
+    public void rawValue(byte[] json) throws IOException {
+        rawValue((String) null, json);
+    }
+
+    @Override
+    public void rawValue(String name, byte[] json) throws IOException {
+        value(name, RawJsonValue.valueOf(json));
     }
     
+    /**
+     * Writes the given tree directly, with an explicit stack instead of
+     * recursion, and without checking names and scopes for each member.
+     */
     @Override
     public void value(String name, JsonValue value) throws IOException {
         if(name != null)
             nextName(name);
+        Scope top=scope();
+        tree(top, name(null), value);
+    }
+    
+    /**
+     * Writes the given tree as a member of the given scope. Frames above the
+     * current depth are used, so this may be called while another tree is
+     * being written, e.g., from {@link #doRawValue(Scope, String, RawJsonValue)}.
+     */
+    private void tree(Scope outer, String name, JsonValue value) throws IOException {
+        int base=depth;
+        Scope scope=outer;
         try {
-            new JsonWalker(value).walk(JsonWalkers.newGeneratorHandler(this));
+            boolean more=true;
+            while(more) {
+                RawJsonValue raw=value instanceof RawJsonValue ? (RawJsonValue) value : serialized(value);
+                if(raw != null) {
+                    doRawValue(scope, name, raw);
+                    scope.count = scope.count+1;
+                }
+                else {
+                    switch(value==null ? JsonValue.Type.NULL : value.getType()) {
+                    case OBJECT:
+                        doOpenObject(scope, name, value.asObject().size());
+                        frame(depth).open(value.asObject(), isSortingMembers());
+                        depth = depth+1;
+                        break;
+                    case ARRAY:
+                        doOpenArray(scope, name, value.asArray().size());
+                        frame(depth).open(value.asArray());
+                        depth = depth+1;
+                        break;
+                    case SCALAR:
+                        scalarValue(scope, name, value.asScalar());
+                        scope.count = scope.count+1;
+                        break;
+                    case NULL:
+                        doNil(scope, name);
+                        scope.count = scope.count+1;
+                        break;
+                    default:
+                        throw new JsonError("unrecognized value type: "+value.getType());
+                    }
+                }
+                
+                more = false;
+                while(depth>base && !more) {
+                    Frame top=frames[depth-1];
+                    if(top.next()) {
+                        scope = top.scope;
+                        name = top.name;
+                        value = top.value;
+                        more = true;
+                    }
+                    else {
+                        if(top.scope.type == Scope.Type.OBJECT)
+                            doCloseObject(top.scope);
+                        else
+                            doCloseArray(top.scope);
+                        top.clear();
+                        depth = depth-1;
+                        Scope parent=depth==base ? outer : frames[depth-1].scope;
+                        parent.count = parent.count+1;
+                    }
+                }
+            }
+        }
+        finally {
+            // If writing failed part way, then let go of the tree
+            while(depth > base) {
+                depth = depth-1;
+                frames[depth].clear();
+            }
+        }
+    }
+    
+    /**
+     * @return the cached serialized form of the given value, if this
+     *         generator has a cache, the value is cacheable, and the value is
+     *         cached or is admitted now; or {@code null} otherwise
+     */
+    private RawJsonValue serialized(JsonValue value) throws IOException {
+        SerializedFormCache cache=getSerializedFormCache();
+        RawJsonValue result;
+        if(cache!=null && cache.isCacheable(value)) {
+            result = cache.get(value);
+            if(result==null && cache.admit(value)) {
+                Utf8JsonGenerator g=Utf8JsonGenerator.inMemory(256);
+                g.setNonFinitePolicy(getNonFinitePolicy());
+                g.value(value);
+                result = cache.put(value, g.toByteArray());
+            }
         }
-        catch(GenerateJsonException e) {
-            if(e.getCause()!=null && e.getCause() instanceof IOException)
-                throw (IOException) e.getCause();
+        else
+            result = null;
+        return result;
+    }
+    
+    private void scalarValue(Scope scope, String name, ScalarJsonValue value) throws IOException {
+        switch(value.getFlavor()) {
+        case BOOLEAN:
+            doValue(scope, name, value.asBoolean().booleanVal());
+            break;
+        case NULL:
+            doNil(scope, name);
+            break;
+        case NUMBER:
+        {
+            Number n=value.asNumber().getNumberValue();
+            if(n instanceof Long)
+                doValue(scope, name, n.longValue());
+            else
+            if(n instanceof Double)
+                doubleValue(scope, name, n.doubleValue());
             else
-                throw e;
+            if(Math.floor(n.doubleValue()) == n.doubleValue())
+                doValue(scope, name, n.longValue());
+            else
+                doubleValue(scope, name, n.doubleValue());
+        } break;
+        case STRING:
+            doValue(scope, name, value.asString());
+            break;
+        default:
+            throw new JsonError("unrecognized scalar flavor: "+value.getFlavor());
         }
     }
     
+    /**
+     * @return the reusable frame for containers at the given depth
+     */
+    private Frame frame(int depth) {
+        if(frames == null)
+            frames = new Frame[8];
+        else
+        if(depth == frames.length)
+            frames = Arrays.copyOf(frames, 2*depth);
+        if(frames[depth] == null)
+            frames[depth] = new Frame();
+        return frames[depth];
+    }
+    
     @Override
     public void nextName(String nextName) {
         if(nextName()!=null && nextName!=null && !nextName().equals(nextName))
@@ -258,10 +697,57 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
         return nextName;
     }
 
+    public NonFinitePolicy getNonFinitePolicy() {
+        return nonFinitePolicy;
+    }
+
+    public void setNonFinitePolicy(NonFinitePolicy nonFinitePolicy) {
+        if(nonFinitePolicy == null)
+            throw new NullPointerException();
+        this.nonFinitePolicy = nonFinitePolicy;
+    }
+
+    public SerializedFormCache getSerializedFormCache() {
+        return serializedFormCache;
+    }
+
+    /**
+     * Sets the cache of serialized forms of immutable subtrees, or
+     * {@code null} to serialize every subtree every time, which is the
+     * default. Subtrees that are cached are copied from the cache instead of
+     * being walked. The cache assumes every generator that shares it uses
+     * the same non-finite policy.
+     */
+    public void setSerializedFormCache(SerializedFormCache serializedFormCache) {
+        this.serializedFormCache = serializedFormCache;
+    }
+
+    /**
+     * Whether trees written with {@link #value(String, JsonValue)} should
+     * have their object members written in order of their names' UTF-16
+     * code units. By default, members are written in each object's order.
+     */
+    protected boolean isSortingMembers() {
+        return false;
+    }
+
     protected Scope scope() {
         return scopes.get(scopes.size()-1);
     }
     
+    /**
+     * Forgets the values written at the root, so the next value starts a new
+     * document rather than following them
+     * 
+     * @throws GenerateJsonException if a container is still open
+     */
+    protected void restart() {
+        if(scopes.size() != 1)
+            throw new GenerateJsonException("cannot restart inside "+scope()+" scope");
+        scope().count = 0;
+        nextName = null;
+    }
+    
     protected static boolean printable(char ch) {
         Character.UnicodeBlock block = Character.UnicodeBlock.of(ch);
         return !Character.isISOControl(ch) && ch!=0xFFFF && block!=null && block != Character.UnicodeBlock.SPECIALS;
@@ -273,10 +759,37 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     
     protected abstract void doOpenArray(Scope scope, String name) throws IOException;
     
+    /**
+     * Opens an object expected to hold about the given number of members, or
+     * a negative number if the size is not known. Generators that can use
+     * the size should override this. By default, the size is ignored.
+     */
+    protected void doOpenObject(Scope scope, String name, int expectedSize) throws IOException {
+        doOpenObject(scope, name);
+    }
+    
+    /**
+     * Opens an array expected to hold about the given number of elements, or
+     * a negative number if the size is not known. Generators that can use
+     * the size should override this. By default, the size is ignored.
+     */
+    protected void doOpenArray(Scope scope, String name, int expectedSize) throws IOException {
+        doOpenArray(scope, name);
+    }
+    
     protected abstract void doCloseArray(Scope scope) throws IOException;
     
     protected abstract void doValue(Scope scope, String name, String value) throws IOException;
     
+    /**
+     * Writes a string value. Generators that can write some string
+     * representations more efficiently than decoding them should override
+     * this.
+     */
+    protected void doValue(Scope scope, String name, JsonString value) throws IOException {
+        doValue(scope, name, value.stringVal());
+    }
+    
     protected abstract void doValue(Scope scope, String name, long value) throws IOException;
     
     protected abstract void doValue(Scope scope, String name, double value) throws IOException;
@@ -284,4 +797,13 @@ public abstract class AbstractJsonGenerator implements AutoCloseable, JsonGenera
     protected abstract void doValue(Scope scope, String name, boolean value) throws IOException;
     
     protected abstract void doNil(Scope scope, String name) throws IOException;
+    
+    /**
+     * Writes a pre-serialized value. Generators that write JSON text should
+     * override this to copy the text into the output as is. By default, the
+     * value is parsed and written as a tree.
+     */
+    protected void doRawValue(Scope scope, String name, RawJsonValue value) throws IOException {
+        tree(scope, name, Json.parse(value.getText()));
+    }
 }
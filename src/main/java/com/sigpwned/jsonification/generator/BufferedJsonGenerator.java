@@ -0,0 +1,281 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+import com.sigpwned.jsonification.impl.RawJsonValue;
+import com.sigpwned.jsonification.impl.Utf8JsonString;
+import com.sigpwned.jsonification.value.scalar.JsonString;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class BufferedJsonGenerator extends AbstractJsonGenerator implements Flushable {
+    public static final int DEFAULT_BUFFER_SIZE=8192;
+    
+    private static final String LONG_MIN_VALUE=Long.toString(Long.MIN_VALUE);
+    
+    private final Writer writer;
+    private final char[] buffer;
+    private int length;
+    
+    public BufferedJsonGenerator(Writer writer) {
+        this(writer, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * @param bufferSize The size of the output buffer in chars. Output is
+     *            written to the underlying writer in blocks of this size.
+     */
+    public BufferedJsonGenerator(Writer writer, int bufferSize) {
+        if(bufferSize < 32)
+            throw new IllegalArgumentException("bufferSize must be at least 32: "+bufferSize);
+        this.writer = writer;
+        this.buffer = new char[bufferSize];
+        this.length = 0;
+    }
+    
+    @Override
+    protected void doOpenObject(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append('{');
+    }
+
+    @Override
+    protected void doCloseObject(Scope scope) throws IOException {
+        append('}');
+    }
+
+    @Override
+    protected void doOpenArray(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append('[');
+    }
+
+    @Override
+    protected void doCloseArray(Scope scope) throws IOException {
+        append(']');
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, String value) throws IOException {
+        prolog(scope, name);
+        string(value);
+    }
+
+    /**
+     * Escape-free UTF-8 strings are copied straight into the buffer, without
+     * being decoded or scanned for escapes
+     */
+    @Override
+    protected void doValue(Scope scope, String name, JsonString value) throws IOException {
+        if(value instanceof Utf8JsonString && ((Utf8JsonString) value).isEscapeFree()) {
+            Utf8JsonString s=(Utf8JsonString) value;
+            prolog(scope, name);
+            append('"');
+            int n=s.getByteLength();
+            for(int i=0;i<n;) {
+                if(length == buffer.length)
+                    flushBuffer();
+                int count=Math.min(buffer.length-length, n-i);
+                s.getChars(i, i+count, buffer, length);
+                length = length+count;
+                i = i+count;
+            }
+            append('"');
+        }
+        else
+            super.doValue(scope, name, value);
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, long value) throws IOException {
+        prolog(scope, name);
+        appendLong(value);
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, double value) throws IOException {
+        prolog(scope, name);
+        if(length+JsonDoubles.MAX_LENGTH > buffer.length)
+            flushBuffer();
+        length = JsonDoubles.write(value, buffer, length);
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, boolean value) throws IOException {
+        prolog(scope, name);
+        append(value ? "true" : "false");
+    }
+
+    @Override
+    protected void doNil(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append("null");
+    }
+    
+    /**
+     * UTF-8 raw values are copied into the buffer without keeping their
+     * decoded text, so cached serialized forms stay compact
+     */
+    @Override
+    protected void doRawValue(Scope scope, String name, RawJsonValue value) throws IOException {
+        prolog(scope, name);
+        if(value.isUtf8()) {
+            int n=value.getByteLength();
+            for(int i=0;i<n;) {
+                if(length == buffer.length)
+                    flushBuffer();
+                int end=Math.min(n, i+buffer.length-length);
+                int stop=value.getAsciiChars(i, end, buffer, length);
+                length = length+stop-i;
+                if(stop < end) {
+                    append(value.decode(stop));
+                    stop = n;
+                }
+                i = stop;
+            }
+        }
+        else
+            append(value.getText());
+    }
+    
+    private void prolog(Scope scope, String name) throws IOException {
+        if(scope.count != 0)
+            append(',');
+        if(name != null) {
+            SerializedName serialized=serializedName(name);
+            if(serialized != null)
+                append(serialized.getChars());
+            else {
+                string(name);
+                append(':');
+            }
+        }
+    }
+    
+    /**
+     * Appends the given string, quoted and escaped exactly as
+     * {@link DefaultJsonGenerator} does. Runs of chars that need no escaping
+     * are copied into the buffer in bulk.
+     */
+    private void string(String s) throws IOException {
+        append('"');
+        
+        int n=s.length();
+        int index=0;
+        while(index < n) {
+            int end=JsonEscapes.run(s, index);
+            if(end != index)
+                append(s, index, end);
+            if(end < n) {
+                if(length+JsonEscapes.MAX_ESCAPE_LENGTH > buffer.length)
+                    flushBuffer();
+                length = length+JsonEscapes.escape(s.charAt(end), buffer, length);
+                end = end+1;
+            }
+            index = end;
+        }
+        
+        append('"');
+    }
+    
+    private void append(char ch) throws IOException {
+        if(length == buffer.length)
+            flushBuffer();
+        buffer[length++] = ch;
+    }
+    
+    private void append(char[] cs) throws IOException {
+        for(int i=0;i<cs.length;) {
+            if(length == buffer.length)
+                flushBuffer();
+            int count=Math.min(buffer.length-length, cs.length-i);
+            System.arraycopy(cs, i, buffer, length, count);
+            length = length+count;
+            i = i+count;
+        }
+    }
+    
+    private void append(String s) throws IOException {
+        append(s, 0, s.length());
+    }
+    
+    private void append(String s, int start, int end) throws IOException {
+        for(int i=start;i<end;) {
+            if(length == buffer.length)
+                flushBuffer();
+            int count=Math.min(buffer.length-length, end-i);
+            s.getChars(i, i+count, buffer, length);
+            length = length+count;
+            i = i+count;
+        }
+    }
+    
+    /**
+     * Formats the given value directly into the buffer
+     */
+    private void appendLong(long value) throws IOException {
+        if(value == Long.MIN_VALUE) {
+            // This is the one value we cannot negate
+            append(LONG_MIN_VALUE);
+        }
+        else {
+            if(length+20 > buffer.length)
+                flushBuffer();
+            if(value < 0) {
+                buffer[length++] = '-';
+                value = -value;
+            }
+            int start=length;
+            do {
+                buffer[length++] = (char)('0'+(int)(value%10L));
+                value = value/10L;
+            } while(value != 0L);
+            for(int i=start, j=length-1;i<j;i++, j--) {
+                char t=buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = t;
+            }
+        }
+    }
+    
+    private void flushBuffer() throws IOException {
+        if(length != 0) {
+            writer.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+    
+    /**
+     * Writes any buffered output to the underlying writer and flushes it
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        writer.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import com.sigpwned.jsonification.exception.GenerateJsonException;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+    
+    public ByteBufferOutputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+    
+    @Override
+    public void write(int b) {
+        try {
+            buffer.put((byte) b);
+        }
+        catch(BufferOverflowException e) {
+            throw new GenerateJsonException("output buffer is full: "+buffer);
+        }
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) {
+        try {
+            buffer.put(b, off, len);
+        }
+        catch(BufferOverflowException e) {
+            throw new GenerateJsonException("output buffer is full: "+buffer);
+        }
+    }
+}
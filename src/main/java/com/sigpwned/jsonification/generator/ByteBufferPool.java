@@ -0,0 +1,92 @@
+package com.sigpwned.jsonification.generator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ByteBufferPool {
+    public static final int DEFAULT_BUFFER_SIZE=8192;
+    
+    public static final int DEFAULT_MAX_POOLED=64;
+    
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final ArrayDeque<ByteBuffer> free;
+    
+    public ByteBufferPool() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_POOLED, false);
+    }
+    
+    /**
+     * @param bufferSize The capacity of every buffer in bytes
+     * @param maxPooled The most released buffers to keep for reuse
+     * @param direct Whether to allocate direct buffers, which suit channel
+     *            I/O best
+     */
+    public ByteBufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if(bufferSize < 32)
+            throw new IllegalArgumentException("bufferSize must be at least 32: "+bufferSize);
+        if(maxPooled < 0)
+            throw new IllegalArgumentException("maxPooled must not be negative: "+maxPooled);
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+        this.free = new ArrayDeque<>();
+    }
+    
+    /**
+     * @return an empty buffer, reused if possible
+     */
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer result=free.pollLast();
+        if(result == null)
+            result = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        return result;
+    }
+    
+    /**
+     * Returns the given buffer to this pool for reuse. Buffers of the wrong
+     * size and buffers beyond {@link #getMaxPooled()} are left to the
+     * garbage collector.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if(buffer.capacity()==bufferSize && buffer.isDirect()==direct && free.size()<maxPooled) {
+            buffer.clear();
+            free.addLast(buffer);
+        }
+    }
+    
+    /**
+     * @return the number of buffers waiting for reuse
+     */
+    public synchronized int size() {
+        return free.size();
+    }
+    
+    public int getBufferSize() {
+        return bufferSize;
+    }
+    
+    public int getMaxPooled() {
+        return maxPooled;
+    }
+    
+    public boolean isDirect() {
+        return direct;
+    }
+}
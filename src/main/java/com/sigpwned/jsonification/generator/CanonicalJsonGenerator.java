@@ -0,0 +1,528 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.GenerateJsonException;
+import com.sigpwned.jsonification.impl.RawJsonValue;
+import com.sigpwned.jsonification.impl.SerializedFormCache;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class CanonicalJsonGenerator extends AbstractJsonGenerator implements Flushable {
+    public static final int DEFAULT_BUFFER_SIZE=8192;
+    
+    /**
+     * Objects with at most this many members are sorted by insertion
+     */
+    private static final int INSERTION_SORT_THRESHOLD=16;
+    
+    private static final byte[] TRUE={ 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE={ 'f', 'a', 'l', 's', 'e' };
+    private static final byte[] NULL={ 'n', 'u', 'l', 'l' };
+    private static final byte[] HEX={ '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+    
+    /**
+     * Returns a generator that collects its output in memory instead of
+     * writing it anywhere. Retrieve the output with {@link #toByteArray()}.
+     * 
+     * @param expectedSize The expected output size in bytes, which need not
+     *            be exact
+     */
+    public static CanonicalJsonGenerator inMemory(int expectedSize) {
+        return new CanonicalJsonGenerator((OutputStream) null, Math.max(expectedSize, 32));
+    }
+    
+    /**
+     * The output, or null if this generator collects output in memory
+     */
+    private final OutputStream output;
+    private final int bufferSize;
+    private byte[] buffer;
+    private int length;
+    private final char[] chbuf;
+    
+    /**
+     * The number of objects currently open
+     */
+    private int objects;
+    
+    /**
+     * How many calls currently writing members in sorted order are in
+     * progress. While positive, objects are written straight through.
+     */
+    private int sorted;
+    
+    /**
+     * The open objects whose members arrived in the caller's order and are
+     * held back to be sorted when they close. For each, the buffer offset
+     * where its members start, its depth in {@link #objects}, and the index
+     * of its first member in {@link #memberNames}.
+     */
+    private int[] regionStarts;
+    private int[] regionDepths;
+    private int[] regionMembers;
+    private int regions;
+    
+    /**
+     * The names and buffer offsets of the members of all held back objects
+     */
+    private String[] memberNames;
+    private int[] memberStarts;
+    private int members;
+    
+    /**
+     * Reusable scratch space for sorting and reordering members
+     */
+    private int[] order;
+    private int[] orderScratch;
+    private byte[] scratch;
+    
+    public CanonicalJsonGenerator(OutputStream output) {
+        this(output, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Feeds the output to the given digest instead of writing it anywhere.
+     * Unless objects are written member by member, no more than one buffer's
+     * worth of output is held at a time.
+     */
+    public CanonicalJsonGenerator(MessageDigest digest) {
+        this(new MessageDigestOutputStream(digest));
+    }
+    
+    /**
+     * @param bufferSize The size of the output buffer in bytes. Output is
+     *            written to the underlying stream in blocks of about this
+     *            size. Objects written member by member are held in the
+     *            buffer until they close, so it grows as needed.
+     */
+    public CanonicalJsonGenerator(OutputStream output, int bufferSize) {
+        if(bufferSize < 32)
+            throw new IllegalArgumentException("bufferSize must be at least 32: "+bufferSize);
+        this.output = output;
+        this.bufferSize = bufferSize;
+        this.buffer = new byte[bufferSize];
+        this.length = 0;
+        this.chbuf = new char[JsonDoubles.ECMA_MAX_LENGTH];
+        this.regionStarts = new int[8];
+        this.regionDepths = new int[8];
+        this.regionMembers = new int[8];
+        this.memberNames = new String[16];
+        this.memberStarts = new int[16];
+        this.order = new int[16];
+        this.orderScratch = new int[16];
+        this.scratch = new byte[0];
+    }
+    
+    /**
+     * Trees are written with their members already sorted, so their objects
+     * stream straight to the output instead of being held back.
+     */
+    @Override
+    public void value(String name, JsonValue value) throws IOException {
+        sorted = sorted+1;
+        try {
+            super.value(name, value);
+        }
+        finally {
+            sorted = sorted-1;
+        }
+    }
+    
+    @Override
+    protected boolean isSortingMembers() {
+        return true;
+    }
+    
+    /**
+     * Serialized forms are cached in their ordinary layout, not their
+     * canonical one, so this generator cannot use a cache.
+     * 
+     * @throws UnsupportedOperationException if the cache is not null
+     */
+    @Override
+    public void setSerializedFormCache(SerializedFormCache serializedFormCache) {
+        if(serializedFormCache != null)
+            throw new UnsupportedOperationException("canonical generators cannot use serialized form caches");
+        super.setSerializedFormCache(serializedFormCache);
+    }
+    
+    @Override
+    protected void doOpenObject(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        objects = objects+1;
+        if(sorted == 0) {
+            if(regions == regionStarts.length) {
+                regionStarts = Arrays.copyOf(regionStarts, 2*regions);
+                regionDepths = Arrays.copyOf(regionDepths, 2*regions);
+                regionMembers = Arrays.copyOf(regionMembers, 2*regions);
+            }
+            regionStarts[regions] = length;
+            regionDepths[regions] = objects;
+            regionMembers[regions] = members;
+            regions = regions+1;
+        }
+        else
+            append((byte) '{');
+    }
+    
+    @Override
+    protected void doCloseObject(Scope scope) throws IOException {
+        if(regions!=0 && regionDepths[regions-1]==objects)
+            closeRegion();
+        else
+            append((byte) '}');
+        objects = objects-1;
+    }
+    
+    @Override
+    protected void doOpenArray(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append((byte) '[');
+    }
+    
+    @Override
+    protected void doCloseArray(Scope scope) throws IOException {
+        append((byte) ']');
+    }
+    
+    @Override
+    protected void doValue(Scope scope, String name, String value) throws IOException {
+        prolog(scope, name);
+        string(value);
+    }
+    
+    /**
+     * RFC 8785 treats every number as a double, so longs beyond
+     * 2<sup>53</sup> in magnitude are rounded to the nearest double, just as
+     * any other implementation would read them.
+     */
+    @Override
+    protected void doValue(Scope scope, String name, long value) throws IOException {
+        prolog(scope, name);
+        ascii(chbuf, JsonDoubles.writeEcma((double) value, chbuf, 0));
+    }
+    
+    @Override
+    protected void doValue(Scope scope, String name, double value) throws IOException {
+        if(Double.isNaN(value) || Double.isInfinite(value))
+            throw new GenerateJsonException("Canonical JSON cannot represent non-finite number: "+value);
+        prolog(scope, name);
+        ascii(chbuf, JsonDoubles.writeEcma(value, chbuf, 0));
+    }
+    
+    @Override
+    protected void doValue(Scope scope, String name, boolean value) throws IOException {
+        prolog(scope, name);
+        append(value ? TRUE : FALSE);
+    }
+    
+    @Override
+    protected void doNil(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append(NULL);
+    }
+    
+    /**
+     * Raw values are parsed and written as trees, since their text is
+     * unlikely to be canonical already
+     */
+    @Override
+    protected void doRawValue(Scope scope, String name, RawJsonValue value) throws IOException {
+        sorted = sorted+1;
+        try {
+            super.doRawValue(scope, name, value);
+        }
+        finally {
+            sorted = sorted-1;
+        }
+    }
+    
+    /**
+     * Members of held back objects are recorded rather than written, and
+     * get their names and commas when the object closes
+     */
+    private void prolog(Scope scope, String name) throws IOException {
+        if(name!=null && regions!=0 && regionDepths[regions-1]==objects) {
+            if(members == memberNames.length) {
+                memberNames = Arrays.copyOf(memberNames, 2*members);
+                memberStarts = Arrays.copyOf(memberStarts, 2*members);
+            }
+            memberNames[members] = name;
+            memberStarts[members] = length;
+            members = members+1;
+        }
+        else {
+            if(scope.count != 0)
+                append((byte) ',');
+            if(name != null) {
+                string(name);
+                append((byte) ':');
+            }
+        }
+    }
+    
+    /**
+     * Rewrites the innermost held back object in place with its members
+     * sorted, names and all
+     */
+    private void closeRegion() throws IOException {
+        int top=regions-1;
+        int start=regionStarts[top];
+        int first=regionMembers[top];
+        int count=members-first;
+        int end=length;
+    
+        if(scratch.length < end-start)
+            scratch = new byte[Math.max(end-start, 2*scratch.length)];
+        System.arraycopy(buffer, start, scratch, 0, end-start);
+        sort(first, count);
+    
+        length = start;
+        append((byte) '{');
+        for(int i=0;i<count;i++) {
+            int member=first+order[i];
+            if(i != 0) {
+                if(memberNames[member].equals(memberNames[first+order[i-1]]))
+                    throw new GenerateJsonException("Canonical JSON cannot have duplicate member name: "+memberNames[member]);
+                append((byte) ',');
+            }
+            string(memberNames[member]);
+            append((byte) ':');
+            int from=memberStarts[member]-start;
+            int to=(member+1<members ? memberStarts[member+1] : end)-start;
+            ensure(to-from);
+            System.arraycopy(scratch, from, buffer, length, to-from);
+            length = length+(to-from);
+        }
+        append((byte) '}');
+    
+        Arrays.fill(memberNames, first, members, null);
+        members = first;
+        regions = top;
+        if(regions==0 && length>=bufferSize)
+            flushBuffer();
+    }
+    
+    /**
+     * Fills {@link #order} with the indexes, relative to {@code first}, of
+     * the given members in order of their names' UTF-16 code units
+     */
+    private void sort(int first, int count) {
+        if(order.length < count) {
+            order = new int[Math.max(count, 2*order.length)];
+            orderScratch = new int[order.length];
+        }
+        for(int i=0;i<count;i++)
+            order[i] = i;
+    
+        if(count <= INSERTION_SORT_THRESHOLD) {
+            for(int i=1;i<count;i++) {
+                int x=order[i];
+                String name=memberNames[first+x];
+                int j=i-1;
+                while(j>=0 && memberNames[first+order[j]].compareTo(name)>0) {
+                    order[j+1] = order[j];
+                    j = j-1;
+                }
+                order[j+1] = x;
+            }
+        }
+        else {
+            int[] src=order;
+            int[] dst=orderScratch;
+            for(int width=1;width<count;width=2*width) {
+                for(int lo=0;lo<count;lo=lo+2*width) {
+                    int mid=Math.min(lo+width, count);
+                    int hi=Math.min(lo+2*width, count);
+                    int i=lo, j=mid, k=lo;
+                    while(i<mid && j<hi) {
+                        if(memberNames[first+src[j]].compareTo(memberNames[first+src[i]]) < 0)
+                            dst[k++] = src[j++];
+                        else
+                            dst[k++] = src[i++];
+                    }
+                    while(i < mid)
+                        dst[k++] = src[i++];
+                    while(j < hi)
+                        dst[k++] = src[j++];
+                }
+                int[] t=src;
+                src = dst;
+                dst = t;
+            }
+            if(src != order)
+                System.arraycopy(src, 0, order, 0, count);
+        }
+    }
+    
+    /**
+     * Appends the given string, quoted and escaped as RFC 8785 requires:
+     * only quotes, backslashes, and control characters are escaped, and
+     * everything else is written as UTF-8.
+     */
+    private void string(String s) throws IOException {
+        append((byte) '"');
+        int n=s.length();
+        for(int i=0;i<n;i++) {
+            char ch=s.charAt(i);
+            ensure(6);
+            if(ch < 0x80) {
+                if(ch == '"' || ch == '\\') {
+                    buffer[length++] = '\\';
+                    buffer[length++] = (byte) ch;
+                }
+                else
+                if(ch >= 0x20)
+                    buffer[length++] = (byte) ch;
+                else {
+                    buffer[length++] = '\\';
+                    switch(ch) {
+                    case '\b':
+                        buffer[length++] = 'b';
+                        break;
+                    case '\t':
+                        buffer[length++] = 't';
+                        break;
+                    case '\n':
+                        buffer[length++] = 'n';
+                        break;
+                    case '\f':
+                        buffer[length++] = 'f';
+                        break;
+                    case '\r':
+                        buffer[length++] = 'r';
+                        break;
+                    default:
+                        buffer[length++] = 'u';
+                        buffer[length++] = '0';
+                        buffer[length++] = '0';
+                        buffer[length++] = HEX[ch >> 4];
+                        buffer[length++] = HEX[ch & 0xF];
+                        break;
+                    }
+                }
+            }
+            else
+            if(ch < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (ch >> 6));
+                buffer[length++] = (byte) (0x80 | (ch & 0x3F));
+            }
+            else
+            if(Character.isHighSurrogate(ch) && i+1<n && Character.isLowSurrogate(s.charAt(i+1))) {
+                int cp=Character.toCodePoint(ch, s.charAt(i+1));
+                buffer[length++] = (byte) (0xF0 | (cp >> 18));
+                buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+                i = i+1;
+            }
+            else
+            if(Character.isSurrogate(ch))
+                throw new GenerateJsonException("Canonical JSON cannot have unpaired surrogate at index "+i+": "+s);
+            else {
+                buffer[length++] = (byte) (0xE0 | (ch >> 12));
+                buffer[length++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (ch & 0x3F));
+            }
+        }
+        append((byte) '"');
+    }
+    
+    /**
+     * Appends the given ASCII chars
+     */
+    private void ascii(char[] chars, int count) throws IOException {
+        ensure(count);
+        for(int i=0;i<count;i++)
+            buffer[length++] = (byte) chars[i];
+    }
+    
+    private void append(byte b) throws IOException {
+        ensure(1);
+        buffer[length++] = b;
+    }
+    
+    private void append(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length = length+bytes.length;
+    }
+    
+    /**
+     * Makes room for at least {@code count} more bytes. The buffer grows
+     * while objects are held back or output is collected in memory, and is
+     * flushed otherwise.
+     */
+    private void ensure(int count) throws IOException {
+        if(length+count > buffer.length) {
+            if(output==null || regions!=0)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length+(buffer.length >> 1), length+count));
+            else {
+                flushBuffer();
+                if(count > buffer.length)
+                    buffer = new byte[count];
+            }
+        }
+    }
+    
+    private void flushBuffer() throws IOException {
+        if(output!=null && length!=0) {
+            output.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+    
+    /**
+     * @return the output so far, if this generator collects output in memory
+     * 
+     * @throws IllegalStateException if this generator writes to a stream
+     */
+    public byte[] toByteArray() {
+        if(output != null)
+            throw new IllegalStateException("generator does not collect output in memory");
+        return Arrays.copyOf(buffer, length);
+    }
+    
+    /**
+     * Writes any output to the underlying stream and flushes it. Objects
+     * still open are not written until they close.
+     */
+    @Override
+    public void flush() throws IOException {
+        if(output!=null && regions==0) {
+            flushBuffer();
+            output.flush();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if(output != null) {
+            try {
+                flushBuffer();
+            }
+            finally {
+                output.close();
+            }
+        }
+    }
+}
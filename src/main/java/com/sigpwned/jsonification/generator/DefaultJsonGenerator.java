@@ -3,6 +3,10 @@ package com.sigpwned.jsonification.generator;
 import java.io.IOException;
 import java.io.Writer;
 
+import com.sigpwned.jsonification.impl.RawJsonValue;
+import com.sigpwned.jsonification.impl.Utf8JsonString;
+import com.sigpwned.jsonification.value.scalar.JsonString;
+
 /**
  * Copyright 2015 Andy Boothe
  *     
@@ -20,11 +24,14 @@ import java.io.Writer;
  */
 public class DefaultJsonGenerator extends AbstractJsonGenerator {
     private final Writer writer;
-    private final char[] cpbuf;
+    private final char[] escbuf;
+    private final char[] numbuf;
+    private char[] chbuf;
     
     public DefaultJsonGenerator(Writer writer) {
         this.writer = writer;
-        this.cpbuf = new char[2];
+        this.escbuf = new char[JsonEscapes.MAX_ESCAPE_LENGTH];
+        this.numbuf = new char[JsonDoubles.MAX_LENGTH];
     }
     
     @Override
@@ -52,7 +59,31 @@ public class DefaultJsonGenerator extends AbstractJsonGenerator {
     @Override
     protected void doValue(Scope scope, String name, String value) throws IOException {
         prolog(scope, name);
-        getWriter().write(string(value));
+        string(value);
+    }
+
+    /**
+     * Escape-free UTF-8 strings are copied straight through, without being
+     * decoded or scanned for escapes
+     */
+    @Override
+    protected void doValue(Scope scope, String name, JsonString value) throws IOException {
+        if(value instanceof Utf8JsonString && ((Utf8JsonString) value).isEscapeFree()) {
+            Utf8JsonString s=(Utf8JsonString) value;
+            if(chbuf == null)
+                chbuf = new char[256];
+            prolog(scope, name);
+            getWriter().write('"');
+            int length=s.getByteLength();
+            for(int i=0;i<length;i+=chbuf.length) {
+                int n=Math.min(chbuf.length, length-i);
+                s.getChars(i, i+n, chbuf, 0);
+                getWriter().write(chbuf, 0, n);
+            }
+            getWriter().write('"');
+        }
+        else
+            super.doValue(scope, name, value);
     }
 
     @Override
@@ -64,7 +95,7 @@ public class DefaultJsonGenerator extends AbstractJsonGenerator {
     @Override
     protected void doValue(Scope scope, String name, double value) throws IOException {
         prolog(scope, name);
-        getWriter().write(Double.toString(value));
+        getWriter().write(numbuf, 0, JsonDoubles.write(value, numbuf, 0));
     }
 
     @Override
@@ -79,73 +110,59 @@ public class DefaultJsonGenerator extends AbstractJsonGenerator {
         getWriter().write("null");
     }
     
+    @Override
+    protected void doRawValue(Scope scope, String name, RawJsonValue value) throws IOException {
+        prolog(scope, name);
+        value.writeTo(getWriter());
+    }
+    
     private void prolog(Scope scope, String name) throws IOException {
         if(scope.count != 0)
             getWriter().write(",");
         if(name != null) {
-            getWriter().write(string(name));
-            getWriter().write(":");
+            SerializedName serialized=serializedName(name);
+            if(serialized != null)
+                getWriter().write(serialized.getChars());
+            else {
+                string(name);
+                getWriter().write(":");
+            }
         }
     }
 
-    private String string(String s) {
-        StringBuilder result=new StringBuilder();
-        
-        result.append("\"");
+    /**
+     * Writes the given string quoted and escaped. Runs of chars that need no
+     * escaping are written in bulk.
+     */
+    private void string(String s) throws IOException {
+        getWriter().write('"');
         
+        int length=s.length();
         int index=0;
-        while(index < s.length()) {
-            int cp=s.codePointAt(index);
-            if(Character.isLetter(cp) || Character.isDigit(cp))
-                result.appendCodePoint(cp);
-            else
-            if(cp == ' ')
-                result.append(" ");
-            else
-            if(cp == '"')
-                result.append("\\\"");
-            else
-            if(cp == '\\')
-                result.append("\\\\");
-            else
-            if(cp == '/')
-                result.append("\\/");
-            else
-            if(cp == '\b')
-                result.append("\\b");
-            else
-            if(cp == '\f')
-                result.append("\\f");
-            else
-            if(cp == '\n')
-                result.append("\\n");
-            else
-            if(cp == '\r')
-                result.append("\\r");
-            else
-            if(cp == '\t')
-                result.append("\\t");
-            else {
-                int chars=Character.toChars(cp, cpbuf, 0);
-                for(int i=0;i<chars;i++)
-                    if(printable(cpbuf[i]))
-                        result.append(cpbuf[i]);
-                    else
-                        result.append(String.format("\\u%04X", (int) cpbuf[i]));
+        while(index < length) {
+            int end=JsonEscapes.run(s, index);
+            if(end != index)
+                getWriter().write(s, index, end-index);
+            if(end < length) {
+                int n=JsonEscapes.escape(s.charAt(end), escbuf, 0);
+                getWriter().write(escbuf, 0, n);
+                end = end+1;
             }
-            
-            index = index+Character.charCount(cp);
+            index = end;
         }
         
-        result.append("\"");
-        
-        return result.toString();
+        getWriter().write('"');
     }
     
     private Writer getWriter() {
         return writer;
     }
     
+    @Override
+    public void flush() throws IOException {
+        getWriter().flush();
+    }
+    
     @Override
     public void close() throws IOException {
         getWriter().close();
@@ -1,27 +1,28 @@
 package com.sigpwned.jsonification.generator;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.StringReader;
+import java.util.Arrays;
 
 import com.sigpwned.jsonification.Json;
 import com.sigpwned.jsonification.JsonError;
 import com.sigpwned.jsonification.JsonFactory;
 import com.sigpwned.jsonification.JsonValue;
 import com.sigpwned.jsonification.JsonTreeGenerator;
+import com.sigpwned.jsonification.JsonTreeParser;
 import com.sigpwned.jsonification.exception.GenerateJsonException;
+import com.sigpwned.jsonification.impl.RawJsonValue;
 
 public class DefaultJsonTreeGenerator extends AbstractJsonGenerator implements JsonTreeGenerator {
-    private static class Container {
-        public final JsonValue value;
-        public String name;
-        public Container(JsonValue value) {
-            this.value = value;
-        }
-    }
-    
     private final JsonFactory factory;
-    private final List<Container> containers;
+    
+    /**
+     * The open containers, innermost last, and for each open object, the
+     * name of the member being written
+     */
+    private JsonValue[] containers;
+    private String[] names;
+    private int depth;
     private JsonValue value;
     
     public DefaultJsonTreeGenerator() {
@@ -29,119 +30,99 @@ public class DefaultJsonTreeGenerator extends AbstractJsonGenerator implements J
     }
 
     public DefaultJsonTreeGenerator(JsonFactory factory) {
+        if(factory == null)
+            throw new NullPointerException();
         this.factory = factory;
-        this.containers = new ArrayList<>();
+        this.containers = new JsonValue[8];
+        this.names = new String[8];
+        setNonFinitePolicy(NonFinitePolicy.LITERAL);
     }
 
     @Override
     protected void doOpenObject(Scope scope, String name) throws IOException {
-        switch(scope.type) {
-        case OBJECT:
-            top().name = name;
-            //$FALL-THROUGH$
-        case ROOT:
-        case ARRAY:
-            push(new Container(getFactory().newObject()));
-            break;
-        default:
-            throw new JsonError("unhandled scope: "+scope);
-        }
+        doOpenObject(scope, name, -1);
+    }
+
+    @Override
+    protected void doOpenObject(Scope scope, String name, int expectedSize) throws IOException {
+        member(scope, name);
+        push(getFactory().newObject(expectedSize));
     }
 
     @Override
     protected void doCloseObject(Scope scope) throws IOException {
-        assign(pop().value.asObject());
+        assign(pop());
     }
 
     @Override
     protected void doOpenArray(Scope scope, String name) throws IOException {
-        switch(scope.type) {
-        case OBJECT:
-            top().name = name;
-            //$FALL-THROUGH$
-        case ROOT:
-        case ARRAY:
-            push(new Container(getFactory().newArray()));
-            break;
-        default:
-            throw new JsonError("unhandled scope: "+scope);
-        }
+        doOpenArray(scope, name, -1);
+    }
+
+    @Override
+    protected void doOpenArray(Scope scope, String name, int expectedSize) throws IOException {
+        member(scope, name);
+        push(getFactory().newArray(expectedSize));
     }
 
     @Override
     protected void doCloseArray(Scope scope) throws IOException {
-        assign(pop().value.asArray());
+        assign(pop());
     }
 
     @Override
     protected void doValue(Scope scope, String name, String value) throws IOException {
-        switch(scope.type) {
-        case OBJECT:
-            top().name = name;
-            //$FALL-THROUGH$
-        case ROOT:
-        case ARRAY:
-            assign(Json.newValue(value));
-            break;
-        default:
-            throw new JsonError("unhandled scope: "+scope);
-        }
+        member(scope, name);
+        assign(getFactory().newValue(value));
     }
 
     @Override
     protected void doValue(Scope scope, String name, long value) throws IOException {
-        switch(scope.type) {
-        case OBJECT:
-            top().name = name;
-            //$FALL-THROUGH$
-        case ROOT:
-        case ARRAY:
-            assign(Json.newValue(value));
-            break;
-        default:
-            throw new JsonError("unhandled scope: "+scope);
-        }
+        member(scope, name);
+        assign(getFactory().newValue(value));
     }
 
     @Override
     protected void doValue(Scope scope, String name, double value) throws IOException {
-        switch(scope.type) {
-        case OBJECT:
-            top().name = name;
-            //$FALL-THROUGH$
-        case ROOT:
-        case ARRAY:
-            assign(Json.newValue(value));
-            break;
-        default:
-            throw new JsonError("unhandled scope: "+scope);
-        }
+        member(scope, name);
+        assign(getFactory().newValue(value));
     }
 
     @Override
     protected void doValue(Scope scope, String name, boolean value) throws IOException {
-        switch(scope.type) {
-        case OBJECT:
-            top().name = name;
-            //$FALL-THROUGH$
-        case ROOT:
-        case ARRAY:
-            assign(Json.newValue(value));
-            break;
-        default:
-            throw new JsonError("unhandled scope: "+scope);
-        }
+        member(scope, name);
+        assign(getFactory().newValue(value));
     }
 
     @Override
     protected void doNil(Scope scope, String name) throws IOException {
+        member(scope, name);
+        assign(getFactory().newNull());
+    }
+    
+    /**
+     * Raw values are parsed straight into the tree
+     */
+    @Override
+    protected void doRawValue(Scope scope, String name, RawJsonValue value) throws IOException {
+        member(scope, name);
+        try (JsonTreeParser p=getFactory().newTreeParser(new StringReader(value.getText()))) {
+            p.setFactory(getFactory());
+            assign(p.next());
+        }
+    }
+    
+    /**
+     * Remembers the name of the next member of the innermost object, if
+     * the given scope is an object
+     */
+    private void member(Scope scope, String name) {
         switch(scope.type) {
         case OBJECT:
-            top().name = name;
-            //$FALL-THROUGH$
+            names[depth-1] = name;
+            break;
         case ROOT:
         case ARRAY:
-            assign(Json.newNull());
             break;
         default:
             throw new JsonError("unhandled scope: "+scope);
@@ -149,40 +130,41 @@ public class DefaultJsonTreeGenerator extends AbstractJsonGenerator implements J
     }
     
     private void assign(JsonValue value) {
-        if(empty())
+        if(depth == 0)
             this.value = value;
         else {
-            Container top=top();
-            switch(top.value.getType()) {
+            JsonValue top=containers[depth-1];
+            switch(top.getType()) {
             case ARRAY:
-                top.value.asArray().add(value);
+                top.asArray().add(value);
                 break;
             case OBJECT:
-                top.value.asObject().set(top.name, value);
+                top.asObject().set(names[depth-1], value);
                 break;
             case NULL:
             case SCALAR:
-                throw new JsonError("unexpected container type: "+top.value.getType());
+                throw new JsonError("unexpected container type: "+top.getType());
             default:
-                throw new JsonError("unhandled container type: "+top.value.getType());
+                throw new JsonError("unhandled container type: "+top.getType());
             }
         }
     }
     
-    private Container pop() {
-        return getContainers().remove(getContainers().size()-1);
-    }
-    
-    private void push(Container container) {
-        getContainers().add(container);
-    }
-
-    private Container top() {
-        return getContainers().get(getContainers().size()-1);
+    private JsonValue pop() {
+        depth = depth-1;
+        JsonValue result=containers[depth];
+        containers[depth] = null;
+        names[depth] = null;
+        return result;
     }
     
-    private boolean empty() {
-        return getContainers().size() == 0;
+    private void push(JsonValue container) {
+        if(depth == containers.length) {
+            containers = Arrays.copyOf(containers, 2*depth);
+            names = Arrays.copyOf(names, 2*depth);
+        }
+        containers[depth] = container;
+        depth = depth+1;
     }
     
     private JsonFactory getFactory() {
@@ -198,8 +180,9 @@ public class DefaultJsonTreeGenerator extends AbstractJsonGenerator implements J
         return result;
     }
 
-    private List<Container> getContainers() {
-        return containers;
+    @Override
+    public void flush() throws IOException {
+        // Nothing to do!
     }
 
     @Override
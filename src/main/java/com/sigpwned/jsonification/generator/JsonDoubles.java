@@ -0,0 +1,453 @@
+package com.sigpwned.jsonification.generator;
+
+import java.math.BigInteger;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ final class JsonDoubles {
+    /**
+     * The longest representation written, in chars, e.g.
+     * {@code -2.2250738585072014E-308}
+     */
+    public static final int MAX_LENGTH=24;
+    
+    /**
+     * The longest representation written by
+     * {@link #writeEcma(double, char[], int)}, in chars, e.g.
+     * {@code -0.0000012345678901234567}
+     */
+    public static final int ECMA_MAX_LENGTH=25;
+    
+    private static final int MANTISSA_BITS=52;
+    private static final int EXPONENT_BITS=11;
+    private static final int BIAS=1023;
+    
+    private static final int POW5_BITCOUNT=125;
+    private static final int POW5_INV_BITCOUNT=125;
+    
+    private static final int POW5_TABLE_SIZE=326;
+    private static final int POW5_INV_TABLE_SIZE=342;
+    
+    /**
+     * The top {@link #POW5_BITCOUNT} bits of 5^i, as low and high halves
+     */
+    private static final long[] POW5_SPLIT=new long[2*POW5_TABLE_SIZE];
+    
+    /**
+     * The top {@link #POW5_INV_BITCOUNT} bits of 1/5^i, rounded up, as low and
+     * high halves
+     */
+    private static final long[] POW5_INV_SPLIT=new long[2*POW5_INV_TABLE_SIZE];
+    
+    static {
+        BigInteger mask=BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        BigInteger five=BigInteger.valueOf(5L);
+        BigInteger pow=BigInteger.ONE;
+        for(int i=0;i<POW5_INV_TABLE_SIZE;i++) {
+            int bits=pow.bitLength();
+            if(i < POW5_TABLE_SIZE) {
+                BigInteger split=pow.shiftRight(bits-POW5_BITCOUNT);
+                POW5_SPLIT[2*i] = split.and(mask).longValue();
+                POW5_SPLIT[2*i+1] = split.shiftRight(64).longValue();
+            }
+            BigInteger inv=BigInteger.ONE.shiftLeft(bits-1+POW5_INV_BITCOUNT).divide(pow).add(BigInteger.ONE);
+            POW5_INV_SPLIT[2*i] = inv.and(mask).longValue();
+            POW5_INV_SPLIT[2*i+1] = inv.shiftRight(64).longValue();
+            pow = pow.multiply(five);
+        }
+    }
+    
+    private JsonDoubles() {
+    }
+    
+    /**
+     * Writes the shortest decimal representation of the given value that
+     * parses back to exactly the same double into {@code dst} at
+     * {@code off}, in the same layout as {@link Double#toString(double)}.
+     * Among shortest representations, the one closest to the exact value is
+     * chosen. Non-finite values are written as Java literals.
+     * 
+     * @return the offset just past the last char written
+     */
+    public static int write(double value, char[] dst, int off) {
+        int result;
+        if(Double.isNaN(value) || Double.isInfinite(value))
+            result = copy(Double.toString(value), dst, off);
+        else {
+            long bits=Double.doubleToRawLongBits(value);
+            long mantissa=bits & ((1L << MANTISSA_BITS)-1L);
+            int exponent=(int) ((bits >>> MANTISSA_BITS) & ((1 << EXPONENT_BITS)-1));
+            
+            result = off;
+            if(bits < 0L)
+                dst[result++] = '-';
+            
+            if(exponent==0 && mantissa==0L) {
+                dst[result++] = '0';
+                dst[result++] = '.';
+                dst[result++] = '0';
+            }
+            else
+                result = shortest(mantissa, exponent, false, dst, result);
+        }
+        return result;
+    }
+    
+    /**
+     * Writes the given finite value the way ECMAScript's
+     * {@code Number.prototype.toString} does, as RFC 8785 requires: the same
+     * shortest digits as {@link #write(double, char[], int)}, but with no
+     * {@code .0} on integers, plain notation from 10^-6 up to but not
+     * including 10^21, and exponents like {@code 1e+21}. Negative zero is
+     * written as {@code 0}.
+     * 
+     * @return the offset just past the last char written
+     */
+    public static int writeEcma(double value, char[] dst, int off) {
+        long bits=Double.doubleToRawLongBits(value);
+        long mantissa=bits & ((1L << MANTISSA_BITS)-1L);
+        int exponent=(int) ((bits >>> MANTISSA_BITS) & ((1 << EXPONENT_BITS)-1));
+        
+        int result=off;
+        if(exponent==0 && mantissa==0L)
+            dst[result++] = '0';
+        else {
+            if(bits < 0L)
+                dst[result++] = '-';
+            result = shortest(mantissa, exponent, true, dst, result);
+        }
+        return result;
+    }
+    
+    /**
+     * The Ryu algorithm for finite, nonzero doubles
+     * 
+     * @param ecma Whether to write the result in ECMAScript layout rather
+     *            than Java layout
+     */
+    private static int shortest(long ieeeMantissa, int ieeeExponent, boolean ecma, char[] dst, int off) {
+        int e2;
+        long m2;
+        if(ieeeExponent == 0) {
+            e2 = 1-BIAS-MANTISSA_BITS-2;
+            m2 = ieeeMantissa;
+        }
+        else {
+            e2 = ieeeExponent-BIAS-MANTISSA_BITS-2;
+            m2 = (1L << MANTISSA_BITS) | ieeeMantissa;
+        }
+        boolean acceptBounds=(m2 & 1L) == 0L;
+        
+        long mv=4L*m2;
+        int mmShift=ieeeMantissa!=0L || ieeeExponent<=1 ? 1 : 0;
+        
+        long vr, vp, vm;
+        int e10;
+        boolean vmIsTrailingZeros=false;
+        boolean vrIsTrailingZeros=false;
+        if(e2 >= 0) {
+            int q=log10Pow2(e2)-(e2 > 3 ? 1 : 0);
+            e10 = q;
+            int k=POW5_INV_BITCOUNT+pow5bits(q)-1;
+            int i=-e2+q+k;
+            vr = mulShift(4L*m2, POW5_INV_SPLIT, q, i);
+            vp = mulShift(4L*m2+2L, POW5_INV_SPLIT, q, i);
+            vm = mulShift(4L*m2-1L-mmShift, POW5_INV_SPLIT, q, i);
+            if(q <= 21) {
+                if(mv%5L == 0L)
+                    vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+                else
+                if(acceptBounds)
+                    vmIsTrailingZeros = multipleOfPowerOf5(mv-1L-mmShift, q);
+                else
+                if(multipleOfPowerOf5(mv+2L, q))
+                    vp = vp-1L;
+            }
+        }
+        else {
+            int q=log10Pow5(-e2)-(-e2 > 1 ? 1 : 0);
+            e10 = q+e2;
+            int i=-e2-q;
+            int k=pow5bits(i)-POW5_BITCOUNT;
+            int j=q-k;
+            vr = mulShift(4L*m2, POW5_SPLIT, i, j);
+            vp = mulShift(4L*m2+2L, POW5_SPLIT, i, j);
+            vm = mulShift(4L*m2-1L-mmShift, POW5_SPLIT, i, j);
+            if(q <= 1) {
+                vrIsTrailingZeros = true;
+                if(acceptBounds)
+                    vmIsTrailingZeros = mmShift == 1;
+                else
+                    vp = vp-1L;
+            }
+            else
+            if(q < 63)
+                vrIsTrailingZeros = (mv & ((1L << q)-1L)) == 0L;
+        }
+        
+        int removed=0;
+        long output;
+        if(vmIsTrailingZeros || vrIsTrailingZeros) {
+            int lastRemovedDigit=0;
+            while(vp/10L > vm/10L) {
+                vmIsTrailingZeros = vmIsTrailingZeros && vm%10L==0L;
+                vrIsTrailingZeros = vrIsTrailingZeros && lastRemovedDigit==0;
+                lastRemovedDigit = (int) (vr%10L);
+                vr = vr/10L;
+                vp = vp/10L;
+                vm = vm/10L;
+                removed = removed+1;
+            }
+            if(vmIsTrailingZeros) {
+                while(vm%10L == 0L) {
+                    vrIsTrailingZeros = vrIsTrailingZeros && lastRemovedDigit==0;
+                    lastRemovedDigit = (int) (vr%10L);
+                    vr = vr/10L;
+                    vp = vp/10L;
+                    vm = vm/10L;
+                    removed = removed+1;
+                }
+            }
+            if(vrIsTrailingZeros && lastRemovedDigit==5 && vr%2L==0L) {
+                // Exactly halfway, so round to even
+                lastRemovedDigit = 4;
+            }
+            boolean roundUp=(vr==vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit>=5;
+            output = vr+(roundUp ? 1L : 0L);
+        }
+        else {
+            boolean roundUp=false;
+            while(vp/10L > vm/10L) {
+                roundUp = vr%10L >= 5L;
+                vr = vr/10L;
+                vp = vp/10L;
+                vm = vm/10L;
+                removed = removed+1;
+            }
+            output = vr+(vr==vm || roundUp ? 1L : 0L);
+        }
+        
+        return ecma ? ecmaDigits(output, e10+removed, dst, off) : digits(output, e10+removed, dst, off);
+    }
+    
+    /**
+     * Writes {@code output * 10^exponent} in the layout of
+     * {@link Double#toString(double)}: plain notation from 10^-3 up to but
+     * not including 10^7, and computerized scientific notation otherwise
+     */
+    private static int digits(long output, int exponent, char[] dst, int off) {
+        int length=decimalLength(output);
+        int scientific=exponent+length-1;
+        
+        int result=off;
+        if(scientific>=-3 && scientific<7) {
+            if(scientific >= 0) {
+                int whole=scientific+1;
+                if(length <= whole) {
+                    result = writeDigits(output, length, dst, result);
+                    for(int i=length;i<whole;i++)
+                        dst[result++] = '0';
+                    dst[result++] = '.';
+                    dst[result++] = '0';
+                }
+                else {
+                    // Write all digits one position to the right, then
+                    // shift the whole part left over the gap
+                    writeDigits(output, length, dst, result+1);
+                    for(int i=0;i<whole;i++)
+                        dst[result+i] = dst[result+i+1];
+                    dst[result+whole] = '.';
+                    result = result+length+1;
+                }
+            }
+            else {
+                dst[result++] = '0';
+                dst[result++] = '.';
+                for(int i=-1;i>scientific;i--)
+                    dst[result++] = '0';
+                result = writeDigits(output, length, dst, result);
+            }
+        }
+        else {
+            writeDigits(output, length, dst, result+1);
+            dst[result] = dst[result+1];
+            dst[result+1] = '.';
+            if(length == 1) {
+                dst[result+2] = '0';
+                result = result+3;
+            }
+            else
+                result = result+length+1;
+            dst[result++] = 'E';
+            if(scientific < 0) {
+                dst[result++] = '-';
+                scientific = -scientific;
+            }
+            if(scientific >= 100)
+                dst[result++] = (char) ('0'+scientific/100);
+            if(scientific >= 10)
+                dst[result++] = (char) ('0'+(scientific/10)%10);
+            dst[result++] = (char) ('0'+scientific%10);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Writes {@code output * 10^exponent} in the layout of ECMAScript's
+     * {@code Number.prototype.toString}
+     */
+    private static int ecmaDigits(long output, int exponent, char[] dst, int off) {
+        int k=decimalLength(output);
+        int n=exponent+k;
+        
+        int result=off;
+        if(k<=n && n<=21) {
+            result = writeDigits(output, k, dst, result);
+            for(int i=k;i<n;i++)
+                dst[result++] = '0';
+        }
+        else
+        if(0<n && n<=21) {
+            // Write all digits one position to the right, then shift the
+            // whole part left over the gap
+            writeDigits(output, k, dst, result+1);
+            for(int i=0;i<n;i++)
+                dst[result+i] = dst[result+i+1];
+            dst[result+n] = '.';
+            result = result+k+1;
+        }
+        else
+        if(-6<n && n<=0) {
+            dst[result++] = '0';
+            dst[result++] = '.';
+            for(int i=n;i<0;i++)
+                dst[result++] = '0';
+            result = writeDigits(output, k, dst, result);
+        }
+        else {
+            if(k == 1)
+                result = writeDigits(output, k, dst, result);
+            else {
+                writeDigits(output, k, dst, result+1);
+                dst[result] = dst[result+1];
+                dst[result+1] = '.';
+                result = result+k+1;
+            }
+            int e=n-1;
+            dst[result++] = 'e';
+            dst[result++] = e<0 ? '-' : '+';
+            if(e < 0)
+                e = -e;
+            if(e >= 100)
+                dst[result++] = (char) ('0'+e/100);
+            if(e >= 10)
+                dst[result++] = (char) ('0'+(e/10)%10);
+            dst[result++] = (char) ('0'+e%10);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Writes the {@code length} decimal digits of {@code value}
+     * 
+     * @return the offset just past the last digit
+     */
+    private static int writeDigits(long value, int length, char[] dst, int off) {
+        for(int i=off+length-1;i>=off;i--) {
+            dst[i] = (char) ('0'+(int) (value%10L));
+            value = value/10L;
+        }
+        return off+length;
+    }
+    
+    private static int copy(String s, char[] dst, int off) {
+        s.getChars(0, s.length(), dst, off);
+        return off+s.length();
+    }
+    
+    private static int decimalLength(long v) {
+        int result=1;
+        while(v >= 10L) {
+            v = v/10L;
+            result = result+1;
+        }
+        return result;
+    }
+    
+    /**
+     * @return ceil(log2(5^e)), or 1 if e is 0
+     */
+    private static int pow5bits(int e) {
+        return ((e*1217359) >>> 19)+1;
+    }
+    
+    /**
+     * @return floor(log10(2^e))
+     */
+    private static int log10Pow2(int e) {
+        return (e*78913) >>> 18;
+    }
+    
+    /**
+     * @return floor(log10(5^e))
+     */
+    private static int log10Pow5(int e) {
+        return (e*732923) >>> 20;
+    }
+    
+    private static boolean multipleOfPowerOf5(long value, int p) {
+        int count=0;
+        while(value%5L == 0L) {
+            value = value/5L;
+            count = count+1;
+        }
+        return count >= p;
+    }
+    
+    /**
+     * @return {@code (m * table[index]) >> shift}, where the table entry is
+     *         a 128-bit unsigned value and {@code 64 < shift < 128}
+     */
+    private static long mulShift(long m, long[] table, int index, int shift) {
+        long lo=table[2*index];
+        long hi=table[2*index+1];
+        
+        long b0hi=multiplyHigh(m, lo);
+        long b2lo=m*hi;
+        long b2hi=multiplyHigh(m, hi);
+        
+        long sumlo=b2lo+b0hi;
+        long sumhi=b2hi+((sumlo+Long.MIN_VALUE) < (b2lo+Long.MIN_VALUE) ? 1L : 0L);
+        
+        int s=shift-64;
+        return (sumhi << (64-s)) | (sumlo >>> s);
+    }
+    
+    /**
+     * @return the high 64 bits of the unsigned 128-bit product of x and y
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x0=x & 0xFFFFFFFFL;
+        long x1=x >>> 32;
+        long y0=y & 0xFFFFFFFFL;
+        long y1=y >>> 32;
+        long t=x1*y0+((x0*y0) >>> 32);
+        long w1=x0*y1+(t & 0xFFFFFFFFL);
+        return x1*y1+(t >>> 32)+(w1 >>> 32);
+    }
+}
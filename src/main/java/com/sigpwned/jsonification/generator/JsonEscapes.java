@@ -0,0 +1,151 @@
+package com.sigpwned.jsonification.generator;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ final class JsonEscapes {
+    /**
+     * Marks an ASCII char that is written as itself
+     */
+    private static final char NONE=0;
+    
+    /**
+     * Marks an ASCII char that is written as a {@code \\uXXXX} escape
+     */
+    private static final char UNICODE='u';
+    
+    /**
+     * For each ASCII char, {@link #NONE}, {@link #UNICODE}, or the char that
+     * follows the backslash in its short escape
+     */
+    private static final char[] ASCII=new char[128];
+    static {
+        for(char ch=0;ch<ASCII.length;ch++)
+            if(Character.isISOControl(ch))
+                ASCII[ch] = UNICODE;
+        ASCII['"'] = '"';
+        ASCII['\\'] = '\\';
+        ASCII['/'] = '/';
+        ASCII['\b'] = 'b';
+        ASCII['\f'] = 'f';
+        ASCII['\n'] = 'n';
+        ASCII['\r'] = 'r';
+        ASCII['\t'] = 't';
+    }
+    
+    private static final char[] HEX="0123456789ABCDEF".toCharArray();
+    
+    /**
+     * The longest escape sequence, in chars
+     */
+    public static final int MAX_ESCAPE_LENGTH=6;
+    
+    /**
+     * One bit per BMP char at or above 128 that must be escaped. Built on
+     * first use, since the rule for these chars needs a Unicode block lookup
+     * per char.
+     */
+    private static class Bmp {
+        private static final long[] ESCAPED=new long[1 << 10];
+        static {
+            for(int ch=128;ch<=Character.MAX_VALUE;ch++)
+                if(!Character.isLetter(ch) && !Character.isDigit(ch) && !AbstractJsonGenerator.printable((char) ch))
+                    ESCAPED[ch >>> 6] |= 1L << ch;
+        }
+    }
+    
+    private JsonEscapes() {
+    }
+    
+    /**
+     * Decides escaping exactly as the generators always have: letters,
+     * digits, and printable chars are written as themselves, and everything
+     * else is escaped. Surrogates are always printable, so pairs never need
+     * to be considered together.
+     */
+    public static boolean escaped(char ch) {
+        boolean result;
+        if(ch < 128)
+            result = ASCII[ch] != NONE;
+        else
+            result = (Bmp.ESCAPED[ch >>> 6] & (1L << ch)) != 0L;
+        return result;
+    }
+    
+    /**
+     * @return the index of the first char in {@code s} at or after
+     *         {@code from} that must be escaped, or {@code s.length()} if
+     *         there is none
+     */
+    public static int run(String s, int from) {
+        int length=s.length();
+        int result=from;
+        while(result<length && !escaped(s.charAt(result)))
+            result = result+1;
+        return result;
+    }
+    
+    /**
+     * Writes the escape sequence for the given char, which must be one for
+     * which {@link #escaped(char)} is true, into {@code dst} at {@code off}
+     * 
+     * @return the number of chars written, at most
+     *         {@link #MAX_ESCAPE_LENGTH}
+     */
+    public static int escape(char ch, char[] dst, int off) {
+        char e=ch<128 ? ASCII[ch] : UNICODE;
+        
+        int result;
+        dst[off] = '\\';
+        if(e == UNICODE) {
+            dst[off+1] = 'u';
+            dst[off+2] = HEX[(ch >> 12) & 0xF];
+            dst[off+3] = HEX[(ch >> 8) & 0xF];
+            dst[off+4] = HEX[(ch >> 4) & 0xF];
+            dst[off+5] = HEX[ch & 0xF];
+            result = 6;
+        }
+        else {
+            dst[off+1] = e;
+            result = 2;
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return the given string, quoted and escaped
+     */
+    public static String quote(String s) {
+        StringBuilder result=new StringBuilder(s.length()+2);
+        char[] buf=new char[MAX_ESCAPE_LENGTH];
+        
+        result.append('"');
+        int length=s.length();
+        int index=0;
+        while(index < length) {
+            int end=run(s, index);
+            result.append(s, index, end);
+            if(end < length) {
+                result.append(buf, 0, escape(s.charAt(end), buf, 0));
+                end = end+1;
+            }
+            index = end;
+        }
+        result.append('"');
+        
+        return result.toString();
+    }
+}
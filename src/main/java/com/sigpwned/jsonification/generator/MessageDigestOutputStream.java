@@ -0,0 +1,39 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ class MessageDigestOutputStream extends OutputStream {
+    private final MessageDigest digest;
+    
+    public MessageDigestOutputStream(MessageDigest digest) {
+        if(digest == null)
+            throw new NullPointerException();
+        this.digest = digest;
+    }
+    
+    @Override
+    public void write(int b) {
+        digest.update((byte) b);
+    }
+    
+    @Override
+    public void write(byte[] b, int off, int len) {
+        digest.update(b, off, len);
+    }
+}
@@ -0,0 +1,355 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import com.sigpwned.jsonification.JsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class NdjsonWriter implements AutoCloseable, Flushable {
+    /**
+     * When to force written records to storage
+     */
+    public static enum FsyncPolicy {
+        /**
+         * Never, leaving it to the operating system
+         */
+        NEVER,
+        
+        /**
+         * Once, when the writer is closed
+         */
+        ON_CLOSE,
+        
+        /**
+         * After every batch of records is written
+         */
+        EVERY_BATCH;
+    }
+    
+    /**
+     * Queued behind records by {@link NdjsonWriter#flush()}, which waits
+     * for the writer thread to reach it
+     */
+    private static class Marker {
+        public boolean reached;
+    }
+    
+    public static final int DEFAULT_BATCH_SIZE=256*1024;
+    
+    /**
+     * Set in {@link #appenders} once the writer starts closing
+     */
+    private static final int CLOSING=Integer.MIN_VALUE;
+    
+    private final FileChannel channel;
+    private final FsyncPolicy fsyncPolicy;
+    private final ByteBuffer batch;
+    
+    /**
+     * Serialized records, and flush markers, waiting for the writer thread.
+     * Producers append without locking, and only the writer thread takes.
+     */
+    private final ConcurrentLinkedQueue<Object> queue;
+    
+    /**
+     * Records larger than this are serialized into a buffer that is not kept
+     * for the thread's next record, so one huge record does not pin a huge
+     * buffer for the life of the thread
+     */
+    private static final int MAX_REUSED_SIZE=64*1024;
+    
+    /**
+     * Each thread's generator, which is reset and reused for its next record
+     */
+    private final ThreadLocal<Utf8JsonGenerator> generators;
+    
+    /**
+     * The number of producers currently appending to the queue, plus
+     * {@link #CLOSING} once the writer starts closing. Closing waits for
+     * appends in progress to finish, so the writer thread cannot stop with
+     * an accepted record still on its way into the queue.
+     */
+    private final AtomicInteger appenders;
+    
+    private final Thread writer;
+    private volatile long batches;
+    private volatile boolean waiting;
+    
+    /**
+     * Set once no more records can be queued, which tells the writer thread
+     * to stop when the queue is empty
+     */
+    private volatile boolean closed;
+    private volatile IOException failure;
+    
+    public NdjsonWriter(FileChannel channel) {
+        this(channel, FsyncPolicy.ON_CLOSE, DEFAULT_BATCH_SIZE);
+    }
+    
+    /**
+     * Starts a writer thread that appends records to the given channel,
+     * which this writer closes when it is closed.
+     * 
+     * @param batchSize The most bytes of records to write to the channel at
+     *            once. Records arriving together are written together, up
+     *            to this size.
+     */
+    public NdjsonWriter(FileChannel channel, FsyncPolicy fsyncPolicy, int batchSize) {
+        if(channel == null)
+            throw new NullPointerException();
+        if(fsyncPolicy == null)
+            throw new NullPointerException();
+        if(batchSize < 32)
+            throw new IllegalArgumentException("batchSize must be at least 32: "+batchSize);
+        this.channel = channel;
+        this.fsyncPolicy = fsyncPolicy;
+        this.batch = ByteBuffer.allocateDirect(batchSize);
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.appenders = new AtomicInteger();
+        this.generators = new ThreadLocal<Utf8JsonGenerator>() {
+            @Override
+            protected Utf8JsonGenerator initialValue() {
+                return Utf8JsonGenerator.inMemory(256);
+            }
+        };
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "ndjson-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+    
+    /**
+     * Serializes the given record on the calling thread and queues it to be
+     * appended as one line. Records from each thread are appended in the
+     * order they are written. This never blocks on other producers or on
+     * the file.
+     * 
+     * @throws IOException if the writer is closed or has failed
+     */
+    public void write(JsonValue record) throws IOException {
+        check();
+        
+        // Only the finished record is copied out of the thread's buffer
+        Utf8JsonGenerator g=generators.get();
+        byte[] bytes;
+        boolean reuse=false;
+        try {
+            g.reset();
+            g.value(record);
+            bytes = g.toByteArray();
+            reuse = bytes.length <= MAX_REUSED_SIZE;
+        }
+        finally {
+            if(!reuse)
+                generators.remove();
+        }
+        
+        append(bytes);
+        if(waiting)
+            LockSupport.unpark(writer);
+    }
+    
+    /**
+     * Waits until every record this thread wrote before this call has been
+     * appended to the channel, and forced to storage if the policy forces
+     * every batch
+     * 
+     * @throws IOException if the writer has failed
+     */
+    @Override
+    public void flush() throws IOException {
+        check();
+        Marker marker=new Marker();
+        append(marker);
+        LockSupport.unpark(writer);
+        synchronized(this) {
+            while(!marker.reached && failure==null && writer.isAlive()) {
+                try {
+                    wait();
+                }
+                catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while flushing", e);
+                }
+            }
+        }
+        if(failure != null)
+            throw new IOException("NDJSON writer failed", failure);
+    }
+    
+    /**
+     * Appends all queued records, forces them to storage unless the policy
+     * is {@link FsyncPolicy#NEVER}, and closes the channel
+     */
+    @Override
+    public void close() throws IOException {
+        int state;
+        do {
+            state = appenders.get();
+        } while(state>=0 && !appenders.compareAndSet(state, state|CLOSING));
+        if(state >= 0) {
+            // Appends take no time at all, so wait for any in progress
+            while(appenders.get() != CLOSING)
+                Thread.yield();
+            closed = true;
+            LockSupport.unpark(writer);
+            boolean interrupted=false;
+            while(writer.isAlive()) {
+                try {
+                    writer.join();
+                }
+                catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if(interrupted)
+                Thread.currentThread().interrupt();
+            try {
+                if(failure==null && fsyncPolicy!=FsyncPolicy.NEVER)
+                    channel.force(false);
+            }
+            finally {
+                channel.close();
+            }
+            if(failure != null)
+                throw new IOException("NDJSON writer failed", failure);
+        }
+    }
+    
+    /**
+     * @return the number of batches written to the channel so far
+     */
+    public long getBatches() {
+        return batches;
+    }
+    
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+    
+    private void check() throws IOException {
+        if(appenders.get() < 0)
+            throw new IOException("NDJSON writer is closed");
+        if(failure != null)
+            throw new IOException("NDJSON writer failed", failure);
+    }
+    
+    /**
+     * Queues the given item for the writer thread, unless the writer has
+     * started closing
+     * 
+     * @throws IOException if the writer has started closing
+     */
+    private void append(Object item) throws IOException {
+        int state;
+        do {
+            state = appenders.get();
+            if(state < 0)
+                throw new IOException("NDJSON writer is closed");
+        } while(!appenders.compareAndSet(state, state+1));
+        try {
+            queue.offer(item);
+        }
+        finally {
+            appenders.decrementAndGet();
+        }
+    }
+    
+    /**
+     * The writer thread's loop. Takes records as long as they are
+     * available, and writes them out in batches whenever the batch buffer
+     * fills or the queue runs dry.
+     */
+    private void drain() {
+        try {
+            boolean done=false;
+            while(!done) {
+                Object item=queue.poll();
+                if(item instanceof Marker) {
+                    writeBatch();
+                    synchronized(this) {
+                        ((Marker) item).reached = true;
+                        notifyAll();
+                    }
+                }
+                else
+                if(item != null) {
+                    byte[] record=(byte[]) item;
+                    if(record.length+1 > batch.remaining()) {
+                        writeBatch();
+                        if(record.length+1 > batch.capacity())
+                            writeFully(ByteBuffer.wrap(record));
+                    }
+                    if(record.length+1 <= batch.capacity())
+                        batch.put(record);
+                    batch.put((byte) '\n');
+                }
+                else
+                if(batch.position() != 0)
+                    writeBatch();
+                else
+                if(closed)
+                    done = queue.isEmpty();
+                else {
+                    waiting = true;
+                    if(queue.isEmpty() && !closed)
+                        LockSupport.park(this);
+                    waiting = false;
+                }
+            }
+            writeBatch();
+        }
+        catch(IOException e) {
+            failure = e;
+        }
+        finally {
+            synchronized(this) {
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Writes the batch buffer, if it is not empty, and forces it to storage
+     * if the policy says so
+     */
+    private void writeBatch() throws IOException {
+        if(batch.position() != 0) {
+            batch.flip();
+            writeFully(batch);
+            batch.clear();
+            if(fsyncPolicy == FsyncPolicy.EVERY_BATCH)
+                channel.force(false);
+            batches = batches+1;
+        }
+    }
+    
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+    }
+}
@@ -0,0 +1,344 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class NonBlockingJsonGenerator extends Utf8JsonGenerator {
+    public static interface Listener {
+        /**
+         * Called on the producing thread when output becomes ready to read,
+         * e.g., to register interest in writing with a selector
+         */
+        public void readable(NonBlockingJsonGenerator generator);
+        
+        /**
+         * Called with {@code false} on the producing thread when pending
+         * output reaches the high-water mark, and with {@code true} on the
+         * consuming thread when it drains to the low-water mark
+         */
+        public void writabilityChanged(NonBlockingJsonGenerator generator, boolean writable);
+    }
+    
+    public static final long DEFAULT_HIGH_WATER_MARK=64L*1024L;
+    
+    /**
+     * The most bytes the generator encodes before copying them into pooled
+     * buffers. Pooled buffers may be direct, so the generator cannot encode
+     * into them, but it need not hold a whole buffer's worth of its own.
+     */
+    private static final int STAGING_SIZE=512;
+    
+    /**
+     * The output side of the generator: filled buffers wait in a queue
+     * until the consumer takes them, and drained buffers go back to the
+     * pool. Listeners are called outside the lock.
+     */
+    private static class Ring extends OutputStream {
+        private final ByteBufferPool pool;
+        private final long highWaterMark;
+        private final long lowWaterMark;
+        private final ArrayDeque<ByteBuffer> ready;
+        private ByteBuffer current;
+        
+        /**
+         * The buffer being written to a channel outside the lock, if any
+         */
+        private ByteBuffer writing;
+        private long pending;
+        private boolean writable;
+        private boolean closed;
+        private NonBlockingJsonGenerator owner;
+        private volatile Listener listener;
+        
+        public Ring(ByteBufferPool pool, long highWaterMark, long lowWaterMark) {
+            if(highWaterMark <= 0L)
+                throw new IllegalArgumentException("highWaterMark must be positive: "+highWaterMark);
+            if(lowWaterMark<0L || lowWaterMark>highWaterMark)
+                throw new IllegalArgumentException("lowWaterMark must be between 0 and highWaterMark: "+lowWaterMark);
+            this.pool = pool;
+            this.highWaterMark = highWaterMark;
+            this.lowWaterMark = lowWaterMark;
+            this.ready = new ArrayDeque<>();
+            this.writable = true;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            boolean published=false;
+            boolean blocked=false;
+            synchronized(this) {
+                if(closed)
+                    throw new IOException("generator is closed");
+                while(len > 0) {
+                    if(current == null)
+                        current = pool.acquire();
+                    int count=Math.min(len, current.remaining());
+                    current.put(b, off, count);
+                    off = off+count;
+                    len = len-count;
+                    pending = pending+count;
+                    if(!current.hasRemaining()) {
+                        publish();
+                        published = true;
+                    }
+                }
+                if(writable && pending>=highWaterMark) {
+                    writable = false;
+                    blocked = true;
+                }
+                if(!writable && current!=null && current.position()!=0) {
+                    // Everything pending must be readable, or the consumer
+                    // could never drain to the low-water mark
+                    publish();
+                    published = true;
+                }
+            }
+            signal(published, blocked);
+        }
+        
+        /**
+         * Makes the partially filled buffer, if any, ready to read
+         */
+        @Override
+        public void flush() throws IOException {
+            boolean published=false;
+            synchronized(this) {
+                if(current!=null && current.position()!=0) {
+                    publish();
+                    published = true;
+                }
+            }
+            signal(published, false);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            flush();
+            synchronized(this) {
+                closed = true;
+                if(current != null) {
+                    pool.release(current);
+                    current = null;
+                }
+            }
+        }
+        
+        private void publish() {
+            current.flip();
+            ready.addLast(current);
+            current = null;
+        }
+        
+        public ByteBuffer poll() {
+            ByteBuffer result;
+            synchronized(this) {
+                result = ready.pollFirst();
+            }
+            if(result != null)
+                consumed(result.remaining());
+            return result;
+        }
+        
+        /**
+         * Writes ready buffers to the given channel. The channel is written
+         * outside the lock, so the producer never waits on it. A buffer the
+         * channel does not take all of goes back to the head of the queue.
+         */
+        public long writeTo(WritableByteChannel channel) throws IOException {
+            long result=0L;
+            boolean more=true;
+            while(more) {
+                ByteBuffer head;
+                synchronized(this) {
+                    head = ready.pollFirst();
+                    writing = head;
+                }
+                if(head == null)
+                    more = false;
+                else {
+                    try {
+                        result = result+channel.write(head);
+                    }
+                    finally {
+                        if(head.hasRemaining()) {
+                            synchronized(this) {
+                                ready.addFirst(head);
+                                writing = null;
+                            }
+                            more = false;
+                        }
+                        else {
+                            synchronized(this) {
+                                writing = null;
+                            }
+                            pool.release(head);
+                        }
+                    }
+                }
+            }
+            consumed(result);
+            return result;
+        }
+        
+        /**
+         * Accounts for drained output, and tells the listener if the
+         * producer may write again
+         */
+        private void consumed(long count) {
+            boolean unblocked=false;
+            synchronized(this) {
+                pending = pending-count;
+                if(!writable && pending<=lowWaterMark) {
+                    writable = true;
+                    unblocked = true;
+                }
+            }
+            Listener l=listener;
+            if(unblocked && l!=null)
+                l.writabilityChanged(owner, true);
+        }
+        
+        private void signal(boolean published, boolean blocked) {
+            Listener l=listener;
+            if(l != null) {
+                if(published)
+                    l.readable(owner);
+                if(blocked)
+                    l.writabilityChanged(owner, false);
+            }
+        }
+        
+        public synchronized long getPending() {
+            return pending;
+        }
+        
+        public synchronized boolean isWritable() {
+            return writable;
+        }
+        
+        public synchronized boolean isReadable() {
+            return !ready.isEmpty();
+        }
+        
+        public synchronized boolean isFinished() {
+            return closed && ready.isEmpty() && writing==null;
+        }
+    }
+    
+    private final Ring ring;
+    
+    public NonBlockingJsonGenerator(ByteBufferPool pool) {
+        this(pool, DEFAULT_HIGH_WATER_MARK, DEFAULT_HIGH_WATER_MARK/2L);
+    }
+    
+    /**
+     * @param pool The pool to take output buffers from
+     * @param highWaterMark The pending output, in bytes, at which the
+     *            generator stops being writable
+     * @param lowWaterMark The pending output, in bytes, at which the
+     *            generator becomes writable again
+     */
+    public NonBlockingJsonGenerator(ByteBufferPool pool, long highWaterMark, long lowWaterMark) {
+        this(new Ring(pool, highWaterMark, lowWaterMark));
+    }
+    
+    private NonBlockingJsonGenerator(Ring ring) {
+        super(ring, Math.min(ring.pool.getBufferSize(), STAGING_SIZE));
+        this.ring = ring;
+        this.ring.owner = this;
+    }
+    
+    public Listener getListener() {
+        return ring.listener;
+    }
+    
+    public void setListener(Listener listener) {
+        ring.listener = listener;
+    }
+    
+    /**
+     * Whether pending output is below the high-water mark, or has drained
+     * to the low-water mark since reaching it. Writing never blocks or
+     * fails because of pending output, so producers should check this
+     * between values and wait for
+     * {@link Listener#writabilityChanged(NonBlockingJsonGenerator, boolean)}
+     * when it is false.
+     */
+    public boolean isWritable() {
+        return ring.isWritable();
+    }
+    
+    /**
+     * @return the number of bytes written to buffers but not yet consumed.
+     *         A few hundred bytes of output are staged before they count.
+     */
+    public long getPendingBytes() {
+        return ring.getPending();
+    }
+    
+    /**
+     * @return whether any filled buffers are ready to read
+     */
+    public boolean isReadable() {
+        return ring.isReadable();
+    }
+    
+    /**
+     * @return whether this generator is closed and all its output has been
+     *         consumed
+     */
+    public boolean isFinished() {
+        return ring.isFinished();
+    }
+    
+    /**
+     * Removes and returns the next ready buffer, flipped for reading, or
+     * returns {@code null} if none is ready. Pass the buffer to
+     * {@link #release(ByteBuffer)} once it has been consumed.
+     */
+    public ByteBuffer poll() {
+        return ring.poll();
+    }
+    
+    /**
+     * Returns a buffer from {@link #poll()} to the pool
+     */
+    public void release(ByteBuffer buffer) {
+        ring.pool.release(buffer);
+    }
+    
+    /**
+     * Writes as much ready output to the given channel as it accepts
+     * without blocking, as from a selector loop. Drained buffers go back to
+     * the pool. The channel is written without holding up the producer.
+     * Only one thread should consume output at a time.
+     * 
+     * @return the number of bytes written
+     */
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        return ring.writeTo(channel);
+    }
+}
@@ -0,0 +1,352 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.sigpwned.jsonification.JsonError;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonArray;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ParallelJsonSerializer {
+    /**
+     * Containers with fewer members than this are written sequentially
+     */
+    public static final int DEFAULT_THRESHOLD=16384;
+    
+    /**
+     * How deep to look for large containers inside small ones
+     */
+    private static final int MAX_PLAN_DEPTH=4;
+    
+    private static final byte[] COMMA={ ',' };
+    
+    private static class DefaultPool {
+        public static final ForkJoinPool INSTANCE=new ForkJoinPool();
+    }
+    
+    /**
+     * Serializes a run of consecutive members of one container, without
+     * the container's brackets. The members are collected before the task
+     * is forked, so the task never reads the container itself. Some
+     * containers, like copy-on-write views, fill in caches as they are
+     * read, and are not safe to read from several threads at once. Each
+     * member is only read by the one task that writes it.
+     */
+    private class ChunkTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+        
+        /**
+         * The container's names in order, if it is an object
+         */
+        private final String[] names;
+        private final JsonValue[] values;
+        private final int from;
+        private final int to;
+        
+        public ChunkTask(String[] names, JsonValue[] values, int from, int to) {
+            this.names = names;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected byte[] compute() {
+            Utf8JsonGenerator g=Utf8JsonGenerator.inMemory(64*(to-from));
+            g.setNonFinitePolicy(getNonFinitePolicy());
+            try {
+                if(names == null) {
+                    g.openArray();
+                    for(int i=from;i<to;i++)
+                        g.value(values[i]);
+                    g.closeArray();
+                }
+                else {
+                    g.openObject();
+                    for(int i=from;i<to;i++)
+                        g.value(names[i], values[i]);
+                    g.closeObject();
+                }
+            }
+            catch(IOException e) {
+                // This should never happen since we're writing to memory
+                throw new JsonError(e);
+            }
+            
+            // Drop the brackets
+            byte[] bytes=g.toByteArray();
+            byte[] result=new byte[bytes.length-2];
+            System.arraycopy(bytes, 1, result, 0, result.length);
+            
+            return result;
+        }
+    }
+    
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private AbstractJsonGenerator.NonFinitePolicy nonFinitePolicy;
+    
+    public ParallelJsonSerializer() {
+        this(DefaultPool.INSTANCE, DEFAULT_THRESHOLD);
+    }
+    
+    /**
+     * @param pool The pool that serializes chunks
+     * @param threshold Containers with at least this many members are split
+     *            into chunks that are serialized in parallel
+     */
+    public ParallelJsonSerializer(ForkJoinPool pool, int threshold) {
+        if(pool == null)
+            throw new NullPointerException();
+        if(threshold <= 0)
+            throw new IllegalArgumentException("threshold must be positive: "+threshold);
+        this.pool = pool;
+        this.threshold = threshold;
+        this.nonFinitePolicy = AbstractJsonGenerator.NonFinitePolicy.FAIL;
+    }
+    
+    /**
+     * Serializes the given value as UTF-8 JSON. Large containers are split
+     * into chunks that are serialized on the pool, each into its own buffer.
+     * 
+     * @return the output, as buffers to be written in order
+     */
+    public List<ByteBuffer> serialize(JsonValue value) {
+        List<Object> pieces=new ArrayList<>();
+        ByteArrayOutputStream literal=new ByteArrayOutputStream();
+        Utf8JsonGenerator g=new Utf8JsonGenerator(literal);
+        g.setNonFinitePolicy(getNonFinitePolicy());
+        try {
+            plan(null, value, 0, pieces, literal, g);
+            g.flush();
+        }
+        catch(IOException e) {
+            // This should never happen since we're writing to memory
+            throw new JsonError(e);
+        }
+        cut(pieces, literal);
+        
+        List<ByteBuffer> result=new ArrayList<>(pieces.size());
+        for(Object piece : pieces) {
+            byte[] bytes;
+            if(piece instanceof ChunkTask)
+                bytes = ((ChunkTask) piece).join();
+            else
+                bytes = (byte[]) piece;
+            result.add(ByteBuffer.wrap(bytes));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return the given value serialized as UTF-8 JSON
+     */
+    public byte[] toByteArray(JsonValue value) {
+        List<ByteBuffer> buffers=serialize(value);
+        int length=0;
+        for(ByteBuffer buffer : buffers)
+            length = length+buffer.remaining();
+        byte[] result=new byte[length];
+        int offset=0;
+        for(ByteBuffer buffer : buffers) {
+            int n=buffer.remaining();
+            buffer.get(result, offset, n);
+            offset = offset+n;
+        }
+        return result;
+    }
+    
+    /**
+     * Writes the given value to the given stream as UTF-8 JSON
+     */
+    public void writeTo(JsonValue value, OutputStream output) throws IOException {
+        for(ByteBuffer buffer : serialize(value))
+            output.write(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
+    }
+    
+    /**
+     * Writes the given value to the given channel as UTF-8 JSON, using
+     * gathering writes
+     */
+    public void writeTo(JsonValue value, GatheringByteChannel output) throws IOException {
+        List<ByteBuffer> buffers=serialize(value);
+        ByteBuffer[] array=buffers.toArray(new ByteBuffer[buffers.size()]);
+        int offset=0;
+        while(offset < array.length) {
+            output.write(array, offset, array.length-offset);
+            while(offset<array.length && !array[offset].hasRemaining())
+                offset = offset+1;
+        }
+    }
+    
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+    
+    public int getThreshold() {
+        return threshold;
+    }
+    
+    public AbstractJsonGenerator.NonFinitePolicy getNonFinitePolicy() {
+        return nonFinitePolicy;
+    }
+    
+    public void setNonFinitePolicy(AbstractJsonGenerator.NonFinitePolicy nonFinitePolicy) {
+        if(nonFinitePolicy == null)
+            throw new NullPointerException();
+        this.nonFinitePolicy = nonFinitePolicy;
+    }
+    
+    /**
+     * Breaks the given value into pieces: byte arrays for output that is
+     * written here, and forked tasks for chunks of large containers. Small
+     * containers are only opened up, to a limited depth, if there is a
+     * large container inside them. Everything else is written here by the
+     * one given generator, which writes the current literal piece. The
+     * generator sees large containers as empty, and their chunks are cut in
+     * between its output.
+     */
+    private void plan(String name, JsonValue value, int depth, List<Object> pieces, ByteArrayOutputStream literal, Utf8JsonGenerator g) throws IOException {
+        JsonValue.Type type=value==null ? JsonValue.Type.NULL : value.getType();
+        
+        if(size(value) >= threshold) {
+            String[] names;
+            JsonValue[] values;
+            int size;
+            if(type == JsonValue.Type.ARRAY) {
+                names = null;
+                values = new JsonValue[value.asArray().size()];
+                size = 0;
+                for(JsonValue element : value.asArray()) {
+                    // Concurrent arrays can grow while we read them
+                    if(size == values.length)
+                        values = Arrays.copyOf(values, 2*size+1);
+                    values[size] = element;
+                    size = size+1;
+                }
+                g.openArray(name);
+            }
+            else {
+                names = new String[value.asObject().size()];
+                values = new JsonValue[names.length];
+                size = 0;
+                for(JsonObject.Entry entry : value.asObject().entries()) {
+                    // Concurrent objects can grow while we read them
+                    if(size == names.length) {
+                        names = Arrays.copyOf(names, 2*size+1);
+                        values = Arrays.copyOf(values, 2*size+1);
+                    }
+                    names[size] = entry.getName();
+                    values[size] = entry.getValue();
+                    size = size+1;
+                }
+                g.openObject(name);
+            }
+            g.flush();
+            
+            int chunk=Math.max(Math.max(threshold/4, size/(4*pool.getParallelism())), 1);
+            for(int from=0;from<size;from+=chunk) {
+                if(from != 0)
+                    literal.write(COMMA, 0, 1);
+                cut(pieces, literal);
+                ChunkTask task=new ChunkTask(names, values, from, Math.min(from+chunk, size));
+                pool.execute(task);
+                pieces.add(task);
+            }
+            
+            if(type == JsonValue.Type.ARRAY)
+                g.closeArray();
+            else
+                g.closeObject();
+        }
+        else
+        if(depth<MAX_PLAN_DEPTH && type==JsonValue.Type.ARRAY && containsLarge(value, MAX_PLAN_DEPTH-depth)) {
+            g.openArray(name);
+            for(JsonValue element : value.asArray())
+                plan(null, element, depth+1, pieces, literal, g);
+            g.closeArray();
+        }
+        else
+        if(depth<MAX_PLAN_DEPTH && type==JsonValue.Type.OBJECT && containsLarge(value, MAX_PLAN_DEPTH-depth)) {
+            g.openObject(name);
+            for(JsonObject.Entry entry : value.asObject().entries())
+                plan(entry.getName(), entry.getValue(), depth+1, pieces, literal, g);
+            g.closeObject();
+        }
+        else
+            g.value(name, value);
+    }
+    
+    /**
+     * @return {@code true} if the given container holds a container large
+     *         enough to split, looking the given number of levels down
+     */
+    private boolean containsLarge(JsonValue value, int levels) {
+        boolean result=false;
+        if(levels > 0) {
+            Iterable<JsonValue> children=value.getType()==JsonValue.Type.ARRAY ? value.asArray() : value.asObject().values();
+            for(JsonValue child : children) {
+                int size=size(child);
+                if(size>=threshold || (size!=0 && containsLarge(child, levels-1))) {
+                    result = true;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return the number of members of the given value if it is a container,
+     *         or 0 otherwise
+     */
+    private static int size(JsonValue value) {
+        int result;
+        if(value == null)
+            result = 0;
+        else
+        if(value.getType() == JsonValue.Type.ARRAY)
+            result = value.asArray().size();
+        else
+        if(value.getType() == JsonValue.Type.OBJECT)
+            result = value.asObject().size();
+        else
+            result = 0;
+        return result;
+    }
+    
+    /**
+     * Ends the current literal piece, if it has any output
+     */
+    private static void cut(List<Object> pieces, ByteArrayOutputStream literal) {
+        if(literal.size() != 0) {
+            pieces.add(literal.toByteArray());
+            literal.reset();
+        }
+    }
+}
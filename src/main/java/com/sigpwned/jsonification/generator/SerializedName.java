@@ -0,0 +1,78 @@
+package com.sigpwned.jsonification.generator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class SerializedName {
+    /**
+     * Returns the given field name with its serialized form computed once,
+     * so generators can write it with a single array copy. Keep instances
+     * for names that are written often, e.g., in static fields. Each
+     * encoding of the serialized form is only computed when a generator
+     * first needs it.
+     */
+    public static SerializedName of(String name) {
+        if(name == null)
+            throw new NullPointerException();
+        return new SerializedName(name);
+    }
+    
+    private final String name;
+    
+    /**
+     * The quoted, escaped name followed by a colon, or {@code null} if not
+     * computed yet
+     */
+    private volatile char[] chars;
+    
+    /**
+     * The UTF-8 encoding of {@link #chars}, or {@code null} if not computed
+     * yet
+     */
+    private volatile byte[] bytes;
+    
+    private SerializedName(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /* default */ char[] getChars() {
+        char[] result=chars;
+        if(result == null)
+            chars = result = quoted().toCharArray();
+        return result;
+    }
+    
+    /* default */ byte[] getBytes() {
+        byte[] result=bytes;
+        if(result == null)
+            bytes = result = quoted().getBytes(StandardCharsets.UTF_8);
+        return result;
+    }
+    
+    private String quoted() {
+        return JsonEscapes.quote(name)+":";
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
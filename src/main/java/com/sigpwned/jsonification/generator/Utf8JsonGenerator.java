@@ -0,0 +1,407 @@
+package com.sigpwned.jsonification.generator;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import com.sigpwned.jsonification.impl.RawJsonValue;
+import com.sigpwned.jsonification.impl.Utf8JsonString;
+import com.sigpwned.jsonification.value.scalar.JsonString;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class Utf8JsonGenerator extends AbstractJsonGenerator implements Flushable {
+    public static final int DEFAULT_BUFFER_SIZE=8192;
+    
+    private static final byte[] TRUE={ 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE={ 'f', 'a', 'l', 's', 'e' };
+    private static final byte[] NULL={ 'n', 'u', 'l', 'l' };
+    private static final byte[] LONG_MIN_VALUE=Long.toString(Long.MIN_VALUE).getBytes();
+    
+    /**
+     * Returns a generator that collects its output in memory instead of
+     * writing it anywhere. Retrieve the output with {@link #toByteArray()}.
+     * 
+     * @param expectedSize The expected output size in bytes, which need not
+     *            be exact
+     */
+    public static Utf8JsonGenerator inMemory(int expectedSize) {
+        return new Utf8JsonGenerator(null, Math.max(expectedSize, 32));
+    }
+    
+    /**
+     * The output, or null if this generator collects output in memory
+     */
+    private final OutputStream output;
+    private byte[] buffer;
+    private int length;
+    
+    /**
+     * Set when {@link #toByteArray()} hands out the buffer itself, so
+     * {@link #reset()} knows not to write over it
+     */
+    private boolean shared;
+    private final char[] chbuf;
+    
+    public Utf8JsonGenerator(OutputStream output) {
+        this(output, DEFAULT_BUFFER_SIZE);
+    }
+    
+    public Utf8JsonGenerator(WritableByteChannel output) {
+        this(Channels.newOutputStream(output));
+    }
+    
+    /**
+     * Writes to the given buffer starting at its position. If the buffer
+     * fills up, then a
+     * {@link com.sigpwned.jsonification.exception.GenerateJsonException} is
+     * thrown.
+     */
+    public Utf8JsonGenerator(ByteBuffer output) {
+        this(new ByteBufferOutputStream(output));
+    }
+    
+    /**
+     * @param bufferSize The size of the output buffer in bytes. Output is
+     *            written to the underlying stream in blocks of this size.
+     */
+    public Utf8JsonGenerator(OutputStream output, int bufferSize) {
+        if(bufferSize < 32)
+            throw new IllegalArgumentException("bufferSize must be at least 32: "+bufferSize);
+        this.output = output;
+        this.buffer = new byte[bufferSize];
+        this.length = 0;
+        this.chbuf = new char[Math.max(JsonEscapes.MAX_ESCAPE_LENGTH, JsonDoubles.MAX_LENGTH)];
+    }
+    
+    @Override
+    protected void doOpenObject(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append((byte) '{');
+    }
+
+    @Override
+    protected void doCloseObject(Scope scope) throws IOException {
+        append((byte) '}');
+    }
+
+    @Override
+    protected void doOpenArray(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append((byte) '[');
+    }
+
+    @Override
+    protected void doCloseArray(Scope scope) throws IOException {
+        append((byte) ']');
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, String value) throws IOException {
+        prolog(scope, name);
+        string(value);
+    }
+
+    /**
+     * Escape-free UTF-8 strings are copied byte for byte, without being
+     * decoded or encoded
+     */
+    @Override
+    protected void doValue(Scope scope, String name, JsonString value) throws IOException {
+        if(value instanceof Utf8JsonString && ((Utf8JsonString) value).isEscapeFree()) {
+            Utf8JsonString s=(Utf8JsonString) value;
+            prolog(scope, name);
+            append((byte) '"');
+            int n=s.getByteLength();
+            if(output!=null && n>buffer.length-length) {
+                flushBuffer();
+                if(n > buffer.length)
+                    s.writeTo(output);
+                else {
+                    s.getBytes(buffer, length);
+                    length = length+n;
+                }
+            }
+            else {
+                ensure(n);
+                s.getBytes(buffer, length);
+                length = length+n;
+            }
+            append((byte) '"');
+        }
+        else
+            super.doValue(scope, name, value);
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, long value) throws IOException {
+        prolog(scope, name);
+        if(value == Long.MIN_VALUE) {
+            // This is the one value we cannot negate
+            append(LONG_MIN_VALUE);
+        }
+        else {
+            ensure(20);
+            if(value < 0) {
+                buffer[length++] = '-';
+                value = -value;
+            }
+            int start=length;
+            do {
+                buffer[length++] = (byte) ('0'+(int) (value%10L));
+                value = value/10L;
+            } while(value != 0L);
+            for(int i=start, j=length-1;i<j;i++, j--) {
+                byte t=buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = t;
+            }
+        }
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, double value) throws IOException {
+        prolog(scope, name);
+        ascii(chbuf, JsonDoubles.write(value, chbuf, 0));
+    }
+
+    @Override
+    protected void doValue(Scope scope, String name, boolean value) throws IOException {
+        prolog(scope, name);
+        append(value ? TRUE : FALSE);
+    }
+
+    @Override
+    protected void doNil(Scope scope, String name) throws IOException {
+        prolog(scope, name);
+        append(NULL);
+    }
+    
+    @Override
+    protected void doRawValue(Scope scope, String name, RawJsonValue value) throws IOException {
+        prolog(scope, name);
+        if(value.isUtf8()) {
+            int n=value.getByteLength();
+            if(output!=null && n>buffer.length-length) {
+                flushBuffer();
+                if(n > buffer.length)
+                    value.writeTo(output);
+                else {
+                    value.getBytes(buffer, length);
+                    length = length+n;
+                }
+            }
+            else {
+                ensure(n);
+                value.getBytes(buffer, length);
+                length = length+n;
+            }
+        }
+        else {
+            String text=value.getText();
+            utf8(text, 0, text.length());
+        }
+    }
+    
+    private void prolog(Scope scope, String name) throws IOException {
+        if(scope.count != 0)
+            append((byte) ',');
+        if(name != null) {
+            SerializedName serialized=serializedName(name);
+            if(serialized != null)
+                append(serialized.getBytes());
+            else {
+                string(name);
+                append((byte) ':');
+            }
+        }
+    }
+    
+    /**
+     * Appends the given string, quoted and escaped exactly as
+     * {@link DefaultJsonGenerator} does, and encoded as UTF-8
+     */
+    private void string(String s) throws IOException {
+        append((byte) '"');
+        
+        int n=s.length();
+        int index=0;
+        while(index < n) {
+            int end=JsonEscapes.run(s, index);
+            if(end != index)
+                utf8(s, index, end);
+            if(end < n) {
+                ascii(chbuf, JsonEscapes.escape(s.charAt(end), chbuf, 0));
+                end = end+1;
+            }
+            index = end;
+        }
+        
+        append((byte) '"');
+    }
+    
+    /**
+     * Encodes the given chars as UTF-8. Runs of ASCII are copied in a tight
+     * loop. Unpaired surrogates are written as {@code ?}, as the JDK's UTF-8
+     * encoder does.
+     */
+    private void utf8(String s, int start, int end) throws IOException {
+        int i=start;
+        while(i < end) {
+            char ch=s.charAt(i);
+            if(ch < 0x80) {
+                ensure(1);
+                int limit=Math.min(end, i+buffer.length-length);
+                do {
+                    buffer[length++] = (byte) ch;
+                    i = i+1;
+                } while(i<limit && (ch=s.charAt(i))<0x80);
+            }
+            else {
+                ensure(4);
+                if(ch < 0x800) {
+                    buffer[length++] = (byte) (0xC0 | (ch >> 6));
+                    buffer[length++] = (byte) (0x80 | (ch & 0x3F));
+                }
+                else
+                if(Character.isHighSurrogate(ch) && i+1<end && Character.isLowSurrogate(s.charAt(i+1))) {
+                    int cp=Character.toCodePoint(ch, s.charAt(i+1));
+                    buffer[length++] = (byte) (0xF0 | (cp >> 18));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (cp & 0x3F));
+                    i = i+1;
+                }
+                else
+                if(Character.isSurrogate(ch))
+                    buffer[length++] = '?';
+                else {
+                    buffer[length++] = (byte) (0xE0 | (ch >> 12));
+                    buffer[length++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                    buffer[length++] = (byte) (0x80 | (ch & 0x3F));
+                }
+                i = i+1;
+            }
+        }
+    }
+    
+    /**
+     * Appends the given ASCII chars
+     */
+    private void ascii(char[] chars, int count) throws IOException {
+        ensure(count);
+        for(int i=0;i<count;i++)
+            buffer[length++] = (byte) chars[i];
+    }
+    
+    private void append(byte b) throws IOException {
+        ensure(1);
+        buffer[length++] = b;
+    }
+    
+    private void append(byte[] bytes) throws IOException {
+        for(int i=0;i<bytes.length;) {
+            ensure(1);
+            int count=Math.min(buffer.length-length, bytes.length-i);
+            System.arraycopy(bytes, i, buffer, length, count);
+            length = length+count;
+            i = i+count;
+        }
+    }
+    
+    /**
+     * Makes room for at least {@code count} more bytes, which must be no
+     * more than 32 unless collecting output in memory
+     */
+    private void ensure(int count) throws IOException {
+        if(length+count > buffer.length) {
+            if(output == null)
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length+(buffer.length >> 1), length+count));
+            else
+                flushBuffer();
+        }
+    }
+    
+    private void flushBuffer() throws IOException {
+        if(output!=null && length!=0) {
+            output.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+    
+    /**
+     * @return the output so far, if this generator collects output in memory
+     * 
+     * @throws IllegalStateException if this generator writes to a stream
+     */
+    public byte[] toByteArray() {
+        if(output != null)
+            throw new IllegalStateException("generator does not collect output in memory");
+        byte[] result;
+        if(length == buffer.length) {
+            shared = true;
+            result = buffer;
+        }
+        else
+            result = Arrays.copyOf(buffer, length);
+        return result;
+    }
+    
+    /**
+     * Discards the output so far, so that this generator can write another
+     * document into the same buffer. Only valid between documents, and only
+     * if this generator collects output in memory.
+     * 
+     * @throws IllegalStateException if this generator writes to a stream
+     */
+    public void reset() {
+        if(output != null)
+            throw new IllegalStateException("generator does not collect output in memory");
+        restart();
+        if(shared) {
+            buffer = new byte[buffer.length];
+            shared = false;
+        }
+        length = 0;
+    }
+    
+    /**
+     * Writes any buffered output to the underlying stream and flushes it
+     */
+    @Override
+    public void flush() throws IOException {
+        if(output != null) {
+            flushBuffer();
+            output.flush();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if(output != null) {
+            try {
+                flushBuffer();
+            }
+            finally {
+                output.close();
+            }
+        }
+    }
+}
@@ -46,6 +46,41 @@ import com.sigpwned.jsonification.value.ScalarJsonValue;
         throw new ClassCastJsonException(this, JsonValue.Type.SCALAR);
     }
     
+    /**
+     * @return {@code true} if the given value is a container whose contents,
+     *         and therefore hash code, can change over time
+     */
+    protected static boolean isMutable(JsonValue value) {
+        boolean result;
+        if(value == null)
+            result = false;
+        else
+        if(value instanceof AbstractJsonValue)
+            result = !((AbstractJsonValue) value).isImmutable();
+        else
+            result = value.getType()==JsonValue.Type.OBJECT || value.getType()==JsonValue.Type.ARRAY;
+        return result;
+    }
+    
+    /**
+     * @return {@code true} if this value can never change. Scalars are always
+     *         immutable, and container implementations that cannot change
+     *         should override this method.
+     */
+    protected boolean isImmutable() {
+        return getType()!=JsonValue.Type.OBJECT && getType()!=JsonValue.Type.ARRAY;
+    }
+    
+    /**
+     * @return an estimate of the heap retained by this value and its
+     *         children, as described by
+     *         {@link HeapSize#estimateRetainedSize(JsonValue)}. Implementations
+     *         should override this to model their own representation.
+     */
+    /* default */ long estimateRetainedSize() {
+        return HeapSize.estimateGeneric(this);
+    }
+    
     @Override
     public int hashCode() {
         return Json.hashCode(this);
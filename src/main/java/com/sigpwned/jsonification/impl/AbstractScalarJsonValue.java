@@ -41,6 +41,11 @@ import com.sigpwned.jsonification.value.scalar.JsonString;
         return value;
     }
     
+    @Override
+    /* default */ long estimateRetainedSize() {
+        return HeapSize.object(HeapSize.REFERENCE)+HeapSize.boxed(value);
+    }
+    
     @Override
     public ScalarJsonValue asScalar() {
         return this;
@@ -0,0 +1,191 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sigpwned.jsonification.JsonError;
+import com.sigpwned.jsonification.JsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ abstract class ArrayStorage {
+    public static enum Flavor {
+        GENERIC, LONG, DOUBLE, BOOLEAN;
+    }
+
+    /**
+     * The capacity used when no better estimate is available
+     */
+    public static final int DEFAULT_CAPACITY=10;
+
+    /**
+     * @return the most specific storage flavor that can hold the given value
+     */
+    public static ArrayStorage.Flavor flavorOf(JsonValue value) {
+        ArrayStorage.Flavor result;
+        if(value instanceof DefaultJsonNumber) {
+            Number n=((DefaultJsonNumber) value).getNumberValue();
+            if(n instanceof Long)
+                result = ArrayStorage.Flavor.LONG;
+            else
+            if(n instanceof Double)
+                result = ArrayStorage.Flavor.DOUBLE;
+            else
+                result = ArrayStorage.Flavor.GENERIC;
+        } else
+        if(value instanceof DefaultJsonBoolean)
+            result = ArrayStorage.Flavor.BOOLEAN;
+        else
+            result = ArrayStorage.Flavor.GENERIC;
+        return result;
+    }
+
+    public static ArrayStorage newStorage(ArrayStorage.Flavor flavor, int capacity) {
+        ArrayStorage result;
+        switch(flavor) {
+        case BOOLEAN:
+            result = new BooleanArrayStorage(capacity);
+            break;
+        case DOUBLE:
+            result = new DoubleArrayStorage(capacity);
+            break;
+        case GENERIC:
+            result = new GenericArrayStorage(capacity);
+            break;
+        case LONG:
+            result = new LongArrayStorage(capacity);
+            break;
+        default:
+            throw new JsonError("unrecognized array storage flavor: "+flavor);
+        }
+        return result;
+    }
+
+    /**
+     * @return a new capacity for a primitive array that needs to hold at
+     *         least {@code minimum} elements
+     */
+    protected static int grow(int capacity, int minimum) {
+        int result=capacity+(capacity >> 1)+1;
+        if(result < minimum)
+            result = minimum;
+        return result;
+    }
+
+    public abstract ArrayStorage.Flavor getFlavor();
+
+    public abstract int size();
+
+    public abstract JsonValue get(int index);
+
+    public abstract JsonValue set(int index, JsonValue value);
+
+    public abstract void add(JsonValue value);
+
+    public abstract void add(int index, JsonValue value);
+
+    public abstract JsonValue remove(int index);
+    
+    /**
+     * @return a new storage of the same flavor holding deep copies of this
+     *         storage's elements, with no spare capacity
+     */
+    public abstract ArrayStorage copy();
+
+    /**
+     * @return an estimate of the heap retained by this storage and its
+     *         elements
+     */
+    public abstract long estimateRetainedSize();
+
+    /**
+     * @return a storage of flavor {@link ArrayStorage.Flavor#GENERIC} holding
+     *         the same elements as this storage
+     */
+    public GenericArrayStorage toGeneric() {
+        int size=size();
+        GenericArrayStorage result=new GenericArrayStorage(grow(size, size));
+        for(int i=0;i<size;i++)
+            result.add(get(i));
+        return result;
+    }
+
+    /**
+     * @return the hash code of these elements, computed the same way as
+     *         {@link com.sigpwned.jsonification.Json#hashCode(JsonValue)}
+     */
+    public int hash() {
+        int size=size();
+        int result=0;
+        for(int i=0;i<size;i++)
+            result = 37*result + get(i).hashCode();
+        return result;
+    }
+
+    public long[] toLongArray() {
+        int size=size();
+        long[] result=new long[size];
+        for(int i=0;i<size;i++)
+            result[i] = get(i).asScalar().asNumber().longVal();
+        return result;
+    }
+
+    public double[] toDoubleArray() {
+        int size=size();
+        double[] result=new double[size];
+        for(int i=0;i<size;i++)
+            result[i] = get(i).asScalar().asNumber().doubleVal();
+        return result;
+    }
+
+    public boolean[] toBooleanArray() {
+        int size=size();
+        boolean[] result=new boolean[size];
+        for(int i=0;i<size;i++)
+            result[i] = get(i).asScalar().asBoolean().booleanVal();
+        return result;
+    }
+
+    public Iterator<JsonValue> iterator() {
+        return new Iterator<JsonValue>() {
+            private int index=0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public JsonValue next() {
+                if(index >= size())
+                    throw new NoSuchElementException();
+                JsonValue result=get(index);
+                index = index+1;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    protected void checkIndex(int index, int size) {
+        if(index<0 || index>=size)
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+    }
+}
@@ -0,0 +1,118 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Arrays;
+
+import com.sigpwned.jsonification.JsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ final class BooleanArrayStorage extends ArrayStorage {
+    private boolean[] values;
+    private int size;
+    
+    public BooleanArrayStorage(int capacity) {
+        this(new boolean[capacity], 0);
+    }
+    
+    private BooleanArrayStorage(boolean[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+    
+    @Override
+    public ArrayStorage.Flavor getFlavor() {
+        return ArrayStorage.Flavor.BOOLEAN;
+    }
+
+    @Override
+    public long estimateRetainedSize() {
+        return HeapSize.object(HeapSize.REFERENCE+4)+HeapSize.array(values.length, 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public JsonValue get(int index) {
+        checkIndex(index, size);
+        return DefaultJsonBoolean.valueOf(values[index]);
+    }
+    
+    public boolean getBoolean(int index) {
+        checkIndex(index, size);
+        return values[index];
+    }
+
+    @Override
+    public JsonValue set(int index, JsonValue value) {
+        checkIndex(index, size);
+        JsonValue result=DefaultJsonBoolean.valueOf(values[index]);
+        values[index] = value.asScalar().asBoolean().booleanVal();
+        return result;
+    }
+
+    @Override
+    public BooleanArrayStorage copy() {
+        return new BooleanArrayStorage(Arrays.copyOf(values, size), size);
+    }
+
+    @Override
+    public void add(JsonValue value) {
+        addBoolean(value.asScalar().asBoolean().booleanVal());
+    }
+    
+    public void addBoolean(boolean value) {
+        if(size == values.length)
+            values = Arrays.copyOf(values, grow(values.length, size+1));
+        values[size] = value;
+        size = size+1;
+    }
+
+    @Override
+    public void add(int index, JsonValue value) {
+        if(index<0 || index>size)
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+        if(size == values.length)
+            values = Arrays.copyOf(values, grow(values.length, size+1));
+        System.arraycopy(values, index, values, index+1, size-index);
+        values[index] = value.asScalar().asBoolean().booleanVal();
+        size = size+1;
+    }
+
+    @Override
+    public JsonValue remove(int index) {
+        checkIndex(index, size);
+        JsonValue result=DefaultJsonBoolean.valueOf(values[index]);
+        System.arraycopy(values, index+1, values, index, size-index-1);
+        size = size-1;
+        return result;
+    }
+    
+    @Override
+    public boolean[] toBooleanArray() {
+        return Arrays.copyOf(values, size);
+    }
+    
+    @Override
+    public int hash() {
+        int result=0;
+        for(int i=0;i<size;i++)
+            result = 37*result + (values[i] ? 1 : 0);
+        return result;
+    }
+}
@@ -0,0 +1,310 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.IndexOutOfBoundsJsonException;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class ConcurrentJsonArray extends AbstractJsonValue implements JsonArray {
+    /**
+     * A consistent view of the elements: the first {@code size} elements of
+     * {@code array}. Those elements are never modified once published, but
+     * appends may fill the unused slots after them in place.
+     */
+    private static final class Elements {
+        public final JsonValue[] array;
+        public final int size;
+        
+        public Elements(JsonValue[] array, int size) {
+            this.array = array;
+            this.size = size;
+        }
+    }
+    
+    private static final JsonValue[] EMPTY=new JsonValue[0];
+    
+    /**
+     * The current elements. Writers publish a new view while holding this
+     * array's monitor, so readers never block and always see a consistent
+     * snapshot. Appends fill spare capacity and republish the same array
+     * with a larger size, so building an array is amortized constant time
+     * per element; all other updates replace the array with a modified copy.
+     */
+    private volatile Elements elements;
+    
+    public ConcurrentJsonArray() {
+        this(0);
+    }
+    
+    public ConcurrentJsonArray(int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: "+capacity);
+        this.elements = new Elements(capacity==0 ? EMPTY : new JsonValue[capacity], 0);
+    }
+    
+    /**
+     * Sets the element at the given index to {@code update} only if its
+     * current value is the same instance as {@code expect}.
+     * 
+     * @return {@code true} if the element was updated, or {@code false}
+     *         otherwise
+     */
+    public synchronized boolean compareAndSet(int index, JsonValue expect, JsonValue update) {
+        if(update == null)
+            update = Json.NULL;
+        Elements es=elements;
+        checkIndex(es, index);
+        boolean result;
+        if(es.array[index] == expect) {
+            replace(es, index, update);
+            result = true;
+        }
+        else
+            result = false;
+        return result;
+    }
+    
+    @Override
+    public ConcurrentJsonArray asArray() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.ARRAY;
+    }
+
+    @Override
+    public Iterator<JsonValue> iterator() {
+        final Elements es=elements;
+        return new Iterator<JsonValue>() {
+            private int index=0;
+
+            @Override
+            public boolean hasNext() {
+                return index < es.size;
+            }
+
+            @Override
+            public JsonValue next() {
+                if(index >= es.size)
+                    throw new NoSuchElementException();
+                JsonValue result=es.array[index];
+                index = index+1;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public JsonValue get(int index) {
+        Elements es=elements;
+        checkIndex(es, index);
+        return es.array[index];
+    }
+
+    @Override
+    public synchronized JsonValue set(int index, JsonValue value) {
+        if(value == null)
+            value = Json.NULL;
+        Elements es=elements;
+        checkIndex(es, index);
+        JsonValue result=es.array[index];
+        replace(es, index, value);
+        return result;
+    }
+
+    @Override
+    public JsonValue set(int index, boolean value) {
+        return set(index, DefaultJsonBoolean.valueOf(value));
+    }
+
+    @Override
+    public JsonValue set(int index, long value) {
+        return set(index, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public JsonValue set(int index, double value) {
+        return set(index, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public JsonValue set(int index, String value) {
+        return set(index, DefaultJsonString.valueOf(value));
+    }
+
+    @Override
+    public synchronized ConcurrentJsonArray add(JsonValue value) {
+        if(value == null)
+            value = Json.NULL;
+        append(elements, value);
+        return this;
+    }
+
+    @Override
+    public ConcurrentJsonArray add(boolean value) {
+        return add(DefaultJsonBoolean.valueOf(value));
+    }
+
+    @Override
+    public ConcurrentJsonArray add(long value) {
+        return add(DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public ConcurrentJsonArray add(double value) {
+        return add(DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public ConcurrentJsonArray add(String value) {
+        return add(DefaultJsonString.valueOf(value));
+    }
+
+    @Override
+    public synchronized void add(int index, JsonValue value) {
+        if(value == null)
+            value = Json.NULL;
+        Elements es=elements;
+        if(index<0 || index>es.size)
+            throw new IndexOutOfBoundsJsonException(this, index);
+        if(index == es.size)
+            append(es, value);
+        else {
+            JsonValue[] copy=new JsonValue[capacity(es.size+1)];
+            System.arraycopy(es.array, 0, copy, 0, index);
+            copy[index] = value;
+            System.arraycopy(es.array, index, copy, index+1, es.size-index);
+            elements = new Elements(copy, es.size+1);
+        }
+    }
+
+    @Override
+    public void add(int index, boolean value) {
+        add(index, DefaultJsonBoolean.valueOf(value));
+    }
+
+    @Override
+    public void add(int index, long value) {
+        add(index, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public void add(int index, double value) {
+        add(index, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public void add(int index, String value) {
+        add(index, DefaultJsonString.valueOf(value));
+    }
+
+    @Override
+    public synchronized JsonValue remove(int index) {
+        Elements es=elements;
+        checkIndex(es, index);
+        JsonValue result=es.array[index];
+        JsonValue[] copy=new JsonValue[es.array.length];
+        System.arraycopy(es.array, 0, copy, 0, index);
+        System.arraycopy(es.array, index+1, copy, index, es.size-index-1);
+        elements = new Elements(copy, es.size-1);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return elements.size;
+    }
+    
+    @Override
+    /* default */ long estimateRetainedSize() {
+        Elements es=elements;
+        long result=HeapSize.object(HeapSize.REFERENCE)+HeapSize.object(HeapSize.REFERENCE+4)+HeapSize.array(es.array.length, HeapSize.REFERENCE);
+        for(int i=0;i<es.size;i++)
+            result = result+HeapSize.estimateRetainedSize(es.array[i]);
+        return result;
+    }
+
+    @Override
+    public long[] toLongArray() {
+        Elements es=elements;
+        long[] result=new long[es.size];
+        for(int i=0;i<es.size;i++)
+            result[i] = es.array[i].asScalar().asNumber().longVal();
+        return result;
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        Elements es=elements;
+        double[] result=new double[es.size];
+        for(int i=0;i<es.size;i++)
+            result[i] = es.array[i].asScalar().asNumber().doubleVal();
+        return result;
+    }
+
+    @Override
+    public boolean[] toBooleanArray() {
+        Elements es=elements;
+        boolean[] result=new boolean[es.size];
+        for(int i=0;i<es.size;i++)
+            result[i] = es.array[i].asScalar().asBoolean().booleanVal();
+        return result;
+    }
+    
+    /**
+     * Publishes the given elements with the given value appended, filling
+     * spare capacity in place. The slot at {@code es.size} is not visible to
+     * any published snapshot, since sizes only shrink by copying.
+     */
+    private void append(Elements es, JsonValue value) {
+        JsonValue[] array=es.array;
+        if(es.size == array.length)
+            array = Arrays.copyOf(array, capacity(es.size+1));
+        array[es.size] = value;
+        elements = new Elements(array, es.size+1);
+    }
+    
+    /**
+     * Publishes a copy of the given elements with the given index replaced
+     */
+    private void replace(Elements es, int index, JsonValue value) {
+        JsonValue[] copy=Arrays.copyOf(es.array, es.array.length);
+        copy[index] = value;
+        elements = new Elements(copy, es.size);
+    }
+    
+    private static int capacity(int size) {
+        return Math.max(size+(size >> 1), 4);
+    }
+    
+    private void checkIndex(Elements es, int index) {
+        if(index<0 || index>=es.size)
+            throw new IndexOutOfBoundsJsonException(this, index);
+    }
+}
@@ -0,0 +1,55 @@
+package com.sigpwned.jsonification.impl;
+
+import com.sigpwned.jsonification.value.JsonArray;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ConcurrentJsonFactory extends DefaultJsonFactory {
+    public ConcurrentJsonFactory() {
+        this(DefaultJsonObject.KeyOrder.UNORDERED);
+    }
+    
+    public ConcurrentJsonFactory(DefaultJsonObject.KeyOrder keyOrder) {
+        super(keyOrder);
+    }
+    
+    @Override
+    public JsonObject newObject() {
+        return new ConcurrentJsonObject(getKeyOrder());
+    }
+
+    /**
+     * A negative size means the size is not known
+     */
+    @Override
+    public JsonObject newObject(int expectedSize) {
+        return expectedSize<0 ? newObject() : new ConcurrentJsonObject(getKeyOrder(), expectedSize);
+    }
+
+    @Override
+    public JsonArray newArray() {
+        return new ConcurrentJsonArray();
+    }
+
+    /**
+     * A negative size means the size is not known
+     */
+    @Override
+    public JsonArray newArray(int expectedSize) {
+        return expectedSize<0 ? newArray() : new ConcurrentJsonArray(expectedSize);
+    }
+}
@@ -0,0 +1,433 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonError;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class ConcurrentJsonObject extends AbstractJsonValue implements JsonObject {
+    /**
+     * Computes a new value for a member from its current value
+     */
+    public static interface Update {
+        /**
+         * @param name The name of the member
+         * @param value The current value of the member, or {@code null} if
+         *            there is no such member
+         * @return The new value of the member, or {@code null} to remove it
+         */
+        public JsonValue apply(String name, JsonValue value);
+    }
+    
+    /**
+     * An immutable holder for one member's value. Updates swap slots, so slots
+     * are compared by identity when updating atomically, and never by value.
+     */
+    private static final class Slot {
+        public final long sequence;
+        public final JsonValue value;
+        
+        public Slot(long sequence, JsonValue value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+    
+    private final DefaultJsonObject.KeyOrder keyOrder;
+    private final ConcurrentMap<String,Slot> slots;
+    
+    /**
+     * The names of the members in insertion order, keyed by the sequence
+     * number of the slot that inserted them, or {@code null} unless the key
+     * order is {@link DefaultJsonObject.KeyOrder#INSERTION}.
+     */
+    private final ConcurrentSkipListMap<Long,String> order;
+    
+    private final AtomicLong sequence;
+    
+    public ConcurrentJsonObject() {
+        this(DefaultJsonObject.KeyOrder.UNORDERED);
+    }
+    
+    public ConcurrentJsonObject(DefaultJsonObject.KeyOrder keyOrder) {
+        this(keyOrder, DefaultJsonObject.DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * @param capacity The expected number of members. Alphabetical objects
+     *            are skip lists, which cannot be pre-sized, so they ignore it.
+     */
+    public ConcurrentJsonObject(DefaultJsonObject.KeyOrder keyOrder, int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: "+capacity);
+        this.keyOrder = keyOrder;
+        switch(keyOrder) {
+        case ALPHABETICAL:
+            this.slots = new ConcurrentSkipListMap<>();
+            this.order = null;
+            break;
+        case INSERTION:
+            this.slots = new ConcurrentHashMap<>(capacity);
+            this.order = new ConcurrentSkipListMap<>();
+            break;
+        case UNORDERED:
+            this.slots = new ConcurrentHashMap<>(capacity);
+            this.order = null;
+            break;
+        default:
+            throw new JsonError("unrecognized key order: "+keyOrder);
+        }
+        this.sequence = new AtomicLong();
+    }
+    
+    public DefaultJsonObject.KeyOrder getKeyOrder() {
+        return keyOrder;
+    }
+    
+    /**
+     * Sets the given member only if it does not exist already.
+     * 
+     * @return The existing value of the member, or {@code null} if the member
+     *         did not exist and was set
+     */
+    public JsonValue putIfAbsent(String name, JsonValue value) {
+        if(value == null)
+            value = Json.NULL;
+        Slot slot=insert(name, value);
+        return slot!=null ? slot.value : null;
+    }
+    
+    /**
+     * Sets the given member to {@code update} only if its current value is
+     * the same instance as {@code expect}.
+     * 
+     * @return {@code true} if the member was updated, or {@code false}
+     *         otherwise
+     */
+    public boolean replace(String name, JsonValue expect, JsonValue update) {
+        if(update == null)
+            update = Json.NULL;
+        Slot slot=slots.get(name);
+        return slot!=null && slot.value==expect && slots.replace(name, slot, new Slot(slot.sequence, update));
+    }
+    
+    /**
+     * Atomically replaces the value of the given member with the result of
+     * the given update. The update may be called more than once if other
+     * threads change the member concurrently, so it should not have side
+     * effects.
+     * 
+     * @return The new value of the member, or {@code null} if it was removed
+     */
+    public JsonValue compute(String name, ConcurrentJsonObject.Update update) {
+        JsonValue result;
+        for(;;) {
+            Slot slot=slots.get(name);
+            result = update.apply(name, slot!=null ? slot.value : null);
+            if(slot == null) {
+                if(result==null || insert(name, result)==null)
+                    break;
+            }
+            else
+            if(result == null) {
+                if(slots.remove(name, slot)) {
+                    removed(name, slot);
+                    break;
+                }
+            }
+            else
+            if(slots.replace(name, slot, new Slot(slot.sequence, result)))
+                break;
+        }
+        return result;
+    }
+    
+    @Override
+    public ConcurrentJsonObject asObject() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.OBJECT;
+    }
+
+    @Override
+    public JsonValue get(String name) {
+        Slot slot=slots.get(name);
+        return slot!=null ? slot.value : null;
+    }
+
+    @Override
+    public ConcurrentJsonObject set(String name, JsonValue value) {
+        if(value == null)
+            value = Json.NULL;
+        for(;;) {
+            Slot slot=insert(name, value);
+            if(slot==null || slots.replace(name, slot, new Slot(slot.sequence, value)))
+                break;
+        }
+        return this;
+    }
+    
+    @Override
+    public ConcurrentJsonObject set(String name, boolean value) {
+        return set(name, DefaultJsonBoolean.valueOf(value));
+    }
+
+    @Override
+    public ConcurrentJsonObject set(String name, long value) {
+        return set(name, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public ConcurrentJsonObject set(String name, double value) {
+        return set(name, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public ConcurrentJsonObject set(String name, String value) {
+        return set(name, DefaultJsonString.valueOf(value));
+    }
+
+    @Override
+    public boolean has(String name) {
+        return slots.containsKey(name);
+    }
+    
+    @Override
+    public JsonValue remove(String name) {
+        Slot slot=slots.remove(name);
+        if(slot != null)
+            removed(name, slot);
+        return slot!=null ? slot.value : null;
+    }
+
+    @Override
+    public Set<String> keys() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new MemberIterator<String>() {
+                    @Override
+                    protected String get(String name, JsonValue value) {
+                        return name;
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && has((String) o);
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentJsonObject.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<JsonValue> values() {
+        return new AbstractCollection<JsonValue>() {
+            @Override
+            public Iterator<JsonValue> iterator() {
+                return new MemberIterator<JsonValue>() {
+                    @Override
+                    protected JsonValue get(String name, JsonValue value) {
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ConcurrentJsonObject.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Iterable<JsonObject.Entry> entries() {
+        return new Iterable<JsonObject.Entry>() {
+            public Iterator<JsonObject.Entry> iterator() {
+                return new MemberIterator<JsonObject.Entry>() {
+                    @Override
+                    protected JsonObject.Entry get(final String name, final JsonValue value) {
+                        return new JsonObject.Entry() {
+                            @Override
+                            public String getName() {
+                                return name;
+                            }
+
+                            @Override
+                            public JsonValue getValue() {
+                                return value;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public boolean forEach(JsonObject.EntryVisitor visitor) {
+        boolean result=true;
+        if(order == null) {
+            for(Map.Entry<String,Slot> e : slots.entrySet())
+                if(!visitor.visit(e.getKey(), e.getValue().value)) {
+                    result = false;
+                    break;
+                }
+        }
+        else {
+            for(Map.Entry<Long,String> e : order.entrySet()) {
+                Slot slot=slots.get(e.getValue());
+                if(slot!=null && slot.sequence==e.getKey().longValue() && !visitor.visit(e.getValue(), slot.value)) {
+                    result = false;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return slots.size();
+    }
+    
+    /**
+     * Each member costs a map node and a slot, plus a skip list node and a
+     * boxed sequence number when keeping insertion order
+     */
+    @Override
+    /* default */ long estimateRetainedSize() {
+        int size=slots.size();
+        long slot=HeapSize.object(8+HeapSize.REFERENCE);
+        long result=HeapSize.object(4*HeapSize.REFERENCE)+HeapSize.object(8);
+        if(keyOrder == DefaultJsonObject.KeyOrder.ALPHABETICAL)
+            result = result+HeapSize.CONCURRENT_SKIP_LIST_MAP+size*(HeapSize.CONCURRENT_SKIP_LIST_MAP_NODE+slot);
+        else
+            result = result+HeapSize.hashMap(HeapSize.CONCURRENT_HASH_MAP, size, HeapSize.HASH_MAP_NODE)+size*slot;
+        if(order != null)
+            result = result+HeapSize.CONCURRENT_SKIP_LIST_MAP+size*(HeapSize.CONCURRENT_SKIP_LIST_MAP_NODE+HeapSize.object(8));
+        return result+HeapSize.members(this, true);
+    }
+    
+    /**
+     * Adds the given member if it does not exist already.
+     * 
+     * @return the member's existing slot, or {@code null} if it was added
+     */
+    private Slot insert(String name, JsonValue value) {
+        Slot slot=new Slot(sequence.incrementAndGet(), value);
+        Slot result=slots.putIfAbsent(name, slot);
+        if(result==null && order!=null) {
+            order.put(slot.sequence, name);
+            
+            // If the member was removed before we recorded its order, then the
+            // remover could not clean up after it, so we have to.
+            Slot current=slots.get(name);
+            if(current==null || current.sequence!=slot.sequence)
+                order.remove(slot.sequence, name);
+        }
+        return result;
+    }
+    
+    private void removed(String name, Slot slot) {
+        if(order != null)
+            order.remove(slot.sequence, name);
+    }
+    
+    /**
+     * Iterates over a weakly-consistent view of this object's members, like
+     * the iterators of the underlying concurrent maps
+     */
+    private abstract class MemberIterator<T> implements Iterator<T> {
+        private final Iterator<Map.Entry<String,Slot>> unordered;
+        private final Iterator<Map.Entry<Long,String>> ordered;
+        private String name;
+        private JsonValue value;
+        
+        public MemberIterator() {
+            this.unordered = order==null ? slots.entrySet().iterator() : null;
+            this.ordered = order!=null ? order.entrySet().iterator() : null;
+            advance();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return name != null;
+        }
+
+        @Override
+        public T next() {
+            if(name == null)
+                throw new NoSuchElementException();
+            T result=get(name, value);
+            advance();
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        protected abstract T get(String name, JsonValue value);
+        
+        private void advance() {
+            name = null;
+            value = null;
+            if(unordered != null) {
+                if(unordered.hasNext()) {
+                    Map.Entry<String,Slot> e=unordered.next();
+                    name = e.getKey();
+                    value = e.getValue().value;
+                }
+            }
+            else {
+                // Skip members that were removed or replaced by a later
+                // insertion since we started
+                while(name==null && ordered.hasNext()) {
+                    Map.Entry<Long,String> e=ordered.next();
+                    Slot slot=slots.get(e.getValue());
+                    if(slot!=null && slot.sequence==e.getKey().longValue()) {
+                        name = e.getValue();
+                        value = slot.value;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.IndexOutOfBoundsJsonException;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class CopyOnWriteJsonArray extends AbstractJsonValue implements JsonArray {
+    private final JsonArray source;
+    
+    /**
+     * Our own copy of this level of the tree, or {@code null} if we have not
+     * been written to yet. Nested containers are copy-on-write views, too.
+     */
+    private DefaultJsonArray values;
+    
+    /**
+     * The views we have handed out for nested containers before we made our
+     * own copy, so that changes made through them are not lost.
+     */
+    private JsonValue[] views;
+    
+    /**
+     * Creates a view of the given array that reads through to it until it is
+     * modified. The source array must not be modified while the view is in
+     * use.
+     */
+    public CopyOnWriteJsonArray(JsonArray source) {
+        if(source == null)
+            throw new NullPointerException();
+        this.source = source;
+    }
+    
+    /**
+     * @return {@code true} if this view has made its own copy of its
+     *         contents, or {@code false} if it still reads through to its
+     *         source
+     */
+    public boolean isCopied() {
+        return values != null;
+    }
+    
+    @Override
+    public CopyOnWriteJsonArray asArray() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.ARRAY;
+    }
+
+    @Override
+    public Iterator<JsonValue> iterator() {
+        Iterator<JsonValue> result;
+        if(values != null)
+            result = values.iterator();
+        else {
+            result = new Iterator<JsonValue>() {
+                private int index=0;
+                
+                @Override
+                public boolean hasNext() {
+                    return index < size();
+                }
+
+                @Override
+                public JsonValue next() {
+                    if(index >= size())
+                        throw new NoSuchElementException();
+                    JsonValue result=get(index);
+                    index = index+1;
+                    return result;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+        return result;
+    }
+
+    @Override
+    public JsonValue get(int index) {
+        JsonValue result;
+        if(values != null)
+            result = values.get(index);
+        else {
+            try {
+                result = view(index, source.get(index));
+            }
+            catch(IndexOutOfBoundsJsonException e) {
+                throw new IndexOutOfBoundsJsonException(this, index);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public JsonValue set(int index, JsonValue value) {
+        return copied().set(index, value);
+    }
+
+    @Override
+    public JsonValue set(int index, boolean value) {
+        return copied().set(index, value);
+    }
+
+    @Override
+    public JsonValue set(int index, long value) {
+        return copied().set(index, value);
+    }
+
+    @Override
+    public JsonValue set(int index, double value) {
+        return copied().set(index, value);
+    }
+
+    @Override
+    public JsonValue set(int index, String value) {
+        return copied().set(index, value);
+    }
+
+    @Override
+    public CopyOnWriteJsonArray add(JsonValue value) {
+        copied().add(value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonArray add(boolean value) {
+        copied().add(value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonArray add(long value) {
+        copied().add(value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonArray add(double value) {
+        copied().add(value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonArray add(String value) {
+        copied().add(value);
+        return this;
+    }
+
+    @Override
+    public void add(int index, JsonValue value) {
+        copied().add(index, value);
+    }
+
+    @Override
+    public void add(int index, boolean value) {
+        copied().add(index, value);
+    }
+
+    @Override
+    public void add(int index, long value) {
+        copied().add(index, value);
+    }
+
+    @Override
+    public void add(int index, double value) {
+        copied().add(index, value);
+    }
+
+    @Override
+    public void add(int index, String value) {
+        copied().add(index, value);
+    }
+
+    @Override
+    public JsonValue remove(int index) {
+        return copied().remove(index);
+    }
+
+    @Override
+    public int size() {
+        return values!=null ? values.size() : source.size();
+    }
+    
+    /**
+     * Our source is shared with whoever else can see it, so only our own copy
+     * and the views we have handed out are counted
+     */
+    @Override
+    /* default */ long estimateRetainedSize() {
+        long result=HeapSize.object(3*HeapSize.REFERENCE);
+        if(values != null)
+            result = result+values.estimateRetainedSize();
+        else
+        if(views != null) {
+            result = result+HeapSize.array(views.length, HeapSize.REFERENCE);
+            for(JsonValue view : views)
+                if(view != null)
+                    result = result+HeapSize.estimateRetainedSize(view);
+        }
+        return result;
+    }
+
+    @Override
+    public long[] toLongArray() {
+        return values!=null ? values.toLongArray() : source.toLongArray();
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        return values!=null ? values.toDoubleArray() : source.toDoubleArray();
+    }
+
+    @Override
+    public boolean[] toBooleanArray() {
+        return values!=null ? values.toBooleanArray() : source.toBooleanArray();
+    }
+    
+    /**
+     * @return the copy-on-write view to hand out for the given value from our
+     *         source, which is the value itself if it is a scalar
+     */
+    private JsonValue view(int index, JsonValue value) {
+        JsonValue result;
+        switch(value.getType()) {
+        case ARRAY:
+        case OBJECT:
+            if(views == null)
+                views = new JsonValue[source.size()];
+            result = views[index];
+            if(result == null) {
+                result = Json.copyOnWrite(value);
+                views[index] = result;
+            }
+            break;
+        default:
+            result = value;
+            break;
+        }
+        return result;
+    }
+    
+    /**
+     * Makes our own shallow copy of our source, if we have not already.
+     * Nested containers are not copied until they are modified themselves.
+     */
+    private DefaultJsonArray copied() {
+        if(values == null) {
+            int size=source.size();
+            DefaultJsonArray copy=new DefaultJsonArray(size);
+            for(int i=0;i<size;i++)
+                copy.add(view(i, source.get(i)));
+            values = copy;
+            views = null;
+        }
+        return values;
+    }
+}
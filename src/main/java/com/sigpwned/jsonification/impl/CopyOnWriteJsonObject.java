@@ -0,0 +1,295 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class CopyOnWriteJsonObject extends AbstractJsonValue implements JsonObject {
+    private final JsonObject source;
+    
+    /**
+     * Our own copy of this level of the tree, or {@code null} if we have not
+     * been written to yet. Nested containers are copy-on-write views, too.
+     */
+    private DefaultJsonObject values;
+    
+    /**
+     * The views we have handed out for nested containers before we made our
+     * own copy, so that changes made through them are not lost.
+     */
+    private Map<String,JsonValue> views;
+    
+    /**
+     * Creates a view of the given object that reads through to it until it is
+     * modified. The source object must not be modified while the view is in
+     * use.
+     */
+    public CopyOnWriteJsonObject(JsonObject source) {
+        if(source == null)
+            throw new NullPointerException();
+        this.source = source;
+    }
+    
+    /**
+     * @return {@code true} if this view has made its own copy of its
+     *         contents, or {@code false} if it still reads through to its
+     *         source
+     */
+    public boolean isCopied() {
+        return values != null;
+    }
+    
+    @Override
+    public CopyOnWriteJsonObject asObject() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.OBJECT;
+    }
+
+    @Override
+    public JsonValue get(String name) {
+        JsonValue result;
+        if(values != null)
+            result = values.get(name);
+        else {
+            result = source.get(name);
+            if(result != null)
+                result = view(name, result);
+        }
+        return result;
+    }
+
+    @Override
+    public CopyOnWriteJsonObject set(String name, JsonValue value) {
+        copied().set(name, value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonObject set(String name, boolean value) {
+        copied().set(name, value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonObject set(String name, long value) {
+        copied().set(name, value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonObject set(String name, double value) {
+        copied().set(name, value);
+        return this;
+    }
+
+    @Override
+    public CopyOnWriteJsonObject set(String name, String value) {
+        copied().set(name, value);
+        return this;
+    }
+
+    @Override
+    public boolean has(String name) {
+        return values!=null ? values.has(name) : source.has(name);
+    }
+
+    @Override
+    public JsonValue remove(String name) {
+        return copied().remove(name);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return values!=null ? values.keys() : source.keys();
+    }
+
+    @Override
+    public Collection<JsonValue> values() {
+        Collection<JsonValue> result;
+        if(values != null)
+            result = values.values();
+        else {
+            result = new AbstractCollection<JsonValue>() {
+                @Override
+                public Iterator<JsonValue> iterator() {
+                    final Iterator<JsonObject.Entry> iterator=entries().iterator();
+                    return new Iterator<JsonValue>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public JsonValue next() {
+                            return iterator.next().getValue();
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return source.size();
+                }
+            };
+        }
+        return result;
+    }
+
+    @Override
+    public Iterable<JsonObject.Entry> entries() {
+        Iterable<JsonObject.Entry> result;
+        if(values != null)
+            result = values.entries();
+        else {
+            result = new Iterable<JsonObject.Entry>() {
+                public Iterator<JsonObject.Entry> iterator() {
+                    final Iterator<JsonObject.Entry> iterator=source.entries().iterator();
+                    return new Iterator<JsonObject.Entry>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public JsonObject.Entry next() {
+                            JsonObject.Entry e=iterator.next();
+                            final String name=e.getName();
+                            final JsonValue value=view(name, e.getValue());
+                            return new JsonObject.Entry() {
+                                @Override
+                                public String getName() {
+                                    return name;
+                                }
+
+                                @Override
+                                public JsonValue getValue() {
+                                    return value;
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+        return result;
+    }
+
+    @Override
+    public boolean forEach(final JsonObject.EntryVisitor visitor) {
+        boolean result;
+        if(values != null)
+            result = values.forEach(visitor);
+        else {
+            result = source.forEach(new JsonObject.EntryVisitor() {
+                @Override
+                public boolean visit(String name, JsonValue value) {
+                    return visitor.visit(name, view(name, value));
+                }
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return values!=null ? values.size() : source.size();
+    }
+    
+    /**
+     * Our source is shared with whoever else can see it, so only our own copy
+     * and the views we have handed out are counted
+     */
+    @Override
+    /* default */ long estimateRetainedSize() {
+        long result=HeapSize.object(3*HeapSize.REFERENCE);
+        if(values != null)
+            result = result+values.estimateRetainedSize();
+        else
+        if(views != null) {
+            result = result+HeapSize.hashMap(HeapSize.HASH_MAP, views.size(), HeapSize.HASH_MAP_NODE);
+            for(JsonValue view : views.values())
+                result = result+HeapSize.estimateRetainedSize(view);
+        }
+        return result;
+    }
+    
+    /**
+     * @return the copy-on-write view to hand out for the given value from our
+     *         source, which is the value itself if it is a scalar
+     */
+    private JsonValue view(String name, JsonValue value) {
+        JsonValue result;
+        switch(value.getType()) {
+        case ARRAY:
+        case OBJECT:
+            if(views == null)
+                views = new HashMap<>();
+            result = views.get(name);
+            if(result == null) {
+                result = Json.copyOnWrite(value);
+                views.put(name, result);
+            }
+            break;
+        default:
+            result = value;
+            break;
+        }
+        return result;
+    }
+    
+    /**
+     * Makes our own shallow copy of our source, if we have not already.
+     * Nested containers are not copied until they are modified themselves.
+     */
+    private DefaultJsonObject copied() {
+        if(values == null) {
+            final DefaultJsonObject copy=new DefaultJsonObject(DefaultJsonObject.KeyOrder.INSERTION, source.size());
+            source.forEach(new JsonObject.EntryVisitor() {
+                @Override
+                public boolean visit(String name, JsonValue value) {
+                    copy.set(name, view(name, value));
+                    return true;
+                }
+            });
+            values = copy;
+            views = null;
+        }
+        return values;
+    }
+}
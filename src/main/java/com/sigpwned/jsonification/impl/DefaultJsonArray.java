@@ -1,9 +1,6 @@
 package com.sigpwned.jsonification.impl;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 
 import com.sigpwned.jsonification.Json;
 import com.sigpwned.jsonification.JsonValue;
@@ -26,16 +23,46 @@ import com.sigpwned.jsonification.value.JsonArray;
  * limitations under the License.
  */
 public final class DefaultJsonArray extends AbstractJsonValue implements JsonArray {
-    private final List<JsonValue> values;
+    private final int capacity;
+    private ArrayStorage storage;
+    
+    /**
+     * The number of elements in this array that are mutable containers. We
+     * can only cache our hash code when there are none, since we are not told
+     * when nested values change.
+     */
+    private int mutables;
+    
+    /**
+     * Cached hash code, or 0 if not computed
+     */
+    private int hash;
     
     public DefaultJsonArray() {
-        this(new ArrayList<JsonValue>());
+        this(ArrayStorage.DEFAULT_CAPACITY);
+    }
+    
+    public DefaultJsonArray(int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: "+capacity);
+        this.capacity = capacity;
+        this.storage = new GenericArrayStorage(capacity);
+    }
+    
+    private DefaultJsonArray(ArrayStorage storage, int mutables, int hash) {
+        this.capacity = storage.size();
+        this.storage = storage;
+        this.mutables = mutables;
+        this.hash = hash;
     }
     
-    private DefaultJsonArray(List<JsonValue> values) {
-        if(values == null)
-            throw new NullPointerException();
-        this.values = values;
+    /**
+     * @return a deep copy of this array with the same representation.
+     *         Containers are copied, and scalars are shared since they are
+     *         immutable.
+     */
+    public DefaultJsonArray copy() {
+        return new DefaultJsonArray(storage.copy(), mutables, hash);
     }
     
     @Override
@@ -50,14 +77,14 @@ public final class DefaultJsonArray extends AbstractJsonValue implements JsonArr
 
     @Override
     public Iterator<JsonValue> iterator() {
-        return Collections.unmodifiableList(values).iterator();
+        return storage.iterator();
     }
 
     @Override
     public JsonValue get(int index) {
         JsonValue result;
         try {
-            result = values.get(index);
+            result = storage.get(index);
         }
         catch(IndexOutOfBoundsException e) {
             throw new IndexOutOfBoundsJsonException(this, index);
@@ -67,13 +94,12 @@ public final class DefaultJsonArray extends AbstractJsonValue implements JsonArr
 
     @Override
     public JsonValue set(int index, JsonValue value) {
-        JsonValue result;
-        try {
-            result = values.set(index, value!=null ? value : Json.NULL);
-        }
-        catch(IndexOutOfBoundsException e) {
+        if(index<0 || index>=size())
             throw new IndexOutOfBoundsJsonException(this, index);
-        }
+        if(value == null)
+            value = Json.NULL;
+        JsonValue result=storage(value).set(index, value);
+        changed(result, value);
         return result;
     }
 
@@ -99,23 +125,44 @@ public final class DefaultJsonArray extends AbstractJsonValue implements JsonArr
     
     @Override
     public DefaultJsonArray add(JsonValue value) {
-        values.add(value!=null ? value : Json.NULL);
+        if(value == null)
+            value = Json.NULL;
+        storage(value).add(value);
+        changed(null, value);
         return this;
     }
 
     @Override
     public DefaultJsonArray add(boolean value) {
-        return add(DefaultJsonBoolean.valueOf(value));
+        if(storage.getFlavor() == ArrayStorage.Flavor.BOOLEAN) {
+            ((BooleanArrayStorage) storage).addBoolean(value);
+            hash = 0;
+        }
+        else
+            add(DefaultJsonBoolean.valueOf(value));
+        return this;
     }
 
     @Override
     public DefaultJsonArray add(long value) {
-        return add(DefaultJsonNumber.valueOf(value));
+        if(storage.getFlavor() == ArrayStorage.Flavor.LONG) {
+            ((LongArrayStorage) storage).addLong(value);
+            hash = 0;
+        }
+        else
+            add(DefaultJsonNumber.valueOf(value));
+        return this;
     }
 
     @Override
     public DefaultJsonArray add(double value) {
-        return add(DefaultJsonNumber.valueOf(value));
+        if(storage.getFlavor() == ArrayStorage.Flavor.DOUBLE) {
+            ((DoubleArrayStorage) storage).addDouble(value);
+            hash = 0;
+        }
+        else
+            add(DefaultJsonNumber.valueOf(value));
+        return this;
     }
 
     @Override
@@ -125,7 +172,12 @@ public final class DefaultJsonArray extends AbstractJsonValue implements JsonArr
 
     @Override
     public void add(int index, JsonValue value) {
-        values.add(index, value!=null ? value : Json.NULL);
+        if(index<0 || index>size())
+            throw new IndexOutOfBoundsJsonException(this, index);
+        if(value == null)
+            value = Json.NULL;
+        storage(value).add(index, value);
+        changed(null, value);
     }
 
     @Override
@@ -152,16 +204,76 @@ public final class DefaultJsonArray extends AbstractJsonValue implements JsonArr
     public JsonValue remove(int index) {
         JsonValue result;
         try {
-            result = values.remove(index);
+            result = storage.remove(index);
         }
         catch(IndexOutOfBoundsException e) {
             throw new IndexOutOfBoundsJsonException(this, index);
         }
+        changed(result, null);
         return result;
     }
 
     @Override
     public int size() {
-        return values.size();
+        return storage.size();
+    }
+    
+    @Override
+    public long[] toLongArray() {
+        return storage.toLongArray();
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        return storage.toDoubleArray();
+    }
+
+    @Override
+    public boolean[] toBooleanArray() {
+        return storage.toBooleanArray();
+    }
+    
+    @Override
+    /* default */ long estimateRetainedSize() {
+        return HeapSize.object(3*4+HeapSize.REFERENCE)+storage.estimateRetainedSize();
+    }
+    
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0) {
+            result = storage.hash();
+            if(mutables == 0)
+                hash = result;
+        }
+        return result;
+    }
+    
+    private void changed(JsonValue removed, JsonValue added) {
+        if(isMutable(removed))
+            mutables = mutables-1;
+        if(isMutable(added))
+            mutables = mutables+1;
+        hash = 0;
+    }
+    
+    /**
+     * Returns a storage that can hold the given value, switching
+     * representations if required. Empty arrays take on the most specific
+     * representation for their next value, and a primitive representation
+     * is upgraded to a generic one the first time it receives a value of
+     * some other kind. Arrays never move back from generic to primitive
+     * storage while they hold elements.
+     */
+    private ArrayStorage storage(JsonValue value) {
+        ArrayStorage.Flavor flavor=ArrayStorage.flavorOf(value);
+        if(storage.getFlavor() != flavor) {
+            if(storage.size() == 0)
+                storage = ArrayStorage.newStorage(flavor, capacity);
+            else
+            if(storage.getFlavor() != ArrayStorage.Flavor.GENERIC)
+                storage = storage.toGeneric();
+        }
+        return storage;
     }
 }
@@ -36,6 +36,14 @@ public final class DefaultJsonBoolean extends AbstractScalarJsonValue implements
         super(value);
     }
     
+    /**
+     * There are only two instances, shared by everyone
+     */
+    @Override
+    /* default */ long estimateRetainedSize() {
+        return 0L;
+    }
+    
     @Override
     public JsonBoolean asBoolean() {
         return this;
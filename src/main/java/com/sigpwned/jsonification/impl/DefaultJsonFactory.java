@@ -1,8 +1,11 @@
 package com.sigpwned.jsonification.impl;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 import com.sigpwned.jsonification.JsonEventParser;
 import com.sigpwned.jsonification.JsonFactory;
@@ -11,8 +14,10 @@ import com.sigpwned.jsonification.JsonParser;
 import com.sigpwned.jsonification.JsonTreeGenerator;
 import com.sigpwned.jsonification.JsonTreeParser;
 import com.sigpwned.jsonification.JsonValue;
-import com.sigpwned.jsonification.generator.DefaultJsonGenerator;
+import com.sigpwned.jsonification.generator.AbstractJsonGenerator;
+import com.sigpwned.jsonification.generator.BufferedJsonGenerator;
 import com.sigpwned.jsonification.generator.DefaultJsonTreeGenerator;
+import com.sigpwned.jsonification.generator.Utf8JsonGenerator;
 import com.sigpwned.jsonification.parser.DefaultJsonEventParser;
 import com.sigpwned.jsonification.parser.DefaultJsonParser;
 import com.sigpwned.jsonification.parser.DefaultJsonTreeParser;
@@ -26,20 +31,63 @@ import com.sigpwned.jsonification.value.scalar.JsonString;
 
 public class DefaultJsonFactory implements JsonFactory {
     private DefaultJsonObject.KeyOrder keyOrder;
+    private SerializedFormCache serializedFormCache;
+    
+    /**
+     * The root of the shape tree shared by this factory's shaped objects, or
+     * {@code null} if this factory does not create shaped objects
+     */
+    private JsonShape shapes;
     
     public DefaultJsonFactory() {
         this(DefaultJsonObject.KeyOrder.UNORDERED);
     }
     
     public DefaultJsonFactory(DefaultJsonObject.KeyOrder keyOrder) {
+        this(keyOrder, false);
+    }
+    
+    /**
+     * @see #setShapedObjects(boolean)
+     */
+    public DefaultJsonFactory(DefaultJsonObject.KeyOrder keyOrder, boolean shapedObjects) {
         if(keyOrder == null)
             throw new NullPointerException();
         this.keyOrder = keyOrder;
+        this.shapes = shapedObjects ? JsonShape.newRoot() : null;
     }
     
+    /**
+     * When shaped objects are enabled, objects that keep their keys in
+     * insertion order, which includes unordered objects, are
+     * {@link ShapedJsonObject}s, so that objects with the same keys share
+     * one key layout. Otherwise, and for alphabetical objects, objects are
+     * {@link DefaultJsonObject}s.
+     */
     @Override
     public JsonObject newObject() {
-        return new DefaultJsonObject(getKeyOrder());
+        JsonObject result;
+        if(!isShaped())
+            result = new DefaultJsonObject(getKeyOrder());
+        else
+            result = new ShapedJsonObject(shapes, DefaultJsonObject.DEFAULT_CAPACITY);
+        return result;
+    }
+
+    /**
+     * A negative size means the size is not known
+     */
+    @Override
+    public JsonObject newObject(int expectedSize) {
+        JsonObject result;
+        if(expectedSize < 0)
+            result = newObject();
+        else
+        if(!isShaped())
+            result = new DefaultJsonObject(getKeyOrder(), expectedSize);
+        else
+            result = new ShapedJsonObject(shapes, expectedSize);
+        return result;
     }
 
     @Override
@@ -47,6 +95,14 @@ public class DefaultJsonFactory implements JsonFactory {
         return new DefaultJsonArray();
     }
 
+    /**
+     * A negative size means the size is not known
+     */
+    @Override
+    public JsonArray newArray(int expectedSize) {
+        return expectedSize<0 ? newArray() : new DefaultJsonArray(expectedSize);
+    }
+
     @Override
     public JsonBoolean newValue(boolean value) {
         return DefaultJsonBoolean.valueOf(value);
@@ -81,6 +137,45 @@ public class DefaultJsonFactory implements JsonFactory {
             throw new NullPointerException();
         this.keyOrder = keyOrder;
     }
+    
+    public boolean isShapedObjects() {
+        return shapes != null;
+    }
+    
+    /**
+     * Sets whether this factory creates {@link ShapedJsonObject}s, which is
+     * off by default. Shaped objects pay off for many records with the same
+     * keys. Each factory has its own shape tree, so objects used as maps
+     * cannot use up another factory's shapes, and a factory's shapes are
+     * released along with the factory and its objects. Enabling shaped
+     * objects again starts a new shape tree.
+     */
+    public void setShapedObjects(boolean shapedObjects) {
+        if(shapedObjects != isShapedObjects())
+            this.shapes = shapedObjects ? JsonShape.newRoot() : null;
+    }
+    
+    /**
+     * @return whether new objects are shaped
+     */
+    private boolean isShaped() {
+        return shapes!=null && getKeyOrder()!=DefaultJsonObject.KeyOrder.ALPHABETICAL;
+    }
+    
+    public SerializedFormCache getSerializedFormCache() {
+        return serializedFormCache;
+    }
+    
+    /**
+     * Sets the serialized form cache given to every generator this factory
+     * creates that writes JSON text, or {@code null} for none, which is the
+     * default.
+     * 
+     * @see AbstractJsonGenerator#setSerializedFormCache(SerializedFormCache)
+     */
+    public void setSerializedFormCache(SerializedFormCache serializedFormCache) {
+        this.serializedFormCache = serializedFormCache;
+    }
 
     @Override
     public JsonParser newParser(Reader input) throws IOException {
@@ -99,7 +194,7 @@ public class DefaultJsonFactory implements JsonFactory {
 
     @Override
     public JsonEventParser newEventParser(JsonParser parser) throws IOException {
-        return new DefaultJsonEventParser(parser);
+        return new DefaultJsonEventParser(parser, this);
     }
 
     @Override
@@ -112,18 +207,51 @@ public class DefaultJsonFactory implements JsonFactory {
         return newTreeParser(newEventParser(parser));
     }
 
+    /**
+     * The tree parser builds its trees with this factory, which also becomes
+     * the given event parser's factory
+     */
     @Override
     public JsonTreeParser newTreeParser(JsonEventParser events) throws IOException {
-        return new DefaultJsonTreeParser(events);
+        return new DefaultJsonTreeParser(events, this);
     }
 
     @Override
     public JsonGenerator newGenerator(Writer output) throws IOException {
-        return new DefaultJsonGenerator(output);
+        return newGenerator(output, BufferedJsonGenerator.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public JsonGenerator newGenerator(Writer output, int expectedSize) throws IOException {
+        int bufferSize=Math.max(Math.min(expectedSize, BufferedJsonGenerator.DEFAULT_BUFFER_SIZE), 32);
+        BufferedJsonGenerator result=new BufferedJsonGenerator(output, bufferSize);
+        result.setSerializedFormCache(getSerializedFormCache());
+        return result;
+    }
+
+    @Override
+    public JsonGenerator newGenerator(OutputStream output) throws IOException {
+        Utf8JsonGenerator result=new Utf8JsonGenerator(output);
+        result.setSerializedFormCache(getSerializedFormCache());
+        return result;
+    }
+
+    @Override
+    public JsonGenerator newGenerator(ByteBuffer output) throws IOException {
+        Utf8JsonGenerator result=new Utf8JsonGenerator(output);
+        result.setSerializedFormCache(getSerializedFormCache());
+        return result;
+    }
+
+    @Override
+    public JsonGenerator newGenerator(WritableByteChannel output) throws IOException {
+        Utf8JsonGenerator result=new Utf8JsonGenerator(output);
+        result.setSerializedFormCache(getSerializedFormCache());
+        return result;
     }
 
     @Override
     public JsonTreeGenerator newTreeGenerator() throws IOException {
-        return new DefaultJsonTreeGenerator();
+        return new DefaultJsonTreeGenerator(this);
     }
 }
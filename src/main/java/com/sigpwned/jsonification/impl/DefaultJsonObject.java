@@ -34,18 +34,28 @@ public final class DefaultJsonObject extends AbstractJsonValue implements JsonOb
         UNORDERED, INSERTION, ALPHABETICAL;
     }
     
-    private static Map<String,JsonValue> map(DefaultJsonObject.KeyOrder keyOrder) {
+    /**
+     * The number of entries to allocate room for when no better estimate is
+     * available
+     */
+    public static final int DEFAULT_CAPACITY=12;
+    
+    private static Map<String,JsonValue> map(DefaultJsonObject.KeyOrder keyOrder, int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: "+capacity);
+        
         Map<String,JsonValue> result;
         
+        // Size hash tables so that they hold capacity entries without a rehash
         switch(keyOrder) {
         case ALPHABETICAL:
             result = new TreeMap<>();
             break;
         case INSERTION:
-            result = new LinkedHashMap<>();
+            result = new LinkedHashMap<>(capacity+capacity/3+1);
             break;
         case UNORDERED:
-            result = new HashMap<>();
+            result = new HashMap<>(capacity+capacity/3+1);
             break;
         default:
             throw new JsonError("unrecognized key order: "+keyOrder);
@@ -54,18 +64,48 @@ public final class DefaultJsonObject extends AbstractJsonValue implements JsonOb
         return result;
     }
     
+    private final DefaultJsonObject.KeyOrder keyOrder;
     private final Map<String,JsonValue> values;
     
+    /**
+     * The number of values in this object that are mutable containers. We
+     * can only cache our hash code when there are none, since we are not told
+     * when nested values change.
+     */
+    private int mutables;
+    
+    /**
+     * Cached hash code, or 0 if not computed
+     */
+    private int hash;
+    
     public DefaultJsonObject() {
         this(DefaultJsonObject.KeyOrder.UNORDERED);
     }
 
     public DefaultJsonObject(DefaultJsonObject.KeyOrder keyOrder) {
-        this(map(keyOrder));
+        this(keyOrder, DEFAULT_CAPACITY);
     }
 
-    private DefaultJsonObject(Map<String,JsonValue> values) {
-        this.values = values;
+    public DefaultJsonObject(DefaultJsonObject.KeyOrder keyOrder, int capacity) {
+        this.keyOrder = keyOrder;
+        this.values = map(keyOrder, capacity);
+    }
+    
+    /**
+     * @return a deep copy of this object with the same key order. Containers
+     *         are copied, and scalars are shared since they are immutable.
+     */
+    public DefaultJsonObject copy() {
+        DefaultJsonObject result=new DefaultJsonObject(keyOrder, values.size());
+        for(Map.Entry<String,JsonValue> e : values.entrySet())
+            result.set(e.getKey(), Json.copy(e.getValue()));
+        result.hash = hash;
+        return result;
+    }
+    
+    public DefaultJsonObject.KeyOrder getKeyOrder() {
+        return keyOrder;
     }
     
     @Override
@@ -85,7 +125,9 @@ public final class DefaultJsonObject extends AbstractJsonValue implements JsonOb
 
     @Override
     public DefaultJsonObject set(String name, JsonValue value) {
-        values.put(name, value!=null ? value : Json.NULL);
+        if(value == null)
+            value = Json.NULL;
+        changed(values.put(name, value), value);
         return this;
     }
     
@@ -116,7 +158,10 @@ public final class DefaultJsonObject extends AbstractJsonValue implements JsonOb
     
     @Override
     public JsonValue remove(String name) {
-        return values.remove(name);
+        JsonValue result=values.remove(name);
+        if(result != null)
+            changed(result, null);
+        return result;
     }
 
     @Override
@@ -165,8 +210,57 @@ public final class DefaultJsonObject extends AbstractJsonValue implements JsonOb
         };
     }
 
+    @Override
+    public boolean forEach(JsonObject.EntryVisitor visitor) {
+        boolean result=true;
+        for(Map.Entry<String,JsonValue> e : values.entrySet())
+            if(!visitor.visit(e.getKey(), e.getValue())) {
+                result = false;
+                break;
+            }
+        return result;
+    }
+
     @Override
     public int size() {
         return values.size();
     }
+    
+    @Override
+    /* default */ long estimateRetainedSize() {
+        long result=HeapSize.object(2*HeapSize.REFERENCE+2*4);
+        switch(keyOrder) {
+        case ALPHABETICAL:
+            result = result+HeapSize.TREE_MAP+(long) values.size()*HeapSize.TREE_MAP_NODE;
+            break;
+        case INSERTION:
+            result = result+HeapSize.hashMap(HeapSize.LINKED_HASH_MAP, values.size(), HeapSize.LINKED_HASH_MAP_NODE);
+            break;
+        case UNORDERED:
+            result = result+HeapSize.hashMap(HeapSize.HASH_MAP, values.size(), HeapSize.HASH_MAP_NODE);
+            break;
+        default:
+            throw new JsonError("unrecognized key order: "+keyOrder);
+        }
+        return result+HeapSize.members(this, true);
+    }
+    
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0) {
+            result = Json.hashCode(this);
+            if(mutables == 0)
+                hash = result;
+        }
+        return result;
+    }
+    
+    private void changed(JsonValue removed, JsonValue added) {
+        if(isMutable(removed))
+            mutables = mutables-1;
+        if(isMutable(added))
+            mutables = mutables+1;
+        hash = 0;
+    }
 }
@@ -0,0 +1,272 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Iterator;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.FrozenJsonException;
+import com.sigpwned.jsonification.exception.IndexOutOfBoundsJsonException;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class FrozenJsonArray extends AbstractJsonValue implements JsonArray {
+    public static final FrozenJsonArray EMPTY=new FrozenJsonArray(PersistentVector.<JsonValue>empty());
+    
+    /**
+     * @return a frozen copy of the given array, or the array itself if it is
+     *         already frozen. All nested values are frozen, too.
+     */
+    public static FrozenJsonArray valueOf(JsonArray value) {
+        FrozenJsonArray result;
+        if(value instanceof FrozenJsonArray)
+            result = (FrozenJsonArray) value;
+        else {
+            int size=value.size();
+            JsonValue[] values=new JsonValue[size];
+            for(int i=0;i<size;i++)
+                values[i] = Json.freeze(value.get(i));
+            result = new FrozenJsonArray(PersistentVector.of(values, size));
+        }
+        return result;
+    }
+    
+    private final PersistentVector<JsonValue> values;
+    
+    /**
+     * Cached hash code, or 0 if not computed. Frozen arrays never change, so
+     * this is always safe to cache.
+     */
+    private int hash;
+    
+    private FrozenJsonArray(PersistentVector<JsonValue> values) {
+        this.values = values;
+    }
+    
+    /**
+     * Returns a frozen array with the same elements as this array, plus a
+     * frozen copy of {@code value} at the end. This array is unchanged. The
+     * new array shares all unchanged structure with this one.
+     * 
+     * @param value The value to append
+     * @return The new array
+     */
+    public FrozenJsonArray with(JsonValue value) {
+        return new FrozenJsonArray(values.append(Json.freeze(value!=null ? value : Json.NULL)));
+    }
+    
+    /**
+     * Returns a frozen array with the same elements as this array, except
+     * that the element at {@code index} is replaced with a frozen copy of
+     * {@code value}. This array is unchanged. The new array shares all
+     * unchanged structure with this one.
+     * 
+     * @param index The index of the element to replace
+     * @param value The new element
+     * @return The new array
+     */
+    public FrozenJsonArray withIndex(int index, JsonValue value) {
+        PersistentVector<JsonValue> newValues;
+        try {
+            newValues = values.with(index, Json.freeze(value!=null ? value : Json.NULL));
+        }
+        catch(IndexOutOfBoundsException e) {
+            throw new IndexOutOfBoundsJsonException(this, index);
+        }
+        return new FrozenJsonArray(newValues);
+    }
+    
+    /**
+     * Returns a frozen array with the same elements as this array, except
+     * that the element at {@code index} is removed. This array is unchanged.
+     * Unlike the other updates, this copies the whole array.
+     * 
+     * @param index The index of the element to remove
+     * @return The new array
+     */
+    public FrozenJsonArray withoutIndex(int index) {
+        int size=size();
+        if(index<0 || index>=size)
+            throw new IndexOutOfBoundsJsonException(this, index);
+        JsonValue[] elements=new JsonValue[size];
+        values.copyInto(elements);
+        System.arraycopy(elements, index+1, elements, index, size-index-1);
+        return new FrozenJsonArray(PersistentVector.of(elements, size-1));
+    }
+    
+    @Override
+    public FrozenJsonArray asArray() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.ARRAY;
+    }
+
+    @Override
+    public Iterator<JsonValue> iterator() {
+        return values.iterator();
+    }
+
+    @Override
+    public JsonValue get(int index) {
+        JsonValue result;
+        try {
+            result = values.get(index);
+        }
+        catch(IndexOutOfBoundsException e) {
+            throw new IndexOutOfBoundsJsonException(this, index);
+        }
+        return result;
+    }
+
+    @Override
+    public JsonValue set(int index, JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue remove(int index) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public long[] toLongArray() {
+        int size=size();
+        long[] result=new long[size];
+        Iterator<JsonValue> iterator=iterator();
+        for(int i=0;i<size;i++)
+            result[i] = iterator.next().asScalar().asNumber().longVal();
+        return result;
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        int size=size();
+        double[] result=new double[size];
+        Iterator<JsonValue> iterator=iterator();
+        for(int i=0;i<size;i++)
+            result[i] = iterator.next().asScalar().asNumber().doubleVal();
+        return result;
+    }
+
+    @Override
+    public boolean[] toBooleanArray() {
+        int size=size();
+        boolean[] result=new boolean[size];
+        Iterator<JsonValue> iterator=iterator();
+        for(int i=0;i<size;i++)
+            result[i] = iterator.next().asScalar().asBoolean().booleanVal();
+        return result;
+    }
+    
+    @Override
+    protected boolean isImmutable() {
+        return true;
+    }
+    
+    @Override
+    /* default */ long estimateRetainedSize() {
+        long result=HeapSize.object(HeapSize.REFERENCE+4)+values.estimateNodeSize();
+        for(JsonValue value : this)
+            result = result+HeapSize.estimateRetainedSize(value);
+        return result;
+    }
+    
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0)
+            hash = result = Json.hashCode(this);
+        return result;
+    }
+}
@@ -0,0 +1,390 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.FrozenJsonException;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class FrozenJsonObject extends AbstractJsonValue implements JsonObject {
+    /**
+     * A value and the position of its name in the object's key order
+     */
+    private static final class Member implements JsonObject.Entry {
+        private final String name;
+        private final JsonValue value;
+        private final int index;
+        
+        public Member(String name, JsonValue value, int index) {
+            this.name = name;
+            this.value = value;
+            this.index = index;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public JsonValue getValue() {
+            return value;
+        }
+    }
+    
+    public static final FrozenJsonObject EMPTY=new FrozenJsonObject(PersistentHashMap.<Member>empty(), PersistentVector.<Member>empty());
+    
+    /**
+     * @return a frozen copy of the given object, or the object itself if it
+     *         is already frozen. All nested values are frozen, too. The copy
+     *         keeps the given object's key order, whether insertion or
+     *         alphabetical.
+     */
+    public static FrozenJsonObject valueOf(JsonObject value) {
+        FrozenJsonObject result;
+        if(value instanceof FrozenJsonObject)
+            result = (FrozenJsonObject) value;
+        else {
+            Member[] members=new Member[value.size()];
+            int size=0;
+            for(JsonObject.Entry entry : value.entries()) {
+                members[size] = new Member(entry.getName(), Json.freeze(entry.getValue()), size);
+                size = size+1;
+            }
+            result = of(members, size);
+        }
+        return result;
+    }
+    
+    /**
+     * @param members The members in key order, each holding its own index
+     */
+    private static FrozenJsonObject of(Member[] members, int size) {
+        FrozenJsonObject result;
+        if(size == 0)
+            result = EMPTY;
+        else {
+            PersistentHashMap<Member> map=PersistentHashMap.empty();
+            for(int i=0;i<size;i++)
+                map = map.with(members[i].name, members[i]);
+            result = new FrozenJsonObject(map, PersistentVector.of(members, size));
+        }
+        return result;
+    }
+    
+    private final PersistentHashMap<Member> members;
+    
+    /**
+     * The members in key order. Removing a member leaves a {@code null} in
+     * its place, and the vector is compacted once those outnumber the live
+     * members.
+     */
+    private final PersistentVector<Member> order;
+    
+    /**
+     * Cached hash code, or 0 if not computed. Frozen objects never change,
+     * so this is always safe to cache.
+     */
+    private int hash;
+    
+    private FrozenJsonObject(PersistentHashMap<Member> members, PersistentVector<Member> order) {
+        this.members = members;
+        this.order = order;
+    }
+    
+    /**
+     * Returns a frozen object with the same values as this object, except
+     * that {@code name} is associated with a frozen copy of {@code value}.
+     * This object is unchanged. The new object shares all unchanged structure
+     * with this one. A new name goes at the end of the key order, and an
+     * existing name keeps its place.
+     * 
+     * @param name The name to associate with the given value
+     * @param value The value to associate
+     * @return The new object
+     */
+    public FrozenJsonObject with(String name, JsonValue value) {
+        if(name == null)
+            throw new NullPointerException();
+        
+        FrozenJsonObject result;
+        
+        JsonValue frozen=Json.freeze(value!=null ? value : Json.NULL);
+        Member member=members.get(name);
+        if(member == null) {
+            Member added=new Member(name, frozen, order.size());
+            result = new FrozenJsonObject(members.with(name, added), order.append(added));
+        } else
+        if(member.value == frozen)
+            result = this;
+        else {
+            Member replaced=new Member(name, frozen, member.index);
+            result = new FrozenJsonObject(members.with(name, replaced), order.with(member.index, replaced));
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Returns a frozen object with the same values as this object, except
+     * that {@code name} is not associated with any value. This object is
+     * unchanged.
+     * 
+     * @param name The name to remove
+     * @return The new object
+     */
+    public FrozenJsonObject without(String name) {
+        FrozenJsonObject result;
+        
+        Member member=members.get(name);
+        if(member == null)
+            result = this;
+        else {
+            PersistentHashMap<Member> newMembers=members.without(name);
+            PersistentVector<Member> newOrder=order.with(member.index, null);
+            if(newOrder.size()-newMembers.size() > newMembers.size()) {
+                // Mostly removed members now, so compact
+                Member[] compacted=new Member[newMembers.size()];
+                int size=0;
+                for(Iterator<Member> i=newOrder.iterator();i.hasNext();) {
+                    Member m=i.next();
+                    if(m != null) {
+                        compacted[size] = new Member(m.name, m.value, size);
+                        size = size+1;
+                    }
+                }
+                result = of(compacted, size);
+            }
+            else
+                result = new FrozenJsonObject(newMembers, newOrder);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return the live members of this object in key order
+     */
+    private Iterator<Member> members() {
+        final Iterator<Member> iterator=order.iterator();
+        return new Iterator<Member>() {
+            private Member next=advance();
+            
+            private Member advance() {
+                Member result=null;
+                while(result==null && iterator.hasNext())
+                    result = iterator.next();
+                return result;
+            }
+            
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Member next() {
+                if(next == null)
+                    throw new NoSuchElementException();
+                Member result=next;
+                next = advance();
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    @Override
+    public FrozenJsonObject asObject() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.OBJECT;
+    }
+
+    @Override
+    public JsonValue get(String name) {
+        Member member=members.get(name);
+        return member!=null ? member.value : null;
+    }
+
+    @Override
+    public JsonObject set(String name, JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public boolean has(String name) {
+        return members.get(name) != null;
+    }
+
+    @Override
+    public JsonValue remove(String name) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<Member> iterator=members();
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return iterator.next().name;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && has((String) o);
+            }
+
+            @Override
+            public int size() {
+                return members.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<JsonValue> values() {
+        return new AbstractCollection<JsonValue>() {
+            @Override
+            public Iterator<JsonValue> iterator() {
+                final Iterator<Member> iterator=members();
+                return new Iterator<JsonValue>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public JsonValue next() {
+                        return iterator.next().value;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return members.size();
+            }
+        };
+    }
+
+    @Override
+    public Iterable<JsonObject.Entry> entries() {
+        return new Iterable<JsonObject.Entry>() {
+            @Override
+            @SuppressWarnings({ "rawtypes", "unchecked" })
+            public Iterator<JsonObject.Entry> iterator() {
+                return (Iterator) members();
+            }
+        };
+    }
+
+    @Override
+    public boolean forEach(JsonObject.EntryVisitor visitor) {
+        boolean result=true;
+        for(Iterator<Member> i=members();i.hasNext();) {
+            Member member=i.next();
+            if(!visitor.visit(member.name, member.value)) {
+                result = false;
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return members.size();
+    }
+    
+    @Override
+    protected boolean isImmutable() {
+        return true;
+    }
+    
+    @Override
+    /* default */ long estimateRetainedSize() {
+        return HeapSize.object(2*HeapSize.REFERENCE+4)
+            +members.estimateNodeSize()
+            +order.estimateNodeSize()
+            +members.size()*HeapSize.object(2*HeapSize.REFERENCE+4)
+            +HeapSize.members(this, true);
+    }
+    
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0)
+            hash = result = Json.hashCode(this);
+        return result;
+    }
+}
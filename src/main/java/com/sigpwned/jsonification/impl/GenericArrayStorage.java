@@ -0,0 +1,104 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ final class GenericArrayStorage extends ArrayStorage {
+    private final List<JsonValue> values;
+    
+    public GenericArrayStorage(int capacity) {
+        this.values = new ArrayList<>(capacity);
+    }
+    
+    @Override
+    public ArrayStorage.Flavor getFlavor() {
+        return ArrayStorage.Flavor.GENERIC;
+    }
+
+    /**
+     * The list does not expose its capacity, so this assumes it is full
+     */
+    @Override
+    public long estimateRetainedSize() {
+        long result=HeapSize.object(HeapSize.REFERENCE)+HeapSize.ARRAY_LIST+HeapSize.array(values.size(), HeapSize.REFERENCE);
+        for(JsonValue value : values)
+            result = result+HeapSize.estimateRetainedSize(value);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public JsonValue get(int index) {
+        return values.get(index);
+    }
+
+    @Override
+    public JsonValue set(int index, JsonValue value) {
+        return values.set(index, value);
+    }
+
+    @Override
+    public void add(JsonValue value) {
+        values.add(value);
+    }
+
+    @Override
+    public void add(int index, JsonValue value) {
+        values.add(index, value);
+    }
+
+    @Override
+    public JsonValue remove(int index) {
+        return values.remove(index);
+    }
+    
+    @Override
+    public GenericArrayStorage copy() {
+        GenericArrayStorage result=new GenericArrayStorage(values.size());
+        for(JsonValue value : values)
+            result.add(Json.copy(value));
+        return result;
+    }
+    
+    @Override
+    public GenericArrayStorage toGeneric() {
+        return this;
+    }
+    
+    @Override
+    public Iterator<JsonValue> iterator() {
+        return Collections.unmodifiableList(values).iterator();
+    }
+    
+    @Override
+    public int hash() {
+        int result=0;
+        for(JsonValue value : values)
+            result = 37*result + value.hashCode();
+        return result;
+    }
+}
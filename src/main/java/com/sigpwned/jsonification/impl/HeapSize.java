@@ -0,0 +1,194 @@
+package com.sigpwned.jsonification.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class HeapSize {
+    /**
+     * The size of an object header, assuming a 64-bit JVM with compressed
+     * references, which is the default for heaps under 32GB
+     */
+    /* default */ static final int HEADER=12;
+    
+    /* default */ static final int ARRAY_HEADER=16;
+    
+    /* default */ static final int REFERENCE=4;
+    
+    /* default */ static final int ALIGNMENT=8;
+    
+    /**
+     * The shallow sizes of the map classes we use, and of their entries
+     */
+    /* default */ static final int HASH_MAP=48;
+    /* default */ static final int HASH_MAP_NODE=32;
+    /* default */ static final int LINKED_HASH_MAP=56;
+    /* default */ static final int LINKED_HASH_MAP_NODE=40;
+    /* default */ static final int TREE_MAP=48;
+    /* default */ static final int TREE_MAP_NODE=40;
+    /* default */ static final int CONCURRENT_HASH_MAP=64;
+    /* default */ static final int CONCURRENT_SKIP_LIST_MAP_NODE=24;
+    /* default */ static final int CONCURRENT_SKIP_LIST_MAP=48;
+    /* default */ static final int ARRAY_LIST=24;
+    
+    private HeapSize() {
+    }
+    
+    /**
+     * Estimates the number of bytes of heap that would be freed if the given
+     * value became unreachable. Objects that are shared between values, like
+     * the boolean singletons, small cached {@code Long}s, the {@code null}
+     * value, and the keys of shaped objects, are not counted. Off-heap
+     * documents count only their views, since their data is not on the
+     * heap.
+     * 
+     * The estimate runs in time linear in the size of the tree, and allocates
+     * nothing per member for the library's own value implementations.
+     */
+    public static long estimateRetainedSize(JsonValue value) {
+        long result;
+        if(value instanceof AbstractJsonValue)
+            result = ((AbstractJsonValue) value).estimateRetainedSize();
+        else
+            result = estimateGeneric(value);
+        return result;
+    }
+    
+    /**
+     * Estimates the size of a value whose representation we do not know,
+     * assuming an array of references for arrays and a hash map for objects
+     */
+    /* default */ static long estimateGeneric(JsonValue value) {
+        long result;
+        switch(value.getType()) {
+        case ARRAY:
+        {
+            int size=value.asArray().size();
+            result = object(2*REFERENCE)+array(size, REFERENCE);
+            for(JsonValue element : value.asArray())
+                result = result+estimateRetainedSize(element);
+        } break;
+        case OBJECT:
+        {
+            JsonObject o=value.asObject();
+            result = object(2*REFERENCE)+hashMap(HASH_MAP, o.size(), HASH_MAP_NODE)+members(o, true);
+        } break;
+        case SCALAR:
+            result = object(REFERENCE)+boxed(value.asScalar().getValue());
+            break;
+        case NULL:
+        default:
+            result = 0;
+            break;
+        }
+        return result;
+    }
+    
+    /**
+     * @return the size of an object with the given total size of fields
+     */
+    /* default */ static long object(int fields) {
+        return align(HEADER+fields);
+    }
+    
+    /**
+     * @return the size of an array of the given length and element size
+     */
+    /* default */ static long array(int length, int element) {
+        return align(ARRAY_HEADER+(long) length*element);
+    }
+    
+    /**
+     * @return the size of the given string and its characters
+     */
+    /* default */ static long string(String s) {
+        return object(REFERENCE+4)+array(s.length(), 2);
+    }
+    
+    /**
+     * @return the size of the given scalar value, or 0 if it is cached and
+     *         shared
+     */
+    /* default */ static long boxed(Object value) {
+        long result;
+        if(value instanceof String)
+            result = string((String) value);
+        else
+        if(value instanceof Long) {
+            long x=((Long) value).longValue();
+            result = x>=-128L && x<=127L ? 0L : object(8);
+        }
+        else
+        if(value instanceof Boolean)
+            result = 0L;
+        else
+        if(value instanceof BigInteger)
+            result = object(REFERENCE+5*4)+array((((BigInteger) value).bitLength()+31)/32, 4);
+        else
+        if(value instanceof BigDecimal)
+            result = object(2*REFERENCE+2*4+8)+boxed(((BigDecimal) value).unscaledValue());
+        else
+            result = object(8);
+        return result;
+    }
+    
+    /**
+     * @return the size of a hash table with the given shallow size, number of
+     *         entries, and entry size, not counting keys or values
+     */
+    /* default */ static long hashMap(int shallow, int size, int node) {
+        // Tables are a power of two, at most 75% full, and at least 16 long
+        int table=16;
+        while(table-table/4 < size)
+            table = table << 1;
+        return shallow+array(table, REFERENCE)+(long) size*node;
+    }
+    
+    /**
+     * @return the total size of the given object's values, and of its keys
+     *         if they are owned by the object
+     */
+    /* default */ static long members(JsonObject o, boolean keys) {
+        MemberVisitor visitor=new MemberVisitor(keys);
+        o.forEach(visitor);
+        return visitor.size;
+    }
+    
+    private static long align(long size) {
+        return (size+ALIGNMENT-1) & ~(long)(ALIGNMENT-1);
+    }
+    
+    private static class MemberVisitor implements JsonObject.EntryVisitor {
+        private final boolean keys;
+        public long size;
+        
+        public MemberVisitor(boolean keys) {
+            this.keys = keys;
+        }
+        
+        @Override
+        public boolean visit(String name, JsonValue value) {
+            if(keys)
+                size = size+string(name);
+            size = size+estimateRetainedSize(value);
+            return true;
+        }
+    }
+}
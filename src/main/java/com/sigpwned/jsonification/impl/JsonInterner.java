@@ -0,0 +1,189 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.ScalarJsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class JsonInterner {
+    public static final int DEFAULT_MAX_SIZE=4096;
+    
+    private final int maxSize;
+    private final Map<JsonValue,JsonValue> values;
+    private long hits;
+    private long misses;
+    private long savedBytes;
+    
+    public JsonInterner() {
+        this(DEFAULT_MAX_SIZE);
+    }
+    
+    /**
+     * @param maxSize The most distinct values to remember. When the table is
+     *            full, the least recently used value is forgotten, and later
+     *            copies of it are no longer shared with earlier ones.
+     */
+    public JsonInterner(final int maxSize) {
+        if(maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be positive: "+maxSize);
+        this.maxSize = maxSize;
+        this.values = new LinkedHashMap<JsonValue,JsonValue>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<JsonValue,JsonValue> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+    
+    /**
+     * Returns a shared, immutable value equal to the given value. Containers
+     * are frozen first, since shared values must never change. Values should
+     * be interned from the bottom up, children before parents, so that equal
+     * subtrees are shared at every level.
+     * 
+     * Only containers and strings are interned. Other scalars are small and
+     * cheap to compare, and remembering them would only push more useful
+     * values out of the table. Objects are only shared if their keys are in
+     * the same order, so interning never changes how a document emits.
+     * 
+     * Values are looked up by their structural hash code and compared with
+     * {@link Json#equals(JsonValue, JsonValue)}. Frozen containers cache
+     * their hash codes, so each lookup only hashes one level of the tree.
+     */
+    public JsonValue intern(JsonValue value) {
+        JsonValue result;
+        if(!interns(value))
+            result = value;
+        else {
+            JsonValue frozen=Json.freeze(value);
+            result = values.get(frozen);
+            if(result == null) {
+                values.put(frozen, frozen);
+                result = frozen;
+                misses = misses+1;
+            } else
+            if(!sameKeyOrder(result, frozen)) {
+                result = frozen;
+                misses = misses+1;
+            }
+            else {
+                // Since children are interned before their parents, a
+                // duplicate's children are already shared, and were counted
+                // when they were interned. Only its own shell is saved here.
+                savedBytes = savedBytes+shallowSize(frozen);
+                hits = hits+1;
+            }
+        }
+        return result;
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * @return the number of distinct values currently remembered
+     */
+    public int size() {
+        return values.size();
+    }
+    
+    /**
+     * @return the number of values that were replaced by a shared copy
+     */
+    public long getHits() {
+        return hits;
+    }
+    
+    /**
+     * @return the number of values that were not already known
+     */
+    public long getMisses() {
+        return misses;
+    }
+    
+    /**
+     * @return an estimate of the bytes of heap saved by sharing values, as
+     *         measured by {@link Json#estimateRetainedSize(JsonValue)}
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+    
+    /**
+     * Forgets all remembered values, but not the statistics
+     */
+    public void clear() {
+        values.clear();
+    }
+    
+    private static boolean interns(JsonValue value) {
+        boolean result;
+        switch(value.getType()) {
+        case ARRAY:
+        case OBJECT:
+            result = true;
+            break;
+        case SCALAR:
+            result = value.asScalar().getFlavor() == ScalarJsonValue.Flavor.STRING;
+            break;
+        default:
+            result = false;
+            break;
+        }
+        return result;
+    }
+    
+    /**
+     * @return {@code true} unless both values are objects with their keys in
+     *         different orders
+     */
+    private static boolean sameKeyOrder(JsonValue a, JsonValue b) {
+        boolean result=true;
+        if(a.getType() == JsonValue.Type.OBJECT) {
+            Iterator<String> ai=a.asObject().keys().iterator(), bi=b.asObject().keys().iterator();
+            while(ai.hasNext() && bi.hasNext())
+                if(!ai.next().equals(bi.next())) {
+                    result = false;
+                    break;
+                }
+        }
+        return result;
+    }
+    
+    private static long shallowSize(JsonValue value) {
+        long result=HeapSize.estimateRetainedSize(value);
+        switch(value.getType()) {
+        case ARRAY:
+            for(JsonValue element : value.asArray())
+                result = result-HeapSize.estimateRetainedSize(element);
+            break;
+        case OBJECT:
+            result = result-HeapSize.members(value.asObject(), false);
+            break;
+        default:
+            break;
+        }
+        return result;
+    }
+}
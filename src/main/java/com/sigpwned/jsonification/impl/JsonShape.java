@@ -0,0 +1,235 @@
+package com.sigpwned.jsonification.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ final class JsonShape {
+    /**
+     * The most keys a shape may have. Larger objects are stored as
+     * dictionaries, since they are rarely repeated and are slow to search
+     * by shape.
+     */
+    public static final int MAX_KEYS=64;
+    
+    /**
+     * The most transitions a single shape may have. Objects whose next key
+     * varies more than this are likely used as maps, not records, and are
+     * stored as dictionaries instead.
+     */
+    public static final int MAX_TRANSITIONS=32;
+    
+    /**
+     * The most shapes that may exist at once in one shape tree. Shapes are
+     * released once no object uses them or their extensions, so this bounds
+     * the memory that live shapes can use.
+     */
+    public static final int MAX_SHAPES=1 << 16;
+    
+    /**
+     * The most shapes a single object may create. Records repeat, so their
+     * shapes are extended this many keys at a time by successive objects and
+     * are soon found instead of created. Maps rarely repeat, so they fall
+     * back to dictionaries after creating only this many shapes.
+     */
+    public static final int MAX_CREATED_SHAPES=8;
+    
+    /**
+     * Shapes with more keys than this are searched with a hash table instead
+     * of linearly
+     */
+    private static final int LINEAR_SEARCH_KEYS=8;
+    
+    /**
+     * A weak link from a shape to one of its extensions. Objects hold their
+     * shapes, and shapes hold their parents, so a shape is released once no
+     * object uses it or any of its extensions.
+     */
+    private static final class Transition extends WeakReference<JsonShape> {
+        public final JsonShape from;
+        public final String key;
+        
+        public Transition(JsonShape from, String key, JsonShape to) {
+            super(to, from.root.released);
+            this.from = from;
+            this.key = key;
+        }
+    }
+    
+    /**
+     * @return the empty shape at the root of a new shape tree. Objects share
+     *         key layouts only with objects in the same tree.
+     */
+    public static JsonShape newRoot() {
+        return new JsonShape(null, new String[0]);
+    }
+    
+    private final JsonShape root;
+    
+    /**
+     * The shape this shape extends, which is held only to keep it alive as
+     * long as this shape is
+     */
+    private final JsonShape parent;
+    private final String[] keys;
+    private final Map<String,Integer> slots;
+    private final ConcurrentMap<String,Transition> transitions;
+    
+    /**
+     * The number of live shapes in the tree, and the transitions to released
+     * shapes, which are kept only by the root
+     */
+    private final AtomicInteger count;
+    private final ReferenceQueue<JsonShape> released;
+    
+    private JsonShape(JsonShape parent, String[] keys) {
+        this.root = parent!=null ? parent.root : this;
+        this.parent = parent;
+        this.keys = keys;
+        if(keys.length > LINEAR_SEARCH_KEYS) {
+            this.slots = new HashMap<>(keys.length+keys.length/3+1);
+            for(int i=0;i<keys.length;i++)
+                this.slots.put(keys[i], i);
+        }
+        else
+            this.slots = null;
+        this.transitions = new ConcurrentHashMap<>(4);
+        this.count = parent!=null ? null : new AtomicInteger();
+        this.released = parent!=null ? null : new ReferenceQueue<JsonShape>();
+    }
+    
+    /**
+     * @return the empty shape at the root of this shape's tree
+     */
+    public JsonShape getRoot() {
+        return root;
+    }
+    
+    public int size() {
+        return keys.length;
+    }
+    
+    public String getKey(int slot) {
+        return keys[slot];
+    }
+    
+    /**
+     * @return the slot of the given key, or -1 if this shape does not have it
+     */
+    public int indexOf(String key) {
+        int result=-1;
+        if(slots != null) {
+            Integer slot=slots.get(key);
+            if(slot != null)
+                result = slot.intValue();
+        }
+        else {
+            for(int i=0;i<keys.length;i++)
+                if(keys[i].equals(key)) {
+                    result = i;
+                    break;
+                }
+        }
+        return result;
+    }
+    
+    /**
+     * @return the existing shape with this shape's keys followed by the
+     *         given key, or {@code null} if there is none yet
+     */
+    public JsonShape find(String key) {
+        Transition transition=transitions.get(key);
+        return transition!=null ? transition.get() : null;
+    }
+    
+    /**
+     * @return the shape with this shape's keys followed by the given key,
+     *         which this shape must not have, creating it if needed, or
+     *         {@code null} if that shape would exceed the limits on shapes
+     */
+    public JsonShape with(String key) {
+        root.expunge();
+        Transition transition=transitions.get(key);
+        JsonShape result=transition!=null ? transition.get() : null;
+        if(result == null) {
+            if(keys.length<MAX_KEYS && transitions.size()<MAX_TRANSITIONS && root.reserve()) {
+                String[] newKeys=Arrays.copyOf(keys, keys.length+1);
+                newKeys[keys.length] = key;
+                JsonShape shape=new JsonShape(this, newKeys);
+                Transition created=new Transition(this, key, shape);
+                boolean installed;
+                if(transition == null)
+                    installed = transitions.putIfAbsent(key, created) == null;
+                else
+                    installed = transitions.replace(key, transition, created);
+                if(installed)
+                    result = shape;
+                else {
+                    // Another thread got there first, so use its shape
+                    created.clear();
+                    root.count.decrementAndGet();
+                    result = find(key);
+                }
+            }
+            else
+                result = null;
+        }
+        return result;
+    }
+    
+    /**
+     * @return the number of live shapes in this shape's tree, not counting
+     *         its root
+     */
+    public int getTreeSize() {
+        root.expunge();
+        return root.count.get();
+    }
+    
+    /**
+     * Claims room for one more shape under {@link #MAX_SHAPES}. Only called
+     * on roots.
+     * 
+     * @return {@code true} if there was room, or {@code false} otherwise
+     */
+    private boolean reserve() {
+        boolean result;
+        if(count.incrementAndGet() <= MAX_SHAPES)
+            result = true;
+        else {
+            count.decrementAndGet();
+            result = false;
+        }
+        return result;
+    }
+    
+    /**
+     * Forgets the transitions to released shapes. Only called on roots.
+     */
+    private void expunge() {
+        for(Transition t=(Transition) released.poll();t!=null;t=(Transition) released.poll()) {
+            t.from.transitions.remove(t.key, t);
+            count.decrementAndGet();
+        }
+    }
+}
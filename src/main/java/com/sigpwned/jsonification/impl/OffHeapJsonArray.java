@@ -0,0 +1,252 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.FrozenJsonException;
+import com.sigpwned.jsonification.exception.IndexOutOfBoundsJsonException;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class OffHeapJsonArray extends AbstractJsonValue implements JsonArray {
+    private final OffHeapJsonDocument document;
+    
+    /**
+     * The tape offset of this array's node
+     */
+    private final int offset;
+    
+    /**
+     * Cached hash code, or 0 if not computed. The document never changes, so
+     * this is always safe to cache.
+     */
+    private int hash;
+    
+    /* default */ OffHeapJsonArray(OffHeapJsonDocument document, int offset) {
+        this.document = document;
+        this.offset = offset;
+    }
+    
+    public OffHeapJsonDocument getDocument() {
+        return document;
+    }
+    
+    /**
+     * @return the tape offset of the given element's node
+     */
+    private int element(int index) {
+        return document.tapeInt(offset+5+4*index);
+    }
+    
+    @Override
+    public OffHeapJsonArray asArray() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.ARRAY;
+    }
+
+    @Override
+    public Iterator<JsonValue> iterator() {
+        return new Iterator<JsonValue>() {
+            private final int size=size();
+            private int index=0;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public JsonValue next() {
+                if(index >= size)
+                    throw new NoSuchElementException();
+                JsonValue result=document.value(element(index));
+                index = index+1;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public JsonValue get(int index) {
+        if(index<0 || index>=size())
+            throw new IndexOutOfBoundsJsonException(this, index);
+        return document.value(element(index));
+    }
+
+    @Override
+    public JsonValue set(int index, JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue set(int index, String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonArray add(String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public void add(int index, String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonValue remove(int index) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public int size() {
+        return document.tapeInt(offset+1);
+    }
+
+    @Override
+    public long[] toLongArray() {
+        int size=size();
+        long[] result=new long[size];
+        for(int i=0;i<size;i++) {
+            int e=element(i);
+            if(document.tag(e) == OffHeapJsonDocument.LONG)
+                result[i] = document.tapeLong(e+1);
+            else
+                result[i] = document.value(e).asScalar().asNumber().longVal();
+        }
+        return result;
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        int size=size();
+        double[] result=new double[size];
+        for(int i=0;i<size;i++) {
+            int e=element(i);
+            if(document.tag(e) == OffHeapJsonDocument.DOUBLE)
+                result[i] = document.tapeDouble(e+1);
+            else
+                result[i] = document.value(e).asScalar().asNumber().doubleVal();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean[] toBooleanArray() {
+        int size=size();
+        boolean[] result=new boolean[size];
+        for(int i=0;i<size;i++) {
+            int e=element(i);
+            byte tag=document.tag(e);
+            if(tag == OffHeapJsonDocument.TRUE)
+                result[i] = true;
+            else
+            if(tag == OffHeapJsonDocument.FALSE)
+                result[i] = false;
+            else
+                result[i] = document.value(e).asScalar().asBoolean().booleanVal();
+        }
+        return result;
+    }
+    
+    @Override
+    protected boolean isImmutable() {
+        return true;
+    }
+    
+    /**
+     * Our content lives in our document's buffer, off the heap
+     */
+    @Override
+    /* default */ long estimateRetainedSize() {
+        return HeapSize.object(HeapSize.REFERENCE+2*4);
+    }
+    
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0)
+            hash = result = Json.hashCode(this);
+        return result;
+    }
+}
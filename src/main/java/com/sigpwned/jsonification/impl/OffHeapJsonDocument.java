@@ -0,0 +1,302 @@
+package com.sigpwned.jsonification.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonError;
+import com.sigpwned.jsonification.JsonException;
+import com.sigpwned.jsonification.JsonParser;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.ParseJsonException;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class OffHeapJsonDocument implements AutoCloseable {
+    /**
+     * The first four bytes of every document, "JTP2"
+     */
+    public static final int MAGIC=0x4A545032;
+    
+    /**
+     * The size of the document header: magic, root offset, tape length, and
+     * string arena length
+     */
+    /* default */ static final int HEADER_SIZE=16;
+    
+    /* default */ static final byte NULL=0;
+    
+    /* default */ static final byte FALSE=1;
+    
+    /* default */ static final byte TRUE=2;
+    
+    /**
+     * Followed by an 8-byte long
+     */
+    /* default */ static final byte LONG=3;
+    
+    /**
+     * Followed by an 8-byte double
+     */
+    /* default */ static final byte DOUBLE=4;
+    
+    /**
+     * Followed by the 4-byte offset of the value in the string arena
+     */
+    /* default */ static final byte STRING=5;
+    
+    /**
+     * Followed by a 4-byte element count, and then one 4-byte tape offset for
+     * each element
+     */
+    /* default */ static final byte ARRAY=6;
+    
+    /**
+     * Followed by a 4-byte entry count, then the 4-byte key hash code,
+     * 4-byte key string arena offset, and 4-byte value tape offset of each
+     * entry, and then the 4-byte index of each entry in order of key hash
+     * code. Keys are unique.
+     */
+    /* default */ static final byte OBJECT=7;
+    
+    /**
+     * Copies the given value into a new document in a direct buffer
+     */
+    public static OffHeapJsonDocument of(JsonValue value) {
+        OffHeapJsonDocumentBuilder builder=new OffHeapJsonDocumentBuilder();
+        try {
+            try (JsonParser p=Json.newValueParser(value)) {
+                p.parse(builder);
+            }
+        }
+        catch(IOException e) {
+            // This should never happen since we're working with trees
+            throw new JsonError("Impossible IOException", e);
+        }
+        return builder.build();
+    }
+    
+    /**
+     * Parses one JSON value from the given {@code Reader} directly into a new
+     * document in a direct buffer, without building a tree on the heap. The
+     * given {@code Reader} is left open.
+     */
+    public static OffHeapJsonDocument parse(Reader reader) throws IOException {
+        OffHeapJsonDocumentBuilder builder=new OffHeapJsonDocumentBuilder();
+        JsonParser p=Json.newParser(reader);
+        if(!p.parse(builder))
+            throw new ParseJsonException("No JSON value in input");
+        return builder.build();
+    }
+    
+    public static OffHeapJsonDocument parse(String text) {
+        OffHeapJsonDocument result;
+        try {
+            try (StringReader r=new StringReader(text)) {
+                result = parse(r);
+            }
+        }
+        catch(IOException e) {
+            // This should never happen since we're working with Strings
+            throw new JsonError("Impossible IOException", e);
+        }
+        return result;
+    }
+    
+    /**
+     * Opens a document previously saved from {@link #getBuffer()}, for
+     * example from a {@link java.nio.MappedByteBuffer}. The buffer's content
+     * from its current position onward must not change while the document is
+     * open.
+     */
+    public static OffHeapJsonDocument wrap(ByteBuffer buffer) {
+        ByteBuffer b=buffer.slice();
+        if(b.remaining()<HEADER_SIZE || b.getInt(0)!=MAGIC)
+            throw new ParseJsonException("Not an off-heap JSON document");
+        int root=b.getInt(4), tapeLength=b.getInt(8), stringsLength=b.getInt(12);
+        if(tapeLength<0 || stringsLength<0 || (long) HEADER_SIZE+tapeLength+stringsLength>b.remaining() || root<0 || root>=tapeLength)
+            throw new ParseJsonException("Corrupt off-heap JSON document");
+        return new OffHeapJsonDocument(b, root, tapeLength, stringsLength);
+    }
+    
+    private ByteBuffer buffer;
+    private final int root;
+    private final int tapeLength;
+    private final int stringsLength;
+    
+    /* default */ OffHeapJsonDocument(ByteBuffer buffer, int root, int tapeLength, int stringsLength) {
+        this.buffer = buffer;
+        this.root = root;
+        this.tapeLength = tapeLength;
+        this.stringsLength = stringsLength;
+    }
+    
+    /**
+     * @return the root value of this document. Objects and arrays are views
+     *         that read from the document's buffer on demand. Scalars are
+     *         decoded onto the heap each time they are read.
+     */
+    public JsonValue getRoot() {
+        return value(root);
+    }
+    
+    /**
+     * @return a read-only view of the bytes of this document, suitable for
+     *         saving and later passing to {@link #wrap(ByteBuffer)}
+     */
+    public ByteBuffer getBuffer() {
+        ByteBuffer result=buffer().asReadOnlyBuffer();
+        result.clear();
+        result.limit(size());
+        return result;
+    }
+    
+    /**
+     * @return the number of bytes in this document
+     */
+    public int size() {
+        return HEADER_SIZE+tapeLength+stringsLength;
+    }
+    
+    public boolean isClosed() {
+        return buffer == null;
+    }
+    
+    /**
+     * Releases this document's buffer. Any further access to the document or
+     * any of its views throws a {@link JsonException}. Java offers no safe
+     * way to unmap a direct buffer eagerly, so its memory is returned once
+     * the buffer object itself is collected, which the collector can do
+     * cheaply since the buffer is the only heap object that refers to it.
+     */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+    
+    /* default */ ByteBuffer buffer() {
+        ByteBuffer result=buffer;
+        if(result == null)
+            throw new JsonException("Off-heap JSON document is closed");
+        return result;
+    }
+    
+    /* default */ byte tag(int offset) {
+        return buffer().get(HEADER_SIZE+offset);
+    }
+    
+    /* default */ int tapeInt(int offset) {
+        return buffer().getInt(HEADER_SIZE+offset);
+    }
+    
+    /* default */ long tapeLong(int offset) {
+        return buffer().getLong(HEADER_SIZE+offset);
+    }
+    
+    /* default */ double tapeDouble(int offset) {
+        return buffer().getDouble(HEADER_SIZE+offset);
+    }
+    
+    /**
+     * @return the value whose node starts at the given tape offset
+     */
+    /* default */ JsonValue value(int offset) {
+        JsonValue result;
+        
+        byte tag=tag(offset);
+        switch(tag) {
+        case NULL:
+            result = Json.NULL;
+            break;
+        case FALSE:
+            result = DefaultJsonBoolean.FALSE;
+            break;
+        case TRUE:
+            result = DefaultJsonBoolean.TRUE;
+            break;
+        case LONG:
+            result = DefaultJsonNumber.valueOf(tapeLong(offset+1));
+            break;
+        case DOUBLE:
+            result = DefaultJsonNumber.valueOf(tapeDouble(offset+1));
+            break;
+        case STRING:
+            result = utf8(tapeInt(offset+1));
+            break;
+        case ARRAY:
+            result = new OffHeapJsonArray(this, offset);
+            break;
+        case OBJECT:
+            result = new OffHeapJsonObject(this, offset);
+            break;
+        default:
+            throw new JsonError("unrecognized tag: "+tag);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * @return the string at the given offset in the string arena
+     */
+    /* default */ String string(int offset) {
+        ByteBuffer b=buffer();
+        int base=HEADER_SIZE+tapeLength+offset;
+        int length=b.getInt(base);
+        byte[] bytes=new byte[length];
+        for(int i=0;i<length;i++)
+            bytes[i] = b.get(base+4+i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @return the string at the given offset in the string arena, copied onto
+     *         the heap as UTF-8 and not decoded until it is read
+     */
+    /* default */ Utf8JsonString utf8(int offset) {
+        ByteBuffer b=buffer();
+        int base=HEADER_SIZE+tapeLength+offset;
+        int length=b.getInt(base);
+        byte[] bytes=new byte[length];
+        for(int i=0;i<length;i++)
+            bytes[i] = b.get(base+4+i);
+        return Utf8JsonString.wrap(bytes);
+    }
+    
+    /**
+     * @return {@code true} if the string at the given offset in the string
+     *         arena has the given UTF-8 encoding, without decoding it
+     */
+    /* default */ boolean stringEquals(int offset, byte[] utf8) {
+        ByteBuffer b=buffer();
+        int base=HEADER_SIZE+tapeLength+offset;
+        boolean result;
+        if(b.getInt(base) == utf8.length) {
+            result = true;
+            for(int i=0;i<utf8.length;i++)
+                if(b.get(base+4+i) != utf8[i]) {
+                    result = false;
+                    break;
+                }
+        }
+        else
+            result = false;
+        return result;
+    }
+}
@@ -0,0 +1,292 @@
+package com.sigpwned.jsonification.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sigpwned.jsonification.JsonParser;
+import com.sigpwned.jsonification.exception.ParseJsonException;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ class OffHeapJsonDocumentBuilder implements JsonParser.Handler {
+    /**
+     * A growable byte buffer on the heap. We only know the size of the
+     * document once it is complete, so it is assembled here and then copied
+     * into a direct buffer exactly once.
+     */
+    private static class Bytes {
+        private byte[] bytes=new byte[256];
+        private int length=0;
+        
+        public int length() {
+            return length;
+        }
+        
+        public void put(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+        
+        public void put(byte[] bs) {
+            ensure(bs.length);
+            System.arraycopy(bs, 0, bytes, length, bs.length);
+            length = length+bs.length;
+        }
+        
+        public void putInt(int x) {
+            ensure(4);
+            bytes[length++] = (byte)(x >>> 24);
+            bytes[length++] = (byte)(x >>> 16);
+            bytes[length++] = (byte)(x >>> 8);
+            bytes[length++] = (byte)(x);
+        }
+        
+        public void putLong(long x) {
+            putInt((int)(x >>> 32));
+            putInt((int)(x));
+        }
+        
+        public void writeTo(ByteBuffer buffer) {
+            buffer.put(bytes, 0, length);
+        }
+        
+        private void ensure(int n) {
+            if(length+n > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(2*bytes.length, length+n));
+        }
+    }
+    
+    /**
+     * An open object or array and the offsets of its children so far
+     */
+    private static class Frame {
+        public final byte tag;
+        public final String name;
+        public int[] words;
+        public int count;
+        
+        public Frame(byte tag, String name) {
+            this.tag = tag;
+            this.name = name;
+            this.words = new int[tag==OffHeapJsonDocument.OBJECT ? 24 : 8];
+            this.count = 0;
+        }
+        
+        public void add(int word) {
+            if(count == words.length)
+                words = Arrays.copyOf(words, 2*words.length);
+            words[count++] = word;
+        }
+    }
+    
+    private final Bytes tape;
+    private final Bytes strings;
+    private final Map<String,Integer> stringOffsets;
+    private Frame[] frames;
+    private int depth;
+    private int root;
+    
+    public OffHeapJsonDocumentBuilder() {
+        this.tape = new Bytes();
+        this.strings = new Bytes();
+        this.stringOffsets = new HashMap<>();
+        this.frames = new Frame[8];
+        this.depth = 0;
+        this.root = -1;
+    }
+    
+    public OffHeapJsonDocument build() {
+        if(root==-1 || depth!=0)
+            throw new ParseJsonException("Incomplete JSON value");
+        ByteBuffer buffer=ByteBuffer.allocateDirect(OffHeapJsonDocument.HEADER_SIZE+tape.length()+strings.length());
+        buffer.putInt(OffHeapJsonDocument.MAGIC);
+        buffer.putInt(root);
+        buffer.putInt(tape.length());
+        buffer.putInt(strings.length());
+        tape.writeTo(buffer);
+        strings.writeTo(buffer);
+        buffer.clear();
+        return new OffHeapJsonDocument(buffer, root, tape.length(), strings.length());
+    }
+
+    @Override
+    public void openObject(String name) {
+        push(new Frame(OffHeapJsonDocument.OBJECT, name));
+    }
+
+    /**
+     * Writes the object's entries in order, followed by their indexes in
+     * order of key hash code for lookups. Duplicate keys are merged as
+     * {@link DefaultJsonObject} merges them: the first keeps its position
+     * and the last value wins.
+     */
+    @Override
+    public void closeObject() {
+        Frame frame=pop();
+        int[] words=frame.words;
+        int size=frame.count/3;
+        
+        // Sort by hash code, and then by position, so duplicate keys are
+        // grouped by hash code with the first one first
+        long[] order=new long[size];
+        for(int i=0;i<size;i++)
+            order[i] = ((long) words[3*i] << 32) | i;
+        Arrays.sort(order);
+        
+        boolean[] duplicate=null;
+        int duplicates=0;
+        for(int from=0,to;from<size;from=to) {
+            int hash=(int)(order[from] >> 32);
+            for(to=from+1;to<size && (int)(order[to] >> 32)==hash;to++);
+            for(int i=from+1;i<to;i++) {
+                int e=(int) order[i];
+                for(int j=from;j<i;j++) {
+                    int first=(int) order[j];
+                    if((duplicate==null || !duplicate[first]) && words[3*first+1]==words[3*e+1]) {
+                        if(duplicate == null)
+                            duplicate = new boolean[size];
+                        duplicate[e] = true;
+                        duplicates = duplicates+1;
+                        words[3*first+2] = words[3*e+2];
+                        break;
+                    }
+                }
+            }
+        }
+        
+        int offset=tape.length();
+        tape.put(OffHeapJsonDocument.OBJECT);
+        tape.putInt(size-duplicates);
+        int[] positions=duplicate!=null ? new int[size] : null;
+        for(int i=0,position=0;i<size;i++)
+            if(duplicate==null || !duplicate[i]) {
+                tape.putInt(words[3*i]);
+                tape.putInt(words[3*i+1]);
+                tape.putInt(words[3*i+2]);
+                if(positions != null)
+                    positions[i] = position;
+                position = position+1;
+            }
+        for(int i=0;i<size;i++) {
+            int e=(int) order[i];
+            if(duplicate==null || !duplicate[e])
+                tape.putInt(positions!=null ? positions[e] : e);
+        }
+        value(frame.name, offset);
+    }
+
+    @Override
+    public void openArray(String name) {
+        push(new Frame(OffHeapJsonDocument.ARRAY, name));
+    }
+
+    @Override
+    public void closeArray() {
+        Frame frame=pop();
+        int offset=tape.length();
+        tape.put(OffHeapJsonDocument.ARRAY);
+        tape.putInt(frame.count);
+        for(int i=0;i<frame.count;i++)
+            tape.putInt(frame.words[i]);
+        value(frame.name, offset);
+    }
+
+    @Override
+    public void nil(String name) {
+        int offset=tape.length();
+        tape.put(OffHeapJsonDocument.NULL);
+        value(name, offset);
+    }
+
+    @Override
+    public void scalar(String name, long value) {
+        int offset=tape.length();
+        tape.put(OffHeapJsonDocument.LONG);
+        tape.putLong(value);
+        value(name, offset);
+    }
+
+    @Override
+    public void scalar(String name, double value) {
+        int offset=tape.length();
+        tape.put(OffHeapJsonDocument.DOUBLE);
+        tape.putLong(Double.doubleToRawLongBits(value));
+        value(name, offset);
+    }
+
+    @Override
+    public void scalar(String name, boolean value) {
+        int offset=tape.length();
+        tape.put(value ? OffHeapJsonDocument.TRUE : OffHeapJsonDocument.FALSE);
+        value(name, offset);
+    }
+
+    @Override
+    public void scalar(String name, String value) {
+        int s=string(value);
+        int offset=tape.length();
+        tape.put(OffHeapJsonDocument.STRING);
+        tape.putInt(s);
+        value(name, offset);
+    }
+    
+    /**
+     * Records that a complete value was written at the given tape offset
+     */
+    private void value(String name, int offset) {
+        if(depth == 0)
+            root = offset;
+        else {
+            Frame top=frames[depth-1];
+            if(top.tag == OffHeapJsonDocument.OBJECT) {
+                top.add(name.hashCode());
+                top.add(string(name));
+            }
+            top.add(offset);
+        }
+    }
+    
+    /**
+     * @return the offset of the given string in the string arena, adding it
+     *         if it is not there already
+     */
+    private int string(String s) {
+        Integer result=stringOffsets.get(s);
+        if(result == null) {
+            result = strings.length();
+            byte[] utf8=s.getBytes(StandardCharsets.UTF_8);
+            strings.putInt(utf8.length);
+            strings.put(utf8);
+            stringOffsets.put(s, result);
+        }
+        return result.intValue();
+    }
+    
+    private void push(Frame frame) {
+        if(depth == frames.length)
+            frames = Arrays.copyOf(frames, 2*frames.length);
+        frames[depth++] = frame;
+    }
+    
+    private Frame pop() {
+        Frame result=frames[--depth];
+        frames[depth] = null;
+        return result;
+    }
+}
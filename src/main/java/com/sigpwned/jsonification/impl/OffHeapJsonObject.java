@@ -0,0 +1,315 @@
+package com.sigpwned.jsonification.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.FrozenJsonException;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class OffHeapJsonObject extends AbstractJsonValue implements JsonObject {
+    private final OffHeapJsonDocument document;
+    
+    /**
+     * The tape offset of this object's node
+     */
+    private final int offset;
+    
+    /**
+     * Cached hash code, or 0 if not computed. The document never changes, so
+     * this is always safe to cache.
+     */
+    private int hash;
+    
+    /* default */ OffHeapJsonObject(OffHeapJsonDocument document, int offset) {
+        this.document = document;
+        this.offset = offset;
+    }
+    
+    public OffHeapJsonDocument getDocument() {
+        return document;
+    }
+    
+    /**
+     * @return the tape offset of the given entry's key hash, which is followed
+     *         by its key's arena offset and its value's tape offset
+     */
+    private int entry(int index) {
+        return offset+5+12*index;
+    }
+    
+    /**
+     * @return the index of the entry whose key has the given rank in order of
+     *         key hash code
+     */
+    private int ranked(int size, int rank) {
+        return document.tapeInt(offset+5+12*size+4*rank);
+    }
+    
+    /**
+     * @return the index of the entry with the given name, or -1 if there is
+     *         none. Entries are found by binary search on their key hash
+     *         codes, and keys are only compared when their hash codes match.
+     */
+    private int indexOf(String name) {
+        int result=-1;
+        if(name != null) {
+            int h=name.hashCode();
+            int size=size();
+            
+            int lo=0, hi=size;
+            while(lo < hi) {
+                int mid=(lo+hi) >>> 1;
+                if(document.tapeInt(entry(ranked(size, mid))) < h)
+                    lo = mid+1;
+                else
+                    hi = mid;
+            }
+            
+            byte[] utf8=null;
+            for(int rank=lo;rank<size;rank++) {
+                int i=ranked(size, rank);
+                int e=entry(i);
+                if(document.tapeInt(e) != h)
+                    break;
+                if(utf8 == null)
+                    utf8 = name.getBytes(StandardCharsets.UTF_8);
+                if(document.stringEquals(document.tapeInt(e+4), utf8)) {
+                    result = i;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return the name of the member at the given position, in the same order
+     *         as {@link #entries()}
+     */
+    public String nameAt(int index) {
+        checkIndex(index);
+        return document.string(document.tapeInt(entry(index)+4));
+    }
+    
+    /**
+     * @return the value of the member at the given position, in the same
+     *         order as {@link #entries()}
+     */
+    public JsonValue valueAt(int index) {
+        checkIndex(index);
+        return document.value(document.tapeInt(entry(index)+8));
+    }
+    
+    private void checkIndex(int index) {
+        if(index<0 || index>=size())
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size());
+    }
+    
+    @Override
+    public OffHeapJsonObject asObject() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.OBJECT;
+    }
+
+    @Override
+    public JsonValue get(String name) {
+        int index=indexOf(name);
+        return index!=-1 ? valueAt(index) : null;
+    }
+
+    @Override
+    public JsonObject set(String name, JsonValue value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, boolean value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, long value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, double value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public JsonObject set(String name, String value) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public boolean has(String name) {
+        return indexOf(name) != -1;
+    }
+
+    @Override
+    public JsonValue remove(String name) {
+        throw new FrozenJsonException(this);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new EntryIterator<String>() {
+                    @Override
+                    protected String get(int index) {
+                        return nameAt(index);
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && has((String) o);
+            }
+
+            @Override
+            public int size() {
+                return OffHeapJsonObject.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Collection<JsonValue> values() {
+        return new AbstractCollection<JsonValue>() {
+            @Override
+            public Iterator<JsonValue> iterator() {
+                return new EntryIterator<JsonValue>() {
+                    @Override
+                    protected JsonValue get(int index) {
+                        return valueAt(index);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OffHeapJsonObject.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Iterable<JsonObject.Entry> entries() {
+        return new Iterable<JsonObject.Entry>() {
+            public Iterator<JsonObject.Entry> iterator() {
+                return new EntryIterator<JsonObject.Entry>() {
+                    @Override
+                    protected JsonObject.Entry get(int index) {
+                        final String name=nameAt(index);
+                        final JsonValue value=valueAt(index);
+                        return new JsonObject.Entry() {
+                            @Override
+                            public String getName() {
+                                return name;
+                            }
+
+                            @Override
+                            public JsonValue getValue() {
+                                return value;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public boolean forEach(JsonObject.EntryVisitor visitor) {
+        boolean result=true;
+        int size=size();
+        for(int i=0;i<size;i++)
+            if(!visitor.visit(nameAt(i), valueAt(i))) {
+                result = false;
+                break;
+            }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return document.tapeInt(offset+1);
+    }
+    
+    @Override
+    protected boolean isImmutable() {
+        return true;
+    }
+    
+    /**
+     * Our content lives in our document's buffer, off the heap
+     */
+    @Override
+    /* default */ long estimateRetainedSize() {
+        return HeapSize.object(HeapSize.REFERENCE+2*4);
+    }
+    
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0)
+            hash = result = Json.hashCode(this);
+        return result;
+    }
+    
+    private abstract class EntryIterator<T> implements Iterator<T> {
+        private final int size=size();
+        private int index=0;
+
+        @Override
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        @Override
+        public T next() {
+            if(index >= size)
+                throw new NoSuchElementException();
+            T result=get(index);
+            index = index+1;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        protected abstract T get(int index);
+    }
+}
@@ -0,0 +1,440 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ final class PersistentHashMap<V> {
+    private static abstract class Node {
+        public abstract Object get(int shift, int hash, String key);
+        
+        public abstract Node with(int shift, int hash, String key, Object value, boolean[] added);
+        
+        /**
+         * @return the new node, {@code this} if the key was not present, or
+         *         {@code null} if the node is now empty
+         */
+        public abstract Node without(int shift, int hash, String key);
+        
+        /**
+         * Alternating keys and values. A {@code null} key means the
+         * following slot holds a child {@link Node}.
+         */
+        public abstract Object[] array();
+    }
+    
+    private static final class BitmapNode extends Node {
+        private final int bitmap;
+        private final Object[] array;
+        
+        public BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+        
+        @Override
+        public Object get(int shift, int hash, String key) {
+            Object result;
+            
+            int bit=bit(hash, shift);
+            if((bitmap & bit) != 0) {
+                int index=2*index(bit);
+                Object k=array[index], v=array[index+1];
+                if(k == null)
+                    result = ((Node) v).get(shift+5, hash, key);
+                else
+                if(key.equals(k))
+                    result = v;
+                else
+                    result = null;
+            }
+            else
+                result = null;
+            
+            return result;
+        }
+
+        @Override
+        public Node with(int shift, int hash, String key, Object value, boolean[] added) {
+            Node result;
+            
+            int bit=bit(hash, shift);
+            int index=2*index(bit);
+            if((bitmap & bit) != 0) {
+                Object k=array[index], v=array[index+1];
+                if(k == null) {
+                    Node child=((Node) v).with(shift+5, hash, key, value, added);
+                    result = child==v ? this : new BitmapNode(bitmap, replace(array, index+1, child));
+                } else
+                if(key.equals(k)) {
+                    result = value==v ? this : new BitmapNode(bitmap, replace(array, index+1, value));
+                }
+                else {
+                    Node child=node(shift+5, (String) k, v, hash, key, value);
+                    Object[] newArray=array.clone();
+                    newArray[index] = null;
+                    newArray[index+1] = child;
+                    added[0] = true;
+                    result = new BitmapNode(bitmap, newArray);
+                }
+            }
+            else {
+                Object[] newArray=new Object[array.length+2];
+                System.arraycopy(array, 0, newArray, 0, index);
+                newArray[index] = key;
+                newArray[index+1] = value;
+                System.arraycopy(array, index, newArray, index+2, array.length-index);
+                added[0] = true;
+                result = new BitmapNode(bitmap | bit, newArray);
+            }
+            
+            return result;
+        }
+
+        @Override
+        public Node without(int shift, int hash, String key) {
+            Node result;
+            
+            int bit=bit(hash, shift);
+            if((bitmap & bit) != 0) {
+                int index=2*index(bit);
+                Object k=array[index], v=array[index+1];
+                if(k == null) {
+                    Node child=((Node) v).without(shift+5, hash, key);
+                    if(child == v)
+                        result = this;
+                    else
+                    if(child == null)
+                        result = remove(bit, index);
+                    else
+                    if(child.array().length==2 && child.array()[0]!=null) {
+                        // Pull a lone entry up into this node so the trie
+                        // stays no deeper than its keys need
+                        Object[] newArray=array.clone();
+                        newArray[index] = child.array()[0];
+                        newArray[index+1] = child.array()[1];
+                        result = new BitmapNode(bitmap, newArray);
+                    }
+                    else
+                        result = new BitmapNode(bitmap, replace(array, index+1, child));
+                } else
+                if(key.equals(k))
+                    result = remove(bit, index);
+                else
+                    result = this;
+            }
+            else
+                result = this;
+            
+            return result;
+        }
+        
+        @Override
+        public Object[] array() {
+            return array;
+        }
+        
+        private Node remove(int bit, int index) {
+            Node result;
+            if(bitmap == bit)
+                result = null;
+            else {
+                Object[] newArray=new Object[array.length-2];
+                System.arraycopy(array, 0, newArray, 0, index);
+                System.arraycopy(array, index+2, newArray, index, array.length-index-2);
+                result = new BitmapNode(bitmap ^ bit, newArray);
+            }
+            return result;
+        }
+        
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit-1));
+        }
+    }
+    
+    /**
+     * Holds keys whose hash codes are identical
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+        
+        public CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int shift, int hash, String key) {
+            Object result=null;
+            if(hash == this.hash) {
+                int index=find(key);
+                if(index != -1)
+                    result = array[index+1];
+            }
+            return result;
+        }
+
+        @Override
+        public Node with(int shift, int hash, String key, Object value, boolean[] added) {
+            Node result;
+            if(hash == this.hash) {
+                int index=find(key);
+                if(index == -1) {
+                    Object[] newArray=Arrays.copyOf(array, array.length+2);
+                    newArray[array.length] = key;
+                    newArray[array.length+1] = value;
+                    added[0] = true;
+                    result = new CollisionNode(hash, newArray);
+                } else
+                if(array[index+1] == value)
+                    result = this;
+                else
+                    result = new CollisionNode(hash, replace(array, index+1, value));
+            }
+            else {
+                result = new BitmapNode(bit(this.hash, shift), new Object[] { null, this })
+                    .with(shift, hash, key, value, added);
+            }
+            return result;
+        }
+
+        @Override
+        public Node without(int shift, int hash, String key) {
+            Node result;
+            int index=hash==this.hash ? find(key) : -1;
+            if(index == -1)
+                result = this;
+            else
+            if(array.length == 2)
+                result = null;
+            else
+            if(array.length == 4) {
+                // The parent pulls the remaining entry up into itself
+                int other=index==0 ? 2 : 0;
+                result = new CollisionNode(hash, new Object[] { array[other], array[other+1] });
+            }
+            else {
+                Object[] newArray=new Object[array.length-2];
+                System.arraycopy(array, 0, newArray, 0, index);
+                System.arraycopy(array, index+2, newArray, index, array.length-index-2);
+                result = new CollisionNode(hash, newArray);
+            }
+            return result;
+        }
+        
+        @Override
+        public Object[] array() {
+            return array;
+        }
+        
+        private int find(String key) {
+            int result=-1;
+            for(int i=0;i<array.length;i+=2)
+                if(key.equals(array[i])) {
+                    result = i;
+                    break;
+                }
+            return result;
+        }
+    }
+    
+    /**
+     * Walks the entries of a map depth-first with an explicit stack
+     */
+    public static final class Cursor<V> {
+        private final Object[][] arrays;
+        private final int[] indexes;
+        private int depth;
+        private String key;
+        private V value;
+        
+        private Cursor(Node root) {
+            this.arrays = new Object[MAX_DEPTH][];
+            this.indexes = new int[MAX_DEPTH];
+            this.arrays[0] = root.array();
+            this.indexes[0] = 0;
+            this.depth = 0;
+        }
+        
+        /**
+         * @return {@code true} if the cursor moved to another entry, or
+         *         {@code false} if there are no more entries
+         */
+        @SuppressWarnings("unchecked")
+        public boolean next() {
+            boolean result=false;
+            while(depth >= 0) {
+                Object[] array=arrays[depth];
+                int index=indexes[depth];
+                if(index < array.length) {
+                    indexes[depth] = index+2;
+                    Object k=array[index];
+                    if(k == null) {
+                        depth = depth+1;
+                        arrays[depth] = ((Node) array[index+1]).array();
+                        indexes[depth] = 0;
+                    }
+                    else {
+                        key = (String) k;
+                        value = (V) array[index+1];
+                        result = true;
+                        break;
+                    }
+                }
+                else {
+                    arrays[depth] = null;
+                    depth = depth-1;
+                }
+            }
+            return result;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public V getValue() {
+            return value;
+        }
+    }
+    
+    /**
+     * 32-bit hashes in 5-bit chunks give at most 7 levels of bitmap nodes,
+     * plus a level of collisions
+     */
+    private static final int MAX_DEPTH=(32+4)/5+1;
+    
+    private static final PersistentHashMap<Object> EMPTY=new PersistentHashMap<>(new BitmapNode(0, new Object[0]), 0);
+    
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentHashMap<V> empty() {
+        return (PersistentHashMap<V>) EMPTY;
+    }
+    
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+    
+    private static Object[] replace(Object[] array, int index, Object value) {
+        Object[] result=array.clone();
+        result[index] = value;
+        return result;
+    }
+    
+    private static Node node(int shift, String k1, Object v1, int h2, String k2, Object v2) {
+        Node result;
+        int h1=k1.hashCode();
+        if(h1 == h2)
+            result = new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+        else {
+            boolean[] added=new boolean[1];
+            result = new BitmapNode(0, new Object[0])
+                .with(shift, h1, k1, v1, added)
+                .with(shift, h2, k2, v2, added);
+        }
+        return result;
+    }
+    
+    private final Node root;
+    private final int size;
+    
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public V get(String key) {
+        return (V) root.get(0, key.hashCode(), key);
+    }
+    
+    public PersistentHashMap<V> with(String key, V value) {
+        if(key == null)
+            throw new NullPointerException();
+        if(value == null)
+            throw new NullPointerException();
+        boolean[] added=new boolean[1];
+        Node newRoot=root.with(0, key.hashCode(), key, value, added);
+        return newRoot==root ? this : new PersistentHashMap<V>(newRoot, added[0] ? size+1 : size);
+    }
+    
+    public PersistentHashMap<V> without(String key) {
+        PersistentHashMap<V> result;
+        Node newRoot=root.without(0, key.hashCode(), key);
+        if(newRoot == root)
+            result = this;
+        else
+        if(newRoot == null)
+            result = empty();
+        else
+            result = new PersistentHashMap<V>(newRoot, size-1);
+        return result;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @return an estimate of the heap used by this map and its nodes, not
+     *         counting its keys and values
+     */
+    public long estimateNodeSize() {
+        return HeapSize.object(HeapSize.REFERENCE+4)+nodeSize(root);
+    }
+    
+    private static long nodeSize(Node node) {
+        Object[] array=node.array();
+        long result=HeapSize.object(HeapSize.REFERENCE+4)+HeapSize.array(array.length, HeapSize.REFERENCE);
+        for(int i=0;i<array.length;i+=2)
+            if(array[i] == null)
+                result = result+nodeSize((Node) array[i+1]);
+        return result;
+    }
+    
+    public PersistentHashMap.Cursor<V> cursor() {
+        return new Cursor<V>(root);
+    }
+    
+    public Iterator<String> keys() {
+        final Cursor<V> cursor=cursor();
+        return new Iterator<String>() {
+            private boolean ready=cursor.next();
+            
+            @Override
+            public boolean hasNext() {
+                return ready;
+            }
+
+            @Override
+            public String next() {
+                if(!ready)
+                    throw new NoSuchElementException();
+                String result=cursor.getKey();
+                ready = cursor.next();
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
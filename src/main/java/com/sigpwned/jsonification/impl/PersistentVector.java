@@ -0,0 +1,243 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/* default */ final class PersistentVector<E> {
+    private static final int BITS=5;
+    
+    private static final int WIDTH=1 << BITS;
+    
+    private static final int MASK=WIDTH-1;
+    
+    private static final PersistentVector<Object> EMPTY=new PersistentVector<>(0, BITS, new Object[WIDTH], new Object[0]);
+    
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentVector<E> empty() {
+        return (PersistentVector<E>) EMPTY;
+    }
+    
+    /**
+     * Builds a vector from the given values directly, which is much cheaper
+     * than appending them one at a time.
+     */
+    public static <E> PersistentVector<E> of(E[] values, int size) {
+        PersistentVector<E> result;
+        if(size == 0)
+            result = empty();
+        else {
+            int tailoff=tailoff(size);
+            
+            Object[][] nodes=new Object[tailoff/WIDTH][];
+            for(int i=0;i<nodes.length;i++)
+                nodes[i] = Arrays.copyOfRange(values, i*WIDTH, (i+1)*WIDTH, Object[].class);
+            
+            int shift=BITS;
+            while(nodes.length > WIDTH) {
+                Object[][] parents=new Object[(nodes.length+WIDTH-1)/WIDTH][];
+                for(int i=0;i<parents.length;i++) {
+                    parents[i] = new Object[WIDTH];
+                    int length=Math.min(WIDTH, nodes.length-i*WIDTH);
+                    System.arraycopy(nodes, i*WIDTH, parents[i], 0, length);
+                }
+                nodes = parents;
+                shift = shift+BITS;
+            }
+            
+            Object[] root=new Object[WIDTH];
+            System.arraycopy(nodes, 0, root, 0, nodes.length);
+            
+            Object[] tail=Arrays.copyOfRange(values, tailoff, size, Object[].class);
+            
+            result = new PersistentVector<>(size, shift, root, tail);
+        }
+        return result;
+    }
+    
+    private static int tailoff(int size) {
+        return size<WIDTH ? 0 : ((size-1) >>> BITS) << BITS;
+    }
+    
+    private static Object[] newPath(int level, Object[] node) {
+        Object[] result;
+        if(level == 0)
+            result = node;
+        else {
+            result = new Object[WIDTH];
+            result[0] = newPath(level-BITS, node);
+        }
+        return result;
+    }
+    
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+    
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index);
+        return (E) leaf(index)[index & MASK];
+    }
+    
+    public PersistentVector<E> with(int index, E value) {
+        checkIndex(index);
+        PersistentVector<E> result;
+        if(index >= tailoff(size)) {
+            Object[] newTail=tail.clone();
+            newTail[index & MASK] = value;
+            result = new PersistentVector<>(size, shift, root, newTail);
+        }
+        else
+            result = new PersistentVector<>(size, shift, with(shift, root, index, value), tail);
+        return result;
+    }
+    
+    public PersistentVector<E> append(E value) {
+        PersistentVector<E> result;
+        if(size-tailoff(size) < WIDTH) {
+            Object[] newTail=Arrays.copyOf(tail, tail.length+1);
+            newTail[tail.length] = value;
+            result = new PersistentVector<>(size+1, shift, root, newTail);
+        }
+        else {
+            Object[] newRoot;
+            int newShift=shift;
+            if((size >>> BITS) > (1 << shift)) {
+                newRoot = new Object[WIDTH];
+                newRoot[0] = root;
+                newRoot[1] = newPath(shift, tail);
+                newShift = newShift+BITS;
+            }
+            else
+                newRoot = pushTail(shift, root, tail);
+            result = new PersistentVector<>(size+1, newShift, newRoot, new Object[] { value });
+        }
+        return result;
+    }
+    
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index=0;
+            private Object[] leaf=null;
+            
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public E next() {
+                if(index >= size)
+                    throw new NoSuchElementException();
+                if(leaf==null || (index & MASK)==0)
+                    leaf = leaf(index);
+                E result=(E) leaf[index & MASK];
+                index = index+1;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+    
+    /**
+     * Copies the values of this vector into the given array
+     */
+    public void copyInto(E[] values) {
+        for(int i=0;i<size;i+=WIDTH) {
+            Object[] leaf=leaf(i);
+            System.arraycopy(leaf, 0, values, i, Math.min(leaf.length, size-i));
+        }
+    }
+    
+    /**
+     * @return an estimate of the heap used by this vector and its nodes, not
+     *         counting its elements
+     */
+    public long estimateNodeSize() {
+        return HeapSize.object(2*4+2*HeapSize.REFERENCE)+nodeSize(shift, root)+HeapSize.array(tail.length, HeapSize.REFERENCE);
+    }
+    
+    private static long nodeSize(int level, Object[] node) {
+        long result=HeapSize.array(node.length, HeapSize.REFERENCE);
+        if(level > 0)
+            for(Object child : node)
+                if(child != null)
+                    result = result+nodeSize(level-BITS, (Object[]) child);
+        return result;
+    }
+    
+    private Object[] leaf(int index) {
+        Object[] result;
+        if(index >= tailoff(size))
+            result = tail;
+        else {
+            result = root;
+            for(int level=shift;level>0;level-=BITS)
+                result = (Object[]) result[(index >>> level) & MASK];
+        }
+        return result;
+    }
+    
+    private Object[] with(int level, Object[] node, int index, E value) {
+        Object[] result=node.clone();
+        if(level == 0)
+            result[index & MASK] = value;
+        else {
+            int subindex=(index >>> level) & MASK;
+            result[subindex] = with(level-BITS, (Object[]) node[subindex], index, value);
+        }
+        return result;
+    }
+    
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int subindex=((size-1) >>> level) & MASK;
+        Object[] result=parent.clone();
+        Object[] child;
+        if(level == BITS)
+            child = tailNode;
+        else {
+            Object[] existing=(Object[]) parent[subindex];
+            child = existing!=null ? pushTail(level-BITS, existing, tailNode) : newPath(level-BITS, tailNode);
+        }
+        result[subindex] = child;
+        return result;
+    }
+    
+    private void checkIndex(int index) {
+        if(index<0 || index>=size)
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+    }
+}
@@ -0,0 +1,324 @@
+package com.sigpwned.jsonification.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonError;
+import com.sigpwned.jsonification.JsonParser;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.ParseJsonException;
+import com.sigpwned.jsonification.parser.DefaultJsonParser;
+import com.sigpwned.jsonification.value.JsonArray;
+import com.sigpwned.jsonification.value.JsonObject;
+import com.sigpwned.jsonification.value.ScalarJsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class RawJsonValue extends AbstractJsonValue {
+    /**
+     * Ignores parse events, so parsing only validates
+     */
+    private static final JsonParser.Handler VALIDATOR=new JsonParser.Handler() {
+        @Override
+        public void openObject(String name) {
+        }
+
+        @Override
+        public void closeObject() {
+        }
+
+        @Override
+        public void openArray(String name) {
+        }
+
+        @Override
+        public void closeArray() {
+        }
+
+        @Override
+        public void nil(String name) {
+        }
+
+        @Override
+        public void scalar(String name, long value) {
+        }
+
+        @Override
+        public void scalar(String name, double value) {
+        }
+
+        @Override
+        public void scalar(String name, boolean value) {
+        }
+
+        @Override
+        public void scalar(String name, String value) {
+        }
+    };
+    
+    /**
+     * Returns a raw value holding the given JSON text, which must contain
+     * exactly one JSON value.
+     * 
+     * @throws ParseJsonException if the text is not exactly one JSON value
+     */
+    public static RawJsonValue valueOf(CharSequence json) {
+        String text=json.toString();
+        validate(text);
+        return new RawJsonValue(text, null);
+    }
+    
+    /**
+     * Returns a raw value holding a copy of the given UTF-8 encoded JSON,
+     * which must contain exactly one JSON value.
+     * 
+     * @throws ParseJsonException if the bytes are not exactly one JSON value
+     */
+    public static RawJsonValue valueOf(byte[] utf8) {
+        String text=new String(utf8, StandardCharsets.UTF_8);
+        validate(text);
+        return new RawJsonValue(text, Arrays.copyOf(utf8, utf8.length));
+    }
+    
+    /**
+     * Returns a raw value holding the given JSON text without validating it.
+     * Use this only for text known to contain exactly one JSON value, e.g.,
+     * output from a generator. Invalid text produces invalid output.
+     */
+    public static RawJsonValue trusted(CharSequence json) {
+        return new RawJsonValue(json.toString(), null);
+    }
+    
+    /**
+     * Returns a raw value holding the given UTF-8 encoded JSON without
+     * validating or copying it. Use this only for bytes known to contain
+     * exactly one JSON value, e.g., output from a generator, that will not
+     * change. Invalid bytes produce invalid output.
+     */
+    public static RawJsonValue trusted(byte[] utf8) {
+        return new RawJsonValue(null, utf8);
+    }
+    
+    private static void validate(String text) {
+        try {
+            try (DefaultJsonParser p=new DefaultJsonParser(new StringReader(text))) {
+                if(!p.parse(VALIDATOR))
+                    throw new ParseJsonException("No JSON value in raw text");
+                if(p.parse(VALIDATOR))
+                    throw new ParseJsonException("More than one JSON value in raw text");
+            }
+        }
+        catch(IOException e) {
+            throw new JsonError("Impossible IOException", e);
+        }
+    }
+    
+    private volatile String text;
+    private final byte[] utf8;
+    private final JsonValue.Type type;
+    private volatile JsonValue parsed;
+    
+    private RawJsonValue(String text, byte[] utf8) {
+        if(text!=null ? text.isEmpty() : utf8.length==0)
+            throw new ParseJsonException("No JSON value in raw text");
+        this.text = text;
+        this.utf8 = utf8;
+        this.type = typeOf(text != null ? text.charAt(firstNonWhitespace(text)) : (char) utf8[firstNonWhitespace(utf8)]);
+    }
+    
+    /**
+     * @return the JSON text
+     */
+    public String getText() {
+        String result=text;
+        if(result == null)
+            text = result = new String(utf8, StandardCharsets.UTF_8);
+        return result;
+    }
+    
+    /**
+     * @return {@code true} if this value holds UTF-8 bytes, so
+     *         {@link #getByteLength()}, {@link #getBytes(byte[], int)} and
+     *         {@link #writeTo(OutputStream)} need not encode
+     */
+    public boolean isUtf8() {
+        return utf8 != null;
+    }
+    
+    /**
+     * @return the length of the UTF-8 encoded JSON, in bytes
+     */
+    public int getByteLength() {
+        return utf8().length;
+    }
+    
+    /**
+     * Copies the UTF-8 encoded JSON into the given array
+     */
+    public void getBytes(byte[] dst, int dstBegin) {
+        byte[] bytes=utf8();
+        System.arraycopy(bytes, 0, dst, dstBegin, bytes.length);
+    }
+    
+    /**
+     * Writes the UTF-8 encoded JSON to the given stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(utf8());
+    }
+    
+    /**
+     * Writes the JSON text to the given writer. Unlike {@link #getText()},
+     * this does not keep the decoded text, so a value that holds UTF-8 bytes,
+     * e.g., a form kept by a {@link SerializedFormCache}, stays that size.
+     */
+    public void writeTo(Writer out) throws IOException {
+        String t=text;
+        if(t != null)
+            out.write(t);
+        else {
+            char[] chunk=new char[Math.min(utf8.length, 1024)];
+            for(int i=0;i<utf8.length;) {
+                int end=getAsciiChars(i, Math.min(utf8.length, i+chunk.length), chunk, 0);
+                out.write(chunk, 0, end-i);
+                if(end<utf8.length && utf8[end]<0) {
+                    out.write(decode(end));
+                    end = utf8.length;
+                }
+                i = end;
+            }
+        }
+    }
+    
+    /**
+     * Copies the JSON text into the given array one char per UTF-8 byte, like
+     * {@link String#getChars(int, int, char[], int)}, for as long as the
+     * bytes are ASCII. Only valid when this value {@link #isUtf8() holds
+     * UTF-8 bytes}.
+     * 
+     * @return the offset of the first byte not copied, which is
+     *         {@code srcEnd} unless a non-ASCII byte was found
+     */
+    public int getAsciiChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        int i=srcBegin;
+        while(i<srcEnd && utf8[i]>=0) {
+            dst[dstBegin+i-srcBegin] = (char) utf8[i];
+            i = i+1;
+        }
+        return i;
+    }
+    
+    /**
+     * Decodes the JSON text from the given byte offset, which must start a
+     * character, without keeping the result. Only valid when this value
+     * {@link #isUtf8() holds UTF-8 bytes}.
+     */
+    public String decode(int byteBegin) {
+        return new String(utf8, byteBegin, utf8.length-byteBegin, StandardCharsets.UTF_8);
+    }
+    
+    private byte[] utf8() {
+        return utf8 != null ? utf8 : text.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * @return the parsed value, which is frozen and parsed only once
+     */
+    private JsonValue parsed() {
+        JsonValue result=parsed;
+        if(result == null)
+            parsed = result = Json.freeze(Json.parse(getText()));
+        return result;
+    }
+    
+    @Override
+    public JsonValue.Type getType() {
+        return type;
+    }
+    
+    @Override
+    public boolean isNull() {
+        return type == JsonValue.Type.NULL;
+    }
+    
+    @Override
+    public JsonObject asObject() {
+        return type==JsonValue.Type.OBJECT ? parsed().asObject() : super.asObject();
+    }
+    
+    @Override
+    public JsonArray asArray() {
+        return type==JsonValue.Type.ARRAY ? parsed().asArray() : super.asArray();
+    }
+    
+    @Override
+    public ScalarJsonValue asScalar() {
+        return type==JsonValue.Type.SCALAR ? parsed().asScalar() : super.asScalar();
+    }
+    
+    @Override
+    protected boolean isImmutable() {
+        return true;
+    }
+    
+    @Override
+    /* default */ long estimateRetainedSize() {
+        String t=text;
+        JsonValue p=parsed;
+        long result=HeapSize.object(4*HeapSize.REFERENCE);
+        if(t != null)
+            result = result+HeapSize.string(t);
+        if(utf8 != null)
+            result = result+HeapSize.array(utf8.length, 1);
+        if(p != null)
+            result = result+HeapSize.estimateRetainedSize(p);
+        return result;
+    }
+    
+    private static JsonValue.Type typeOf(char first) {
+        JsonValue.Type result;
+        if(first == '{')
+            result = JsonValue.Type.OBJECT;
+        else
+        if(first == '[')
+            result = JsonValue.Type.ARRAY;
+        else
+        if(first == 'n')
+            result = JsonValue.Type.NULL;
+        else
+            result = JsonValue.Type.SCALAR;
+        return result;
+    }
+    
+    private static int firstNonWhitespace(String s) {
+        int result=0;
+        while(result<s.length()-1 && Character.isWhitespace(s.charAt(result)))
+            result = result+1;
+        return result;
+    }
+    
+    private static int firstNonWhitespace(byte[] bs) {
+        int result=0;
+        while(result<bs.length-1 && Character.isWhitespace((char) bs[result]))
+            result = result+1;
+        return result;
+    }
+}
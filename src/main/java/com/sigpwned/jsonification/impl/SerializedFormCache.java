@@ -0,0 +1,235 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sigpwned.jsonification.JsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class SerializedFormCache {
+    public static final long DEFAULT_MAX_BYTES=16L*1024L*1024L;
+    
+    /**
+     * How many recently seen values the admission filter remembers
+     */
+    private static final int SEEN_SIZE=4096;
+    
+    /**
+     * Looks values up by identity, since only the very same immutable value
+     * is guaranteed to have the same serialized form
+     */
+    private static final class IdentityKey {
+        private final JsonValue value;
+        
+        public IdentityKey(JsonValue value) {
+            this.value = value;
+        }
+        
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(value);
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IdentityKey && ((IdentityKey) other).value==value;
+        }
+    }
+    
+    /**
+     * A serialized form, and how many bytes it counts against the budget
+     */
+    private static final class Form {
+        private final RawJsonValue raw;
+        private final long cost;
+        
+        public Form(RawJsonValue raw, long cost) {
+            this.raw = raw;
+            this.cost = cost;
+        }
+    }
+    
+    /**
+     * @return the bytes that caching the given form of the given value
+     *         counts against the budget: the form itself, plus the value,
+     *         which the cache keeps reachable as its key
+     */
+    /* default */ static long cost(JsonValue value, byte[] utf8) {
+        long entry=HeapSize.LINKED_HASH_MAP_NODE+HeapSize.object(HeapSize.REFERENCE)+HeapSize.object(HeapSize.REFERENCE+8);
+        long form=HeapSize.object(4*HeapSize.REFERENCE)+HeapSize.array(utf8.length, 1);
+        return entry+form+HeapSize.estimateRetainedSize(value);
+    }
+    
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<IdentityKey,Form> forms;
+    
+    /**
+     * Identity hash codes of recently seen values, mapped to {@code false}
+     * if the value was too large to cache
+     */
+    private final Map<Integer,Boolean> seen;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    public SerializedFormCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+    
+    /**
+     * @param maxBytes The most bytes of heap to use, counting both the
+     *            serialized JSON and the values it was serialized from, which
+     *            the cache keeps reachable. When the cache is full, the least
+     *            recently used forms are evicted until the new one fits. No
+     *            single entry larger than a sixteenth of this is cached, so
+     *            one large value cannot evict everything else.
+     */
+    public SerializedFormCache(long maxBytes) {
+        if(maxBytes <= 0L)
+            throw new IllegalArgumentException("maxBytes must be positive: "+maxBytes);
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.max(maxBytes/16L, 1L);
+        this.forms = new LinkedHashMap<>(16, 0.75f, true);
+        this.seen = new LinkedHashMap<Integer,Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer,Boolean> eldest) {
+                return size() > SEEN_SIZE;
+            }
+        };
+    }
+    
+    /**
+     * @return {@code true} if the given value's serialized form can be
+     *         cached, i.e., it is a container that can never change
+     */
+    public boolean isCacheable(JsonValue value) {
+        boolean result;
+        if(value instanceof RawJsonValue)
+            result = false;
+        else
+        if(value instanceof AbstractJsonValue)
+            result = ((AbstractJsonValue) value).isImmutable() && (value.getType()==JsonValue.Type.OBJECT || value.getType()==JsonValue.Type.ARRAY);
+        else
+            result = false;
+        return result;
+    }
+    
+    /**
+     * @return the cached serialized form of the given value, or {@code null}
+     *         if there is none
+     */
+    public synchronized RawJsonValue get(JsonValue value) {
+        Form form=forms.get(new IdentityKey(value));
+        if(form != null)
+            hits = hits+1;
+        else
+            misses = misses+1;
+        return form!=null ? form.raw : null;
+    }
+    
+    /**
+     * Decides whether a value that missed should be serialized and cached.
+     * A value is admitted the second time it is seen recently, so values
+     * that are emitted once, like the many short-lived trees of a busy
+     * server, never pay for caching. A value that was already found to be
+     * too large to cache is never admitted again while it is remembered, so
+     * it is written directly rather than serialized twice on every emit. The
+     * filter remembers identity hash codes rather than values, so it keeps
+     * nothing reachable, and a rare collision only admits or rejects a value
+     * early.
+     */
+    public synchronized boolean admit(JsonValue value) {
+        Integer key=System.identityHashCode(value);
+        Boolean previous=seen.get(key);
+        if(previous == null)
+            seen.put(key, Boolean.TRUE);
+        return Boolean.TRUE.equals(previous);
+    }
+    
+    /**
+     * Caches the given UTF-8 serialized form of the given value, which must
+     * be cacheable, evicting least recently used forms as needed. A value
+     * that is too large to cache is remembered, and is not admitted again.
+     * 
+     * @return the serialized form as a raw value, whether or not it was
+     *         cached
+     */
+    public synchronized RawJsonValue put(JsonValue value, byte[] utf8) {
+        RawJsonValue result=RawJsonValue.trusted(utf8);
+        long cost=cost(value, utf8);
+        if(cost <= maxEntryBytes) {
+            Form previous=forms.put(new IdentityKey(value), new Form(result, cost));
+            if(previous != null)
+                bytes = bytes-previous.cost;
+            bytes = bytes+cost;
+            for(Iterator<Form> i=forms.values().iterator();bytes>maxBytes && i.hasNext();) {
+                Form eldest=i.next();
+                i.remove();
+                bytes = bytes-eldest.cost;
+                evictions = evictions+1;
+            }
+        }
+        else
+            seen.put(System.identityHashCode(value), Boolean.FALSE);
+        return result;
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    /**
+     * @return the bytes currently counted against the budget, i.e., the
+     *         serialized JSON and the values it was serialized from
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+    
+    /**
+     * @return the number of serialized forms currently cached
+     */
+    public synchronized int size() {
+        return forms.size();
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+    
+    /**
+     * Forgets all cached forms, but not the statistics
+     */
+    public synchronized void clear() {
+        forms.clear();
+        seen.clear();
+        bytes = 0L;
+    }
+}
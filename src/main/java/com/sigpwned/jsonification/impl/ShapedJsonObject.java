@@ -0,0 +1,488 @@
+package com.sigpwned.jsonification.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class ShapedJsonObject extends AbstractJsonValue implements JsonObject {
+    /**
+     * The layout of this object's keys, shared with every other object that
+     * has the same keys in the same order, or {@code null} if this object has
+     * fallen back to a dictionary
+     */
+    private JsonShape shape;
+    
+    /**
+     * This object's values, in the order of its shape's keys. Only the first
+     * {@code shape.size()} elements are used.
+     */
+    private JsonValue[] values;
+    
+    /**
+     * This object's members once it no longer fits in a shared shape, or
+     * {@code null} otherwise
+     */
+    private Map<String,JsonValue> dictionary;
+    
+    /**
+     * The number of shapes this object has created
+     */
+    private int created;
+    
+    /**
+     * The number of values in this object that are mutable containers. We
+     * can only cache our hash code when there are none, since we are not told
+     * when nested values change.
+     */
+    private int mutables;
+    
+    /**
+     * Cached hash code, or 0 if not computed
+     */
+    private int hash;
+    
+    /**
+     * Creates an object with its own shape tree, which it shares only with
+     * its copies. Objects from a {@link DefaultJsonFactory} with shaped
+     * objects enabled share that factory's shape tree.
+     */
+    public ShapedJsonObject() {
+        this(DefaultJsonObject.DEFAULT_CAPACITY);
+    }
+    
+    public ShapedJsonObject(int capacity) {
+        this(JsonShape.newRoot(), capacity);
+    }
+    
+    /**
+     * @param root The root of the shape tree to share key layouts in
+     * @param capacity The expected number of members. Objects expected to
+     *            have more members than a shape can hold start as
+     *            dictionaries.
+     */
+    /* default */ ShapedJsonObject(JsonShape root, int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative: "+capacity);
+        if(capacity > JsonShape.MAX_KEYS) {
+            this.shape = null;
+            this.dictionary = new LinkedHashMap<>(capacity+capacity/3+1);
+        }
+        else {
+            this.shape = root.getRoot();
+            this.values = new JsonValue[capacity];
+        }
+    }
+    
+    private ShapedJsonObject(JsonShape shape, JsonValue[] values, Map<String,JsonValue> dictionary, int created, int mutables, int hash) {
+        this.shape = shape;
+        this.values = values;
+        this.dictionary = dictionary;
+        this.created = created;
+        this.mutables = mutables;
+        this.hash = hash;
+    }
+    
+    /**
+     * @return a deep copy of this object with the same shape. Containers are
+     *         copied, and scalars are shared since they are immutable.
+     */
+    public ShapedJsonObject copy() {
+        ShapedJsonObject result;
+        if(shape != null) {
+            int size=shape.size();
+            JsonValue[] newValues=new JsonValue[size];
+            for(int i=0;i<size;i++)
+                newValues[i] = Json.copy(values[i]);
+            result = new ShapedJsonObject(shape, newValues, null, created, mutables, hash);
+        }
+        else {
+            Map<String,JsonValue> newDictionary=new LinkedHashMap<>(dictionary.size()+dictionary.size()/3+1);
+            for(Map.Entry<String,JsonValue> e : dictionary.entrySet())
+                newDictionary.put(e.getKey(), Json.copy(e.getValue()));
+            result = new ShapedJsonObject(null, null, newDictionary, created, mutables, hash);
+        }
+        return result;
+    }
+    
+    /**
+     * @return {@code true} if this object shares its key layout with other
+     *         objects that have the same keys in the same order, or
+     *         {@code false} if it has fallen back to a private dictionary
+     */
+    public boolean isShaped() {
+        return shape != null;
+    }
+    
+    /* default */ JsonShape getShape() {
+        return shape;
+    }
+    
+    @Override
+    public ShapedJsonObject asObject() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.OBJECT;
+    }
+
+    @Override
+    public JsonValue get(String name) {
+        JsonValue result;
+        if(shape != null) {
+            int slot=shape.indexOf(name);
+            result = slot!=-1 ? values[slot] : null;
+        }
+        else
+            result = dictionary.get(name);
+        return result;
+    }
+
+    @Override
+    public ShapedJsonObject set(String name, JsonValue value) {
+        if(name == null)
+            throw new NullPointerException();
+        if(value == null)
+            value = Json.NULL;
+        
+        JsonValue removed;
+        if(shape != null) {
+            int slot=shape.indexOf(name);
+            if(slot != -1) {
+                removed = values[slot];
+                values[slot] = value;
+            }
+            else {
+                JsonShape newShape=extend(shape, name);
+                if(newShape != null) {
+                    int size=shape.size();
+                    if(size == values.length)
+                        values = Arrays.copyOf(values, Math.min(size+(size >> 1)+1, JsonShape.MAX_KEYS));
+                    values[size] = value;
+                    shape = newShape;
+                }
+                else {
+                    toDictionary();
+                    dictionary.put(name, value);
+                }
+                removed = null;
+            }
+        }
+        else
+            removed = dictionary.put(name, value);
+        
+        changed(removed, value);
+        
+        return this;
+    }
+    
+    @Override
+    public ShapedJsonObject set(String name, boolean value) {
+        return set(name, DefaultJsonBoolean.valueOf(value));
+    }
+
+    @Override
+    public ShapedJsonObject set(String name, long value) {
+        return set(name, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public ShapedJsonObject set(String name, double value) {
+        return set(name, DefaultJsonNumber.valueOf(value));
+    }
+
+    @Override
+    public ShapedJsonObject set(String name, String value) {
+        return set(name, DefaultJsonString.valueOf(value));
+    }
+
+    @Override
+    public boolean has(String name) {
+        return shape!=null ? shape.indexOf(name)!=-1 : dictionary.containsKey(name);
+    }
+    
+    @Override
+    public JsonValue remove(String name) {
+        JsonValue result;
+        if(shape != null) {
+            int slot=shape.indexOf(name);
+            if(slot != -1) {
+                result = values[slot];
+                JsonShape newShape=shape.getRoot();
+                for(int i=0;i<shape.size() && newShape!=null;i++)
+                    if(i != slot)
+                        newShape = extend(newShape, shape.getKey(i));
+                if(newShape != null) {
+                    System.arraycopy(values, slot+1, values, slot, shape.size()-slot-1);
+                    values[shape.size()-1] = null;
+                    shape = newShape;
+                }
+                else {
+                    toDictionary();
+                    dictionary.remove(name);
+                }
+            }
+            else
+                result = null;
+        }
+        else
+            result = dictionary.remove(name);
+        
+        if(result != null)
+            changed(result, null);
+        
+        return result;
+    }
+
+    @Override
+    public Set<String> keys() {
+        Set<String> result;
+        if(shape != null) {
+            result = new AbstractSet<String>() {
+                @Override
+                public Iterator<String> iterator() {
+                    return new SlotIterator<String>() {
+                        @Override
+                        protected String get(String name, JsonValue value) {
+                            return name;
+                        }
+                    };
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return o instanceof String && has((String) o);
+                }
+
+                @Override
+                public int size() {
+                    return ShapedJsonObject.this.size();
+                }
+            };
+        }
+        else
+            result = Collections.unmodifiableSet(dictionary.keySet());
+        return result;
+    }
+
+    @Override
+    public Collection<JsonValue> values() {
+        Collection<JsonValue> result;
+        if(shape != null) {
+            result = new AbstractCollection<JsonValue>() {
+                @Override
+                public Iterator<JsonValue> iterator() {
+                    return new SlotIterator<JsonValue>() {
+                        @Override
+                        protected JsonValue get(String name, JsonValue value) {
+                            return value;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return ShapedJsonObject.this.size();
+                }
+            };
+        }
+        else
+            result = Collections.unmodifiableCollection(dictionary.values());
+        return result;
+    }
+
+    @Override
+    public Iterable<JsonObject.Entry> entries() {
+        return new Iterable<JsonObject.Entry>() {
+            public Iterator<JsonObject.Entry> iterator() {
+                Iterator<JsonObject.Entry> result;
+                if(shape != null) {
+                    result = new SlotIterator<JsonObject.Entry>() {
+                        @Override
+                        protected JsonObject.Entry get(String name, JsonValue value) {
+                            return entry(name, value);
+                        }
+                    };
+                }
+                else {
+                    final Iterator<Map.Entry<String,JsonValue>> iterator=dictionary.entrySet().iterator();
+                    result = new Iterator<JsonObject.Entry>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public JsonObject.Entry next() {
+                            Map.Entry<String,JsonValue> e=iterator.next();
+                            return entry(e.getKey(), e.getValue());
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public boolean forEach(JsonObject.EntryVisitor visitor) {
+        boolean result=true;
+        if(shape != null) {
+            int size=shape.size();
+            for(int i=0;i<size;i++)
+                if(!visitor.visit(shape.getKey(i), values[i])) {
+                    result = false;
+                    break;
+                }
+        }
+        else {
+            for(Map.Entry<String,JsonValue> e : dictionary.entrySet())
+                if(!visitor.visit(e.getKey(), e.getValue())) {
+                    result = false;
+                    break;
+                }
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return shape!=null ? shape.size() : dictionary.size();
+    }
+    
+    /**
+     * Our keys are owned by our shape, which is shared, so they are not
+     * counted
+     */
+    @Override
+    /* default */ long estimateRetainedSize() {
+        long result=HeapSize.object(3*HeapSize.REFERENCE+3*4);
+        if(shape != null)
+            result = result+HeapSize.array(values.length, HeapSize.REFERENCE)+HeapSize.members(this, false);
+        else
+            result = result+HeapSize.hashMap(HeapSize.LINKED_HASH_MAP, dictionary.size(), HeapSize.LINKED_HASH_MAP_NODE)+HeapSize.members(this, true);
+        return result;
+    }
+    
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0) {
+            result = Json.hashCode(this);
+            if(mutables == 0)
+                hash = result;
+        }
+        return result;
+    }
+    
+    private void changed(JsonValue removed, JsonValue added) {
+        if(isMutable(removed))
+            mutables = mutables-1;
+        if(isMutable(added))
+            mutables = mutables+1;
+        hash = 0;
+    }
+    
+    /**
+     * @return the shape with the given shape's keys followed by the given
+     *         key, or {@code null} if this object may not create it
+     */
+    private JsonShape extend(JsonShape from, String key) {
+        JsonShape result=from.find(key);
+        if(result==null && created<JsonShape.MAX_CREATED_SHAPES) {
+            result = from.with(key);
+            if(result != null)
+                created = created+1;
+        }
+        return result;
+    }
+    
+    /**
+     * Moves this object's members out of its shape and into a private
+     * dictionary, keeping their order
+     */
+    private void toDictionary() {
+        int size=shape.size();
+        Map<String,JsonValue> newDictionary=new LinkedHashMap<>(2*size+1);
+        for(int i=0;i<size;i++)
+            newDictionary.put(shape.getKey(i), values[i]);
+        dictionary = newDictionary;
+        shape = null;
+        values = null;
+    }
+    
+    private static JsonObject.Entry entry(final String name, final JsonValue value) {
+        return new JsonObject.Entry() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public JsonValue getValue() {
+                return value;
+            }
+        };
+    }
+    
+    private abstract class SlotIterator<T> implements Iterator<T> {
+        private final JsonShape iterated=shape;
+        private int index=0;
+
+        @Override
+        public boolean hasNext() {
+            return index < iterated.size();
+        }
+
+        @Override
+        public T next() {
+            if(index >= iterated.size())
+                throw new NoSuchElementException();
+            if(shape != iterated)
+                throw new ConcurrentModificationException();
+            T result=get(iterated.getKey(index), values[index]);
+            index = index+1;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+        
+        protected abstract T get(String name, JsonValue value);
+    }
+}
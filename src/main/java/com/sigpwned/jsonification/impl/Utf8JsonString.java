@@ -0,0 +1,353 @@
+package com.sigpwned.jsonification.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.ClassCastJsonException;
+import com.sigpwned.jsonification.exception.ParseJsonException;
+import com.sigpwned.jsonification.value.ScalarJsonValue;
+import com.sigpwned.jsonification.value.scalar.JsonBoolean;
+import com.sigpwned.jsonification.value.scalar.JsonNumber;
+import com.sigpwned.jsonification.value.scalar.JsonString;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public final class Utf8JsonString extends AbstractJsonValue implements JsonString {
+    /**
+     * @return a string holding a copy of the given UTF-8 bytes, which are not
+     *         decoded until the string's value is needed
+     * @throws ParseJsonException if the bytes are not well-formed UTF-8
+     */
+    public static Utf8JsonString valueOf(byte[] bytes, int offset, int length) {
+        return wrap(Arrays.copyOfRange(bytes, offset, offset+length));
+    }
+    
+    /**
+     * Like {@link #valueOf(byte[], int, int)}, but takes ownership of the
+     * given array instead of copying it
+     */
+    /* default */ static Utf8JsonString wrap(byte[] utf8) {
+        if(!wellFormed(utf8))
+            throw new ParseJsonException("Invalid UTF-8 in string");
+        return new Utf8JsonString(utf8);
+    }
+    
+    /**
+     * @return a string holding the UTF-8 encoding of the given value, or a
+     *         default string if the value contains unpaired surrogates, which
+     *         UTF-8 cannot represent
+     */
+    public static JsonString valueOf(String value) {
+        JsonString result;
+        if(value == null)
+            result = Json.NULL;
+        else {
+            if(wellFormed(value))
+                result = new Utf8JsonString(value.getBytes(StandardCharsets.UTF_8), value);
+            else
+                result = DefaultJsonString.valueOf(value);
+        }
+        return result;
+    }
+    
+    private final byte[] utf8;
+    
+    /**
+     * {@code true} if every byte is printable ASCII that generators write
+     * without escaping
+     */
+    private final boolean escapeFree;
+    
+    /**
+     * The decoded value, or {@code null} if it has not been decoded yet.
+     * Decoding is idempotent, so racing threads are harmless.
+     */
+    private String value;
+    
+    /**
+     * Cached hash code, or 0 if not computed
+     */
+    private int hash;
+    
+    private Utf8JsonString(byte[] utf8) {
+        this(utf8, null);
+    }
+    
+    private Utf8JsonString(byte[] utf8, String value) {
+        this.utf8 = utf8;
+        this.value = value;
+        boolean plain=true;
+        for(int i=0;i<utf8.length && plain;i++) {
+            byte b=utf8[i];
+            plain = b>=0x20 && b<0x7F && b!='"' && b!='\\' && b!='/';
+        }
+        this.escapeFree = plain;
+    }
+    
+    /**
+     * @return {@code true} if this string is all printable ASCII that never
+     *         needs escaping, so that its bytes can be written out as they
+     *         are
+     */
+    public boolean isEscapeFree() {
+        return escapeFree;
+    }
+    
+    public int getByteLength() {
+        return utf8.length;
+    }
+    
+    /**
+     * Copies this string's UTF-8 bytes into the given array
+     */
+    public void getBytes(byte[] dst, int dstBegin) {
+        System.arraycopy(utf8, 0, dst, dstBegin, utf8.length);
+    }
+    
+    /**
+     * Writes this string's UTF-8 bytes to the given stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(utf8);
+    }
+    
+    /**
+     * Copies the given range of bytes into the given array as characters,
+     * like {@link String#getChars(int, int, char[], int)}. Only valid when
+     * this string is {@link #isEscapeFree() escape-free}, since its bytes and
+     * characters are then the same.
+     */
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if(!escapeFree)
+            throw new IllegalStateException("not an ASCII string");
+        for(int i=srcBegin;i<srcEnd;i++)
+            dst[dstBegin+i-srcBegin] = (char) utf8[i];
+    }
+    
+    /**
+     * @return {@code true} if this string has the same characters as the
+     *         given string, compared without decoding either one
+     */
+    public boolean contentEquals(JsonString other) {
+        boolean result;
+        if(other instanceof Utf8JsonString)
+            result = Arrays.equals(utf8, ((Utf8JsonString) other).utf8);
+        else
+            result = contentEquals(other.stringVal());
+        return result;
+    }
+    
+    /**
+     * @return {@code true} if this string has the same characters as the
+     *         given string, compared without decoding this string
+     */
+    public boolean contentEquals(String s) {
+        String decoded=value;
+        boolean result;
+        if(decoded != null)
+            result = decoded.equals(s);
+        else {
+            result = true;
+            int j=0, n=s.length();
+            for(int i=0;i<utf8.length && result;) {
+                int length=sequenceLength(utf8[i]);
+                int cp=codePoint(utf8, i, length);
+                if(cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                    result = j<n && s.charAt(j)==cp;
+                    j = j+1;
+                }
+                else {
+                    result = j+1<n && s.charAt(j)==Character.highSurrogate(cp) && s.charAt(j+1)==Character.lowSurrogate(cp);
+                    j = j+2;
+                }
+                i = i+length;
+            }
+            result = result && j==n;
+        }
+        return result;
+    }
+    
+    @Override
+    public JsonString asString() {
+        return this;
+    }
+
+    @Override
+    public ScalarJsonValue asScalar() {
+        return this;
+    }
+
+    @Override
+    public JsonValue.Type getType() {
+        return JsonValue.Type.SCALAR;
+    }
+
+    @Override
+    public ScalarJsonValue.Flavor getFlavor() {
+        return ScalarJsonValue.Flavor.STRING;
+    }
+
+    @Override
+    public Object getValue() {
+        return stringVal();
+    }
+
+    @Override
+    public String getStringValue() {
+        return stringVal();
+    }
+
+    @Override
+    public String stringVal() {
+        String result=value;
+        if(result == null)
+            value = result = new String(utf8, StandardCharsets.UTF_8);
+        return result;
+    }
+    
+    @Override
+    public JsonNumber asNumber() {
+        throw new ClassCastJsonException(this, ScalarJsonValue.Flavor.NUMBER);
+    }
+
+    @Override
+    public JsonBoolean asBoolean() {
+        throw new ClassCastJsonException(this, ScalarJsonValue.Flavor.BOOLEAN);
+    }
+    
+    /**
+     * Computes the same hash code as {@link String#hashCode()} on the decoded
+     * value, without decoding it
+     */
+    @Override
+    public int hashCode() {
+        int result=hash;
+        if(result == 0) {
+            for(int i=0;i<utf8.length;) {
+                int length=sequenceLength(utf8[i]);
+                int cp=codePoint(utf8, i, length);
+                if(cp < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+                    result = 31*result + cp;
+                else {
+                    result = 31*result + Character.highSurrogate(cp);
+                    result = 31*result + Character.lowSurrogate(cp);
+                }
+                i = i+length;
+            }
+            hash = result;
+        }
+        return result;
+    }
+    
+    @Override
+    /* default */ long estimateRetainedSize() {
+        String decoded=value;
+        long result=HeapSize.object(2*HeapSize.REFERENCE+2*4)+HeapSize.array(utf8.length, 1);
+        if(decoded != null)
+            result = result+HeapSize.string(decoded);
+        return result;
+    }
+    
+    /**
+     * @return the number of bytes in the sequence starting with the given
+     *         byte, or -1 if it cannot start a sequence
+     */
+    private static int sequenceLength(byte b) {
+        int result;
+        if((b & 0x80) == 0)
+            result = 1;
+        else
+        if((b & 0xE0) == 0xC0)
+            result = 2;
+        else
+        if((b & 0xF0) == 0xE0)
+            result = 3;
+        else
+        if((b & 0xF8) == 0xF0)
+            result = 4;
+        else
+            result = -1;
+        return result;
+    }
+    
+    private static int codePoint(byte[] bs, int index, int length) {
+        int result;
+        switch(length) {
+        case 1:
+            result = bs[index];
+            break;
+        case 2:
+            result = ((bs[index] & 0x1F) << 6) | (bs[index+1] & 0x3F);
+            break;
+        case 3:
+            result = ((bs[index] & 0x0F) << 12) | ((bs[index+1] & 0x3F) << 6) | (bs[index+2] & 0x3F);
+            break;
+        case 4:
+            result = ((bs[index] & 0x07) << 18) | ((bs[index+1] & 0x3F) << 12) | ((bs[index+2] & 0x3F) << 6) | (bs[index+3] & 0x3F);
+            break;
+        default:
+            result = -1;
+            break;
+        }
+        return result;
+    }
+    
+    /**
+     * @return {@code true} if the given bytes are well-formed UTF-8, with no
+     *         overlong encodings, surrogates, or code points past U+10FFFF
+     */
+    private static boolean wellFormed(byte[] bs) {
+        boolean result=true;
+        for(int i=0;i<bs.length && result;) {
+            int length=sequenceLength(bs[i]);
+            if(length==-1 || i+length>bs.length)
+                result = false;
+            else {
+                for(int j=1;j<length && result;j++)
+                    result = (bs[i+j] & 0xC0) == 0x80;
+                if(result) {
+                    int cp=codePoint(bs, i, length);
+                    int minimum=length==1 ? 0 : length==2 ? 0x80 : length==3 ? 0x800 : 0x10000;
+                    result = cp>=minimum && cp<=Character.MAX_CODE_POINT && (cp<Character.MIN_SURROGATE || cp>Character.MAX_SURROGATE);
+                }
+                i = i+length;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return {@code true} if the given string has no unpaired surrogates
+     */
+    private static boolean wellFormed(String s) {
+        boolean result=true;
+        int n=s.length();
+        for(int i=0;i<n && result;i++) {
+            char ch=s.charAt(i);
+            if(Character.isHighSurrogate(ch)) {
+                result = i+1<n && Character.isLowSurrogate(s.charAt(i+1));
+                i = i+1;
+            }
+            else
+                result = !Character.isLowSurrogate(ch);
+        }
+        return result;
+    }
+}
@@ -37,8 +37,18 @@ public class DefaultJsonEventParser implements AutoCloseable, JsonEventParser {
     }
     
     public DefaultJsonEventParser(JsonParser parser) {
+        this(parser, Json.getDefaultFactory());
+    }
+    
+    /**
+     * @param factory The factory that creates the scalar values this parser
+     *            reports
+     */
+    public DefaultJsonEventParser(JsonParser parser, JsonFactory factory) {
+        if(factory == null)
+            throw new NullPointerException();
         this.parser = parser;
-        this.factory = Json.getDefaultFactory();
+        this.factory = factory;
     }
     
     @Override
@@ -300,6 +300,201 @@ public class DefaultJsonParser implements AutoCloseable, JsonParser {
         }
     }
     
+    /**
+     * What may come next while skipping a container
+     */
+    private static final int SKIP_FIRST=0;
+    private static final int SKIP_VALUE=1;
+    private static final int SKIP_NAME=2;
+    private static final int SKIP_COLON=3;
+    private static final int SKIP_NEXT=4;
+    
+    /**
+     * Reads the rest of the object or array opened by the last event
+     * without reporting events for its contents. If {@code raw} is not
+     * null, then the container's text is appended to it, starting with its
+     * open bracket, as it appears in the input apart from whitespace
+     * between tokens. The text is checked against the JSON grammar token by
+     * token, without building values, so it is always valid JSON. Input
+     * this parser accepts but JSON does not is normalized: control
+     * characters in strings are escaped, and numbers missing digits around
+     * their decimal point get a zero.
+     * 
+     * @throws IllegalStateException if the last event did not open a
+     *         container
+     */
+    public void skipContainer(StringBuilder raw) throws IOException {
+        Scope scope=scopes.get(scopes.size()-1);
+        if(scope.type==Scope.Type.ROOT || scope.count!=0 || peek!=null)
+            throw new IllegalStateException("last event did not open a container");
+        
+        StringBuilder closers=new StringBuilder();
+        closers.append(scope.type==Scope.Type.OBJECT ? '}' : ']');
+        if(raw != null)
+            raw.append(scope.type==Scope.Type.OBJECT ? '{' : '[');
+        int state=SKIP_FIRST;
+        while(closers.length() != 0) {
+            boolean object=closers.charAt(closers.length()-1) == '}';
+            boolean value=state==SKIP_VALUE || (state==SKIP_FIRST && !object);
+            int cp=getch();
+            if(cp == -1)
+                throw new ParseJsonException("Unexpected EOF in "+(object ? "object" : "array"));
+            else
+            if(Character.isWhitespace(cp)) {
+                // Drop whitespace between tokens
+            }
+            else
+            if(cp=='{' || cp=='[') {
+                if(!value)
+                    throw unexpected(object, cp);
+                closers.append(cp=='{' ? '}' : ']');
+                if(raw != null)
+                    raw.appendCodePoint(cp);
+                state = SKIP_FIRST;
+            }
+            else
+            if(cp=='}' || cp==']') {
+                if(closers.charAt(closers.length()-1)!=cp || (state!=SKIP_NEXT && state!=SKIP_FIRST))
+                    throw unexpected(object, cp);
+                closers.setLength(closers.length()-1);
+                if(raw != null)
+                    raw.appendCodePoint(cp);
+                state = SKIP_NEXT;
+            }
+            else
+            if(cp == ',') {
+                if(state != SKIP_NEXT)
+                    throw unexpected(object, cp);
+                if(raw != null)
+                    raw.append(',');
+                state = object ? SKIP_NAME : SKIP_VALUE;
+            }
+            else
+            if(cp == ':') {
+                if(state != SKIP_COLON)
+                    throw unexpected(object, cp);
+                if(raw != null)
+                    raw.append(':');
+                state = SKIP_VALUE;
+            }
+            else
+            if(cp == '"') {
+                if(state==SKIP_NAME || (state==SKIP_FIRST && object))
+                    state = SKIP_COLON;
+                else
+                if(value)
+                    state = SKIP_NEXT;
+                else
+                    throw unexpected(object, cp);
+                skipString(raw);
+            }
+            else
+            if(cp=='t' || cp=='f' || cp=='n') {
+                if(!value)
+                    throw unexpected(object, cp);
+                String keyword=cp=='t' ? "true" : cp=='f' ? "false" : "null";
+                for(int i=1;i<keyword.length();i++)
+                    if(getch() != keyword.charAt(i))
+                        throw new ParseJsonException("Unexpected token in "+(object ? "object" : "array")+": expected "+keyword);
+                if(raw != null)
+                    raw.append(keyword);
+                state = SKIP_NEXT;
+            }
+            else
+            if(cp=='-' || cp=='.' || (cp>='0' && cp<='9')) {
+                if(!value)
+                    throw unexpected(object, cp);
+                skipNumber(cp, raw);
+                state = SKIP_NEXT;
+            }
+            else
+                throw unexpected(object, cp);
+        }
+        
+        scopes.remove(scopes.size()-1);
+    }
+    
+    /**
+     * Skips the rest of a string constant whose opening quote was just read,
+     * appending it to {@code raw}, if not null, with its closing quote
+     */
+    private void skipString(StringBuilder raw) throws IOException {
+        if(raw != null)
+            raw.append('"');
+        for(int cp=getch();cp!='"';cp=getch()) {
+            if(cp == -1)
+                throw new ParseJsonException("Unexpected EOF in string constant");
+            else
+            if(cp == '\\') {
+                int cp2=getch();
+                if(cp2 == -1)
+                    throw new ParseJsonException("Unexpected EOF in escape sequence in string constant");
+                else
+                if(cp2 == 'u') {
+                    if(raw != null)
+                        raw.append("\\u");
+                    for(int i=0;i<4;i++) {
+                        int u=getch();
+                        if((u>='0' && u<='9') || (u>='a' && u<='f') || (u>='A' && u<='F')) {
+                            if(raw != null)
+                                raw.append((char) u);
+                        }
+                        else
+                            throw new ParseJsonException("Invalid character in unicode escape sequence in string constant: "+(u==-1 ? "EOF" : new String(Character.toChars(u))));
+                    }
+                }
+                else
+                if(cp2=='"' || cp2=='\\' || cp2=='/' || cp2=='b' || cp2=='f' || cp2=='n' || cp2=='r' || cp2=='t') {
+                    if(raw != null)
+                        raw.append('\\').append((char) cp2);
+                }
+                else
+                    throw new ParseJsonException("Invalid escape sequence in string constant: \\"+new String(Character.toChars(cp2)));
+            }
+            else
+            if(cp < 0x20) {
+                if(raw != null)
+                    raw.append(String.format("\\u%04x", cp));
+            }
+            else
+            if(raw != null)
+                raw.appendCodePoint(cp);
+        }
+        if(raw != null)
+            raw.append('"');
+    }
+    
+    /**
+     * Skips the rest of a numeric constant starting with the given
+     * character, appending it to {@code raw}, if not null, in JSON form
+     */
+    private void skipNumber(int cp, StringBuilder raw) throws IOException {
+        String text=number(cp).text;
+        boolean digits=false;
+        for(int i=0;i<text.length() && !digits;i++)
+            digits = Character.isDigit(text.charAt(i));
+        if(!digits)
+            throw new ParseJsonException("Expected digits in numeric constant: "+text);
+        if(raw != null) {
+            int point=text.indexOf('.');
+            if(point == -1)
+                raw.append(text);
+            else {
+                raw.append(text, 0, point);
+                if(point==0 || text.charAt(point-1)=='-')
+                    raw.append('0');
+                raw.append('.');
+                if(point+1==text.length() || !Character.isDigit(text.charAt(point+1)))
+                    raw.append('0');
+                raw.append(text, point+1, text.length());
+            }
+        }
+    }
+    
+    private static ParseJsonException unexpected(boolean object, int cp) {
+        return new ParseJsonException("Unexpected token in "+(object ? "object" : "array")+": "+new String(Character.toChars(cp)));
+    }
+    
     private void value(JsonParser.Handler handler, String name, Token t) {
         switch(t.type) {
         case CLOSE_ARRAY:
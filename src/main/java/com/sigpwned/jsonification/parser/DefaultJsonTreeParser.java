@@ -13,6 +13,7 @@ import com.sigpwned.jsonification.JsonFactory;
 import com.sigpwned.jsonification.JsonTreeParser;
 import com.sigpwned.jsonification.JsonValue;
 import com.sigpwned.jsonification.exception.ParseJsonException;
+import com.sigpwned.jsonification.impl.JsonInterner;
 import com.sigpwned.jsonification.value.JsonArray;
 import com.sigpwned.jsonification.value.JsonObject;
 
@@ -43,6 +44,7 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
     }
 
     private final JsonEventParser parser;
+    private JsonInterner interner;
     
     /* default */ DefaultJsonTreeParser(String text) throws IOException {
         this(Json.getDefaultFactory().newEventParser(new StringReader(text)));
@@ -52,6 +54,17 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
         this.parser = parser;
     }
     
+    /**
+     * Builds trees with the given factory, which also becomes the given
+     * event parser's factory
+     */
+    public DefaultJsonTreeParser(JsonEventParser parser, JsonFactory factory) {
+        if(factory == null)
+            throw new NullPointerException();
+        this.parser = parser;
+        this.parser.setFactory(factory);
+    }
+    
     @Override
     public JsonFactory getFactory() {
         return getParser().getFactory();
@@ -62,6 +75,26 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
         getParser().setFactory(factory);
     }
 
+    /**
+     * @return the interner used to share equal subtrees, or {@code null} if
+     *         subtrees are not shared
+     */
+    public JsonInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Sets the interner used to share equal subtrees. When set, every value
+     * is interned as soon as it is complete, so the trees this parser returns
+     * are frozen, and equal subtrees within and across trees are the same
+     * instance. The interner can be shared by several parsers on one thread.
+     * 
+     * @param interner the interner, or {@code null} to stop sharing
+     */
+    public void setInterner(JsonInterner interner) {
+        this.interner = interner;
+    }
+
     @Override
     public JsonValue next() throws IOException {
         JsonValue result=null;
@@ -81,14 +114,15 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
                 case CLOSE_OBJECT:
                 {
                     Scope scope=scopes.remove(scopes.size()-1);
+                    JsonValue value=intern(scope.value);
                     if(scopes.size() != 0) {
                         Scope top=scopes.get(scopes.size()-1);
                         switch(top.value.getType()) {
                         case ARRAY:
-                            top.value.asArray().add(scope.value);
+                            top.value.asArray().add(value);
                             break;
                         case OBJECT:
-                            top.value.asObject().set(scope.name, scope.value);
+                            top.value.asObject().set(scope.name, value);
                             break;
                         case NULL:
                             throw new JsonError("unexpected null scope");
@@ -99,7 +133,7 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
                         }
                     }
                     else {
-                        result = scope.value;
+                        result = value;
                         break loop;
                     }
                 } break;
@@ -109,14 +143,15 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
                 case CLOSE_ARRAY:
                 {
                     Scope scope=scopes.remove(scopes.size()-1);
+                    JsonValue value=intern(scope.value);
                     if(scopes.size() != 0) {
                         Scope top=scopes.get(scopes.size()-1);
                         switch(top.value.getType()) {
                         case ARRAY:
-                            top.value.asArray().add(scope.value);
+                            top.value.asArray().add(value);
                             break;
                         case OBJECT:
-                            top.value.asObject().set(scope.name, scope.value);
+                            top.value.asObject().set(scope.name, value);
                             break;
                         case NULL:
                             throw new JsonError("unexpected null scope");
@@ -127,14 +162,14 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
                         }
                     }
                     else {
-                        result = scope.value;
+                        result = value;
                         break loop;
                     }
                 } break;
                 case SCALAR:
                 {
                     if(scopes.size() == 0) {
-                        result = e.getValue();
+                        result = intern(e.getValue());
                         break loop;
                     }
                     else {
@@ -143,12 +178,12 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
                         case OBJECT:
                         {
                             JsonObject object=scope.value.asObject();
-                            object.set(e.getName(), e.getValue());
+                            object.set(e.getName(), intern(e.getValue()));
                         } break;
                         case ARRAY:
                         {
                             JsonArray array=scope.value.asArray();
-                            array.add(e.getValue());
+                            array.add(intern(e.getValue()));
                         } break;
                         case NULL:
                             throw new JsonError("unexpected null scope");
@@ -169,6 +204,10 @@ public class DefaultJsonTreeParser implements AutoCloseable, JsonTreeParser {
         return result;
     }
 
+    private JsonValue intern(JsonValue value) {
+        return interner!=null ? interner.intern(value) : value;
+    }
+
     private JsonEventParser getParser() {
         return parser;
     }
@@ -2,6 +2,7 @@ package com.sigpwned.jsonification.parser;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -64,8 +65,16 @@ public class DefaultJsonValueParser implements AutoCloseable, JsonParser {
         }
     }
     
-    private static class ObjectScope extends Scope {
-        private Iterator<JsonObject.Entry> iterator;
+    /**
+     * Walks an object's entries by position. The entries are collected with
+     * {@link JsonObject#forEach(JsonObject.EntryVisitor)} when the object is
+     * opened, so no entry objects are allocated along the way.
+     */
+    private static class ObjectScope extends Scope implements JsonObject.EntryVisitor {
+        private String[] names;
+        private JsonValue[] values;
+        private int count;
+        private int position;
         
         public ObjectScope(JsonObject value) {
             super(Scope.Type.OBJECT, value);
@@ -75,12 +84,46 @@ public class DefaultJsonValueParser implements AutoCloseable, JsonParser {
             return super.getValue().asObject();
         }
         
-        public Iterator<JsonObject.Entry> getIterator() {
-            return iterator;
+        public boolean isOpen() {
+            return names != null;
         }
         
-        public void setIterator(Iterator<JsonObject.Entry> iterator) {
-            this.iterator = iterator;
+        public void open() {
+            int size=getValue().size();
+            names = new String[size];
+            values = new JsonValue[size];
+            count = 0;
+            position = -1;
+            getValue().forEach(this);
+        }
+        
+        @Override
+        public boolean visit(String name, JsonValue value) {
+            // Concurrent objects can grow while we visit them
+            if(count == names.length) {
+                names = Arrays.copyOf(names, 2*count+1);
+                values = Arrays.copyOf(values, 2*count+1);
+            }
+            names[count] = name;
+            values[count] = value;
+            count = count+1;
+            return true;
+        }
+        
+        public boolean hasNext() {
+            return position+1 < count;
+        }
+        
+        public void next() {
+            position = position+1;
+        }
+        
+        public String getEntryName() {
+            return names[position];
+        }
+        
+        public JsonValue getEntryValue() {
+            return values[position];
         }
     }
     
@@ -252,7 +295,7 @@ public class DefaultJsonValueParser implements AutoCloseable, JsonParser {
                     case OBJECT:
                     {
                         ObjectScope child=new ObjectScope(value.asObject());
-                        child.setIterator(child.getValue().entries().iterator());
+                        child.open();
                         scopes.add(child);
                         handler.openObject(null);
                     } break;
@@ -291,14 +334,14 @@ public class DefaultJsonValueParser implements AutoCloseable, JsonParser {
             case OBJECT:
             {
                 ObjectScope object=(ObjectScope) scope;
-                if(object.getIterator() == null) {
+                if(!object.isOpen()) {
                     handler.openObject(null);
-                    object.setIterator(object.getValue().entries().iterator());
+                    object.open();
                 } else
-                if(object.getIterator().hasNext()) {
-                    JsonObject.Entry entry=object.getIterator().next();
-                    String name=entry.getName();
-                    JsonValue value=entry.getValue();
+                if(object.hasNext()) {
+                    object.next();
+                    String name=object.getEntryName();
+                    JsonValue value=object.getEntryValue();
                     switch(value.getType()) {
                     case ARRAY:
                     {
@@ -313,7 +356,7 @@ public class DefaultJsonValueParser implements AutoCloseable, JsonParser {
                     case OBJECT:
                     {
                         ObjectScope child=new ObjectScope(value.asObject());
-                        child.setIterator(child.getValue().entries().iterator());
+                        child.open();
                         scopes.add(child);
                         handler.openObject(name);
                     } break;
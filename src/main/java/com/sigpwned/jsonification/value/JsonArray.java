@@ -54,4 +54,31 @@ public interface JsonArray extends JsonValue, Iterable<JsonValue> {
     public JsonValue remove(int index) throws IndexOutOfBoundsJsonException;
     
     public int size();
+    
+    /**
+     * @return the elements of this array as {@code long} values
+     * @throws com.sigpwned.jsonification.exception.ClassCastJsonException if
+     *         any element is not a number
+     * @throws com.sigpwned.jsonification.exception.NullJsonException if any
+     *         element is {@code null}
+     */
+    public long[] toLongArray();
+    
+    /**
+     * @return the elements of this array as {@code double} values
+     * @throws com.sigpwned.jsonification.exception.ClassCastJsonException if
+     *         any element is not a number
+     * @throws com.sigpwned.jsonification.exception.NullJsonException if any
+     *         element is {@code null}
+     */
+    public double[] toDoubleArray();
+    
+    /**
+     * @return the elements of this array as {@code boolean} values
+     * @throws com.sigpwned.jsonification.exception.ClassCastJsonException if
+     *         any element is not a boolean
+     * @throws com.sigpwned.jsonification.exception.NullJsonException if any
+     *         element is {@code null}
+     */
+    public boolean[] toBooleanArray();
 }
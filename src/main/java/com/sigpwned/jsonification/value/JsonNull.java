@@ -95,6 +95,10 @@ public interface JsonNull extends JsonBoolean, JsonNumber, JsonString, JsonObjec
             throw new NullJsonException();
         }
 
+        public boolean forEach(EntryVisitor visitor) {
+            throw new NullJsonException();
+        }
+
         public JsonValue get(int index) {
             throw new NullJsonException();
         }
@@ -127,6 +131,18 @@ public interface JsonNull extends JsonBoolean, JsonNumber, JsonString, JsonObjec
             throw new NullJsonException();
         }
 
+        public long[] toLongArray() {
+            throw new NullJsonException();
+        }
+
+        public double[] toDoubleArray() {
+            throw new NullJsonException();
+        }
+
+        public boolean[] toBooleanArray() {
+            throw new NullJsonException();
+        }
+
         public ScalarJsonValue.Flavor getFlavor() {
             return ScalarJsonValue.Flavor.NULL;
         }
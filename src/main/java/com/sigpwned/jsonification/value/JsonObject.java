@@ -30,6 +30,17 @@ public interface JsonObject extends JsonValue {
         public JsonValue getValue();
     }
     
+    /**
+     * Receives the name/value pairs of an object from
+     * {@link JsonObject#forEach(JsonObject.EntryVisitor)}
+     */
+    public static interface EntryVisitor {
+        /**
+         * @return {@code true} to continue visiting, or {@code false} to stop
+         */
+        public boolean visit(String name, JsonValue value);
+    }
+    
     /**
      * @param name The name of the value to retrieve
      * @return the {@code JsonValue} associated with the given {@code name}, or
@@ -139,6 +150,16 @@ public interface JsonObject extends JsonValue {
      */
     public Iterable<JsonObject.Entry> entries();
     
+    /**
+     * Passes each name/value pair in this object to the given visitor, in the
+     * same order as {@link #entries()}, without allocating an entry for each
+     * pair.
+     * 
+     * @return {@code true} if every pair was visited, or {@code false} if the
+     *         visitor stopped early
+     */
+    public boolean forEach(JsonObject.EntryVisitor visitor);
+    
     /**
      * @return the number of associated name/value pairs in this object.
      */
@@ -0,0 +1,96 @@
+package com.sigpwned.jsonification;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.impl.CopyOnWriteJsonObject;
+import com.sigpwned.jsonification.impl.DefaultJsonFactory;
+import com.sigpwned.jsonification.impl.DefaultJsonObject;
+import com.sigpwned.jsonification.value.JsonArray;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class JsonCopyTest {
+    /**
+     * Copies should be equal to, but independent of, the original
+     */
+    @Test
+    public void test1() {
+        JsonObject a=Json.parse("{\"alpha\":[1,2,3],\"bravo\":{\"charlie\":\"delta\"},\"echo\":null}").asObject();
+        JsonObject b=Json.copy(a).asObject();
+        
+        assertThat(b, is(a));
+        
+        b.get("alpha").asArray().add(4);
+        b.get("bravo").asObject().set("foxtrot", true);
+        
+        assertThat(b, not(is(a)));
+        assertThat(Json.emit(a.get("alpha")), is("[1,2,3]"));
+        assertThat(a.get("bravo").asObject().has("foxtrot"), is(false));
+    }
+    
+    /**
+     * Copies should keep the key order of the original
+     */
+    @Test
+    public void test2() {
+        JsonObject a=new DefaultJsonFactory(DefaultJsonObject.KeyOrder.INSERTION).newObject().set("zulu", 1).set("alpha", 2);
+        
+        assertThat(Json.emit(Json.copy(a)), is("{\"zulu\":1,\"alpha\":2}"));
+    }
+    
+    /**
+     * Copying a frozen tree should produce a mutable one
+     */
+    @Test
+    public void test3() {
+        JsonValue a=Json.freeze(Json.parse("{\"alpha\":[1,2,3]}"));
+        JsonObject b=Json.copy(a).asObject();
+        b.get("alpha").asArray().add(4);
+        
+        assertThat(b.get("alpha").asArray().size(), is(4));
+        assertThat(a.asObject().get("alpha").asArray().size(), is(3));
+    }
+    
+    /**
+     * Copy-on-write views should only copy the parts of the tree that change
+     */
+    @Test
+    public void test4() {
+        JsonObject a=Json.parse("{\"alpha\":{\"bravo\":[1,2]},\"charlie\":{\"delta\":1}}").asObject();
+        CopyOnWriteJsonObject b=(CopyOnWriteJsonObject) Json.copyOnWrite(a);
+        
+        JsonArray bravo=b.get("alpha").asObject().get("bravo").asArray();
+        bravo.add(3);
+        
+        assertThat(b.isCopied(), is(false));
+        assertThat(((CopyOnWriteJsonObject) b.get("alpha")).isCopied(), is(false));
+        assertThat(((CopyOnWriteJsonObject) b.get("charlie")).isCopied(), is(false));
+        assertThat(Json.emit(b.get("alpha")), is("{\"bravo\":[1,2,3]}"));
+        assertThat(Json.emit(a.get("alpha")), is("{\"bravo\":[1,2]}"));
+        
+        b.remove("charlie");
+        
+        assertThat(b.isCopied(), is(true));
+        assertThat(b.size(), is(1));
+        assertThat(a.size(), is(2));
+        assertThat(Json.emit(b), is("{\"alpha\":{\"bravo\":[1,2,3]}}"));
+    }
+}
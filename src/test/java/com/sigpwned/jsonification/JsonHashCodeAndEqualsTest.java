@@ -226,4 +226,37 @@ public class JsonHashCodeAndEqualsTest {
         assertThat(a.hashCode(), not(is(b.hashCode())));
         assertThat(a, not(is(b)));
     }
+    
+    /**
+     * Changing an object after hashing it should change its hash code
+     */
+    @Test
+    public void test19() {
+        JsonObject a=Json.newObject().set("alpha", 1).set("bravo", 2);
+        JsonObject b=Json.newObject().set("alpha", 1).set("bravo", 2);
+        int before=a.hashCode();
+        a.set("bravo", 3);
+        
+        assertThat(a.hashCode(), not(is(before)));
+        
+        a.set("bravo", 2);
+        
+        assertThat(a.hashCode(), is(b.hashCode()));
+    }
+    
+    /**
+     * Changing a nested value after hashing its parent should change the
+     * parent's hash code
+     */
+    @Test
+    public void test20() {
+        JsonArray inner=Json.newArray().add(1).add(2);
+        JsonObject a=Json.newObject().set("alpha", inner);
+        JsonArray b=Json.newArray().add(a);
+        int before=b.hashCode();
+        inner.add(3);
+        
+        assertThat(b.hashCode(), not(is(before)));
+        assertThat(b.hashCode(), is(Json.newArray().add(Json.newObject().set("alpha", Json.newArray().add(1).add(2).add(3))).hashCode()));
+    }
 }
@@ -0,0 +1,175 @@
+package com.sigpwned.jsonification;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.exception.ParseJsonException;
+import com.sigpwned.jsonification.generator.DefaultJsonGenerator;
+import com.sigpwned.jsonification.impl.DefaultJsonFactory;
+import com.sigpwned.jsonification.impl.DefaultJsonObject;
+import com.sigpwned.jsonification.parser.DefaultJsonParser;
+import com.sigpwned.jsonification.parser.DefaultJsonValueParser;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class JsonTranscoderTest {
+    private static final String TEXT="{\"id\": 7, \"secret\": {\"key\": \"x\"}, \"old\": [1, 2.5, true, null],"
+        + " \"nested\": {\"a\": \"\\u00e9\\/\", \"drop\": 1, \"b\": [{\"drop\": 2, \"c\": \"d\"}]}}";
+    
+    private static final JsonTranscoder.Hook HOOK=new JsonTranscoder.Hook() {
+        @Override
+        public void member(JsonTranscoder.Member member) {
+            if(member.getName().equals("secret"))
+                member.replace(Json.newValue("<redacted>"));
+            else
+            if(member.getName().equals("old"))
+                member.rename("new");
+            else
+            if(member.getName().equals("drop"))
+                member.drop();
+        }
+    };
+    
+    /**
+     * @return the given text parsed into objects that keep their keys in
+     *         order, so that they emit predictably
+     */
+    private static JsonValue tree(String text) throws IOException {
+        try (JsonTreeParser p=new DefaultJsonFactory(DefaultJsonObject.KeyOrder.INSERTION).newTreeParser(new StringReader(text))) {
+            return p.next();
+        }
+    }
+    
+    private static String transcode(JsonParser parser, JsonTranscoder transcoder) throws IOException {
+        StringWriter result=new StringWriter();
+        try (DefaultJsonGenerator g=new DefaultJsonGenerator(result)) {
+            assertThat(transcoder.transcode(parser, g), is(true));
+            assertThat(transcoder.transcode(parser, g), is(false));
+        }
+        return result.toString();
+    }
+    
+    /**
+     * Make sure plain transcoding matches parsing and emitting
+     */
+    @Test
+    public void test1() throws IOException {
+        String expected=Json.emit(tree(TEXT));
+        assertThat(transcode(new DefaultJsonParser(new StringReader(TEXT)), new JsonTranscoder()), is(expected));
+        assertThat(transcode(new DefaultJsonValueParser(tree(TEXT)), new JsonTranscoder()), is(expected));
+    }
+    
+    /**
+     * Make sure hooks drop, rename, and replace members at every depth
+     */
+    @Test
+    public void test2() throws IOException {
+        String expected="{\"id\":7,\"secret\":\"<redacted>\",\"new\":[1,2.5,true,null],\"nested\":{\"a\":\"\u00e9\\/\",\"b\":[{\"c\":\"d\"}]}}";
+        assertThat(transcode(new DefaultJsonParser(new StringReader(TEXT)), new JsonTranscoder(HOOK)), is(expected));
+        assertThat(transcode(new DefaultJsonValueParser(tree(TEXT)), new JsonTranscoder(HOOK)), is(expected));
+    }
+    
+    /**
+     * Make sure raw passthrough copies untouched containers' text as is
+     */
+    @Test
+    public void test3() throws IOException {
+        JsonTranscoder.Hook hook=new JsonTranscoder.Hook() {
+            @Override
+            public void member(JsonTranscoder.Member member) {
+                HOOK.member(member);
+                if(member.getName().equals("nested") && member.getDepth()==1)
+                    member.descend();
+            }
+        };
+        
+        String expected="{\"id\":7,\"secret\":\"<redacted>\",\"new\":[1,2.5,true,null],\"nested\":{\"a\":\"\u00e9\\/\",\"b\":[{\"drop\":2,\"c\":\"d\"}]}}";
+        assertThat(transcode(new DefaultJsonParser(new StringReader(TEXT)), new JsonTranscoder(hook, true)), is(expected));
+        
+        String whole="{\"a\":[1,2,{\"b\":\"\\u0041\"}],\"c\":\"\\\"}\"}";
+        assertThat(transcode(new DefaultJsonParser(new StringReader(whole)), new JsonTranscoder(null, true)), is(whole));
+    }
+    
+    /**
+     * Make sure scalars at the root are copied
+     */
+    @Test
+    public void test4() throws IOException {
+        StringWriter result=new StringWriter();
+        try (DefaultJsonGenerator g=new DefaultJsonGenerator(result)) {
+            assertThat(Json.transcode(new DefaultJsonParser(new StringReader("\"hello\"")), g), is(true));
+        }
+        assertThat(result.toString(), is("\"hello\""));
+    }
+    
+    /**
+     * Make sure malformed containers are rejected instead of being passed
+     * through, whether they are copied raw or dropped
+     */
+    @Test
+    public void test5() throws IOException {
+        String[] malformed={
+            "{\"a\":[1,,2]}",
+            "{\"b\":[tru]}",
+            "{\"c\":{\"d\" 1}}",
+            "{\"e\":[1 2]}",
+            "{\"f\":[1,]}",
+            "{\"g\":{\"h\":1,}}",
+            "{\"i\":{1:2}}",
+            "{\"j\":[\"\\q\"]}",
+            "{\"k\":[-]}",
+            "{\"l\":[1}}",
+        };
+        JsonTranscoder.Hook drop=new JsonTranscoder.Hook() {
+            @Override
+            public void member(JsonTranscoder.Member member) {
+                member.drop();
+            }
+        };
+        for(String text : malformed) {
+            for(JsonTranscoder transcoder : new JsonTranscoder[] { new JsonTranscoder(null, true), new JsonTranscoder(drop, true) }) {
+                boolean failed;
+                try {
+                    transcode(new DefaultJsonParser(new StringReader(text)), transcoder);
+                    failed = false;
+                }
+                catch(ParseJsonException e) {
+                    failed = true;
+                }
+                assertThat(text, failed, is(true));
+            }
+        }
+    }
+    
+    /**
+     * Make sure input the parser accepts but JSON does not is normalized
+     * when passed through raw
+     */
+    @Test
+    public void test6() throws IOException {
+        String text="{\"a\":[\"tab\there\", .5, -.5, 1., 1.e2]}";
+        String expected="{\"a\":[\"tab\\u0009here\",0.5,-0.5,1.0,1.0e2]}";
+        String actual=transcode(new DefaultJsonParser(new StringReader(text)), new JsonTranscoder(null, true));
+        assertThat(actual, is(expected));
+        assertThat(Json.equals(Json.parse(actual), Json.parse(text)), is(true));
+    }
+}
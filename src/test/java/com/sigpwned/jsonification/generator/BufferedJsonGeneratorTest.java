@@ -0,0 +1,139 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonGenerator;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class BufferedJsonGeneratorTest {
+    private static final String TEXT="Hello, \"world\" / \\ \b\f\n\r\t \u0001 \u00E9 \uD83D\uDE00 \uD800 \uFFFF";
+    
+    private static void write(JsonGenerator g) throws IOException {
+        g.openObject();
+        g.scalar("min", Long.MIN_VALUE);
+        g.scalar("max", Long.MAX_VALUE);
+        g.scalar("zero", 0L);
+        g.scalar("negative", -1234567890L);
+        g.scalar("pi", 3.14159);
+        g.scalar("yes", true);
+        g.nil("nothing");
+        g.openArray(TEXT);
+        for(int i=0;i<100;i++)
+            g.scalar(TEXT);
+        g.closeArray();
+        g.closeObject();
+    }
+    
+    /**
+     * Make sure output is identical to the default generator's
+     */
+    @Test
+    public void test1() throws IOException {
+        StringWriter expected=new StringWriter();
+        try (JsonGenerator g=new DefaultJsonGenerator(expected)) {
+            write(g);
+        }
+        
+        StringWriter actual=new StringWriter();
+        try (JsonGenerator g=new BufferedJsonGenerator(actual, 64)) {
+            write(g);
+        }
+        
+        assertThat(actual.toString(), is(expected.toString()));
+    }
+    
+    /**
+     * Make sure nothing reaches the writer until the buffer fills or is flushed
+     */
+    @Test
+    public void test2() throws IOException {
+        StringWriter w=new StringWriter();
+        try (BufferedJsonGenerator g=new BufferedJsonGenerator(w)) {
+            g.openArray();
+            g.scalar(1L);
+            assertThat(w.toString(), is(""));
+            g.flush();
+            assertThat(w.toString(), is("[1"));
+            g.closeArray();
+        }
+        assertThat(w.toString(), is("[1]"));
+    }
+    
+    /**
+     * Make sure trees are written without recursion, so very deep trees are
+     * fine
+     */
+    @Test
+    public void test3() {
+        int depth=100000;
+        JsonArray root=Json.newArray();
+        JsonArray array=root;
+        for(int i=1;i<depth;i++) {
+            JsonArray child=Json.newArray();
+            array.add(child);
+            array = child;
+        }
+        array.add(Json.newObject().set("a", 1L).set("b", "two"));
+        
+        StringBuilder expected=new StringBuilder();
+        for(int i=0;i<depth;i++)
+            expected.append('[');
+        expected.append("{\"a\":1,\"b\":\"two\"}");
+        for(int i=0;i<depth;i++)
+            expected.append(']');
+        
+        assertThat(Json.emit(root), is(expected.toString()));
+    }
+    
+    /**
+     * Make sure flushing the generator from a factory, as any generator,
+     * writes its output before the generator is closed
+     */
+    @Test
+    public void test4() throws IOException {
+        StringWriter w=new StringWriter();
+        JsonGenerator g=Json.getDefaultFactory().newGenerator(w);
+        g.value(Json.newArray().add(1L).add("two"));
+        g.flush();
+        assertThat(w.toString(), is("[1,\"two\"]"));
+        g.close();
+    }
+    
+    /**
+     * Make sure emitting works when the estimated size, and so the buffer,
+     * is much smaller than the output
+     */
+    @Test
+    public void test5() {
+        StringBuilder text=new StringBuilder();
+        for(int i=0;i<1000;i++)
+            text.append((char) ('a'+i%26));
+        JsonArray deep=Json.newArray().add(Json.newArray().add(Json.newArray().add(Json.newArray().add(text.toString()))));
+        
+        String expected="[[[[\""+text+"\"]]]]";
+        assertThat(Json.emit(deep), is(expected));
+        assertThat(Json.emit(Json.newValue(1L)), is("1"));
+    }
+}
@@ -0,0 +1,173 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.GenerateJsonException;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class CanonicalJsonGeneratorTest {
+    private static String canonical(JsonValue value) {
+        return new String(Json.emitCanonicalBytes(value), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Make sure numbers are formatted as in RFC 8785, Appendix B
+     */
+    @Test
+    public void test1() {
+        long[] bits={
+            0x0000000000000000L, 0x8000000000000000L, 0x0000000000000001L, 0x8000000000000001L,
+            0x7fefffffffffffffL, 0xffefffffffffffffL, 0x4340000000000000L, 0xc340000000000000L,
+            0x4430000000000000L, 0x44b52d02c7e14af5L, 0x44b52d02c7e14af6L, 0x44b52d02c7e14af7L,
+            0x444b1ae4d6e2ef4eL, 0x444b1ae4d6e2ef4fL, 0x444b1ae4d6e2ef50L, 0x3eb0c6f7a0b5ed8cL,
+            0x3eb0c6f7a0b5ed8dL, 0x41b3de4355555553L, 0x41b3de4355555554L, 0x41b3de4355555555L,
+            0x41b3de4355555556L, 0x41b3de4355555557L, 0xbecbf647612f3696L, 0x43143ff3c1cb0959L
+        };
+        String[] expected={
+            "0", "0", "5e-324", "-5e-324",
+            "1.7976931348623157e+308", "-1.7976931348623157e+308", "9007199254740992", "-9007199254740992",
+            "295147905179352830000", "9.999999999999997e+22", "1e+23", "1.0000000000000001e+23",
+            "999999999999999700000", "999999999999999900000", "1e+21", "9.999999999999997e-7",
+            "0.000001", "333333333.3333332", "333333333.33333325", "333333333.3333333",
+            "333333333.3333334", "333333333.33333343", "-0.0000033333333333333333", "1424953923781206.2"
+        };
+        for(int i=0;i<bits.length;i++)
+            assertThat(canonical(Json.newArray().add(Double.longBitsToDouble(bits[i]))), is("["+expected[i]+"]"));
+        
+        assertThat(canonical(Json.newArray().add(42L).add(-7L).add(0L)), is("[42,-7,0]"));
+    }
+    
+    /**
+     * Make sure the example from RFC 8785, Section 3.2.2 is canonicalized
+     */
+    @Test
+    public void test2() {
+        JsonValue value=Json.parse("{\n"
+            + "  \"numbers\": [333333333.33333329, 1E30, 4.50, 2e-3, 0.000000000000000000000000001],\n"
+            + "  \"string\": \"\\u20ac$\\u000F\\u000aA'\\u0042\\u0022\\u005c\\\\\\\"\\/\",\n"
+            + "  \"literals\": [null, true, false]\n"
+            + "}");
+        assertThat(canonical(value), is("{\"literals\":[null,true,false],"
+            + "\"numbers\":[333333333.3333333,1e+30,4.5,0.002,1e-27],"
+            + "\"string\":\"\u20ac$\\u000f\\nA'B\\\"\\\\\\\\\\\"/\"}"));
+    }
+    
+    /**
+     * Make sure members written one at a time are sorted by UTF-16 code
+     * units, as in RFC 8785, Section 3.2.3
+     */
+    @Test
+    public void test3() throws IOException {
+        String[] names={ "\u20ac", "\r", "\ufb33", "1", "\ud83d\ude00", "\u0080", "\u00f6" };
+        
+        CanonicalJsonGenerator g=CanonicalJsonGenerator.inMemory(32);
+        g.openObject();
+        for(int i=0;i<names.length;i++)
+            g.scalar(names[i], (long) i);
+        g.closeObject();
+        
+        assertThat(new String(g.toByteArray(), StandardCharsets.UTF_8),
+            is("{\"\\r\":1,\"1\":3,\"\u0080\":5,\"\u00f6\":6,\"\u20ac\":0,\"\ud83d\ude00\":4,\"\ufb33\":2}"));
+    }
+    
+    /**
+     * Make sure nested objects written one member at a time, in any order,
+     * match the canonical form of the same tree, even when streamed through
+     * a small buffer
+     */
+    @Test
+    public void test4() throws IOException {
+        JsonObject tree=Json.newObject();
+        ByteArrayOutputStream stream=new ByteArrayOutputStream();
+        try (CanonicalJsonGenerator g=new CanonicalJsonGenerator(stream, 32)) {
+            g.openArray();
+            g.openObject();
+            for(int i=0;i<100;i++) {
+                String name="k"+((i*37)%100);
+                if(i%10 == 0) {
+                    JsonObject child=Json.newObject().set("z", i).set("a", Json.newArray().add("x").add(Json.newObject().set("b", 1).set("a", 2)));
+                    tree.set(name, child);
+                    if(i%20 == 0)
+                        g.value(name, child);
+                    else {
+                        g.openObject(name);
+                        g.scalar("z", (long) i);
+                        g.openArray("a");
+                        g.scalar("x");
+                        g.openObject();
+                        g.scalar("b", 1L);
+                        g.scalar("a", 2L);
+                        g.closeObject();
+                        g.closeArray();
+                        g.closeObject();
+                    }
+                }
+                else {
+                    tree.set(name, "v"+i);
+                    g.scalar(name, "v"+i);
+                }
+            }
+            g.closeObject();
+            g.scalar(true);
+            g.closeArray();
+        }
+        
+        assertThat(new String(stream.toByteArray(), StandardCharsets.UTF_8), is(canonical(Json.newArray().add(tree).add(true))));
+    }
+    
+    /**
+     * Make sure digests are computed over the canonical form
+     */
+    @Test
+    public void test5() throws NoSuchAlgorithmException {
+        JsonValue value=Json.parse("{\"b\":[1,2.5,\"three\"],\"a\":{\"y\":null,\"x\":false}}");
+        byte[] expected=MessageDigest.getInstance("SHA-256").digest("{\"a\":{\"x\":false,\"y\":null},\"b\":[1,2.5,\"three\"]}".getBytes(StandardCharsets.UTF_8));
+        assertThat(Json.digest(value, MessageDigest.getInstance("SHA-256")), is(expected));
+    }
+    
+    /**
+     * Make sure values canonical JSON cannot represent are rejected
+     */
+    @Test(expected=GenerateJsonException.class)
+    public void test6() throws IOException {
+        CanonicalJsonGenerator g=CanonicalJsonGenerator.inMemory(32);
+        g.openObject();
+        g.scalar("a", 1L);
+        g.scalar("a", 2L);
+        g.closeObject();
+    }
+    
+    /**
+     * Make sure unpaired surrogates are rejected
+     */
+    @Test(expected=GenerateJsonException.class)
+    public void test7() {
+        Json.emitCanonicalBytes(Json.newArray().add("a\ud800b"));
+    }
+}
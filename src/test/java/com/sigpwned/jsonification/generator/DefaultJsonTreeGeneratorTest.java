@@ -9,9 +9,14 @@ import java.io.StringWriter;
 import org.junit.Test;
 
 import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonFactory;
 import com.sigpwned.jsonification.JsonGenerator;
 import com.sigpwned.jsonification.JsonTreeGenerator;
+import com.sigpwned.jsonification.JsonValue;
 import com.sigpwned.jsonification.exception.GenerateJsonException;
+import com.sigpwned.jsonification.impl.ConcurrentJsonArray;
+import com.sigpwned.jsonification.impl.ConcurrentJsonFactory;
+import com.sigpwned.jsonification.impl.ConcurrentJsonObject;
 import com.sigpwned.jsonification.impl.DefaultJsonObject;
 import com.sigpwned.jsonification.impl.DefaultJsonFactory;
 
@@ -85,4 +90,50 @@ public class DefaultJsonTreeGeneratorTest {
             w.close();
         }
     }
+
+    /**
+     * Make sure size hints and deep nesting build the same tree
+     */
+    @Test
+    public void test4() throws IOException {
+        try (JsonTreeGenerator g=new DefaultJsonTreeGenerator()) {
+            g.openArray(null, 3);
+            g.openObject(null, 1);
+            for(int i=1;i<20;i++)
+                g.openObject("o", 1);
+            g.scalar("x", 1L);
+            for(int i=0;i<20;i++)
+                g.closeObject();
+            g.openObject(null, -1);
+            g.scalar("a", true);
+            g.closeObject();
+            g.openArray(null, 0);
+            g.closeArray();
+            g.closeArray();
+            
+            StringBuilder expected=new StringBuilder("[{");
+            for(int i=1;i<20;i++)
+                expected.append("\"o\":{");
+            expected.append("\"x\":1");
+            for(int i=0;i<20;i++)
+                expected.append("}");
+            expected.append(",{\"a\":true},[]]");
+            assertThat(Json.emit(g.getValue()), is(expected.toString()));
+        }
+    }
+    
+    /**
+     * Make sure trees are built with the generator's own factory
+     */
+    @Test
+    public void test5() throws IOException {
+        JsonFactory factory=new ConcurrentJsonFactory();
+        try (JsonTreeGenerator g=factory.newTreeGenerator()) {
+            g.value(Json.parse("{\"a\":[1,{\"b\":2}]}"));
+            JsonValue value=g.getValue();
+            assertThat(value instanceof ConcurrentJsonObject, is(true));
+            assertThat(value.asObject().get("a") instanceof ConcurrentJsonArray, is(true));
+            assertThat(value.asObject().get("a").asArray().get(1) instanceof ConcurrentJsonObject, is(true));
+        }
+    }
 }
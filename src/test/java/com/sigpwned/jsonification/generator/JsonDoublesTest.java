@@ -0,0 +1,100 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.exception.GenerateJsonException;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class JsonDoublesTest {
+    private static String format(double value) {
+        char[] buf=new char[JsonDoubles.MAX_LENGTH];
+        return new String(buf, 0, JsonDoubles.write(value, buf, 0));
+    }
+    
+    /**
+     * Make sure random doubles round-trip through the parser bit for bit
+     */
+    @Test
+    public void test1() {
+        Random random=new Random(1234L);
+        for(int i=0;i<200000;i++) {
+            double value=Double.longBitsToDouble(random.nextLong());
+            if(Double.isNaN(value) || Double.isInfinite(value))
+                continue;
+            String s=format(value);
+            double parsed=Json.parse(s).asScalar().asNumber().doubleVal();
+            assertThat(s, Double.doubleToRawLongBits(parsed), is(Double.doubleToRawLongBits(value)));
+        }
+    }
+    
+    /**
+     * Make sure values are written in the layout of Double.toString, with
+     * as few digits as possible
+     */
+    @Test
+    public void test2() {
+        assertThat(format(0.0), is("0.0"));
+        assertThat(format(-0.0), is("-0.0"));
+        assertThat(format(1.0), is("1.0"));
+        assertThat(format(-123.456), is("-123.456"));
+        assertThat(format(0.001), is("0.001"));
+        assertThat(format(9.999E-4), is("9.999E-4"));
+        assertThat(format(9999999.0), is("9999999.0"));
+        assertThat(format(1.0E7), is("1.0E7"));
+        assertThat(format(1.0E23), is("1.0E23"));
+        assertThat(format(0.1+0.2), is("0.30000000000000004"));
+        assertThat(format(Double.MAX_VALUE), is("1.7976931348623157E308"));
+        assertThat(format(Double.MIN_NORMAL), is("2.2250738585072014E-308"));
+        assertThat(format(Double.MIN_VALUE), is("5.0E-324"));
+    }
+    
+    /**
+     * Make sure non-finite values follow the generator's policy
+     */
+    @Test
+    public void test3() throws IOException {
+        StringWriter w=new StringWriter();
+        try (BufferedJsonGenerator g=new BufferedJsonGenerator(w)) {
+            g.openArray();
+            g.setNonFinitePolicy(AbstractJsonGenerator.NonFinitePolicy.NULL);
+            g.scalar(Double.NaN);
+            g.setNonFinitePolicy(AbstractJsonGenerator.NonFinitePolicy.STRING);
+            g.scalar(Double.POSITIVE_INFINITY);
+            g.setNonFinitePolicy(AbstractJsonGenerator.NonFinitePolicy.LITERAL);
+            g.scalar(Double.NEGATIVE_INFINITY);
+            g.setNonFinitePolicy(AbstractJsonGenerator.NonFinitePolicy.FAIL);
+            g.scalar(1.5);
+            try {
+                g.scalar(Double.NaN);
+                throw new AssertionError("expected failure");
+            }
+            catch(GenerateJsonException e) {
+                // This is expected
+            }
+            g.closeArray();
+        }
+        assertThat(w.toString(), is("[null,\"Infinity\",-Infinity,1.5]"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.JsonGenerator;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class JsonEscapesTest {
+    /**
+     * The escaping rule the generators have always used, one code point at a
+     * time
+     */
+    private static String reference(String s) {
+        StringBuilder result=new StringBuilder();
+        result.append("\"");
+        int index=0;
+        while(index < s.length()) {
+            int cp=s.codePointAt(index);
+            if(Character.isLetter(cp) || Character.isDigit(cp))
+                result.appendCodePoint(cp);
+            else
+            if(cp == ' ')
+                result.append(" ");
+            else
+            if(cp == '"')
+                result.append("\\\"");
+            else
+            if(cp == '\\')
+                result.append("\\\\");
+            else
+            if(cp == '/')
+                result.append("\\/");
+            else
+            if(cp == '\b')
+                result.append("\\b");
+            else
+            if(cp == '\f')
+                result.append("\\f");
+            else
+            if(cp == '\n')
+                result.append("\\n");
+            else
+            if(cp == '\r')
+                result.append("\\r");
+            else
+            if(cp == '\t')
+                result.append("\\t");
+            else {
+                for(char ch : Character.toChars(cp))
+                    if(AbstractJsonGenerator.printable(ch))
+                        result.append(ch);
+                    else
+                        result.append(String.format("\\u%04X", (int) ch));
+            }
+            index = index+Character.charCount(cp);
+        }
+        result.append("\"");
+        return result.toString();
+    }
+    
+    private static String emit(JsonGenerator g, StringWriter w, String s) throws IOException {
+        try {
+            g.scalar(s);
+        }
+        finally {
+            g.close();
+        }
+        return w.toString();
+    }
+    
+    /**
+     * Make sure every BMP char is escaped exactly as before
+     */
+    @Test
+    public void test1() throws IOException {
+        StringBuilder all=new StringBuilder();
+        for(int ch=0;ch<=Character.MAX_VALUE;ch++)
+            all.append((char) ch);
+        String s=all.toString();
+        
+        String expected=reference(s);
+        
+        StringWriter w1=new StringWriter();
+        assertThat(emit(new DefaultJsonGenerator(w1), w1, s), is(expected));
+        
+        StringWriter w2=new StringWriter();
+        assertThat(emit(new BufferedJsonGenerator(w2), w2, s), is(expected));
+    }
+    
+    /**
+     * Make sure long strings with a few escapes are escaped exactly as before
+     */
+    @Test
+    public void test2() throws IOException {
+        StringBuilder text=new StringBuilder();
+        for(int i=0;i<1000;i++)
+            text.append("Lorem ipsum, \"dolor\"\n sit amet/\uD83D\uDE00 ");
+        String s=text.toString();
+        
+        String expected=reference(s);
+        
+        StringWriter w1=new StringWriter();
+        assertThat(emit(new DefaultJsonGenerator(w1), w1, s), is(expected));
+        
+        StringWriter w2=new StringWriter();
+        assertThat(emit(new BufferedJsonGenerator(w2, 100), w2, s), is(expected));
+    }
+}
@@ -0,0 +1,172 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class NdjsonWriterTest {
+    /**
+     * Make sure records from many threads all arrive, one per line, in
+     * order for each thread
+     */
+    @Test
+    public void test1() throws Exception {
+        final int threads=8;
+        final int records=1000;
+        File file=File.createTempFile("ndjson", ".json");
+        try {
+            final NdjsonWriter writer=new NdjsonWriter(new RandomAccessFile(file, "rw").getChannel(), NdjsonWriter.FsyncPolicy.NEVER, 1024);
+            Thread[] producers=new Thread[threads];
+            final Exception[] failures=new Exception[threads];
+            for(int t=0;t<threads;t++) {
+                final int thread=t;
+                producers[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            for(int i=0;i<records;i++)
+                                writer.write(Json.newObject().set("thread", thread).set("seq", i).set("text", "line\nbreak "+i));
+                        }
+                        catch(Exception e) {
+                            failures[thread] = e;
+                        }
+                    }
+                });
+                producers[t].start();
+            }
+            for(int t=0;t<threads;t++) {
+                producers[t].join();
+                assertThat(failures[t]==null, is(true));
+            }
+            writer.close();
+            
+            List<String> lines=Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            assertThat(lines.size(), is(threads*records));
+            int[] next=new int[threads];
+            for(String line : lines) {
+                JsonValue record=Json.parse(line);
+                int thread=(int) record.asObject().get("thread").asScalar().asNumber().longVal();
+                int seq=(int) record.asObject().get("seq").asScalar().asNumber().longVal();
+                assertThat(seq, is(next[thread]));
+                next[thread] = seq+1;
+            }
+            assertThat(writer.getBatches() > 1L, is(true));
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    /**
+     * Make sure flushing waits for earlier records, including records
+     * larger than a batch
+     */
+    @Test
+    public void test2() throws IOException {
+        File file=File.createTempFile("ndjson", ".json");
+        try {
+            NdjsonWriter writer=new NdjsonWriter(new RandomAccessFile(file, "rw").getChannel(), NdjsonWriter.FsyncPolicy.EVERY_BATCH, 64);
+            StringBuilder big=new StringBuilder();
+            for(int i=0;i<100;i++)
+                big.append("0123456789");
+            writer.write(Json.newArray().add(1));
+            writer.write(Json.newValue(big.toString()));
+            writer.flush();
+            assertThat(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), is("[1]\n\""+big+"\"\n"));
+            writer.close();
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    /**
+     * Make sure closed writers refuse records
+     */
+    @Test(expected=IOException.class)
+    public void test3() throws IOException {
+        File file=File.createTempFile("ndjson", ".json");
+        try {
+            NdjsonWriter writer=new NdjsonWriter(new RandomAccessFile(file, "rw").getChannel());
+            writer.close();
+            writer.write(Json.newArray());
+        }
+        finally {
+            file.delete();
+        }
+    }
+    
+    /**
+     * Make sure every record that writing accepts is written, even when
+     * the writer is closed while records are being written
+     */
+    @Test
+    public void test4() throws Exception {
+        final int threads=4;
+        for(int round=0;round<20;round++) {
+            File file=File.createTempFile("ndjson", ".json");
+            try {
+                final NdjsonWriter writer=new NdjsonWriter(new RandomAccessFile(file, "rw").getChannel(), NdjsonWriter.FsyncPolicy.NEVER, 1024);
+                final AtomicInteger accepted=new AtomicInteger();
+                final CountDownLatch started=new CountDownLatch(threads);
+                Thread[] producers=new Thread[threads];
+                for(int t=0;t<threads;t++) {
+                    producers[t] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            started.countDown();
+                            try {
+                                for(int i=0;;i++) {
+                                    writer.write(Json.newArray().add(i));
+                                    accepted.incrementAndGet();
+                                }
+                            }
+                            catch(IOException e) {
+                                // Closed, so stop
+                            }
+                        }
+                    });
+                    producers[t].start();
+                }
+                started.await();
+                Thread.sleep(1);
+                writer.close();
+                for(Thread producer : producers)
+                    producer.join();
+                
+                assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size(), is(accepted.get()));
+            }
+            finally {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class NonBlockingJsonGeneratorTest {
+    /**
+     * A channel that accepts at most a few bytes per write, like a slow
+     * non-blocking socket
+     */
+    private static class TrickleChannel implements WritableByteChannel {
+        private final ByteArrayOutputStream output=new ByteArrayOutputStream();
+        private final int limit;
+        
+        public TrickleChannel(int limit) {
+            this.limit = limit;
+        }
+        
+        @Override
+        public int write(ByteBuffer src) {
+            int count=Math.min(limit, src.remaining());
+            for(int i=0;i<count;i++)
+                output.write(src.get());
+            return count;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    private static JsonValue tree() {
+        JsonArray result=Json.newArray();
+        for(int i=0;i<2000;i++)
+            result.add(Json.newObject().set("id", i).set("name", "item number "+i).set("ok", i%2==0));
+        return result;
+    }
+    
+    /**
+     * Make sure output drained with poll matches ordinary output, and that
+     * buffers are reused
+     */
+    @Test
+    public void test1() throws IOException {
+        JsonValue tree=tree();
+        ByteBufferPool pool=new ByteBufferPool(64, 4, false);
+        ByteArrayOutputStream output=new ByteArrayOutputStream();
+        
+        NonBlockingJsonGenerator g=new NonBlockingJsonGenerator(pool, 1024L, 512L);
+        g.value(tree);
+        g.close();
+        for(ByteBuffer b=g.poll();b!=null;b=g.poll()) {
+            while(b.hasRemaining())
+                output.write(b.get());
+            g.release(b);
+        }
+        
+        assertThat(output.toByteArray(), is(Json.emitBytes(tree)));
+        assertThat(g.isFinished(), is(true));
+        assertThat(g.getPendingBytes(), is(0L));
+        assertThat(pool.size(), is(4));
+    }
+    
+    /**
+     * Make sure the producer sees backpressure at the high-water mark, and
+     * is released at the low-water mark as a slow channel drains
+     */
+    @Test
+    public void test2() throws IOException {
+        final List<String> events=new ArrayList<>();
+        TrickleChannel channel=new TrickleChannel(100);
+        
+        NonBlockingJsonGenerator g=new NonBlockingJsonGenerator(new ByteBufferPool(), 10000L, 2000L);
+        g.setListener(new NonBlockingJsonGenerator.Listener() {
+            @Override
+            public void readable(NonBlockingJsonGenerator generator) {
+                if(events.isEmpty() || !events.get(events.size()-1).equals("readable"))
+                    events.add("readable");
+            }
+            
+            @Override
+            public void writabilityChanged(NonBlockingJsonGenerator generator, boolean writable) {
+                events.add(writable ? "writable" : "blocked");
+            }
+        });
+        
+        g.openArray();
+        int written=0;
+        while(g.isWritable()) {
+            g.scalar("value number "+written);
+            written = written+1;
+        }
+        assertThat(g.getPendingBytes() >= 10000L, is(true));
+        
+        while(!g.isWritable())
+            g.writeTo(channel);
+        assertThat(g.getPendingBytes() <= 2000L, is(true));
+        
+        g.closeArray();
+        g.close();
+        while(!g.isFinished())
+            g.writeTo(channel);
+        
+        assertThat(events.get(0), is("readable"));
+        assertThat(events.contains("blocked"), is(true));
+        assertThat(events.indexOf("writable") > events.indexOf("blocked"), is(true));
+        
+        JsonArray expected=Json.newArray();
+        for(int i=0;i<written;i++)
+            expected.add("value number "+i);
+        assertThat(channel.output.toByteArray(), is(Json.emitBytes(expected)));
+    }
+    
+    /**
+     * Make sure the producer is never held up while the consumer writes to
+     * a slow channel
+     */
+    @Test
+    public void test3() throws Exception {
+        final NonBlockingJsonGenerator g=new NonBlockingJsonGenerator(new ByteBufferPool(64, 4, false));
+        final boolean[] producing=new boolean[1];
+        WritableByteChannel channel=new TrickleChannel(1000) {
+            @Override
+            public int write(ByteBuffer src) {
+                if(!producing[0]) {
+                    Thread producer=new Thread() {
+                        @Override
+                        public void run() {
+                            try {
+                                g.scalar(1L);
+                                g.flush();
+                                producing[0] = true;
+                            }
+                            catch(IOException e) {
+                                throw new RuntimeException(e);
+                            }
+                        }
+                    };
+                    producer.start();
+                    try {
+                        producer.join(5000L);
+                    }
+                    catch(InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.write(src);
+            }
+        };
+        
+        g.openArray();
+        g.scalar("first");
+        g.flush();
+        g.writeTo(channel);
+        assertThat(producing[0], is(true));
+    }
+}
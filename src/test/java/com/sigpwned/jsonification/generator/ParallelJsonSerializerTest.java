@@ -0,0 +1,115 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonArray;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ParallelJsonSerializerTest {
+    /**
+     * Make sure parallel output is identical to sequential output
+     */
+    @Test
+    public void test1() throws IOException {
+        JsonArray big=Json.newArray();
+        for(int i=0;i<20000;i++)
+            big.add(Json.newObject().set("i", (long) i).set("s", "item "+i).set("d", i/3.0));
+        JsonObject wide=Json.newObject();
+        for(int i=0;i<5000;i++)
+            wide.set("key"+i, i%2==0 ? Json.newValue("v"+i) : Json.newArray().add((long) i));
+        JsonValue tree=Json.newObject()
+            .set("small", Json.newArray().add(1L).add(Json.newObject()))
+            .set("big", big)
+            .set("nested", Json.newArray().add(Json.newObject().set("wide", wide)))
+            .set("empty", Json.newArray());
+        
+        byte[] expected=Json.emitBytes(tree);
+        
+        ForkJoinPool pool=new ForkJoinPool(4);
+        try {
+            ParallelJsonSerializer serializer=new ParallelJsonSerializer(pool, 1000);
+            assertThat(serializer.serialize(tree).size() > 10, is(true));
+            assertThat(serializer.toByteArray(tree), is(expected));
+            
+            ByteArrayOutputStream output=new ByteArrayOutputStream();
+            serializer.writeTo(tree, output);
+            assertThat(output.toByteArray(), is(expected));
+            
+            assertThat(serializer.toByteArray(Json.newValue("scalar")), is(Json.emitBytes(Json.newValue("scalar"))));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Make sure tiny thresholds split containers into single members
+     * instead of never-ending empty chunks
+     */
+    @Test(timeout=10000)
+    public void test2() throws IOException {
+        JsonValue tree=Json.newObject()
+            .set("a", Json.newArray().add(1L).add(2L).add(3L))
+            .set("b", Json.newObject().set("c", true));
+        
+        ForkJoinPool pool=new ForkJoinPool(4);
+        try {
+            for(int threshold=1;threshold<=4;threshold++)
+                assertThat(new ParallelJsonSerializer(pool, threshold).toByteArray(tree), is(Json.emitBytes(tree)));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Make sure small containers without large ones inside are written as
+     * one piece, and that copy-on-write views serialize correctly
+     */
+    @Test
+    public void test3() throws IOException {
+        JsonArray small=Json.newArray();
+        for(int i=0;i<500;i++)
+            small.add(Json.newObject().set("i", (long) i).set("a", Json.newArray().add((long) i)));
+        JsonArray big=Json.newArray();
+        for(int i=0;i<5000;i++)
+            big.add(Json.newObject().set("i", (long) i).set("a", Json.newArray().add((long) i)));
+        JsonValue tree=Json.newObject().set("small", small).set("big", big);
+        
+        ForkJoinPool pool=new ForkJoinPool(4);
+        try {
+            ParallelJsonSerializer serializer=new ParallelJsonSerializer(pool, 1000);
+            assertThat(serializer.serialize(small).size(), is(1));
+            assertThat(serializer.toByteArray(small), is(Json.emitBytes(small)));
+            
+            assertThat(serializer.toByteArray(Json.copyOnWrite(tree)), is(Json.emitBytes(tree)));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonGenerator;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class SerializedNameTest {
+    private static final SerializedName ID=SerializedName.of("id");
+    private static final SerializedName ODD=SerializedName.of("\"odd\"/name\u00E9\n");
+    
+    private static String longName() {
+        StringBuilder result=new StringBuilder();
+        for(int i=0;i<200;i++)
+            result.append("long\\name");
+        return result.toString();
+    }
+    
+    private static void write(JsonGenerator g, boolean serialized) throws IOException {
+        String longName=longName();
+        g.openArray();
+        for(int i=0;i<3;i++) {
+            g.openObject();
+            if(serialized) {
+                g.scalar(ID, (long) i);
+                g.scalar(ODD, "value");
+                g.nil(SerializedName.of(longName));
+                g.openArray(ID.getName()+"s");
+                g.closeArray();
+            }
+            else {
+                g.scalar("id", (long) i);
+                g.scalar("\"odd\"/name\u00E9\n", "value");
+                g.nil(longName);
+                g.openArray("ids");
+                g.closeArray();
+            }
+            g.closeObject();
+        }
+        g.closeArray();
+    }
+    
+    /**
+     * Make sure serialized names are written exactly like string names
+     */
+    @Test
+    public void test1() throws IOException {
+        StringWriter expected=new StringWriter();
+        try (JsonGenerator g=new DefaultJsonGenerator(expected)) {
+            write(g, false);
+        }
+        
+        StringWriter w1=new StringWriter();
+        try (JsonGenerator g=new DefaultJsonGenerator(w1)) {
+            write(g, true);
+        }
+        assertThat(w1.toString(), is(expected.toString()));
+        
+        StringWriter w2=new StringWriter();
+        try (JsonGenerator g=new BufferedJsonGenerator(w2, 64)) {
+            write(g, true);
+        }
+        assertThat(w2.toString(), is(expected.toString()));
+        
+        ByteArrayOutputStream w3=new ByteArrayOutputStream();
+        try (JsonGenerator g=new Utf8JsonGenerator(w3, 64)) {
+            write(g, true);
+        }
+        assertThat(new String(w3.toByteArray(), StandardCharsets.UTF_8), is(expected.toString()));
+    }
+    
+    /**
+     * Make sure names that share a cache slot are never confused
+     */
+    @Test
+    public void test2() {
+        // "Aa" and "BB" have the same hash code
+        String text="{\"Aa\":1,\"BB\":2,\"Aa2\":{\"Aa\":3,\"BB\":4}}";
+        assertThat(Json.emit(Json.parse(text)), is(text));
+    }
+    
+    /**
+     * Make sure names too long to cache are escaped straight into the output
+     * the same way
+     */
+    @Test
+    public void test3() throws IOException {
+        String name=longName()+"\u00E9\n";
+        String expected="{"+JsonEscapes.quote(name)+":1}";
+        
+        StringWriter w1=new StringWriter();
+        try (JsonGenerator g=new DefaultJsonGenerator(w1)) {
+            g.openObject();
+            g.scalar(name, 1L);
+            g.closeObject();
+        }
+        assertThat(w1.toString(), is(expected));
+        
+        StringWriter w2=new StringWriter();
+        try (JsonGenerator g=new BufferedJsonGenerator(w2, 64)) {
+            g.openObject();
+            g.scalar(name, 1L);
+            g.closeObject();
+        }
+        assertThat(w2.toString(), is(expected));
+        
+        ByteArrayOutputStream w3=new ByteArrayOutputStream();
+        try (JsonGenerator g=new Utf8JsonGenerator(w3, 64)) {
+            g.openObject();
+            g.scalar(name, 1L);
+            g.closeObject();
+        }
+        assertThat(new String(w3.toByteArray(), StandardCharsets.UTF_8), is(expected));
+    }
+}
@@ -0,0 +1,121 @@
+package com.sigpwned.jsonification.generator;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.GenerateJsonException;
+import com.sigpwned.jsonification.impl.Utf8JsonString;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class Utf8JsonGeneratorTest {
+    private static JsonValue tree() {
+        StringBuilder text=new StringBuilder();
+        for(int i=0;i<500;i++)
+            text.append("caf\u00E9 \u65E5\u672C \uD83D\uDE00 \"quoted\"\n");
+        return Json.newObject()
+            .set("text", text.toString())
+            .set("\u00FCber", Json.newArray().add(Long.MIN_VALUE).add(-42L).add(0.1).add(true))
+            .set("surrogate", "a\uD800b")
+            .set("utf8", Utf8JsonString.valueOf("plain ascii"))
+            .set("nothing", Json.NULL);
+    }
+    
+    /**
+     * Make sure output is the UTF-8 encoding of the character output
+     */
+    @Test
+    public void test1() throws IOException {
+        JsonValue tree=tree();
+        byte[] expected=Json.emit(tree).getBytes(StandardCharsets.UTF_8);
+        
+        ByteArrayOutputStream stream=new ByteArrayOutputStream();
+        try (Utf8JsonGenerator g=new Utf8JsonGenerator(stream, 64)) {
+            g.value(tree);
+        }
+        assertThat(stream.toByteArray(), is(expected));
+        
+        ByteArrayOutputStream channel=new ByteArrayOutputStream();
+        try (Utf8JsonGenerator g=new Utf8JsonGenerator(Channels.newChannel(channel))) {
+            g.value(tree);
+        }
+        assertThat(channel.toByteArray(), is(expected));
+        
+        assertThat(Json.emitBytes(tree), is(expected));
+    }
+    
+    /**
+     * Make sure ByteBuffer output starts at the buffer's position and fails
+     * cleanly when the buffer fills up
+     */
+    @Test
+    public void test2() throws IOException {
+        ByteBuffer buffer=ByteBuffer.allocate(16);
+        buffer.put((byte) '#');
+        try (Utf8JsonGenerator g=new Utf8JsonGenerator(buffer)) {
+            g.openArray();
+            g.scalar(1L);
+            g.scalar("two");
+            g.closeArray();
+        }
+        buffer.flip();
+        byte[] bytes=new byte[buffer.remaining()];
+        buffer.get(bytes);
+        assertThat(new String(bytes, StandardCharsets.UTF_8), is("#[1,\"two\"]"));
+        
+        boolean failed=false;
+        try (Utf8JsonGenerator g=new Utf8JsonGenerator(ByteBuffer.allocate(4))) {
+            g.scalar("too long for the buffer");
+        }
+        catch(GenerateJsonException e) {
+            failed = true;
+        }
+        assertThat(failed, is(true));
+    }
+    
+    /**
+     * Make sure a reset generator writes a fresh document, and never writes
+     * over output it already handed out
+     */
+    @Test
+    public void test3() throws IOException {
+        Utf8JsonGenerator g=Utf8JsonGenerator.inMemory(33);
+        g.scalar("0123456789012345678901234567890");
+        byte[] first=g.toByteArray();
+        assertThat(first.length, is(33));
+        
+        g.reset();
+        g.openArray();
+        g.scalar(1L);
+        g.closeArray();
+        assertThat(new String(g.toByteArray(), StandardCharsets.UTF_8), is("[1]"));
+        assertThat(new String(first, StandardCharsets.UTF_8), is("\"0123456789012345678901234567890\""));
+        
+        g.reset();
+        g.scalar(true);
+        assertThat(new String(g.toByteArray(), StandardCharsets.UTF_8), is("true"));
+    }
+}
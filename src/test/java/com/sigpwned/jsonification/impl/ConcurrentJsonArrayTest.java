@@ -0,0 +1,124 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonTreeGenerator;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.IndexOutOfBoundsJsonException;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ConcurrentJsonArrayTest {
+    /**
+     * Appends, inserts, sets, and removes should keep elements in order
+     */
+    @Test
+    public void test1() {
+        ConcurrentJsonArray a=new ConcurrentJsonArray().add(1L).add(2L).add(4L);
+        a.add(2, 3L);
+        a.add(0, 0L);
+        a.add(5, 5L);
+        assertThat(a.toLongArray(), is(new long[] { 0L, 1L, 2L, 3L, 4L, 5L }));
+        
+        assertThat(a.set(1, 10L).asScalar().asNumber().longVal(), is(1L));
+        assertThat(a.remove(0).asScalar().asNumber().longVal(), is(0L));
+        assertThat(a.remove(a.size()-1).asScalar().asNumber().longVal(), is(5L));
+        a.add(6L);
+        assertThat(a.toLongArray(), is(new long[] { 10L, 2L, 3L, 4L, 6L }));
+    }
+    
+    /**
+     * Out-of-range indexes should be rejected
+     */
+    @Test(expected=IndexOutOfBoundsJsonException.class)
+    public void test2() {
+        ConcurrentJsonArray a=new ConcurrentJsonArray(8).add(1L);
+        a.get(1);
+    }
+    
+    /**
+     * Iterators should see the elements as of their creation, even as the
+     * array changes
+     */
+    @Test
+    public void test3() {
+        ConcurrentJsonArray a=new ConcurrentJsonArray().add(1L).add(2L);
+        Iterator<JsonValue> i=a.iterator();
+        a.add(3L);
+        a.set(0, 7L);
+        a.remove(1);
+        
+        List<Long> seen=new ArrayList<>();
+        while(i.hasNext())
+            seen.add(i.next().asScalar().asNumber().longVal());
+        assertThat(seen.toString(), is("[1, 2]"));
+        assertThat(a.toLongArray(), is(new long[] { 7L, 3L }));
+    }
+    
+    /**
+     * Concurrent appends should never lose elements
+     */
+    @Test
+    public void test4() throws Exception {
+        final ConcurrentJsonArray a=new ConcurrentJsonArray();
+        List<Thread> threads=new ArrayList<>();
+        for(int i=0;i<8;i++)
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for(int j=0;j<10000;j++)
+                        a.add(1L);
+                }
+            });
+        for(Thread t : threads)
+            t.start();
+        for(Thread t : threads)
+            t.join();
+        
+        assertThat(a.size(), is(80000));
+        long sum=0L;
+        for(long x : a.toLongArray())
+            sum = sum+x;
+        assertThat(sum, is(80000L));
+    }
+    
+    /**
+     * Building a large array through the concurrent factory should take
+     * linear time, not quadratic
+     */
+    @Test(timeout=5000)
+    public void test5() throws Exception {
+        JsonArray source=new DefaultJsonArray();
+        for(int i=0;i<400000;i++)
+            source.add((long) i);
+        
+        JsonTreeGenerator g=new ConcurrentJsonFactory().newTreeGenerator();
+        g.value(source);
+        JsonValue v=g.getValue();
+        
+        assertThat(v instanceof ConcurrentJsonArray, is(true));
+        assertThat(Json.equals(v, source), is(true));
+    }
+}
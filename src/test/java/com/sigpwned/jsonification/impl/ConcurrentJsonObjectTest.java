@@ -0,0 +1,123 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonTreeGenerator;
+import com.sigpwned.jsonification.JsonTreeParser;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonArray;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ConcurrentJsonObjectTest {
+    /**
+     * Concurrent compute calls on the same member should never lose updates
+     */
+    @Test
+    public void test1() throws Exception {
+        final ConcurrentJsonObject o=new ConcurrentJsonObject();
+        final ConcurrentJsonObject.Update increment=new ConcurrentJsonObject.Update() {
+            @Override
+            public JsonValue apply(String name, JsonValue value) {
+                return Json.newValue(value!=null ? value.asScalar().asNumber().longVal()+1L : 1L);
+            }
+        };
+        
+        List<Thread> threads=new ArrayList<>();
+        for(int i=0;i<8;i++)
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for(int j=0;j<10000;j++)
+                        o.compute("count", increment);
+                }
+            });
+        for(Thread t : threads)
+            t.start();
+        for(Thread t : threads)
+            t.join();
+        
+        assertThat(o.get("count").asScalar().asNumber().longVal(), is(80000L));
+        assertThat(o.putIfAbsent("count", Json.newValue(0L)).asScalar().asNumber().longVal(), is(80000L));
+        assertThat(o.putIfAbsent("other", Json.newValue(0L)), is(nullValue()));
+    }
+    
+    /**
+     * Insertion order should be kept across updates, removals, and re-adds
+     */
+    @Test
+    public void test2() {
+        ConcurrentJsonObject o=new ConcurrentJsonObject(DefaultJsonObject.KeyOrder.INSERTION);
+        o.set("charlie", 1L).set("alpha", 2L).set("bravo", 3L).set("alpha", 4L);
+        o.remove("charlie");
+        o.set("charlie", 5L);
+        assertThat(new ArrayList<>(o.keys()), is(Arrays.asList("alpha", "bravo", "charlie")));
+        assertThat(o.get("alpha").asScalar().asNumber().longVal(), is(4L));
+        
+        JsonValue bravo=o.get("bravo");
+        assertThat(o.replace("bravo", Json.newValue(3L), Json.newValue(6L)), is(false));
+        assertThat(o.replace("bravo", bravo, Json.newValue(6L)), is(true));
+        assertThat(o.get("bravo").asScalar().asNumber().longVal(), is(6L));
+    }
+    
+    /**
+     * The concurrent factory should build concurrent trees
+     */
+    @Test
+    public void test3() throws Exception {
+        JsonTreeParser p=new ConcurrentJsonFactory().newTreeParser(new StringReader("{\"alpha\":[1,2,{\"bravo\":true}]}"));
+        JsonValue v=p.next();
+        p.close();
+        assertThat(v instanceof ConcurrentJsonObject, is(true));
+        
+        JsonArray a=v.asObject().get("alpha").asArray();
+        assertThat(a instanceof ConcurrentJsonArray, is(true));
+        assertThat(a.get(2) instanceof ConcurrentJsonObject, is(true));
+        assertThat(((ConcurrentJsonArray) a).compareAndSet(0, a.get(0), Json.newValue(7L)), is(true));
+        assertThat(Json.equals(v, Json.parse("{\"alpha\":[7,2,{\"bravo\":true}]}")), is(true));
+    }
+    
+    /**
+     * Pre-sized objects from the concurrent factory should behave like any
+     * other, in every key order
+     */
+    @Test
+    public void test4() throws Exception {
+        for(DefaultJsonObject.KeyOrder keyOrder : DefaultJsonObject.KeyOrder.values()) {
+            JsonObject source=new DefaultJsonObject(DefaultJsonObject.KeyOrder.INSERTION);
+            for(int i=0;i<100;i++)
+                source.set("key"+i, i);
+            
+            JsonTreeGenerator g=new ConcurrentJsonFactory(keyOrder).newTreeGenerator();
+            g.value(source);
+            JsonValue v=g.getValue();
+            assertThat(v instanceof ConcurrentJsonObject, is(true));
+            assertThat(Json.equals(v, source), is(true));
+        }
+        assertThat(new ConcurrentJsonFactory().newObject(0).size(), is(0));
+    }
+}
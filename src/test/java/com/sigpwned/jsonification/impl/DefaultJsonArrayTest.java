@@ -0,0 +1,103 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.exception.ClassCastJsonException;
+import com.sigpwned.jsonification.exception.IndexOutOfBoundsJsonException;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class DefaultJsonArrayTest {
+    /**
+     * Homogeneous long arrays should round-trip through the bulk accessors
+     */
+    @Test
+    public void test1() {
+        JsonArray a=new DefaultJsonArray().add(1L).add(2L).add(3L);
+        
+        assertThat(a.toLongArray(), is(new long[] { 1L, 2L, 3L }));
+        assertThat(a.toDoubleArray(), is(new double[] { 1.0, 2.0, 3.0 }));
+        assertThat(a.get(1).asScalar().asNumber().getNumberValue(), is((Number) Long.valueOf(2L)));
+    }
+    
+    /**
+     * Adding a value of another kind should upgrade the array transparently
+     */
+    @Test
+    public void test2() {
+        JsonArray a=new DefaultJsonArray().add(1L).add(2L);
+        a.add("three");
+        a.add(0, 0.5);
+        
+        assertThat(a.size(), is(4));
+        assertThat(a.get(0).asScalar().asNumber().doubleVal(), is(0.5));
+        assertThat(a.get(1).asScalar().asNumber().longVal(), is(1L));
+        assertThat(a.get(3).asScalar().asString().stringVal(), is("three"));
+    }
+    
+    /**
+     * Setting a value of another kind should upgrade the array transparently
+     */
+    @Test
+    public void test3() {
+        JsonArray a=new DefaultJsonArray().add(true).add(false);
+        a.set(1, Json.NULL);
+        
+        assertThat(a.get(0), is((Object) Json.TRUE));
+        assertThat(a.get(1).isNull(), is(true));
+    }
+    
+    /**
+     * Primitive and generic arrays with the same elements should match
+     */
+    @Test
+    public void test4() {
+        JsonArray a=new DefaultJsonArray().add(1.5).add(2.5);
+        JsonArray b=new DefaultJsonArray().add("x").add(1.5).add(2.5);
+        b.remove(0);
+        
+        assertThat(a.hashCode(), is(b.hashCode()));
+        assertThat(a, is(b));
+    }
+    
+    /**
+     * The tree parser should produce arrays that behave like any other
+     */
+    @Test
+    public void test5() {
+        JsonArray a=Json.parse("[1, 2, 3, 4]").asArray();
+        a.remove(0);
+        a.add(1, 10L);
+        
+        assertThat(a.toLongArray(), is(new long[] { 2L, 10L, 3L, 4L }));
+        assertThat(Json.emit(a), is("[2,10,3,4]"));
+    }
+    
+    @Test(expected=ClassCastJsonException.class)
+    public void test6() {
+        new DefaultJsonArray().add(true).toLongArray();
+    }
+    
+    @Test(expected=IndexOutOfBoundsJsonException.class)
+    public void test7() {
+        new DefaultJsonArray().add(1L).set(1, "one");
+    }
+}
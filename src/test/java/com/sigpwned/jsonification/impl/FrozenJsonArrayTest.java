@@ -0,0 +1,89 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.FrozenJsonException;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class FrozenJsonArrayTest {
+    /**
+     * Freezing should produce an equal array, and updates should not change
+     * the original
+     */
+    @Test
+    public void test1() {
+        JsonArray a=Json.newArray().add(1).add("two").add(Json.newObject().set("three", 3));
+        FrozenJsonArray b=(FrozenJsonArray) Json.freeze(a);
+        FrozenJsonArray c=b.withIndex(1, Json.newValue(2)).with(Json.newValue(4));
+        
+        assertThat(b, is((Object) a));
+        assertThat(b.hashCode(), is(a.hashCode()));
+        assertThat(b.get(2) instanceof FrozenJsonObject, is(true));
+        assertThat(c.size(), is(4));
+        assertThat(c.get(1).asScalar().asNumber().longVal(), is(2L));
+        assertThat(b.get(1).asScalar().asString().stringVal(), is("two"));
+        assertThat(c.withoutIndex(0).get(0).asScalar().asNumber().longVal(), is(2L));
+    }
+    
+    /**
+     * Random updates across several trie levels should agree with a plain
+     * list, and built vectors should agree with appended ones
+     */
+    @Test
+    public void test2() {
+        Random random=new Random(0L);
+        List<JsonValue> expected=new ArrayList<>();
+        FrozenJsonArray observed=FrozenJsonArray.EMPTY;
+        for(int i=0;i<40000;i++) {
+            if(expected.size()==0 || random.nextInt(4)!=0) {
+                JsonValue value=Json.newValue(i);
+                expected.add(value);
+                observed = observed.with(value);
+            }
+            else {
+                int index=random.nextInt(expected.size());
+                JsonValue value=Json.newValue(-i);
+                expected.set(index, value);
+                observed = observed.withIndex(index, value);
+            }
+        }
+        
+        JsonArray built=Json.newArray();
+        for(JsonValue value : expected)
+            built.add(value);
+        
+        assertThat(observed.size(), is(expected.size()));
+        for(int i=0;i<expected.size();i++)
+            assertThat(observed.get(i), is(expected.get(i)));
+        assertThat((Object) Json.freeze(built), is((Object) observed));
+    }
+    
+    @Test(expected=FrozenJsonException.class)
+    public void test3() {
+        Json.freeze(Json.newArray()).asArray().add(1);
+    }
+}
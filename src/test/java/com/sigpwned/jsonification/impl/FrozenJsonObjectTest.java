@@ -0,0 +1,140 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.FrozenJsonException;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class FrozenJsonObjectTest {
+    /**
+     * Freezing should produce an equal object, and updates should not change
+     * the original
+     */
+    @Test
+    public void test1() {
+        JsonObject o=Json.newObject().set("alpha", 1).set("bravo", Json.newArray().add("x"));
+        FrozenJsonObject a=(FrozenJsonObject) Json.freeze(o);
+        FrozenJsonObject b=a.with("charlie", Json.newValue(3)).without("alpha");
+        
+        assertThat(a, is((Object) o));
+        assertThat(a.hashCode(), is(o.hashCode()));
+        assertThat(a.get("bravo") instanceof FrozenJsonArray, is(true));
+        assertThat(a.size(), is(2));
+        assertThat(b.size(), is(2));
+        assertThat(b.has("alpha"), is(false));
+        assertThat(b.get("charlie").asScalar().asNumber().longVal(), is(3L));
+        assertThat(b.get("bravo"), is(a.get("bravo")));
+    }
+    
+    /**
+     * Keys with colliding hash codes should be kept apart
+     */
+    @Test
+    public void test2() {
+        assertThat("Aa".hashCode(), is("BB".hashCode()));
+        
+        FrozenJsonObject a=FrozenJsonObject.EMPTY.with("Aa", Json.newValue(1)).with("BB", Json.newValue(2));
+        FrozenJsonObject b=a.without("Aa");
+        
+        assertThat(a.get("Aa").asScalar().asNumber().longVal(), is(1L));
+        assertThat(a.get("BB").asScalar().asNumber().longVal(), is(2L));
+        assertThat(b.get("Aa"), is(nullValue()));
+        assertThat(b.get("BB").asScalar().asNumber().longVal(), is(2L));
+    }
+    
+    /**
+     * Random updates should agree with a plain map
+     */
+    @Test
+    public void test3() {
+        Random random=new Random(0L);
+        Map<String,JsonValue> expected=new HashMap<>();
+        FrozenJsonObject observed=FrozenJsonObject.EMPTY;
+        for(int i=0;i<20000;i++) {
+            String key="k"+random.nextInt(2000);
+            if(random.nextInt(3) == 0) {
+                expected.remove(key);
+                observed = observed.without(key);
+            }
+            else {
+                JsonValue value=Json.newValue(i);
+                expected.put(key, value);
+                observed = observed.with(key, value);
+            }
+        }
+        
+        assertThat(observed.size(), is(expected.size()));
+        assertThat(observed.keys(), is((Set<String>) new HashSet<String>(expected.keySet())));
+        for(Map.Entry<String,JsonValue> e : expected.entrySet())
+            assertThat(observed.get(e.getKey()), is(e.getValue()));
+    }
+    
+    @Test(expected=FrozenJsonException.class)
+    public void test4() {
+        Json.freeze(Json.newObject()).asObject().set("alpha", 1);
+    }
+    
+    /**
+     * Adding and removing a colliding key over and over should not keep
+     * deepening the trie
+     */
+    @Test
+    public void test5() {
+        // "Aa" and "BB" have the same hash code
+        FrozenJsonObject o=FrozenJsonObject.EMPTY.with("x", Json.newValue(0)).with("Aa", Json.newValue(1));
+        for(int i=0;i<32;i++)
+            o = o.with("BB", Json.newValue(2)).without("BB");
+        
+        assertThat(o.size(), is(2));
+        assertThat(Json.emit(o), is("{\"x\":0,\"Aa\":1}"));
+    }
+    
+    /**
+     * Freezing should keep the source's key order, whether insertion or
+     * alphabetical, and updates should keep it too
+     */
+    @Test
+    public void test6() {
+        JsonObject o=new DefaultJsonObject(DefaultJsonObject.KeyOrder.INSERTION)
+            .set("zeta", 1).set("alpha", 2).set("mid", 3).set("beta", 4).set("x", 5);
+        FrozenJsonObject a=(FrozenJsonObject) Json.freeze(o);
+        assertThat(Json.emit(a), is("{\"zeta\":1,\"alpha\":2,\"mid\":3,\"beta\":4,\"x\":5}"));
+        assertThat(Json.emit(Json.copy(a)), is("{\"zeta\":1,\"alpha\":2,\"mid\":3,\"beta\":4,\"x\":5}"));
+        
+        FrozenJsonObject b=a.without("alpha").with("mid", Json.newValue(6)).with("alpha", Json.newValue(7));
+        assertThat(Json.emit(b), is("{\"zeta\":1,\"mid\":6,\"beta\":4,\"x\":5,\"alpha\":7}"));
+        assertThat(Json.emit(b.without("zeta").without("mid").without("beta")), is("{\"x\":5,\"alpha\":7}"));
+        
+        JsonObject sorted=new DefaultJsonObject(DefaultJsonObject.KeyOrder.ALPHABETICAL);
+        for(JsonObject.Entry e : o.entries())
+            sorted.set(e.getName(), e.getValue());
+        assertThat(Json.emit(Json.freeze(sorted)), is("{\"alpha\":2,\"beta\":4,\"mid\":3,\"x\":5,\"zeta\":1}"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class HeapSizeTest {
+    /**
+     * Shared scalars should cost nothing, and others should cost their shell
+     * and their boxed value
+     */
+    @Test
+    public void test1() {
+        assertThat(Json.estimateRetainedSize(Json.TRUE), is(0L));
+        assertThat(Json.estimateRetainedSize(Json.NULL), is(0L));
+        assertThat(Json.estimateRetainedSize(Json.newValue(7L)), is(16L));
+        assertThat(Json.estimateRetainedSize(Json.newValue(1000L)), is(16L+24L));
+        assertThat(Json.estimateRetainedSize(Json.newValue("hello")), is(16L+24L+32L));
+    }
+    
+    /**
+     * Primitive arrays should be cheaper than generic ones, and shaped
+     * objects should be cheaper than hash maps
+     */
+    @Test
+    public void test2() {
+        JsonArray longs=new DefaultJsonArray(), generic=new DefaultJsonArray();
+        for(int i=0;i<100;i++) {
+            longs.add(1000L+i);
+            generic.add(Json.newValue(1000L+i));
+        }
+        generic.add("x");
+        generic.remove(100);
+        assertThat(Json.estimateRetainedSize(longs) < Json.estimateRetainedSize(generic), is(true));
+        
+        long shaped=Json.estimateRetainedSize(new ShapedJsonObject().set("alpha", 1).set("bravo", 2));
+        long hashed=Json.estimateRetainedSize(new DefaultJsonObject().set("alpha", 1).set("bravo", 2));
+        assertThat(shaped < hashed, is(true));
+        
+        long tree=Json.estimateRetainedSize(Json.parse("{\"alpha\":[1,2,3],\"bravo\":{\"charlie\":\"delta\"}}"));
+        long frozen=Json.estimateRetainedSize(Json.freeze(Json.parse("{\"alpha\":[1,2,3],\"bravo\":{\"charlie\":\"delta\"}}")));
+        assertThat(tree > 0L, is(true));
+        assertThat(frozen > 0L, is(true));
+    }
+}
@@ -0,0 +1,87 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.parser.DefaultJsonTreeParser;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class JsonInternerTest {
+    private static JsonValue parse(String text, JsonInterner interner) throws Exception {
+        JsonValue result;
+        try (DefaultJsonTreeParser p=new DefaultJsonTreeParser(Json.getDefaultFactory().newEventParser(new StringReader(text)))) {
+            p.setInterner(interner);
+            result = p.next();
+        }
+        return result;
+    }
+    
+    /**
+     * Equal subtrees should be shared, and the savings should be reported
+     */
+    @Test
+    public void test1() throws Exception {
+        String text="[{\"user\":{\"id\":1,\"geo\":[1.5,2.5]}},{\"user\":{\"id\":1,\"geo\":[1.5,2.5]}},{\"user\":{\"id\":2,\"geo\":[1.5,2.5]}}]";
+        JsonInterner interner=new JsonInterner();
+        JsonArray a=parse(text, interner).asArray();
+        
+        assertThat(Json.equals(a, Json.parse(text)), is(true));
+        assertThat(a instanceof FrozenJsonArray, is(true));
+        assertThat(a.get(0), is(sameInstance(a.get(1))));
+        assertThat(a.get(0).asObject().get("user").asObject().get("geo"), is(sameInstance(a.get(2).asObject().get("user").asObject().get("geo"))));
+        assertThat(interner.getHits() > 0L, is(true));
+        assertThat(interner.getSavedBytes() > 0L, is(true));
+    }
+    
+    /**
+     * The table should never grow past its bound
+     */
+    @Test
+    public void test2() throws Exception {
+        JsonInterner interner=new JsonInterner(4);
+        parse("[[1],[2],[3],[4],[5],[6],[7],[8]]", interner);
+        assertThat(interner.size(), is(4));
+    }
+    
+    /**
+     * Interning should never change key order, and should leave small
+     * scalars alone
+     */
+    @Test
+    public void test3() throws Exception {
+        JsonInterner interner=new JsonInterner();
+        JsonValue a, b;
+        try (DefaultJsonTreeParser p=new DefaultJsonTreeParser(new DefaultJsonFactory(DefaultJsonObject.KeyOrder.INSERTION).newEventParser(new StringReader("{\"zeta\":1,\"alpha\":true} {\"alpha\":true,\"zeta\":1}")))) {
+            p.setInterner(interner);
+            a = p.next();
+            b = p.next();
+        }
+        
+        assertThat(Json.emit(a), is("{\"zeta\":1,\"alpha\":true}"));
+        assertThat(Json.emit(b), is("{\"alpha\":true,\"zeta\":1}"));
+        assertThat(interner.size(), is(1));
+        assertThat(interner.getHits(), is(0L));
+    }
+}
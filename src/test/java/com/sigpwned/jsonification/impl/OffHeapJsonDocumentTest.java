@@ -0,0 +1,155 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonException;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.FrozenJsonException;
+import com.sigpwned.jsonification.value.JsonObject;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class OffHeapJsonDocumentTest {
+    /**
+     * Parsing into a document should produce a tree equal to the heap tree
+     */
+    @Test
+    public void test1() {
+        String text="{\"alpha\":[1,2.5,true,false,null,\"caf\u00e9\"],\"bravo\":{\"alpha\":\"x\",\"charlie\":[]},\"delta\":-7}";
+        try (OffHeapJsonDocument d=OffHeapJsonDocument.parse(text)) {
+            JsonValue root=d.getRoot();
+            assertThat(Json.equals(root, Json.parse(text)), is(true));
+            assertThat(root.hashCode(), is(Json.parse(text).hashCode()));
+            assertThat(root.asObject().get("bravo").asObject().get("alpha").asScalar().asString().stringVal(), is("x"));
+            assertThat(root.asObject().get("alpha").asArray().get(5).asScalar().asString().stringVal(), is("caf\u00e9"));
+            assertThat(root.asObject().get("echo"), is(nullValue()));
+            assertThat(root.asObject().has("delta"), is(true));
+            assertThat(Json.equals(Json.parse(Json.emit(root)), root), is(true));
+        }
+    }
+    
+    /**
+     * Documents should be read-only, and a saved buffer should wrap to an
+     * equal document
+     */
+    @Test
+    public void test2() {
+        JsonObject o=Json.newObject().set("alpha", 1L).set("bravo", Json.newArray().add(1L).add(2L).add(3L));
+        try (OffHeapJsonDocument d=OffHeapJsonDocument.of(o)) {
+            JsonObject root=d.getRoot().asObject();
+            assertThat(root.get("bravo").asArray().toLongArray()[2], is(3L));
+            try {
+                root.set("charlie", 3L);
+                throw new AssertionError("expected FrozenJsonException");
+            }
+            catch(FrozenJsonException e) {
+                // This is expected
+            }
+            
+            ByteBuffer saved=ByteBuffer.allocate(d.size());
+            saved.put(d.getBuffer());
+            saved.flip();
+            try (OffHeapJsonDocument w=OffHeapJsonDocument.wrap(saved)) {
+                assertThat(Json.equals(w.getRoot(), o), is(true));
+            }
+        }
+    }
+    
+    /**
+     * Views should fail once their document is closed
+     */
+    @Test
+    public void test3() {
+        OffHeapJsonDocument d=OffHeapJsonDocument.parse("[1,2,3]");
+        JsonValue root=d.getRoot();
+        d.close();
+        assertThat(d.isClosed(), is(true));
+        try {
+            root.asArray().get(0);
+            throw new AssertionError("expected JsonException");
+        }
+        catch(JsonException e) {
+            // This is expected
+        }
+    }
+    
+    /**
+     * Members should be visited in order, by visitor or by position, and
+     * visiting should stop when asked
+     */
+    @Test
+    public void test4() {
+        try (OffHeapJsonDocument d=OffHeapJsonDocument.parse("{\"alpha\":1,\"bravo\":2,\"charlie\":3}")) {
+            final OffHeapJsonObject o=(OffHeapJsonObject) d.getRoot();
+            final int[] count=new int[1];
+            boolean completed=o.forEach(new JsonObject.EntryVisitor() {
+                @Override
+                public boolean visit(String name, JsonValue value) {
+                    assertThat(name, is(o.nameAt(count[0])));
+                    assertThat(value, is(o.valueAt(count[0])));
+                    count[0] = count[0]+1;
+                    return !name.equals("bravo");
+                }
+            });
+            assertThat(completed, is(false));
+            assertThat(count[0], is(2));
+        }
+    }
+    
+    /**
+     * Duplicate keys should be merged as they are on the heap: the first
+     * keeps its position and the last value wins
+     */
+    @Test
+    public void test5() {
+        String text="{\"a\":1,\"b\":[],\"a\":2,\"c\":{\"x\":1,\"x\":true},\"a\":3}";
+        try (OffHeapJsonDocument d=OffHeapJsonDocument.parse(text)) {
+            OffHeapJsonObject o=(OffHeapJsonObject) d.getRoot();
+            assertThat(o.size(), is(3));
+            assertThat(o.nameAt(0), is("a"));
+            assertThat(o.valueAt(0).asScalar().asNumber().longVal(), is(3L));
+            assertThat(o.nameAt(2), is("c"));
+            assertThat(o.get("c").asObject().size(), is(1));
+            assertThat(Json.equals(o, Json.parse(text)), is(true));
+            assertThat(Json.emit(o), is("{\"a\":3,\"b\":[],\"c\":{\"x\":true}}"));
+        }
+    }
+    
+    /**
+     * Looking up members of large objects should not scan them, so
+     * comparing two large objects should take linear time, not quadratic
+     */
+    @Test(timeout=5000)
+    public void test6() {
+        JsonObject heap=Json.newObject();
+        for(int i=0;i<200000;i++)
+            heap.set("key"+i, i);
+        try (OffHeapJsonDocument d=OffHeapJsonDocument.of(heap)) {
+            OffHeapJsonObject o=(OffHeapJsonObject) d.getRoot();
+            assertThat(o.size(), is(200000));
+            assertThat(Json.equals(o, heap), is(true));
+            assertThat(o.get("key123456").asScalar().asNumber().longVal(), is(123456L));
+            assertThat(o.get("key200000"), is(nullValue()));
+        }
+    }
+}
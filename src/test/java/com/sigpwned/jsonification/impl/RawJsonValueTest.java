@@ -0,0 +1,104 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonGenerator;
+import com.sigpwned.jsonification.JsonTreeGenerator;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.exception.ParseJsonException;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class RawJsonValueTest {
+    private static void write(JsonGenerator g) throws IOException {
+        g.openObject();
+        g.scalar("a", 1L);
+        g.rawValue("b", " {\"x\": [1, 2]} ");
+        g.openArray("c");
+        g.rawValue("true".getBytes(StandardCharsets.UTF_8));
+        g.rawValue("\"two\"");
+        g.closeArray();
+        g.closeObject();
+    }
+    
+    /**
+     * Make sure raw values are spliced in with the right commas and names
+     */
+    @Test
+    public void test1() throws IOException {
+        StringWriter chars=new StringWriter();
+        try (JsonGenerator g=Json.newGenerator(chars)) {
+            write(g);
+        }
+        assertThat(chars.toString(), is("{\"a\":1,\"b\": {\"x\": [1, 2]} ,\"c\":[true,\"two\"]}"));
+        
+        ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+        try (JsonGenerator g=Json.getDefaultFactory().newGenerator(bytes)) {
+            write(g);
+        }
+        assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8), is(chars.toString()));
+        
+        JsonTreeGenerator tree=Json.newTreeGenerator();
+        write(tree);
+        assertThat(tree.getValue(), is(Json.parse(chars.toString())));
+    }
+    
+    /**
+     * Make sure raw text is checked unless it is trusted
+     */
+    @Test
+    public void test2() {
+        String[] invalid={ "", "{", "1 2", "[1,]", "nope" };
+        for(String text : invalid) {
+            boolean failed=false;
+            try {
+                RawJsonValue.valueOf(text);
+            }
+            catch(ParseJsonException e) {
+                failed = true;
+            }
+            assertThat(text, failed, is(true));
+        }
+        
+        assertThat(Json.emit(Json.newArray().add(RawJsonValue.trusted("{oops"))), is("[{oops]"));
+    }
+    
+    /**
+     * Make sure raw values behave like the values they hold inside trees
+     */
+    @Test
+    public void test3() {
+        RawJsonValue raw=RawJsonValue.valueOf("{\"x\":[1,2,3],\"y\":null}");
+        JsonValue tree=Json.newObject().set("raw", raw);
+        
+        assertThat(raw.getType(), is(JsonValue.Type.OBJECT));
+        assertThat(raw.asObject().get("x").asArray().size(), is(3));
+        assertThat(raw.equals(Json.parse(raw.getText())), is(true));
+        assertThat(raw.hashCode(), is(Json.parse(raw.getText()).hashCode()));
+        assertThat(RawJsonValue.valueOf(" null").isNull(), is(true));
+        assertThat(Json.emit(tree), is("{\"raw\":{\"x\":[1,2,3],\"y\":null}}"));
+        assertThat(Json.emit(Json.freeze(tree)), is(Json.emit(tree)));
+    }
+}
@@ -0,0 +1,118 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.generator.BufferedJsonGenerator;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class SerializedFormCacheTest {
+    private static String emit(JsonValue value, SerializedFormCache cache) throws IOException {
+        StringWriter result=new StringWriter();
+        try (BufferedJsonGenerator g=new BufferedJsonGenerator(result)) {
+            g.setSerializedFormCache(cache);
+            g.value(value);
+        }
+        return result.toString();
+    }
+    
+    /**
+     * Make sure frozen subtrees are cached once they are seen again, and
+     * that output does not change
+     */
+    @Test
+    public void test1() throws IOException {
+        JsonValue reference=Json.freeze(Json.parse("{\"codes\":[\"a\",\"b\",\"c\"],\"rate\":1.5}"));
+        JsonValue response=Json.newObject().set("id", 1L).set("reference", reference);
+        String expected=Json.emit(response);
+        
+        SerializedFormCache cache=new SerializedFormCache();
+        assertThat(emit(response, cache), is(expected));
+        assertThat(cache.size(), is(0));
+        
+        assertThat(emit(response, cache), is(expected));
+        assertThat(cache.size(), is(1));
+        assertThat(cache.getHits(), is(0L));
+        
+        assertThat(emit(response, cache), is(expected));
+        assertThat(cache.getHits(), is(1L));
+        
+        // Mutable containers are never cached
+        assertThat(cache.isCacheable(response), is(false));
+        assertThat(cache.get(response), nullValue());
+    }
+    
+    /**
+     * Make sure the cache evicts least recently used forms to stay in budget,
+     * counting both the forms and the values they were serialized from
+     */
+    @Test
+    public void test2() {
+        JsonValue[] values=new JsonValue[17];
+        for(int i=0;i<values.length;i++)
+            values[i] = Json.freeze(Json.newArray().add((long) i));
+        long cost=SerializedFormCache.cost(values[0], new byte[10]);
+        
+        SerializedFormCache cache=new SerializedFormCache(16L*cost);
+        for(int i=0;i<4;i++)
+            cache.put(values[i], new byte[10]);
+        assertThat(cache.getBytes(), is(4L*cost));
+        
+        cache.get(values[0]);
+        for(int i=4;i<17;i++)
+            cache.put(values[i], new byte[10]);
+        
+        assertThat(cache.getBytes(), is(16L*cost));
+        assertThat(cache.get(values[0]) != null, is(true));
+        assertThat(cache.get(values[1]), nullValue());
+        assertThat(cache.getEvictions(), is(1L));
+        
+        cache.put(Json.freeze(Json.newArray().add(99L)), new byte[11]);
+        assertThat(cache.getBytes(), is(16L*cost));
+    }
+    
+    /**
+     * Make sure a value too large to cache is not admitted again, and that
+     * writing a cached form does not keep its decoded text
+     */
+    @Test
+    public void test3() throws IOException {
+        JsonValue small=Json.freeze(Json.parse("[\"caf\u00e9\",1,2]"));
+        JsonValue large=Json.freeze(Json.parse("[1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20]"));
+        SerializedFormCache cache=new SerializedFormCache(16L*SerializedFormCache.cost(small, Json.emitBytes(small)));
+        
+        for(int i=0;i<3;i++) {
+            assertThat(emit(large, cache), is(Json.emit(large)));
+            assertThat(emit(small, cache), is(Json.emit(small)));
+        }
+        assertThat(cache.admit(large), is(false));
+        assertThat(cache.size(), is(1));
+        
+        RawJsonValue form=cache.get(small);
+        long size=form.estimateRetainedSize();
+        assertThat(emit(small, cache), is(Json.emit(small)));
+        assertThat(form.estimateRetainedSize(), is(size));
+    }
+}
@@ -0,0 +1,143 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonTreeParser;
+import com.sigpwned.jsonification.JsonValue;
+import com.sigpwned.jsonification.value.JsonArray;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class ShapedJsonObjectTest {
+    /**
+     * Parsed objects with the same keys in the same order should share a
+     * shape
+     */
+    @Test
+    public void test1() throws IOException {
+        JsonArray a=parse(new DefaultJsonFactory(DefaultJsonObject.KeyOrder.INSERTION, true), "[{\"id\":1,\"name\":\"alpha\"},{\"id\":2,\"name\":\"bravo\"},{\"name\":\"charlie\",\"id\":3}]").asArray();
+        ShapedJsonObject o1=(ShapedJsonObject) a.get(0), o2=(ShapedJsonObject) a.get(1), o3=(ShapedJsonObject) a.get(2);
+        assertThat(o1.getShape(), is(sameInstance(o2.getShape())));
+        assertThat(o1.getShape()==o3.getShape(), is(false));
+        assertThat(o2.get("name").asScalar().asString().stringVal(), is("bravo"));
+        assertThat(new ArrayList<>(o3.keys()), is(Arrays.asList("name", "id")));
+    }
+    
+    /**
+     * Removing a key should transition to the shape of the remaining keys
+     */
+    @Test
+    public void test2() {
+        DefaultJsonFactory factory=new DefaultJsonFactory(DefaultJsonObject.KeyOrder.INSERTION, true);
+        ShapedJsonObject o1=((ShapedJsonObject) factory.newObject()).set("alpha", 1).set("bravo", 2).set("charlie", 3);
+        ShapedJsonObject o2=((ShapedJsonObject) factory.newObject()).set("alpha", 4).set("charlie", 5);
+        assertThat(o1.remove("bravo").asScalar().asNumber().longVal(), is(2L));
+        assertThat(o1.getShape(), is(sameInstance(o2.getShape())));
+        assertThat(o1.get("bravo"), is(nullValue()));
+        assertThat(o1.get("charlie").asScalar().asNumber().longVal(), is(3L));
+        assertThat(Json.equals(o1, Json.parse("{\"charlie\":3,\"alpha\":1}")), is(true));
+    }
+    
+    /**
+     * Objects with too many keys should fall back to dictionaries
+     */
+    @Test
+    public void test3() {
+        ShapedJsonObject o=new ShapedJsonObject();
+        for(int i=0;i<JsonShape.MAX_KEYS+1;i++)
+            o.set("key"+i, i);
+        assertThat(o.isShaped(), is(false));
+        assertThat(o.size(), is(JsonShape.MAX_KEYS+1));
+        assertThat(o.get("key0").asScalar().asNumber().longVal(), is(0L));
+        assertThat(o.keys().iterator().next(), is("key0"));
+        assertThat(Json.equals(Json.copy(o), o), is(true));
+    }
+    
+    /**
+     * Objects used as maps should fall back to dictionaries early, and their
+     * shapes should be released once they are gone
+     */
+    @Test
+    public void test4() throws IOException {
+        DefaultJsonFactory factory=new DefaultJsonFactory(DefaultJsonObject.KeyOrder.UNORDERED, true);
+        JsonShape root=((ShapedJsonObject) factory.newObject()).getShape();
+        
+        ShapedJsonObject map=(ShapedJsonObject) factory.newObject();
+        for(int i=0;i<JsonShape.MAX_KEYS;i++)
+            map.set("entry"+i, i);
+        assertThat(map.isShaped(), is(false));
+        assertThat(root.getTreeSize(), is(JsonShape.MAX_CREATED_SHAPES));
+        
+        for(int i=0;i<10*JsonShape.MAX_TRANSITIONS;i++)
+            parse(factory, "{\"key"+i+"\":"+i+"}");
+        map = null;
+        
+        ShapedJsonObject record=(ShapedJsonObject) parse(factory, "{\"id\":1,\"name\":\"alpha\"}");
+        for(int i=0;i<100 && !record.isShaped();i++) {
+            System.gc();
+            Thread.yield();
+            record = (ShapedJsonObject) parse(factory, "{\"id\":1,\"name\":\"alpha\"}");
+        }
+        assertThat(record.isShaped(), is(true));
+        
+        // Other factories do not share shapes
+        ShapedJsonObject other=(ShapedJsonObject) parse(new DefaultJsonFactory(DefaultJsonObject.KeyOrder.UNORDERED, true), "{\"id\":1,\"name\":\"alpha\"}");
+        assertThat(other.isShaped(), is(true));
+        assertThat(other.getShape()==record.getShape(), is(false));
+    }
+    
+    /**
+     * Records longer than one object may create shapes for should become
+     * shaped once enough of them have been seen
+     */
+    @Test
+    public void test5() {
+        DefaultJsonFactory factory=new DefaultJsonFactory(DefaultJsonObject.KeyOrder.INSERTION, true);
+        int keys=3*JsonShape.MAX_CREATED_SHAPES;
+        ShapedJsonObject last=null;
+        for(int i=0;i<4;i++) {
+            last = (ShapedJsonObject) factory.newObject();
+            for(int j=0;j<keys;j++)
+                last.set("key"+j, j);
+            assertThat(last.size(), is(keys));
+        }
+        assertThat(last.isShaped(), is(true));
+        
+        // Shaped objects are off by default
+        assertThat(new DefaultJsonFactory().newObject() instanceof DefaultJsonObject, is(true));
+    }
+    
+    private static JsonValue parse(DefaultJsonFactory factory, String text) throws IOException {
+        JsonTreeParser p=factory.newTreeParser(new StringReader(text));
+        try {
+            return p.next();
+        }
+        finally {
+            p.close();
+        }
+    }
+}
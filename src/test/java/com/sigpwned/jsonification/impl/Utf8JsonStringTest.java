@@ -0,0 +1,77 @@
+package com.sigpwned.jsonification.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.sigpwned.jsonification.Json;
+import com.sigpwned.jsonification.JsonGenerator;
+import com.sigpwned.jsonification.exception.ParseJsonException;
+import com.sigpwned.jsonification.value.scalar.JsonString;
+
+/**
+ * Copyright 2015 Andy Boothe
+ *     
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+public class Utf8JsonStringTest {
+    /**
+     * UTF-8 strings should hash and compare like the decoded strings
+     */
+    @Test
+    public void test1() {
+        String[] ss=new String[] { "", "hello", "caf\u00e9", "\u20ac100", "emoji \ud83d\ude00!", "a\"b\\c/d\n" };
+        for(String s : ss) {
+            byte[] bs=s.getBytes(StandardCharsets.UTF_8);
+            JsonString a=Utf8JsonString.valueOf(bs, 0, bs.length);
+            JsonString b=DefaultJsonString.valueOf(s);
+            assertThat(a.hashCode(), is(s.hashCode()));
+            assertThat(Json.hashCode(a), is(Json.hashCode(b)));
+            assertThat(Json.equals(a, b), is(true));
+            assertThat(Json.equals(b, a), is(true));
+            assertThat(Json.equals(a, Utf8JsonString.valueOf(s)), is(true));
+            assertThat(Json.equals(a, DefaultJsonString.valueOf(s+"x")), is(false));
+            assertThat(a.stringVal(), is(s));
+        }
+    }
+    
+    /**
+     * Malformed UTF-8 should be rejected
+     */
+    @Test(expected=ParseJsonException.class)
+    public void test2() {
+        Utf8JsonString.valueOf(new byte[] { (byte) 0xC0, (byte) 0x80 }, 0, 2);
+    }
+    
+    /**
+     * Generators should write UTF-8 strings exactly like other strings
+     */
+    @Test
+    public void test3() throws Exception {
+        String[] ss=new String[] { "hello world", "caf\u00e9", "a/b", "tab\there" };
+        for(String s : ss) {
+            StringWriter a=new StringWriter(), b=new StringWriter();
+            try (JsonGenerator g=Json.getDefaultFactory().newGenerator(a)) {
+                g.scalar(Utf8JsonString.valueOf(s));
+            }
+            try (JsonGenerator g=Json.getDefaultFactory().newGenerator(b)) {
+                g.scalar(s);
+            }
+            assertThat(a.toString(), is(b.toString()));
+        }
+    }
+}